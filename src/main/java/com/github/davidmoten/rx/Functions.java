@@ -119,6 +119,44 @@ public final class Functions {
         };
     }
 
+    /**
+     * Returns the lesser of two values, the first if they are equal. Being
+     * associative it can be used with {@link Transformers#windowAggregate}.
+     * 
+     * @param comparator
+     *            ordering of the values
+     * @param <T>
+     *            value type
+     * @return function returning the lesser value
+     */
+    public static <T> Func2<T, T, T> min(final Comparator<? super T> comparator) {
+        return new Func2<T, T, T>() {
+            @Override
+            public T call(T a, T b) {
+                return comparator.compare(b, a) < 0 ? b : a;
+            }
+        };
+    }
+
+    /**
+     * Returns the greater of two values, the first if they are equal. Being
+     * associative it can be used with {@link Transformers#windowAggregate}.
+     * 
+     * @param comparator
+     *            ordering of the values
+     * @param <T>
+     *            value type
+     * @return function returning the greater value
+     */
+    public static <T> Func2<T, T, T> max(final Comparator<? super T> comparator) {
+        return new Func2<T, T, T>() {
+            @Override
+            public T call(T a, T b) {
+                return comparator.compare(b, a) > 0 ? b : a;
+            }
+        };
+    }
+
     public static <T> Func2<T, T, Integer> toFunc2(final Comparator<? super T> comparator) {
         return new Func2<T, T, Integer>() {
             @Override
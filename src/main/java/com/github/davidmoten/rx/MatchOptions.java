@@ -0,0 +1,316 @@
+package com.github.davidmoten.rx;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializer;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Scheduler;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+/**
+ * Bounds on the items of a match ({@link Obs#match} and
+ * {@link Transformers#matchWith}) that are waiting for an item of the other
+ * source. By default nothing is evicted so an item without a match is kept
+ * until the match terminates.
+ *
+ * <p>
+ * Alternatively waiting items can be spilled to disk (see
+ * {@link Builder#spill}) so that nothing is evicted but memory use is bounded.
+ *
+ * @param <A>
+ *            type of the first source
+ * @param <B>
+ *            type of the second source
+ */
+public final class MatchOptions<A, B> {
+
+    private final int maxPending;
+    private final long timeToLiveMs;
+    private final Scheduler scheduler;
+    private final Action1<? super A> onEvictA;
+    private final Action1<? super B> onEvictB;
+    private final DataSerializer<A> serializerA;
+    private final DataSerializer<B> serializerB;
+    private final int maxInMemory;
+    private final Func0<File> spillFileFactory;
+    private final int spillBuckets;
+
+    private MatchOptions(int maxPending, long timeToLiveMs, Scheduler scheduler,
+            Action1<? super A> onEvictA, Action1<? super B> onEvictB,
+            DataSerializer<A> serializerA, DataSerializer<B> serializerB, int maxInMemory,
+            Func0<File> spillFileFactory, int spillBuckets) {
+        Preconditions.checkArgument(maxPending > 0, "maxPending must be greater than zero");
+        Preconditions.checkArgument(timeToLiveMs > 0, "timeToLive must be greater than zero");
+        Preconditions.checkNotNull(scheduler);
+        Preconditions.checkNotNull(onEvictA);
+        Preconditions.checkNotNull(onEvictB);
+        Preconditions.checkArgument(maxInMemory > 0, "maxInMemory must be greater than zero");
+        Preconditions.checkNotNull(spillFileFactory);
+        Preconditions.checkArgument(spillBuckets > 0 && (spillBuckets & (spillBuckets - 1)) == 0,
+                "spillBuckets must be a power of two");
+        this.maxPending = maxPending;
+        this.timeToLiveMs = timeToLiveMs;
+        this.scheduler = scheduler;
+        this.onEvictA = onEvictA;
+        this.onEvictB = onEvictB;
+        this.serializerA = serializerA;
+        this.serializerB = serializerB;
+        this.maxInMemory = maxInMemory;
+        this.spillFileFactory = spillFileFactory;
+        this.spillBuckets = spillBuckets;
+        Preconditions.checkArgument(!spills() || !isBounded(),
+                "spilling cannot be combined with maxPending or timeToLive");
+    }
+
+    /**
+     * Returns the maximum number of items of each source waiting for a match.
+     * When exceeded the oldest waiting item of that source is evicted.
+     *
+     * @return maximum waiting items per source
+     */
+    public int maxPending() {
+        return maxPending;
+    }
+
+    /**
+     * Returns how long an item waits for a match before it is evicted, or
+     * {@code Long.MAX_VALUE} if items do not expire.
+     *
+     * @return time to live in milliseconds
+     */
+    public long timeToLiveMs() {
+        return timeToLiveMs;
+    }
+
+    /**
+     * Returns the scheduler that provides the time and runs the periodic
+     * expiry check.
+     *
+     * @return scheduler
+     */
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    public Action1<? super A> onEvictA() {
+        return onEvictA;
+    }
+
+    public Action1<? super B> onEvictB() {
+        return onEvictB;
+    }
+
+    public boolean isBounded() {
+        return maxPending != Integer.MAX_VALUE || expires();
+    }
+
+    public boolean expires() {
+        return timeToLiveMs != Long.MAX_VALUE;
+    }
+
+    public boolean spills() {
+        return serializerA != null;
+    }
+
+    public DataSerializer<A> serializerA() {
+        return serializerA;
+    }
+
+    public DataSerializer<B> serializerB() {
+        return serializerB;
+    }
+
+    /**
+     * Returns the number of waiting items of each source held in memory
+     * before the least recently used keys are spilled to disk.
+     *
+     * @return maximum waiting items in memory per source
+     */
+    public int maxInMemory() {
+        return maxInMemory;
+    }
+
+    public Func0<File> spillFileFactory() {
+        return spillFileFactory;
+    }
+
+    public int spillBuckets() {
+        return spillBuckets;
+    }
+
+    public static <A, B> Builder<A, B> builder() {
+        return new Builder<A, B>();
+    }
+
+    public static <A, B> MatchOptions<A, B> defaultInstance() {
+        return MatchOptions.<A, B> builder().build();
+    }
+
+    public static final class Builder<A, B> {
+
+        private int maxPending = Integer.MAX_VALUE;
+        private long timeToLiveMs = Long.MAX_VALUE;
+        private Scheduler scheduler = rx.schedulers.Schedulers.computation();
+        private Action1<? super A> onEvictA = Actions.<A> doNothing1();
+        private Action1<? super B> onEvictB = Actions.<B> doNothing1();
+        private DataSerializer<A> serializerA;
+        private DataSerializer<B> serializerB;
+        private int maxInMemory = 100000;
+        private Func0<File> spillFileFactory = SpillFileFactoryHolder.INSTANCE;
+        private int spillBuckets = 4096;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of items of each source waiting for a
+         * match. When a source has more the oldest is evicted.
+         *
+         * @param maxPending
+         *            maximum waiting items per source
+         * @return this
+         */
+        public Builder<A, B> maxPending(int maxPending) {
+            this.maxPending = maxPending;
+            return this;
+        }
+
+        /**
+         * Sets how long an item waits for a match before it is evicted.
+         * Expired items are evicted as items arrive and by a periodic check
+         * on the scheduler every half of the time to live.
+         *
+         * @param duration
+         *            time to live
+         * @param unit
+         *            unit of duration
+         * @return this
+         */
+        public Builder<A, B> timeToLive(long duration, TimeUnit unit) {
+            this.timeToLiveMs = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder<A, B> scheduler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Sets the action called with each evicted item of the first source.
+         * The action is called on the thread delivering the match and an
+         * exception it throws is emitted as an error.
+         *
+         * @param onEvictA
+         *            action for evicted items
+         * @return this
+         */
+        public Builder<A, B> onEvictA(Action1<? super A> onEvictA) {
+            this.onEvictA = onEvictA;
+            return this;
+        }
+
+        /**
+         * Sets the action called with each evicted item of the second source.
+         * The action is called on the thread delivering the match and an
+         * exception it throws is emitted as an error.
+         *
+         * @param onEvictB
+         *            action for evicted items
+         * @return this
+         */
+        public Builder<A, B> onEvictB(Action1<? super B> onEvictB) {
+            this.onEvictB = onEvictB;
+            return this;
+        }
+
+        /**
+         * Spills waiting items to disk once a source has more than
+         * {@link #maxInMemory(int)} of them in memory. The least recently
+         * used keys are written with the serializers to an on-disk hash index
+         * and a key is read back when an item that could match it arrives.
+         * Cannot be combined with {@link #maxPending(int)} or
+         * {@link #timeToLive(long, TimeUnit)}.
+         *
+         * @param serializerA
+         *            serializer for items of the first source
+         * @param serializerB
+         *            serializer for items of the second source
+         * @return this
+         */
+        public Builder<A, B> spill(DataSerializer<A> serializerA,
+                DataSerializer<B> serializerB) {
+            Preconditions.checkNotNull(serializerA);
+            Preconditions.checkNotNull(serializerB);
+            this.serializerA = serializerA;
+            this.serializerB = serializerB;
+            return this;
+        }
+
+        /**
+         * Sets the number of waiting items of each source held in memory when
+         * spilling. Defaults to 100000.
+         *
+         * @param maxInMemory
+         *            maximum waiting items in memory per source
+         * @return this
+         */
+        public Builder<A, B> maxInMemory(int maxInMemory) {
+            this.maxInMemory = maxInMemory;
+            return this;
+        }
+
+        /**
+         * Sets the factory for the spill files, one per source. Defaults to
+         * using {@code File.createTempFile("matchSpill","")}. Files are
+         * deleted when the match terminates or is unsubscribed.
+         *
+         * @param spillFileFactory
+         *            creates spill files
+         * @return this
+         */
+        public Builder<A, B> spillFileFactory(Func0<File> spillFileFactory) {
+            this.spillFileFactory = spillFileFactory;
+            return this;
+        }
+
+        /**
+         * Sets the number of hash buckets of the spill files, a power of two.
+         * Every key in a bucket is read back when one of them is, so more
+         * buckets means smaller reads at the cost of 12 bytes of memory per
+         * bucket. Defaults to 4096.
+         *
+         * @param spillBuckets
+         *            number of buckets
+         * @return this
+         */
+        public Builder<A, B> spillBuckets(int spillBuckets) {
+            this.spillBuckets = spillBuckets;
+            return this;
+        }
+
+        public MatchOptions<A, B> build() {
+            return new MatchOptions<A, B>(maxPending, timeToLiveMs, scheduler, onEvictA, onEvictB,
+                    serializerA, serializerB, maxInMemory, spillFileFactory, spillBuckets);
+        }
+    }
+
+    private static final class SpillFileFactoryHolder {
+
+        static final Func0<File> INSTANCE = new Func0<File>() {
+            @Override
+            public File call() {
+                try {
+                    return File.createTempFile("matchSpill", "");
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+}
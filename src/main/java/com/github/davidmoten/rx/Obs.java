@@ -14,11 +14,13 @@ import com.github.davidmoten.rx.internal.operators.OnSubscribeFromQueue;
 import com.github.davidmoten.rx.internal.operators.OnSubscribeMatch;
 import com.github.davidmoten.rx.internal.operators.OnSubscribeRepeating;
 import com.github.davidmoten.rx.internal.operators.OrderedMerge;
+import com.github.davidmoten.rx.internal.operators.OrderedMergeDynamic;
 import com.github.davidmoten.rx.internal.operators.Permutations;
 import com.github.davidmoten.rx.internal.operators.Permutations.Swap;
 import com.github.davidmoten.rx.observables.CachedObservable;
 import com.github.davidmoten.rx.util.RxRingBuffer;
 import com.github.davidmoten.util.Optional;
+import com.github.davidmoten.util.Preconditions;
 
 import rx.Observable;
 import rx.Scheduler;
@@ -203,6 +205,85 @@ public final class Obs {
         return OrderedMerge.create(sources, comparator, delayErrors, RxRingBuffer.SIZE);
     }
 
+    /**
+     * Returns the ordered merge of the sources with the buffered items of all
+     * sources held in one shared arena of {@code sharedCapacity} items rather
+     * than a buffer of {@code bufferSize} per source. Suits merging many
+     * sources: each source is guaranteed a share of the arena and sources
+     * that are currently winning are lent more, up to {@code bufferSize}.
+     * 
+     * @param sources
+     *            already ordered observables
+     * @param comparator
+     *            the ordering
+     * @param delayErrors
+     *            whether errors are reported after buffered items are emitted
+     * @param bufferSize
+     *            maximum number of items buffered for one source
+     * @param sharedCapacity
+     *            total number of items buffered for all sources (at least the
+     *            number of sources)
+     * @param <T>
+     *            item type
+     * @return merged observable
+     */
+    public static <T> Observable<T> orderedMerge(Collection<Observable<T>> sources,
+            Comparator<? super T> comparator, boolean delayErrors, int bufferSize,
+            int sharedCapacity) {
+        Preconditions.checkArgument(sharedCapacity > 0, "sharedCapacity must be greater than zero");
+        return OrderedMerge.create(sources, comparator, delayErrors, bufferSize, sharedCapacity);
+    }
+
+    /**
+     * Returns the ordered merge of sources that are announced while merging.
+     * Emission is held while a newly announced source has not produced its
+     * first item. Completes when {@code sources} and every source have
+     * completed.
+     * 
+     * @param sources
+     *            stream of already ordered observables
+     * @param comparator
+     *            the ordering
+     * @param <T>
+     *            item type
+     * @return merged observable
+     */
+    public static <T> Observable<T> orderedMerge(
+            Observable<? extends Observable<? extends T>> sources,
+            Comparator<? super T> comparator) {
+        return orderedMerge(sources, comparator, Observable.<T> empty(), false,
+                RxRingBuffer.SIZE);
+    }
+
+    /**
+     * Returns the ordered merge of sources that are announced while merging.
+     * Emission is held while a newly announced source has not produced its
+     * first item, except for items no greater than the latest watermark. Each
+     * watermark promises that no source without a first item, including those
+     * not yet announced, will emit an item below it.
+     * 
+     * @param sources
+     *            stream of already ordered observables
+     * @param comparator
+     *            the ordering
+     * @param watermarks
+     *            lower bounds on the items of sources that have not started
+     * @param delayErrors
+     *            whether errors are reported after buffered items are emitted
+     * @param bufferSize
+     *            maximum number of items buffered for one source
+     * @param <T>
+     *            item type
+     * @return merged observable
+     */
+    public static <T> Observable<T> orderedMerge(
+            Observable<? extends Observable<? extends T>> sources,
+            Comparator<? super T> comparator, Observable<? extends T> watermarks,
+            boolean delayErrors, int bufferSize) {
+        return OrderedMergeDynamic.create(sources, comparator, watermarks, delayErrors,
+                bufferSize);
+    }
+
     public static <T> Observable<T> fromQueue(Queue<T> queue) {
         return Observable.create(new OnSubscribeFromQueue<T>(queue));
     }
@@ -274,6 +355,88 @@ public final class Obs {
                 .unsafeCreate(new OnSubscribeMatch<A, B, K, C>(a, b, aKey, bKey, combiner, requestSize));
     }
 
+    /**
+     * Returns the matches of items of a and b by key where the items waiting
+     * for a match are bounded in number and age by {@code options}. Evicted
+     * items are passed to the eviction actions of the options.
+     * 
+     * @param a
+     *            source a
+     * @param b
+     *            source b
+     * @param aKey
+     *            key of an item of a
+     * @param bKey
+     *            key of an item of b
+     * @param combiner
+     *            combines matching items
+     * @param requestSize
+     *            number of items requested from each source at a time
+     * @param options
+     *            bounds on the waiting items
+     * @param <A>
+     *            type of a
+     * @param <B>
+     *            type of b
+     * @param <K>
+     *            key type
+     * @param <C>
+     *            result type
+     * @return matches
+     */
+    public static <A, B, K, C> Observable<C> match(final Observable<A> a, final Observable<B> b,
+            final Func1<? super A, ? extends K> aKey, final Func1<? super B, ? extends K> bKey,
+            final Func2<? super A, ? super B, C> combiner, long requestSize,
+            MatchOptions<A, B> options) {
+        return Observable.unsafeCreate(
+                new OnSubscribeMatch<A, B, K, C>(a, b, aKey, bKey, combiner, requestSize, options));
+    }
+
+    /**
+     * Returns the matches of items of a and b by primitive {@code long} key
+     * (ids for example). As {@link #match(Observable, Observable, Func1, Func1, Func2)}
+     * but the waiting items are held without boxing keys or allocating per
+     * key, which suits matching high rate streams.
+     * 
+     * @param a
+     *            source a
+     * @param b
+     *            source b
+     * @param aKey
+     *            key of an item of a
+     * @param bKey
+     *            key of an item of b
+     * @param combiner
+     *            combines matching items
+     * @param <A>
+     *            type of a
+     * @param <B>
+     *            type of b
+     * @param <C>
+     *            result type
+     * @return matches
+     */
+    public static <A, B, C> Observable<C> matchLong(final Observable<A> a, final Observable<B> b,
+            final ToLongFunc1<? super A> aKey, final ToLongFunc1<? super B> bKey,
+            final Func2<? super A, ? super B, C> combiner) {
+        return matchLong(a, b, aKey, bKey, combiner, 128);
+    }
+
+    public static <A, B, C> Observable<C> matchLong(final Observable<A> a, final Observable<B> b,
+            final ToLongFunc1<? super A> aKey, final ToLongFunc1<? super B> bKey,
+            final Func2<? super A, ? super B, C> combiner, long requestSize) {
+        return matchLong(a, b, aKey, bKey, combiner, requestSize,
+                MatchOptions.<A, B> defaultInstance());
+    }
+
+    public static <A, B, C> Observable<C> matchLong(final Observable<A> a, final Observable<B> b,
+            final ToLongFunc1<? super A> aKey, final ToLongFunc1<? super B> bKey,
+            final Func2<? super A, ? super B, C> combiner, long requestSize,
+            MatchOptions<A, B> options) {
+        return Observable.unsafeCreate(
+                OnSubscribeMatch.longKeyed(a, b, aKey, bKey, combiner, requestSize, options));
+    }
+
     public static <T> Observable<T> reverse(Observable<T> source) {
         return ObservableReverse.reverse(source);
     }
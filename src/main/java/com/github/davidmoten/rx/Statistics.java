@@ -1,24 +1,73 @@
 package com.github.davidmoten.rx;
 
+/**
+ * <p>
+ * Count, sum, mean, standard deviation, min, max, skewness and kurtosis of a
+ * set of values. The mean and the central moments are updated with
+ * Welford's method rather than derived from the sum of squares so that they
+ * stay accurate when the mean is large compared to the spread (epoch millis
+ * for example).
+ *
+ * <p>
+ * Statistics of separate sets of values (computed on separate threads for
+ * example) can be merged with {@link #combine(Statistics)} giving the same
+ * result as for the values all together. To add many values without
+ * creating an instance per value use an {@link Accumulator}.
+ */
 public final class Statistics {
 
     private final long count;
     private final double sumX;
     private final double sumX2;
+    private final double mean;
+    // sums of the 2nd, 3rd and 4th powers of the deviations from the mean
+    private final double m2;
+    private final double m3;
+    private final double m4;
+    private final double min;
+    private final double max;
 
-    private Statistics(long count, double sumX, double sumX2) {
+    private Statistics(long count, double sumX, double sumX2, double mean, double m2, double m3,
+            double m4, double min, double max) {
         this.count = count;
         this.sumX = sumX;
         this.sumX2 = sumX2;
+        this.mean = mean;
+        this.m2 = m2;
+        this.m3 = m3;
+        this.m4 = m4;
+        this.min = min;
+        this.max = max;
     }
 
     public static Statistics create() {
-        return new Statistics(0, 0, 0);
+        return new Statistics(0, 0, 0, 0, 0, 0, 0, Double.NaN, Double.NaN);
+    }
+
+    public static Accumulator accumulator() {
+        return new Accumulator();
     }
 
     public Statistics add(Number number) {
-        double x = number.doubleValue();
-        return new Statistics(count + 1, sumX + x, sumX2 + x * x);
+        return toAccumulator().add(number).toStatistics();
+    }
+
+    /**
+     * Returns the statistics of the values of this and of {@code other}
+     * together.
+     *
+     * @param other
+     *            statistics of other values
+     * @return combined statistics
+     */
+    public Statistics combine(Statistics other) {
+        return toAccumulator().add(other).toStatistics();
+    }
+
+    private Accumulator toAccumulator() {
+        Accumulator a = new Accumulator();
+        a.add(this);
+        return a;
     }
 
     public long count() {
@@ -34,12 +83,49 @@ public final class Statistics {
     }
 
     public double mean() {
-        return sumX / count;
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Returns the population variance (the mean squared deviation from the
+     * mean).
+     *
+     * @return variance
+     */
+    public double variance() {
+        return m2 / count;
     }
 
     public double sd() {
-        double m = mean();
-        return Math.sqrt(sumX2 / count - m * m);
+        return Math.sqrt(variance());
+    }
+
+    public double min() {
+        return min;
+    }
+
+    public double max() {
+        return max;
+    }
+
+    /**
+     * Returns the population skewness, NaN if there are no values or they are
+     * all the same.
+     *
+     * @return skewness
+     */
+    public double skewness() {
+        return Math.sqrt(count) * m3 / Math.pow(m2, 1.5);
+    }
+
+    /**
+     * Returns the population excess kurtosis (zero for a normal
+     * distribution), NaN if there are no values or they are all the same.
+     *
+     * @return excess kurtosis
+     */
+    public double kurtosis() {
+        return count * m4 / (m2 * m2) - 3;
     }
 
     @Override
@@ -53,7 +139,119 @@ public final class Statistics {
         builder.append(mean());
         builder.append(", sd=");
         builder.append(sd());
+        builder.append(", min=");
+        builder.append(min);
+        builder.append(", max=");
+        builder.append(max);
         builder.append("]");
         return builder.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * Mutable counterpart of {@link Statistics} for adding values without
+     * creating an instance per value. Not thread-safe, use one per thread and
+     * combine the results.
+     */
+    public static final class Accumulator {
+
+        private long count;
+        private double sumX;
+        private double sumX2;
+        private double mean;
+        private double m2;
+        private double m3;
+        private double m4;
+        private double min = Double.NaN;
+        private double max = Double.NaN;
+
+        private Accumulator() {
+        }
+
+        public Accumulator add(Number number) {
+            return add(number.doubleValue());
+        }
+
+        public Accumulator add(double x) {
+            // Welford's update extended to the 3rd and 4th moments (Terriberry)
+            double n1 = count;
+            count++;
+            double n = count;
+            double delta = x - mean;
+            double deltaN = delta / n;
+            double deltaN2 = deltaN * deltaN;
+            double term1 = delta * deltaN * n1;
+            mean += deltaN;
+            m4 += term1 * deltaN2 * (n * n - 3 * n + 3) + 6 * deltaN2 * m2 - 4 * deltaN * m3;
+            m3 += term1 * deltaN * (n - 2) - 3 * deltaN * m2;
+            m2 += term1;
+            sumX += x;
+            sumX2 += x * x;
+            if (n1 == 0) {
+                min = x;
+                max = x;
+            } else {
+                min = Math.min(min, x);
+                max = Math.max(max, x);
+            }
+            return this;
+        }
+
+        /**
+         * Adds the values that {@code other} is the statistics of.
+         *
+         * @param other
+         *            statistics of other values
+         * @return this
+         */
+        public Accumulator add(Statistics other) {
+            return combine(other.count, other.sumX, other.sumX2, other.mean, other.m2, other.m3,
+                    other.m4, other.min, other.max);
+        }
+
+        public Accumulator add(Accumulator other) {
+            return combine(other.count, other.sumX, other.sumX2, other.mean, other.m2, other.m3,
+                    other.m4, other.min, other.max);
+        }
+
+        // pairwise update of Chan et al. extended to the 3rd and 4th moments
+        private Accumulator combine(long countB, double sumXB, double sumX2B, double meanB,
+                double m2B, double m3B, double m4B, double minB, double maxB) {
+            if (countB == 0) {
+                return this;
+            }
+            if (count == 0) {
+                min = minB;
+                max = maxB;
+            } else {
+                min = Math.min(min, minB);
+                max = Math.max(max, maxB);
+            }
+            double na = count;
+            double nb = countB;
+            double n = na + nb;
+            double delta = meanB - mean;
+            double delta2 = delta * delta;
+            double m4A = m4 + m4B + delta2 * delta2 * na * nb * (na * na - na * nb + nb * nb)
+                    / (n * n * n) + 6 * delta2 * (na * na * m2B + nb * nb * m2) / (n * n)
+                    + 4 * delta * (na * m3B - nb * m3) / n;
+            double m3A = m3 + m3B + delta2 * delta * na * nb * (na - nb) / (n * n)
+                    + 3 * delta * (na * m2B - nb * m2) / n;
+            m2 = m2 + m2B + delta2 * na * nb / n;
+            m3 = m3A;
+            m4 = m4A;
+            mean += delta * nb / n;
+            count += countB;
+            sumX += sumXB;
+            sumX2 += sumX2B;
+            return this;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public Statistics toStatistics() {
+            return new Statistics(count, sumX, sumX2, mean, m2, m3, m4, min, max);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.github.davidmoten.rx;
+
+/**
+ * A function returning a primitive {@code long} so that keys such as ids can
+ * be used without boxing.
+ * 
+ * @param <T>
+ *            argument type
+ */
+public interface ToLongFunc1<T> {
+
+    long call(T t);
+
+}
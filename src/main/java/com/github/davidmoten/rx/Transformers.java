@@ -1,5 +1,7 @@
 package com.github.davidmoten.rx;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.CharsetDecoder;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -25,7 +27,11 @@ import com.github.davidmoten.rx.internal.operators.OperatorBufferToFile;
 import com.github.davidmoten.rx.internal.operators.OperatorDoOnNth;
 import com.github.davidmoten.rx.internal.operators.OperatorFromTransformer;
 import com.github.davidmoten.rx.internal.operators.OperatorSampleFirst;
+import com.github.davidmoten.rx.internal.operators.OperatorWindowAggregate;
 import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMax;
+import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMaxDouble;
+import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMaxLong;
+import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMaxTime;
 import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMax.Metric;
 import com.github.davidmoten.rx.internal.operators.OrderedMerge;
 import com.github.davidmoten.rx.internal.operators.TransformerDecode;
@@ -33,6 +39,7 @@ import com.github.davidmoten.rx.internal.operators.TransformerDelayFinalUnsubscr
 import com.github.davidmoten.rx.internal.operators.TransformerLimitSubscribers;
 import com.github.davidmoten.rx.internal.operators.TransformerOnBackpressureBufferRequestLimiting;
 import com.github.davidmoten.rx.internal.operators.TransformerOnTerminateResume;
+import com.github.davidmoten.rx.internal.operators.TransformerSortExternal;
 import com.github.davidmoten.rx.internal.operators.TransformerStateMachine;
 import com.github.davidmoten.rx.internal.operators.TransformerStringSplit;
 import com.github.davidmoten.rx.util.BackpressureStrategy;
@@ -70,12 +77,32 @@ public final class Transformers {
         return OperatorFromTransformer.toOperator(function);
     }
 
+    /**
+     * Emits empty statistics and then the statistics of the items so far with
+     * each item. Values are added to a {@link Statistics.Accumulator} per
+     * subscription.
+     * 
+     * @param <T>
+     *            item type
+     * @return transformer emitting statistics
+     */
     public static <T extends Number> Transformer<T, Statistics> collectStats() {
         return new Transformer<T, Statistics>() {
 
             @Override
-            public Observable<Statistics> call(Observable<T> o) {
-                return o.scan(Statistics.create(), Functions.collectStats());
+            public Observable<Statistics> call(final Observable<T> o) {
+                return Observable.defer(new Func0<Observable<Statistics>>() {
+                    @Override
+                    public Observable<Statistics> call() {
+                        final Statistics.Accumulator acc = Statistics.accumulator();
+                        return o.map(new Func1<T, Statistics>() {
+                            @Override
+                            public Statistics call(T t) {
+                                return acc.add(t).toStatistics();
+                            }
+                        }).startWith(Statistics.create());
+                    }
+                });
             }
         };
     }
@@ -85,14 +112,19 @@ public final class Transformers {
         return new Transformer<T, Pair<T, Statistics>>() {
 
             @Override
-            public Observable<Pair<T, Statistics>> call(Observable<T> source) {
-                return source.scan(Pair.create((T) null, Statistics.create()),
-                        new Func2<Pair<T, Statistics>, T, Pair<T, Statistics>>() {
+            public Observable<Pair<T, Statistics>> call(final Observable<T> source) {
+                return Observable.defer(new Func0<Observable<Pair<T, Statistics>>>() {
+                    @Override
+                    public Observable<Pair<T, Statistics>> call() {
+                        final Statistics.Accumulator acc = Statistics.accumulator();
+                        return source.map(new Func1<T, Pair<T, Statistics>>() {
                             @Override
-                            public Pair<T, Statistics> call(Pair<T, Statistics> pair, T t) {
-                                return Pair.create(t, pair.b().add(function.call(t)));
+                            public Pair<T, Statistics> call(T t) {
+                                return Pair.create(t, acc.add(function.call(t)).toStatistics());
                             }
-                        }).skip(1);
+                        });
+                    }
+                });
             }
         };
     }
@@ -118,6 +150,94 @@ public final class Transformers {
         };
     }
 
+    /**
+     * Returns a {@link Transformer} that sorts the stream without holding it
+     * all in memory. Runs of up to {@code runSize} items are sorted in
+     * parallel on the computation scheduler, spilled to temporary files with
+     * {@code serializer} and merged back in order. Only a stream of at most
+     * {@code runSize} items is sorted without using files. The sort is not
+     * stable.
+     * 
+     * @param serializer
+     *            serializes items to the run files
+     * @param runSize
+     *            maximum number of items in a run sorted in memory
+     * @param <T>
+     *            item type
+     * @return sorting transformer
+     */
+    public static <T extends Comparable<T>> Transformer<T, T> sortExternal(
+            DataSerializer<T> serializer, int runSize) {
+        return sortExternal(serializer, Transformers.<T> naturalComparator(), runSize);
+    }
+
+    /**
+     * As {@link #sortExternal(DataSerializer, int)} with the given ordering.
+     * 
+     * @param serializer
+     *            serializes items to the run files
+     * @param comparator
+     *            the ordering
+     * @param runSize
+     *            maximum number of items in a run sorted in memory
+     * @param <T>
+     *            item type
+     * @return sorting transformer
+     */
+    public static <T> Transformer<T, T> sortExternal(DataSerializer<T> serializer,
+            Comparator<? super T> comparator, int runSize) {
+        return sortExternal(serializer, comparator, runSize,
+                Runtime.getRuntime().availableProcessors(), SortFileFactoryHolder.INSTANCE,
+                Schedulers.computation());
+    }
+
+    /**
+     * Returns a {@link Transformer} that sorts the stream without holding it
+     * all in memory. The stream is cut into runs of up to {@code runSize}
+     * items and up to {@code parallelism} runs at a time are sorted on
+     * {@code scheduler}. Every run but the last is written with
+     * {@code serializer} to a file from {@code fileFactory}, and the sorted
+     * runs are merged back in order, each file being deleted once read. About
+     * {@code parallelism + 2} runs are in memory at once. The sort is not
+     * stable.
+     * 
+     * @param serializer
+     *            serializes items to the run files
+     * @param comparator
+     *            the ordering
+     * @param runSize
+     *            maximum number of items in a run sorted in memory
+     * @param parallelism
+     *            maximum number of runs sorted at the same time
+     * @param fileFactory
+     *            creates the run files
+     * @param scheduler
+     *            scheduler that runs are sorted and written on
+     * @param <T>
+     *            item type
+     * @return sorting transformer
+     */
+    public static <T> Transformer<T, T> sortExternal(DataSerializer<T> serializer,
+            Comparator<? super T> comparator, int runSize, int parallelism,
+            Func0<File> fileFactory, Scheduler scheduler) {
+        return new TransformerSortExternal<T>(serializer, comparator, runSize, parallelism,
+                fileFactory, scheduler);
+    }
+
+    private static final class SortFileFactoryHolder {
+
+        static final Func0<File> INSTANCE = new Func0<File>() {
+            @Override
+            public File call() {
+                try {
+                    return File.createTempFile("sortRun", "");
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
     public static <T> Transformer<T, Set<T>> toSet() {
         return new Transformer<T, Set<T>>() {
 
@@ -849,6 +969,379 @@ public final class Transformers {
         return windowMin(windowSize, Transformers.<T> naturalComparator());
     }
 
+    /**
+     * Emits on every item the minimum of the items that arrived within
+     * {@code duration} of it, by the computation scheduler clock.
+     * 
+     * @param duration
+     *            length of the window
+     * @param unit
+     *            unit of duration
+     * @param <T>
+     *            item type
+     * @return transformer emitting the minimum of the window on every item
+     */
+    public static <T extends Comparable<T>> Transformer<T, T> windowMin(final long duration,
+            final TimeUnit unit) {
+        return windowMin(duration, unit, Schedulers.computation(),
+                Transformers.<T> naturalComparator());
+    }
+
+    public static <T> Transformer<T, T> windowMin(final long duration, final TimeUnit unit,
+            final Scheduler scheduler, final Comparator<? super T> comparator) {
+        return windowMin(duration, 0, unit, scheduler, comparator);
+    }
+
+    public static <T> Transformer<T, T> windowMin(final long duration, final TimeUnit unit,
+            final ToLongFunc1<? super T> timestampMillis, final Comparator<? super T> comparator) {
+        return windowMin(duration, 0, unit, timestampMillis, comparator);
+    }
+
+    /**
+     * Emits the minimum of the items that arrived within {@code duration} of
+     * an item, by the scheduler clock, but at most once per {@code throttle}.
+     * 
+     * @param duration
+     *            length of the window
+     * @param throttle
+     *            minimum time between emissions, 0 to emit on every item
+     * @param unit
+     *            unit of duration and throttle
+     * @param scheduler
+     *            provides the time of each item
+     * @param comparator
+     *            ordering of the items
+     * @param <T>
+     *            item type
+     * @return transformer emitting the minimum of the window
+     */
+    public static <T> Transformer<T, T> windowMin(final long duration, final long throttle,
+            final TimeUnit unit, final Scheduler scheduler,
+            final Comparator<? super T> comparator) {
+        return windowMin(duration, throttle, unit, clock(scheduler), comparator);
+    }
+
+    /**
+     * Emits the minimum of the items with a timestamp within {@code duration}
+     * of the timestamp of an item, but at most once per {@code throttle} of
+     * timestamps. Timestamps should not decrease.
+     * 
+     * @param duration
+     *            length of the window
+     * @param throttle
+     *            minimum time between emissions, 0 to emit on every item
+     * @param unit
+     *            unit of duration and throttle
+     * @param timestampMillis
+     *            timestamp of an item in milliseconds
+     * @param comparator
+     *            ordering of the items
+     * @param <T>
+     *            item type
+     * @return transformer emitting the minimum of the window
+     */
+    public static <T> Transformer<T, T> windowMin(final long duration, final long throttle,
+            final TimeUnit unit, final ToLongFunc1<? super T> timestampMillis,
+            final Comparator<? super T> comparator) {
+        return new Transformer<T, T>() {
+            @Override
+            public Observable<T> call(Observable<T> o) {
+                return o.lift(new OperatorWindowMinMaxTime<T>(duration, throttle, unit,
+                        timestampMillis, comparator, Metric.MIN));
+            }
+        };
+    }
+
+    /**
+     * Emits on every item the maximum of the items that arrived within
+     * {@code duration} of it, by the computation scheduler clock.
+     * 
+     * @param duration
+     *            length of the window
+     * @param unit
+     *            unit of duration
+     * @param <T>
+     *            item type
+     * @return transformer emitting the maximum of the window on every item
+     */
+    public static <T extends Comparable<T>> Transformer<T, T> windowMax(final long duration,
+            final TimeUnit unit) {
+        return windowMax(duration, unit, Schedulers.computation(),
+                Transformers.<T> naturalComparator());
+    }
+
+    public static <T> Transformer<T, T> windowMax(final long duration, final TimeUnit unit,
+            final Scheduler scheduler, final Comparator<? super T> comparator) {
+        return windowMax(duration, 0, unit, scheduler, comparator);
+    }
+
+    public static <T> Transformer<T, T> windowMax(final long duration, final TimeUnit unit,
+            final ToLongFunc1<? super T> timestampMillis, final Comparator<? super T> comparator) {
+        return windowMax(duration, 0, unit, timestampMillis, comparator);
+    }
+
+    /**
+     * Emits the maximum of the items that arrived within {@code duration} of
+     * an item, by the scheduler clock, but at most once per {@code throttle}.
+     * 
+     * @param duration
+     *            length of the window
+     * @param throttle
+     *            minimum time between emissions, 0 to emit on every item
+     * @param unit
+     *            unit of duration and throttle
+     * @param scheduler
+     *            provides the time of each item
+     * @param comparator
+     *            ordering of the items
+     * @param <T>
+     *            item type
+     * @return transformer emitting the maximum of the window
+     */
+    public static <T> Transformer<T, T> windowMax(final long duration, final long throttle,
+            final TimeUnit unit, final Scheduler scheduler,
+            final Comparator<? super T> comparator) {
+        return windowMax(duration, throttle, unit, clock(scheduler), comparator);
+    }
+
+    /**
+     * Emits the maximum of the items with a timestamp within {@code duration}
+     * of the timestamp of an item, but at most once per {@code throttle} of
+     * timestamps. Timestamps should not decrease.
+     * 
+     * @param duration
+     *            length of the window
+     * @param throttle
+     *            minimum time between emissions, 0 to emit on every item
+     * @param unit
+     *            unit of duration and throttle
+     * @param timestampMillis
+     *            timestamp of an item in milliseconds
+     * @param comparator
+     *            ordering of the items
+     * @param <T>
+     *            item type
+     * @return transformer emitting the maximum of the window
+     */
+    public static <T> Transformer<T, T> windowMax(final long duration, final long throttle,
+            final TimeUnit unit, final ToLongFunc1<? super T> timestampMillis,
+            final Comparator<? super T> comparator) {
+        return new Transformer<T, T>() {
+            @Override
+            public Observable<T> call(Observable<T> o) {
+                return o.lift(new OperatorWindowMinMaxTime<T>(duration, throttle, unit,
+                        timestampMillis, comparator, Metric.MAX));
+            }
+        };
+    }
+
+    /**
+     * Emits the aggregate of each window of {@code windowSize} consecutive
+     * items, combining the items in arrival order with an associative
+     * function. Each update costs an amortised constant number of calls to
+     * the combiner whatever the window size, unlike
+     * {@code buffer(windowSize, 1)} followed by a reduction.
+     * 
+     * @param windowSize
+     *            number of items in a window
+     * @param combiner
+     *            associative function
+     * @param <T>
+     *            item type
+     * @return transformer emitting the aggregate of each window
+     */
+    public static <T> Transformer<T, T> windowAggregate(final int windowSize,
+            final Func2<T, T, T> combiner) {
+        return Transformers.<T, T> windowAggregate(windowSize, Functions.<T> identity(), combiner);
+    }
+
+    /**
+     * Emits the aggregate of each window of {@code windowSize} consecutive
+     * items, where each item is mapped to an aggregate and aggregates are
+     * combined in arrival order with an associative function. Each update
+     * costs an amortised constant number of calls to the combiner whatever
+     * the window size.
+     * 
+     * @param windowSize
+     *            number of items in a window
+     * @param mapper
+     *            maps an item to the aggregate of it alone
+     * @param combiner
+     *            associative function
+     * @param <T>
+     *            item type
+     * @param <R>
+     *            aggregate type
+     * @return transformer emitting the aggregate of each window
+     */
+    public static <T, R> Transformer<T, R> windowAggregate(final int windowSize,
+            final Func1<? super T, ? extends R> mapper, final Func2<R, R, R> combiner) {
+        return new Transformer<T, R>() {
+            @Override
+            public Observable<R> call(Observable<T> o) {
+                return o.lift(OperatorWindowAggregate.<T, R> count(windowSize, mapper, combiner));
+            }
+        };
+    }
+
+    public static <T, R> Transformer<T, R> windowAggregate(final long duration,
+            final TimeUnit unit, final Scheduler scheduler,
+            final Func1<? super T, ? extends R> mapper, final Func2<R, R, R> combiner) {
+        return windowAggregate(duration, unit, clock(scheduler), mapper, combiner);
+    }
+
+    /**
+     * Emits on every item the aggregate of the items with a timestamp within
+     * {@code duration} of its timestamp. Timestamps should not decrease.
+     * 
+     * @param duration
+     *            length of the window
+     * @param unit
+     *            unit of duration
+     * @param timestampMillis
+     *            timestamp of an item in milliseconds
+     * @param mapper
+     *            maps an item to the aggregate of it alone
+     * @param combiner
+     *            associative function
+     * @param <T>
+     *            item type
+     * @param <R>
+     *            aggregate type
+     * @return transformer emitting the aggregate of the window on every item
+     */
+    public static <T, R> Transformer<T, R> windowAggregate(final long duration,
+            final TimeUnit unit, final ToLongFunc1<? super T> timestampMillis,
+            final Func1<? super T, ? extends R> mapper, final Func2<R, R, R> combiner) {
+        return new Transformer<T, R>() {
+            @Override
+            public Observable<R> call(Observable<T> o) {
+                return o.lift(OperatorWindowAggregate.<T, R> time(duration, unit, timestampMillis,
+                        mapper, combiner));
+            }
+        };
+    }
+
+    /**
+     * Emits the statistics of each window of {@code windowSize} consecutive
+     * values.
+     * 
+     * @param windowSize
+     *            number of values in a window
+     * @param <T>
+     *            value type
+     * @return transformer emitting the statistics of each window
+     */
+    public static <T extends Number> Transformer<T, Statistics> windowStatistics(
+            final int windowSize) {
+        return Transformers.<T, Statistics> windowAggregate(windowSize,
+                Transformers.<T> toStatistics(), COMBINE_STATISTICS);
+    }
+
+    public static <T extends Number> Transformer<T, Statistics> windowStatistics(
+            final long duration, final TimeUnit unit, final Scheduler scheduler) {
+        return Transformers.<T, Statistics> windowAggregate(duration, unit, scheduler,
+                Transformers.<T> toStatistics(), COMBINE_STATISTICS);
+    }
+
+    private static <T extends Number> Func1<T, Statistics> toStatistics() {
+        return new Func1<T, Statistics>() {
+            @Override
+            public Statistics call(T t) {
+                return Statistics.create().add(t);
+            }
+        };
+    }
+
+    private static final Func2<Statistics, Statistics, Statistics> COMBINE_STATISTICS = new Func2<Statistics, Statistics, Statistics>() {
+        @Override
+        public Statistics call(Statistics a, Statistics b) {
+            return a.combine(b);
+        }
+    };
+
+    private static ToLongFunc1<Object> clock(final Scheduler scheduler) {
+        Preconditions.checkNotNull(scheduler, "scheduler cannot be null");
+        return new ToLongFunc1<Object>() {
+            @Override
+            public long call(Object t) {
+                return scheduler.now();
+            }
+        };
+    }
+
+    /**
+     * Returns the minimum of each window of {@code windowSize} consecutive
+     * values as {@link #windowMin(int)} does, but keeps the window in
+     * primitive arrays so that no objects are allocated per value.
+     * 
+     * @param windowSize
+     *            number of values in a window
+     * @return transformer emitting the minimum of each window
+     */
+    public static Transformer<Double, Double> windowMinDouble(final int windowSize) {
+        return new Transformer<Double, Double>() {
+            @Override
+            public Observable<Double> call(Observable<Double> o) {
+                return o.lift(new OperatorWindowMinMaxDouble(windowSize, Metric.MIN));
+            }
+        };
+    }
+
+    /**
+     * Returns the maximum of each window of {@code windowSize} consecutive
+     * values as {@link #windowMax(int)} does, but keeps the window in
+     * primitive arrays so that no objects are allocated per value.
+     * 
+     * @param windowSize
+     *            number of values in a window
+     * @return transformer emitting the maximum of each window
+     */
+    public static Transformer<Double, Double> windowMaxDouble(final int windowSize) {
+        return new Transformer<Double, Double>() {
+            @Override
+            public Observable<Double> call(Observable<Double> o) {
+                return o.lift(new OperatorWindowMinMaxDouble(windowSize, Metric.MAX));
+            }
+        };
+    }
+
+    /**
+     * Returns the minimum of each window of {@code windowSize} consecutive
+     * values as {@link #windowMin(int)} does, but keeps the window in
+     * primitive arrays so that no objects are allocated per value.
+     * 
+     * @param windowSize
+     *            number of values in a window
+     * @return transformer emitting the minimum of each window
+     */
+    public static Transformer<Long, Long> windowMinLong(final int windowSize) {
+        return new Transformer<Long, Long>() {
+            @Override
+            public Observable<Long> call(Observable<Long> o) {
+                return o.lift(new OperatorWindowMinMaxLong(windowSize, Metric.MIN));
+            }
+        };
+    }
+
+    /**
+     * Returns the maximum of each window of {@code windowSize} consecutive
+     * values as {@link #windowMax(int)} does, but keeps the window in
+     * primitive arrays so that no objects are allocated per value.
+     * 
+     * @param windowSize
+     *            number of values in a window
+     * @return transformer emitting the maximum of each window
+     */
+    public static Transformer<Long, Long> windowMaxLong(final int windowSize) {
+        return new Transformer<Long, Long>() {
+            @Override
+            public Observable<Long> call(Observable<Long> o) {
+                return o.lift(new OperatorWindowMinMaxLong(windowSize, Metric.MAX));
+            }
+        };
+    }
+
     private static class NaturalComparatorHolder {
         static final Comparator<Comparable<Object>> INSTANCE = new Comparator<Comparable<Object>>() {
 
@@ -1456,7 +1949,57 @@ public final class Transformers {
         };
 
     }
+
+    public static <A, B, K, C> Transformer<A, C> matchWith(final Observable<B> obs,
+            final Func1<? super A, ? extends K> key1, final Func1<? super B, ? extends K> key2,
+            final Func2<? super A, ? super B, C> combiner, final long requestSize,
+            final MatchOptions<A, B> options) {
+        return new Transformer<A, C>() {
+
+            @Override
+            public Observable<C> call(Observable<A> source) {
+                return Obs.match(source, obs, key1, key2, combiner, requestSize, options);
+            }
+        };
+    }
     
+    public static <A, B, C> Transformer<A, C> matchWithLong(final Observable<B> obs,
+            final ToLongFunc1<? super A> key1, final ToLongFunc1<? super B> key2,
+            final Func2<? super A, ? super B, C> combiner) {
+        return new Transformer<A, C>() {
+
+            @Override
+            public Observable<C> call(Observable<A> source) {
+                return Obs.matchLong(source, obs, key1, key2, combiner);
+            }
+        };
+    }
+
+    public static <A, B, C> Transformer<A, C> matchWithLong(final Observable<B> obs,
+            final ToLongFunc1<? super A> key1, final ToLongFunc1<? super B> key2,
+            final Func2<? super A, ? super B, C> combiner, final long requestSize) {
+        return new Transformer<A, C>() {
+
+            @Override
+            public Observable<C> call(Observable<A> source) {
+                return Obs.matchLong(source, obs, key1, key2, combiner, requestSize);
+            }
+        };
+    }
+
+    public static <A, B, C> Transformer<A, C> matchWithLong(final Observable<B> obs,
+            final ToLongFunc1<? super A> key1, final ToLongFunc1<? super B> key2,
+            final Func2<? super A, ? super B, C> combiner, final long requestSize,
+            final MatchOptions<A, B> options) {
+        return new Transformer<A, C>() {
+
+            @Override
+            public Observable<C> call(Observable<A> source) {
+                return Obs.matchLong(source, obs, key1, key2, combiner, requestSize, options);
+            }
+        };
+    }
+
     public static <T> Transformer<T,T> reverse() {
         return new Transformer<T,T>() {
 
@@ -0,0 +1,57 @@
+package com.github.davidmoten.rx.buffertofile;
+
+import java.io.IOException;
+
+/**
+ * Compresses and decompresses blocks of serialized items written by the file
+ * based queue. An instance is only used by one thread at a time so may hold
+ * state (like a {@link java.util.zip.Deflater}). Instances are created per
+ * queue by the factory passed to {@link Options.Builder#compression}.
+ */
+public interface BlockCodec {
+
+    /**
+     * Returns the maximum number of bytes that compressing {@code length}
+     * bytes can produce.
+     * 
+     * @param length
+     *            uncompressed length
+     * @return maximum compressed length
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * Compresses {@code input[0..length)} into {@code output} which has at
+     * least {@code maxCompressedLength(length)} bytes.
+     * 
+     * @param input
+     *            uncompressed bytes
+     * @param length
+     *            number of bytes of input to compress
+     * @param output
+     *            destination for compressed bytes
+     * @return number of compressed bytes written to output
+     * @throws IOException
+     *             on compression failure
+     */
+    int compress(byte[] input, int length, byte[] output) throws IOException;
+
+    /**
+     * Decompresses {@code input[0..length)} into
+     * {@code output[0..uncompressedLength)}.
+     * 
+     * @param input
+     *            compressed bytes
+     * @param length
+     *            number of compressed bytes
+     * @param output
+     *            destination for uncompressed bytes
+     * @param uncompressedLength
+     *            the number of bytes the block had before compression
+     * @throws IOException
+     *             if the input is corrupt
+     */
+    void decompress(byte[] input, int length, byte[] output, int uncompressedLength)
+            throws IOException;
+
+}
@@ -0,0 +1,93 @@
+package com.github.davidmoten.rx.buffertofile;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import rx.functions.Func0;
+
+public final class BlockCodecs {
+
+    private BlockCodecs() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns a factory for codecs using the JDK {@link Deflater} and
+     * {@link Inflater} with {@link Deflater#BEST_SPEED}.
+     * 
+     * @return codec factory
+     */
+    public static Func0<BlockCodec> deflate() {
+        return deflate(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Returns a factory for codecs using the JDK {@link Deflater} and
+     * {@link Inflater} with the given compression level.
+     * 
+     * @param level
+     *            compression level from 0 to 9
+     * @return codec factory
+     */
+    public static Func0<BlockCodec> deflate(final int level) {
+        return new Func0<BlockCodec>() {
+            @Override
+            public BlockCodec call() {
+                return new DeflateCodec(level);
+            }
+        };
+    }
+
+    private static final class DeflateCodec implements BlockCodec {
+
+        private final Deflater deflater;
+        private final Inflater inflater = new Inflater();
+
+        DeflateCodec(int level) {
+            this.deflater = new Deflater(level);
+        }
+
+        @Override
+        public int maxCompressedLength(int length) {
+            // zlib compressBound
+            return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+        }
+
+        @Override
+        public int compress(byte[] input, int length, byte[] output) throws IOException {
+            deflater.reset();
+            deflater.setInput(input, 0, length);
+            deflater.finish();
+            int n = 0;
+            while (!deflater.finished()) {
+                if (n == output.length) {
+                    throw new IOException("output buffer too small for compressed block");
+                }
+                n += deflater.deflate(output, n, output.length - n);
+            }
+            return n;
+        }
+
+        @Override
+        public void decompress(byte[] input, int length, byte[] output, int uncompressedLength)
+                throws IOException {
+            inflater.reset();
+            inflater.setInput(input, 0, length);
+            try {
+                int n = 0;
+                while (n < uncompressedLength) {
+                    int count = inflater.inflate(output, n, uncompressedLength - n);
+                    if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IOException("compressed block is truncated");
+                    }
+                    n += count;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+}
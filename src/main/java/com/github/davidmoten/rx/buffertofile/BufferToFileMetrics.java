@@ -0,0 +1,188 @@
+package com.github.davidmoten.rx.buffertofile;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.github.davidmoten.rx.internal.operators.BufferToFileCounters;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * <p>
+ * Depth, storage, throughput and lag of an {@code onBackpressureBufferToFile}
+ * operator. Create one instance per operator and set it with
+ * {@link Options.Builder#metrics(BufferToFileMetrics)} (if shared by several
+ * operators the figures are totals).
+ *
+ * <p>
+ * Read the figures with {@link #stats()}, poll them with
+ * {@link #stats(long, TimeUnit)} or expose them over JMX with
+ * {@link #registerMBean()}. Reading has no side effects so these can be used
+ * together. Rates are averaged over the last second or so.
+ */
+public final class BufferToFileMetrics implements BufferToFileMetricsMXBean {
+
+    private final String name;
+
+    // updated by the operator
+    final BufferToFileCounters counters = new BufferToFileCounters();
+
+    private BufferToFileMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Creates an instance. The name identifies the operator in JMX.
+     *
+     * @param name
+     *            operator name
+     * @return new metrics
+     */
+    public static BufferToFileMetrics create(String name) {
+        Preconditions.checkNotNull(name);
+        return new BufferToFileMetrics(name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the current figures.
+     *
+     * @return snapshot
+     */
+    public BufferToFileStats stats() {
+        long now = System.currentTimeMillis();
+        long r = counters.read();
+        long w = counters.written();
+        double[] rates = counters.rates(now, w, r);
+        return new BufferToFileStats(now, w, r, counters.bytesOnDisk(), counters.segments(),
+                counters.rollovers(), rates[0], rates[1], counters.oldestItemAgeMs(now, w, r));
+    }
+
+    /**
+     * Returns a stream of snapshots emitted every {@code period} on the
+     * computation scheduler.
+     *
+     * @param period
+     *            time between snapshots
+     * @param unit
+     *            unit of period
+     * @return snapshots
+     */
+    public Observable<BufferToFileStats> stats(long period, TimeUnit unit) {
+        return stats(period, unit, Schedulers.computation());
+    }
+
+    /**
+     * Returns a stream of snapshots emitted every {@code period} on the given
+     * scheduler.
+     *
+     * @param period
+     *            time between snapshots
+     * @param unit
+     *            unit of period
+     * @param scheduler
+     *            scheduler to emit on
+     * @return snapshots
+     */
+    public Observable<BufferToFileStats> stats(long period, TimeUnit unit, Scheduler scheduler) {
+        return Observable.interval(period, unit, scheduler)
+                .map(new Func1<Long, BufferToFileStats>() {
+                    @Override
+                    public BufferToFileStats call(Long n) {
+                        return stats();
+                    }
+                });
+    }
+
+    /**
+     * Registers this instance with the platform MBean server under the name
+     * {@code com.github.davidmoten.rx.buffertofile:type=BufferToFile,name=<name>}.
+     *
+     * @return subscription that unregisters the MBean when unsubscribed
+     */
+    public Subscription registerMBean() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = new ObjectName(
+                    "com.github.davidmoten.rx.buffertofile:type=BufferToFile,name="
+                            + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+            return Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    try {
+                        server.unregisterMBean(objectName);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long getItemsQueued() {
+        return stats().itemsQueued();
+    }
+
+    @Override
+    public long getItemsWritten() {
+        return counters.written();
+    }
+
+    @Override
+    public long getItemsRead() {
+        return counters.read();
+    }
+
+    @Override
+    public long getBytesOnDisk() {
+        return counters.bytesOnDisk();
+    }
+
+    @Override
+    public long getSegments() {
+        return counters.segments();
+    }
+
+    @Override
+    public long getRollovers() {
+        return counters.rollovers();
+    }
+
+    @Override
+    public double getWriteRatePerSecond() {
+        return stats().writeRatePerSecond();
+    }
+
+    @Override
+    public double getReadRatePerSecond() {
+        return stats().readRatePerSecond();
+    }
+
+    @Override
+    public long getOldestItemAgeMs() {
+        return stats().oldestItemAgeMs();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferToFileMetrics [name=" + name + ", " + stats() + "]";
+    }
+
+}
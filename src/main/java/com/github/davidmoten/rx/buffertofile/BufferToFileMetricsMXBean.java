@@ -0,0 +1,27 @@
+package com.github.davidmoten.rx.buffertofile;
+
+/**
+ * JMX view of {@link BufferToFileMetrics} (see
+ * {@link BufferToFileMetrics#registerMBean()}).
+ */
+public interface BufferToFileMetricsMXBean {
+
+    long getItemsQueued();
+
+    long getItemsWritten();
+
+    long getItemsRead();
+
+    long getBytesOnDisk();
+
+    long getSegments();
+
+    long getRollovers();
+
+    double getWriteRatePerSecond();
+
+    double getReadRatePerSecond();
+
+    long getOldestItemAgeMs();
+
+}
@@ -0,0 +1,99 @@
+package com.github.davidmoten.rx.buffertofile;
+
+/**
+ * Snapshot of the {@link BufferToFileMetrics} of an
+ * {@code onBackpressureBufferToFile} operator.
+ */
+public final class BufferToFileStats {
+
+    private final long time;
+    private final long itemsWritten;
+    private final long itemsRead;
+    private final long bytesOnDisk;
+    private final long segments;
+    private final long rollovers;
+    private final double writeRatePerSecond;
+    private final double readRatePerSecond;
+    private final long oldestItemAgeMs;
+
+    BufferToFileStats(long time, long itemsWritten, long itemsRead, long bytesOnDisk,
+            long segments, long rollovers, double writeRatePerSecond, double readRatePerSecond,
+            long oldestItemAgeMs) {
+        this.time = time;
+        this.itemsWritten = itemsWritten;
+        this.itemsRead = itemsRead;
+        this.bytesOnDisk = bytesOnDisk;
+        this.segments = segments;
+        this.rollovers = rollovers;
+        this.writeRatePerSecond = writeRatePerSecond;
+        this.readRatePerSecond = readRatePerSecond;
+        this.oldestItemAgeMs = oldestItemAgeMs;
+    }
+
+    /**
+     * Returns the time the snapshot was taken in epoch milliseconds.
+     * 
+     * @return snapshot time
+     */
+    public long time() {
+        return time;
+    }
+
+    /**
+     * Returns the number of items written to the queue and not yet read.
+     * 
+     * @return queue depth
+     */
+    public long itemsQueued() {
+        // an item can be read before the writer has counted it
+        return Math.max(0, itemsWritten - itemsRead);
+    }
+
+    public long itemsWritten() {
+        return itemsWritten;
+    }
+
+    public long itemsRead() {
+        return itemsRead;
+    }
+
+    public long bytesOnDisk() {
+        return bytesOnDisk;
+    }
+
+    public long segments() {
+        return segments;
+    }
+
+    public long rollovers() {
+        return rollovers;
+    }
+
+    public double writeRatePerSecond() {
+        return writeRatePerSecond;
+    }
+
+    public double readRatePerSecond() {
+        return readRatePerSecond;
+    }
+
+    /**
+     * Returns how long the oldest unread item has been in the queue (accurate
+     * to about 100ms) or 0 if the queue is empty.
+     * 
+     * @return age of the oldest item in milliseconds
+     */
+    public long oldestItemAgeMs() {
+        return oldestItemAgeMs;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferToFileStats [time=" + time + ", itemsQueued=" + itemsQueued()
+                + ", itemsWritten=" + itemsWritten + ", itemsRead=" + itemsRead + ", bytesOnDisk="
+                + bytesOnDisk + ", segments=" + segments + ", rollovers=" + rollovers
+                + ", writeRatePerSecond=" + writeRatePerSecond + ", readRatePerSecond="
+                + readRatePerSecond + ", oldestItemAgeMs=" + oldestItemAgeMs + "]";
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.github.davidmoten.rx.buffertofile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Serializes objects directly to and from a {@link ByteBuffer}. When the
+ * {@link DataSerializer} given to {@code onBackpressureBufferToFile} also
+ * implements this interface the memory-mapped queue engines write items
+ * straight into the mapped segment and read them from it without intermediate
+ * copies.
+ * 
+ * <p>
+ * Use {@link DataSerializers#from(ByteBufferSerializer)} to create a
+ * {@link DataSerializer} from an implementation of this interface.
+ *
+ * @param <T>
+ *            type being serialized
+ */
+public interface ByteBufferSerializer<T> {
+
+    /**
+     * Writes {@code t} to the buffer starting at its position and advances the
+     * position past the written bytes. Implementations should use the relative
+     * (position advancing) put methods so that a
+     * {@link java.nio.BufferOverflowException} is thrown when the remaining
+     * space is insufficient. The caller discards anything written in that
+     * case.
+     * 
+     * @param buffer
+     *            buffer to write to
+     * @param t
+     *            object to serialize
+     */
+    void serialize(ByteBuffer buffer, T t);
+
+    /**
+     * Reads an object written by {@link #serialize(ByteBuffer, Object)}
+     * starting at the position of the buffer and advances the position past
+     * the bytes read.
+     * 
+     * @param buffer
+     *            buffer to read from
+     * @return deserialized object
+     */
+    T deserialize(ByteBuffer buffer);
+
+}
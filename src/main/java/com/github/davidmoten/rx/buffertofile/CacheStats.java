@@ -0,0 +1,47 @@
+package com.github.davidmoten.rx.buffertofile;
+
+import com.github.davidmoten.rx.internal.operators.CacheCounters;
+
+/**
+ * Counts of reads served from the object cache (see
+ * {@link Options.Builder#cacheType(CacheType)}) of the file based queues
+ * created with an {@link Options} instance.
+ */
+public final class CacheStats {
+
+    // updated by the queues
+    final CacheCounters counters = new CacheCounters();
+
+    CacheStats() {
+    }
+
+    public long hits() {
+        return counters.hits();
+    }
+
+    public long misses() {
+        return counters.misses();
+    }
+
+    /**
+     * Returns hits divided by the total number of reads or 0 if nothing has
+     * been read.
+     *
+     * @return hit rate
+     */
+    public double hitRate() {
+        long h = counters.hits();
+        long total = h + counters.misses();
+        if (total == 0) {
+            return 0;
+        } else {
+            return (double) h / total;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats [hits=" + hits() + ", misses=" + misses() + "]";
+    }
+
+}
@@ -1,5 +1,38 @@
 package com.github.davidmoten.rx.buffertofile;
 
+/**
+ * How the file based queue keeps recently written items as objects so that a
+ * reader that is only slightly behind the writer does not need to deserialize
+ * them. The cache is bounded by {@code cacheSizeItems} and
+ * {@code cacheSizeBytes}.
+ */
 public enum CacheType {
-    HARD_REF, SOFT_REF, WEAK_REF, LEAST_RECENTLY_USED, NO_CACHE;
-}
\ No newline at end of file
+
+    /**
+     * Keeps strong references. When the cache is full newly written items are
+     * not cached so the cached items are those the reader needs next.
+     */
+    HARD_REF,
+
+    /**
+     * As {@link #HARD_REF} but with soft references so the garbage collector
+     * can clear items under memory pressure.
+     */
+    SOFT_REF,
+
+    /**
+     * As {@link #HARD_REF} but with weak references.
+     */
+    WEAK_REF,
+
+    /**
+     * Keeps strong references. When the cache is full the least recently
+     * written item is evicted to make room for the newest.
+     */
+    LEAST_RECENTLY_USED,
+
+    /**
+     * Every item is deserialized from file when read.
+     */
+    NO_CACHE;
+}
@@ -0,0 +1,50 @@
+package com.github.davidmoten.rx.buffertofile;
+
+import com.github.davidmoten.rx.internal.operators.CompressionCounters;
+
+/**
+ * Totals of bytes compressed by the file based queues created with an
+ * {@link Options} instance that has compression enabled.
+ */
+public final class CompressionStats {
+
+    // updated by the queues
+    final CompressionCounters counters = new CompressionCounters();
+
+    CompressionStats() {
+    }
+
+    public long uncompressedBytes() {
+        return counters.uncompressedBytes();
+    }
+
+    public long compressedBytes() {
+        return counters.compressedBytes();
+    }
+
+    public long blocks() {
+        return counters.blocks();
+    }
+
+    /**
+     * Returns compressed bytes divided by uncompressed bytes or 1 if nothing
+     * has been compressed.
+     * 
+     * @return compression ratio
+     */
+    public double ratio() {
+        long u = counters.uncompressedBytes();
+        if (u == 0) {
+            return 1;
+        } else {
+            return (double) counters.compressedBytes() / u;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats [uncompressedBytes=" + uncompressedBytes() + ", compressedBytes="
+                + compressedBytes() + ", blocks=" + blocks() + "]";
+    }
+
+}
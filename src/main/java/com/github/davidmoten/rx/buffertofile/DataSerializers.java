@@ -7,6 +7,9 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 public final class DataSerializers {
 
@@ -38,56 +41,289 @@ public final class DataSerializers {
         };
     }
 
+    /**
+     * Returns a serializer of {@code Integer} as 4 big-endian bytes that also
+     * implements {@link ByteBufferSerializer}.
+     * 
+     * @return serializer
+     */
     public static DataSerializer<Integer> integer() {
-        return IntegerHolder.INSTANCE;
+        return IntegerSerializer.INSTANCE;
     }
 
-    private static final class IntegerHolder {
-        final static DataSerializer<Integer> INSTANCE = new DataSerializer<Integer>() {
+    private static final class IntegerSerializer
+            implements DataSerializer<Integer>, ByteBufferSerializer<Integer> {
 
-            @Override
-            public void serialize(DataOutput output, Integer t) throws IOException {
-                output.writeInt(t);
-            }
+        static final IntegerSerializer INSTANCE = new IntegerSerializer();
 
-            @Override
-            public Integer deserialize(DataInput input) throws IOException {
-                return input.readInt();
-            }
+        @Override
+        public void serialize(DataOutput output, Integer t) throws IOException {
+            output.writeInt(t);
+        }
 
-            @Override
-            public int size() {
-                return 4;
-            }
-        };
+        @Override
+        public Integer deserialize(DataInput input) throws IOException {
+            return input.readInt();
+        }
+
+        @Override
+        public void serialize(ByteBuffer buffer, Integer t) {
+            buffer.putInt(t);
+        }
+
+        @Override
+        public Integer deserialize(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+
+        @Override
+        public int size() {
+            return 4;
+        }
     }
 
+    /**
+     * Returns a serializer of {@code Long} as 8 big-endian bytes that also
+     * implements {@link ByteBufferSerializer}.
+     * 
+     * @return serializer
+     */
+    public static DataSerializer<Long> longs() {
+        return LongSerializer.INSTANCE;
+    }
+
+    private static final class LongSerializer
+            implements DataSerializer<Long>, ByteBufferSerializer<Long> {
+
+        static final LongSerializer INSTANCE = new LongSerializer();
+
+        @Override
+        public void serialize(DataOutput output, Long t) throws IOException {
+            output.writeLong(t);
+        }
+
+        @Override
+        public Long deserialize(DataInput input) throws IOException {
+            return input.readLong();
+        }
+
+        @Override
+        public void serialize(ByteBuffer buffer, Long t) {
+            buffer.putLong(t);
+        }
+
+        @Override
+        public Long deserialize(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+
+        @Override
+        public int size() {
+            return 8;
+        }
+    }
+
+    /**
+     * Returns a serializer of {@code byte[]} as a 4 byte length followed by the
+     * bytes that also implements {@link ByteBufferSerializer}.
+     * 
+     * @return serializer
+     */
     public static DataSerializer<byte[]> byteArray() {
-        return ByteArrayHolder.INSTANCE;
+        return ByteArraySerializer.INSTANCE;
     }
 
-    private static final class ByteArrayHolder {
-        final static DataSerializer<byte[]> INSTANCE = new DataSerializer<byte[]>() {
+    private static final class ByteArraySerializer
+            implements DataSerializer<byte[]>, ByteBufferSerializer<byte[]> {
 
-            @Override
-            public void serialize(DataOutput output, byte[] bytes) throws IOException {
-                output.writeInt(bytes.length);
-                output.write(bytes);
+        static final ByteArraySerializer INSTANCE = new ByteArraySerializer();
+
+        @Override
+        public void serialize(DataOutput output, byte[] bytes) throws IOException {
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        @Override
+        public byte[] deserialize(DataInput input) throws IOException {
+            int length = input.readInt();
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            return bytes;
+        }
+
+        @Override
+        public void serialize(ByteBuffer buffer, byte[] bytes) {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+
+        @Override
+        public byte[] deserialize(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a serializer of {@code String} as a 4 byte length followed by the
+     * UTF-8 encoded bytes that also implements {@link ByteBufferSerializer}.
+     * Unlike {@link #string()} the encoded length is not limited to 65535
+     * bytes.
+     * 
+     * @return serializer
+     */
+    public static DataSerializer<String> utf8() {
+        return Utf8Serializer.INSTANCE;
+    }
+
+    private static final class Utf8Serializer
+            implements DataSerializer<String>, ByteBufferSerializer<String> {
+
+        static final Utf8Serializer INSTANCE = new Utf8Serializer();
+
+        private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+        @Override
+        public void serialize(DataOutput output, String t) throws IOException {
+            byte[] bytes = t.getBytes(UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        @Override
+        public String deserialize(DataInput input) throws IOException {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            return new String(bytes, UTF_8);
+        }
+
+        @Override
+        public void serialize(ByteBuffer buffer, String t) {
+            int start = buffer.position();
+            // placeholder for the length
+            buffer.putInt(0);
+            // encode directly into the buffer to avoid allocating a byte array
+            int n = t.length();
+            for (int i = 0; i < n; i++) {
+                char c = t.charAt(i);
+                if (c < 0x80) {
+                    buffer.put((byte) c);
+                } else if (c < 0x800) {
+                    buffer.put((byte) (0xC0 | (c >> 6)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n
+                        && Character.isLowSurrogate(t.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, t.charAt(i + 1));
+                    i++;
+                    buffer.put((byte) (0xF0 | (cp >> 18)));
+                    buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (cp & 0x3F)));
+                } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    // unpaired surrogate is replaced as String.getBytes does
+                    buffer.put((byte) '?');
+                } else {
+                    buffer.put((byte) (0xE0 | (c >> 12)));
+                    buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
             }
+            buffer.putInt(start, buffer.position() - start - 4);
+        }
 
-            @Override
-            public byte[] deserialize(DataInput input) throws IOException {
-                int length = input.readInt();
+        @Override
+        public String deserialize(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            if (buffer.hasArray()) {
+                int offset = buffer.arrayOffset() + buffer.position();
+                buffer.position(buffer.position() + length);
+                return new String(buffer.array(), offset, length, UTF_8);
+            } else {
                 byte[] bytes = new byte[length];
-                input.readFully(bytes);
-                return bytes;
+                buffer.get(bytes);
+                return new String(bytes, UTF_8);
             }
+        }
 
-            @Override
-            public int size() {
-                return 0;
+        @Override
+        public int size() {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a {@link DataSerializer} that also implements
+     * {@link ByteBufferSerializer} by delegating to {@code serializer}. The
+     * memory-mapped queue engines call {@code serializer} directly. Other
+     * engines serialize to a heap buffer and write it with a 4 byte length
+     * prefix.
+     * 
+     * @param serializer
+     *            byte buffer serializer
+     * @param <T>
+     *            type being serialized
+     * @return serializer
+     */
+    public static <T> DataSerializer<T> from(ByteBufferSerializer<T> serializer) {
+        return new ByteBufferSerializerAdapter<T>(serializer);
+    }
+
+    private static final class ByteBufferSerializerAdapter<T>
+            implements DataSerializer<T>, ByteBufferSerializer<T> {
+
+        private final ByteBufferSerializer<T> serializer;
+
+        // only used by the single writing thread of a queue so not shared
+        // between threads in practice but guarded anyway
+        private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        ByteBufferSerializerAdapter(ByteBufferSerializer<T> serializer) {
+            this.serializer = serializer;
+        }
+
+        @Override
+        public synchronized void serialize(DataOutput output, T t) throws IOException {
+            while (true) {
+                buffer.clear();
+                try {
+                    serializer.serialize(buffer, t);
+                    break;
+                } catch (BufferOverflowException e) {
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                }
             }
-        };
+            output.writeInt(buffer.position());
+            output.write(buffer.array(), 0, buffer.position());
+        }
+
+        @Override
+        public T deserialize(DataInput input) throws IOException {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            return serializer.deserialize(ByteBuffer.wrap(bytes));
+        }
+
+        @Override
+        public void serialize(ByteBuffer buffer, T t) {
+            serializer.serialize(buffer, t);
+        }
+
+        @Override
+        public T deserialize(ByteBuffer buffer) {
+            return serializer.deserialize(buffer);
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
     }
 
     @SuppressWarnings("unchecked")
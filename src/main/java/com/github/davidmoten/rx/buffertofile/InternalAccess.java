@@ -0,0 +1,54 @@
+package com.github.davidmoten.rx.buffertofile;
+
+import com.github.davidmoten.rx.internal.operators.BufferToFileAccess;
+import com.github.davidmoten.rx.internal.operators.BufferToFileCounters;
+import com.github.davidmoten.rx.internal.operators.CacheCounters;
+import com.github.davidmoten.rx.internal.operators.CompressionCounters;
+import com.github.davidmoten.rx.internal.operators.SegmentPoolCounters;
+import com.github.davidmoten.rx.internal.operators.SpillPoolFile;
+
+/**
+ * Hands the counters and spill pool file held by the classes of this package
+ * to the operator.
+ */
+final class InternalAccess extends BufferToFileAccess {
+
+    private static final InternalAccess INSTANCE = new InternalAccess();
+
+    static {
+        BufferToFileAccess.set(INSTANCE);
+    }
+
+    private InternalAccess() {
+    }
+
+    static void init() {
+        // the static initializer does the work
+    }
+
+    @Override
+    protected SegmentPoolCounters counters(SegmentPoolStats stats) {
+        return stats.counters;
+    }
+
+    @Override
+    protected CompressionCounters counters(CompressionStats stats) {
+        return stats.counters;
+    }
+
+    @Override
+    protected CacheCounters counters(CacheStats stats) {
+        return stats.counters;
+    }
+
+    @Override
+    protected BufferToFileCounters counters(BufferToFileMetrics metrics) {
+        return metrics.counters;
+    }
+
+    @Override
+    protected SpillPoolFile file(SpillPool pool) {
+        return pool.pool;
+    }
+
+}
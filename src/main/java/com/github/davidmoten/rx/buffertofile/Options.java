@@ -12,23 +12,108 @@ public final class Options {
 
 	public static final String DEFAULT_FILE_PREFIX = "bufferToFileDb";
 
+	static {
+		// lets the operator reach the counters held by this package
+		InternalAccess.init();
+	}
+
 	private final Func0<File> fileFactory;
 	private final boolean delayError;
 	private final long rolloverEvery;
 	private final long rolloverSizeBytes;
 	private final int bufferSizeBytes;
+	private final boolean durable;
+	private final int checkpointEvery;
+	private final SyncPolicy syncPolicy;
+	private final QueueEngine queueEngine;
+	private final int mappedSegmentSizeBytes;
+	private final long mappedBytesLimit;
+	private final Func0<BlockCodec> compression;
+	private final int compressionBlockSizeBytes;
+	private final CompressionStats compressionStats;
+	private final long maxTotalBytes;
+	private final long maxTotalItems;
+	private final OverflowStrategy overflowStrategy;
+	private final SpillPool spillPool;
+	private final int segmentPoolSize;
+	private final SegmentPoolStats segmentPoolStats;
+	private final int memoryBufferSize;
+	private final CacheType cacheType;
+	private final int cacheSizeItems;
+	private final long cacheSizeBytes;
+	private final CacheStats cacheStats;
+	private final BufferToFileMetrics metrics;
 
 	private Options(Func0<File> filefactory, boolean delayError, long rolloverEvery, int bufferSizeBytes,
-			long rolloverSizeBytes) {
+			long rolloverSizeBytes, boolean durable, int checkpointEvery,
+			SyncPolicy syncPolicy, QueueEngine queueEngine, int mappedSegmentSizeBytes,
+			long mappedBytesLimit, Func0<BlockCodec> compression, int compressionBlockSizeBytes,
+			long maxTotalBytes, long maxTotalItems, OverflowStrategy overflowStrategy, SpillPool spillPool,
+			int segmentPoolSize, int memoryBufferSize, CacheType cacheType, int cacheSizeItems,
+			long cacheSizeBytes, BufferToFileMetrics metrics) {
 		Preconditions.checkNotNull(filefactory);
 		Preconditions.checkArgument(rolloverSizeBytes > 0, "rolloverSizeBytes must be greater than zero");
 		Preconditions.checkArgument(rolloverEvery > 1, "rolloverEvery must be greater than one");
 		Preconditions.checkArgument(bufferSizeBytes > 0, "bufferSizeBytes must be greater than 0");
+		Preconditions.checkArgument(checkpointEvery > 0, "checkpointEvery must be greater than 0");
+		Preconditions.checkNotNull(syncPolicy);
+		Preconditions.checkArgument(durable || syncPolicy.isNever(),
+				"syncPolicy only applies when durable is true");
+		Preconditions.checkNotNull(queueEngine);
+		Preconditions.checkArgument(!durable || queueEngine == QueueEngine.STREAM,
+				"durable is only supported by QueueEngine.STREAM");
+		Preconditions.checkArgument(mappedSegmentSizeBytes > 0, "mappedSegmentSizeBytes must be greater than 0");
+		Preconditions.checkArgument(mappedBytesLimit > 0, "mappedBytesLimit must be greater than 0");
+		Preconditions.checkArgument(compression == null || !durable && queueEngine == QueueEngine.STREAM,
+				"compression is only supported by QueueEngine.STREAM when durable is false");
+		Preconditions.checkArgument(compressionBlockSizeBytes > 0, "compressionBlockSizeBytes must be greater than 0");
+		Preconditions.checkArgument(maxTotalBytes > 0, "maxTotalBytes must be greater than 0");
+		Preconditions.checkArgument(maxTotalItems > 0, "maxTotalItems must be greater than 0");
+		Preconditions.checkNotNull(overflowStrategy);
+		Preconditions.checkArgument(
+				maxTotalBytes == Long.MAX_VALUE && maxTotalItems == Long.MAX_VALUE
+						|| !durable && queueEngine == QueueEngine.STREAM,
+				"maxTotalBytes and maxTotalItems are only supported by QueueEngine.STREAM when durable is false");
+		Preconditions.checkArgument(spillPool == null || !durable && queueEngine == QueueEngine.STREAM
+				&& compression == null && maxTotalBytes == Long.MAX_VALUE && maxTotalItems == Long.MAX_VALUE,
+				"spillPool cannot be combined with durable, compression, maxTotalBytes, maxTotalItems or a queueEngine other than STREAM");
+		Preconditions.checkArgument(segmentPoolSize >= 0, "segmentPoolSize cannot be negative");
+		Preconditions.checkArgument(memoryBufferSize >= 0, "memoryBufferSize cannot be negative");
+		Preconditions.checkArgument(memoryBufferSize == 0 || !durable
+				&& queueEngine != QueueEngine.MEMORY_MAPPED_MULTI_PRODUCER,
+				"memoryBufferSize cannot be combined with durable or QueueEngine.MEMORY_MAPPED_MULTI_PRODUCER");
+		Preconditions.checkNotNull(cacheType);
+		Preconditions.checkArgument(cacheSizeItems > 0, "cacheSizeItems must be greater than 0");
+		Preconditions.checkArgument(cacheSizeBytes > 0, "cacheSizeBytes must be greater than 0");
+		Preconditions.checkArgument(cacheType == CacheType.NO_CACHE || !durable && queueEngine == QueueEngine.STREAM
+				&& compression == null && spillPool == null,
+				"cacheType cannot be combined with durable, compression, spillPool or a queueEngine other than STREAM");
 		this.fileFactory = filefactory;
 		this.delayError = delayError;
 		this.rolloverEvery = rolloverEvery;
 		this.rolloverSizeBytes = rolloverSizeBytes;
 		this.bufferSizeBytes = bufferSizeBytes;
+		this.durable = durable;
+		this.checkpointEvery = checkpointEvery;
+		this.syncPolicy = syncPolicy;
+		this.queueEngine = queueEngine;
+		this.mappedSegmentSizeBytes = mappedSegmentSizeBytes;
+		this.mappedBytesLimit = mappedBytesLimit;
+		this.compression = compression;
+		this.compressionBlockSizeBytes = compressionBlockSizeBytes;
+		this.compressionStats = new CompressionStats();
+		this.maxTotalBytes = maxTotalBytes;
+		this.maxTotalItems = maxTotalItems;
+		this.overflowStrategy = overflowStrategy;
+		this.spillPool = spillPool;
+		this.segmentPoolSize = segmentPoolSize;
+		this.segmentPoolStats = new SegmentPoolStats();
+		this.memoryBufferSize = memoryBufferSize;
+		this.cacheType = cacheType;
+		this.cacheSizeItems = cacheSizeItems;
+		this.cacheSizeBytes = cacheSizeBytes;
+		this.cacheStats = new CacheStats();
+		this.metrics = metrics;
 	}
 
 	public Func0<File> fileFactory() {
@@ -51,14 +136,142 @@ public final class Options {
 		return bufferSizeBytes;
 	}
 
+	public boolean durable() {
+		return durable;
+	}
+
+	public int checkpointEvery() {
+		return checkpointEvery;
+	}
+
+	public SyncPolicy syncPolicy() {
+		return syncPolicy;
+	}
+
+	public QueueEngine queueEngine() {
+		return queueEngine;
+	}
+
+	public int mappedSegmentSizeBytes() {
+		return mappedSegmentSizeBytes;
+	}
+
+	public long mappedBytesLimit() {
+		return mappedBytesLimit;
+	}
+
+	/**
+	 * Returns the factory for the codecs used to compress blocks written to
+	 * file or null if compression is disabled.
+	 * 
+	 * @return codec factory or null
+	 */
+	public Func0<BlockCodec> compression() {
+		return compression;
+	}
+
+	public int compressionBlockSizeBytes() {
+		return compressionBlockSizeBytes;
+	}
+
+	/**
+	 * Returns the bytes compressed so far by all queues created with this
+	 * {@code Options} instance.
+	 * 
+	 * @return compression counters
+	 */
+	public CompressionStats compressionStats() {
+		return compressionStats;
+	}
+
+	public long maxTotalBytes() {
+		return maxTotalBytes;
+	}
+
+	public long maxTotalItems() {
+		return maxTotalItems;
+	}
+
+	public OverflowStrategy overflowStrategy() {
+		return overflowStrategy;
+	}
+
+	/**
+	 * Returns the shared pool that queues spill into or null if each queue
+	 * uses its own files.
+	 * 
+	 * @return spill pool or null
+	 */
+	public SpillPool spillPool() {
+		return spillPool;
+	}
+
+	public int segmentPoolSize() {
+		return segmentPoolSize;
+	}
+
+	/**
+	 * Returns the segment counts of the recycling pools of all queues created
+	 * with this {@code Options} instance.
+	 * 
+	 * @return segment pool counters
+	 */
+	public SegmentPoolStats segmentPoolStats() {
+		return segmentPoolStats;
+	}
+
+	/**
+	 * Returns the number of items held in memory before spilling to file or
+	 * {@code 0} if every item is written to file.
+	 * 
+	 * @return in-memory buffer size in items
+	 */
+	public int memoryBufferSize() {
+		return memoryBufferSize;
+	}
+
+	public CacheType cacheType() {
+		return cacheType;
+	}
+
+	public int cacheSizeItems() {
+		return cacheSizeItems;
+	}
+
+	public long cacheSizeBytes() {
+		return cacheSizeBytes;
+	}
+
+	/**
+	 * Returns the cache hits and misses of all queues created with this
+	 * {@code Options} instance.
+	 * 
+	 * @return cache counters
+	 */
+	public CacheStats cacheStats() {
+		return cacheStats;
+	}
+
+	/**
+	 * Returns the metrics updated by the operator or null if none were set.
+	 * 
+	 * @return metrics or null
+	 */
+	public BufferToFileMetrics metrics() {
+		return metrics;
+	}
+
+	public boolean hasTotalLimit() {
+		return maxTotalBytes != Long.MAX_VALUE || maxTotalItems != Long.MAX_VALUE;
+	}
+
 	public boolean rolloverEnabled() {
 		return rolloverSizeBytes != Long.MAX_VALUE || rolloverEvery != Long.MAX_VALUE;
 	}
 
 	/**
-	 * Defaults are {@code cacheType=CacheType.SOFT_REF},
-	 * {@code cacheSizeItems=absent (UNLIMITED)},
-	 * {@code storageSizeLimitBytes=absent (UNLIMITED)}.
+	 * Defaults are {@code cacheType=CacheType.NO_CACHE},
+	 * {@code cacheSizeItems=1000}, {@code cacheSizeBytes=UNLIMITED}.
 	 * 
 	 * @return a builder object for Options
 	 */
@@ -94,6 +307,50 @@ public final class Options {
 		return builder().bufferSizeBytes(bufferSizeBytes);
 	}
 
+	public static Builder durable(boolean durable) {
+		return builder().durable(durable);
+	}
+
+	public static Builder syncPolicy(SyncPolicy syncPolicy) {
+		return builder().syncPolicy(syncPolicy);
+	}
+
+	public static Builder queueEngine(QueueEngine queueEngine) {
+		return builder().queueEngine(queueEngine);
+	}
+
+	public static Builder compression(Func0<BlockCodec> compression) {
+		return builder().compression(compression);
+	}
+
+	public static Builder maxTotalBytes(long maxTotalBytes) {
+		return builder().maxTotalBytes(maxTotalBytes);
+	}
+
+	public static Builder maxTotalItems(long maxTotalItems) {
+		return builder().maxTotalItems(maxTotalItems);
+	}
+
+	public static Builder segmentPoolSize(int segmentPoolSize) {
+		return builder().segmentPoolSize(segmentPoolSize);
+	}
+
+	public static Builder spillPool(SpillPool spillPool) {
+		return builder().spillPool(spillPool);
+	}
+
+	public static Builder memoryBufferSize(int memoryBufferSize) {
+		return builder().memoryBufferSize(memoryBufferSize);
+	}
+
+	public static Builder cacheType(CacheType cacheType) {
+		return builder().cacheType(cacheType);
+	}
+
+	public static Builder metrics(BufferToFileMetrics metrics) {
+		return builder().metrics(metrics);
+	}
+
 	public static Options defaultInstance() {
 		return builder().build();
 	}
@@ -105,6 +362,24 @@ public final class Options {
 		private long rolloverSizeBytes = Long.MAX_VALUE;
 		private long rolloverEvery = 1000000;
 		private int bufferSizeBytes = 1024;
+		private boolean durable = false;
+		private int checkpointEvery = 1000;
+		private SyncPolicy syncPolicy = SyncPolicy.never();
+		private QueueEngine queueEngine = QueueEngine.STREAM;
+		private int mappedSegmentSizeBytes = 20 * 1024 * 1024;
+		private long mappedBytesLimit = 1024L * 1024 * 1024;
+		private Func0<BlockCodec> compression = null;
+		private int compressionBlockSizeBytes = 64 * 1024;
+		private long maxTotalBytes = Long.MAX_VALUE;
+		private long maxTotalItems = Long.MAX_VALUE;
+		private OverflowStrategy overflowStrategy = OverflowStrategy.ERROR;
+		private SpillPool spillPool = null;
+		private int segmentPoolSize = 0;
+		private int memoryBufferSize = 0;
+		private CacheType cacheType = CacheType.NO_CACHE;
+		private int cacheSizeItems = 1000;
+		private long cacheSizeBytes = Long.MAX_VALUE;
+		private BufferToFileMetrics metrics = null;
 
 		private Builder() {
 		}
@@ -133,6 +408,320 @@ public final class Options {
 			return this;
 		}
 
+		/**
+		 * <p>
+		 * Sets if the file based queue survives a restart of the JVM. Each
+		 * record is written with its length and a CRC32 checksum and the read
+		 * position is checkpointed. The file returned by the
+		 * {@code fileFactory} is used for the checkpoint and segment files are
+		 * created alongside it with names {@code <file>.<n>}.
+		 * 
+		 * <p>
+		 * If the file factory returns the same file as a previous (crashed or
+		 * unsubscribed before completion) subscription then the unread items
+		 * from that subscription are emitted first. Items emitted after the
+		 * last checkpoint may be emitted again (at-least-once). Files are only
+		 * deleted once all items have been emitted. Defaults to {@code false}
+		 * if this method not called.
+		 * 
+		 * @param durable
+		 *            if true the queue can be resumed after a restart
+		 * @return the current builder
+		 */
+		public Builder durable(boolean durable) {
+			this.durable = durable;
+			return this;
+		}
+
+		/**
+		 * Sets the number of items emitted between checkpoints of the read
+		 * position when {@code durable} is true. Defaults to {@code 1000} if
+		 * this method not called.
+		 * 
+		 * @param checkpointEvery
+		 *            number of items emitted between checkpoints
+		 * @return the current builder
+		 */
+		public Builder checkpointEvery(int checkpointEvery) {
+			this.checkpointEvery = checkpointEvery;
+			return this;
+		}
+
+		/**
+		 * Sets when written records are forced to disk when {@code durable}
+		 * is true. Syncs happen on a background thread and cover all records
+		 * written since the previous sync (group commit). Defaults to
+		 * {@link SyncPolicy#never()} if this method not called.
+		 * 
+		 * @param syncPolicy
+		 *            the sync policy
+		 * @return the current builder
+		 */
+		public Builder syncPolicy(SyncPolicy syncPolicy) {
+			this.syncPolicy = syncPolicy;
+			return this;
+		}
+
+		/**
+		 * Sets the storage mechanism of the file based queue. Defaults to
+		 * {@link QueueEngine#STREAM} if this method not called.
+		 * 
+		 * @param queueEngine
+		 *            the queue engine
+		 * @return the current builder
+		 */
+		public Builder queueEngine(QueueEngine queueEngine) {
+			this.queueEngine = queueEngine;
+			return this;
+		}
+
+		/**
+		 * Sets the size of each memory-mapped segment file for
+		 * {@link QueueEngine#MEMORY_MAPPED} and {@link QueueEngine#ADAPTIVE}.
+		 * A serialized item must fit in one segment. The {@code STREAM}
+		 * engine segments are sized by {@code rolloverSizeBytes} and
+		 * {@code rolloverEvery} instead. Defaults to 20MB if this method not
+		 * called.
+		 * 
+		 * @param mappedSegmentSizeBytes
+		 *            size in bytes of each memory-mapped segment
+		 * @return the current builder
+		 */
+		public Builder mappedSegmentSizeBytes(int mappedSegmentSizeBytes) {
+			this.mappedSegmentSizeBytes = mappedSegmentSizeBytes;
+			return this;
+		}
+
+		/**
+		 * Sets the total bytes of memory-mapped segments across all queues in
+		 * the JVM above which {@link QueueEngine#ADAPTIVE} switches to the
+		 * {@code STREAM} engine for new writes. Defaults to 1GB if this method
+		 * not called.
+		 * 
+		 * @param mappedBytesLimit
+		 *            JVM-wide limit on mapped segment bytes
+		 * @return the current builder
+		 */
+		public Builder mappedBytesLimit(long mappedBytesLimit) {
+			this.mappedBytesLimit = mappedBytesLimit;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Sets the codec used to compress items spilled to file. Items are
+		 * serialized into blocks of {@code compressionBlockSizeBytes} and each
+		 * full block is compressed and appended to the file. While the reader
+		 * keeps up items are read from the current block in memory without
+		 * being compressed. Use {@link BlockCodecs#deflate()} for the JDK
+		 * {@code Deflater} or supply a factory for another {@link BlockCodec}.
+		 * The factory is called twice for every queue file (one codec for the
+		 * writer and one for the reader).
+		 * 
+		 * <p>
+		 * Only supported by {@link QueueEngine#STREAM} when {@code durable} is
+		 * false. Defaults to no compression if this method not called.
+		 * 
+		 * @param compression
+		 *            factory for codecs, null to disable compression
+		 * @return the current builder
+		 */
+		public Builder compression(Func0<BlockCodec> compression) {
+			this.compression = compression;
+			return this;
+		}
+
+		/**
+		 * Sets the uncompressed size of the blocks that are compressed when
+		 * {@code compression} is set. Larger blocks usually compress better but
+		 * hold more items back in memory. Defaults to 64KB if this method not
+		 * called.
+		 * 
+		 * @param compressionBlockSizeBytes
+		 *            uncompressed block size in bytes
+		 * @return the current builder
+		 */
+		public Builder compressionBlockSizeBytes(int compressionBlockSizeBytes) {
+			this.compressionBlockSizeBytes = compressionBlockSizeBytes;
+			return this;
+		}
+
+		/**
+		 * Sets the limit on the total size of the files of all segments of the
+		 * queue. Space is reclaimed a segment at a time (once all of its items
+		 * have been read) so segments roll over at a quarter of this limit if
+		 * {@code rolloverSizeBytes} is not already smaller. The limit is
+		 * checked before each item is written so it may be exceeded by one
+		 * item. When reached the {@code overflowStrategy} applies. Defaults to
+		 * no limit if this method not called.
+		 * 
+		 * @param maxTotalBytes
+		 *            limit on total bytes of segment files
+		 * @return the current builder
+		 */
+		public Builder maxTotalBytes(long maxTotalBytes) {
+			this.maxTotalBytes = maxTotalBytes;
+			return this;
+		}
+
+		public Builder maxTotalMB(double maxTotalMB) {
+			return maxTotalBytes(Math.round(maxTotalMB * 1024 * 1024));
+		}
+
+		/**
+		 * Sets the limit on the number of unread items in the queue. When
+		 * reached the {@code overflowStrategy} applies. Defaults to no limit
+		 * if this method not called.
+		 * 
+		 * @param maxTotalItems
+		 *            limit on the number of unread items
+		 * @return the current builder
+		 */
+		public Builder maxTotalItems(long maxTotalItems) {
+			this.maxTotalItems = maxTotalItems;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of read segments of the {@code STREAM}
+		 * engine that are kept (with their files open and allocated) and
+		 * reused on rollover instead of deleting them and creating new files.
+		 * Pooled segments use disk space of up to {@code rolloverSizeBytes}
+		 * each (not counted by {@code maxTotalBytes}) until the stream
+		 * terminates. Defaults to {@code 0} (no recycling) if this method not
+		 * called.
+		 * 
+		 * @param segmentPoolSize
+		 *            maximum number of segments kept for reuse
+		 * @return the current builder
+		 */
+		public Builder segmentPoolSize(int segmentPoolSize) {
+			this.segmentPoolSize = segmentPoolSize;
+			return this;
+		}
+
+		/**
+		 * Sets the number of items kept as objects in an in-memory ring
+		 * (rounded up to a power of two) before any are serialized to file.
+		 * Once the ring is full arriving items are written to the file queue
+		 * until the consumer has read everything in it, so FIFO order holds
+		 * and nothing touches disk while the consumer keeps up. Items in the
+		 * ring are lost on a crash so cannot be combined with
+		 * {@code durable}. Defaults to {@code 0} (every item written to file)
+		 * if this method not called.
+		 * 
+		 * @param memoryBufferSize
+		 *            number of items held in memory before spilling
+		 * @return the current builder
+		 */
+		public Builder memoryBufferSize(int memoryBufferSize) {
+			this.memoryBufferSize = memoryBufferSize;
+			return this;
+		}
+
+		/**
+		 * Sets how recently written items are kept as objects so that a
+		 * consumer only slightly behind the producer reads them without
+		 * deserializing (see {@link CacheType}). Items are still written to
+		 * file. Only supported by the {@code STREAM} engine without
+		 * {@code durable}, {@code compression} or {@code spillPool}. Defaults
+		 * to {@link CacheType#NO_CACHE} if this method not called.
+		 * 
+		 * @param cacheType
+		 *            the cache type
+		 * @return the current builder
+		 */
+		public Builder cacheType(CacheType cacheType) {
+			this.cacheType = cacheType;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of items cached per file. Defaults to 1000
+		 * if this method not called.
+		 * 
+		 * @param cacheSizeItems
+		 *            maximum number of cached items
+		 * @return the current builder
+		 */
+		public Builder cacheSizeItems(int cacheSizeItems) {
+			this.cacheSizeItems = cacheSizeItems;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum total serialized size of the items cached per
+		 * file. Items that would exceed it are not cached. Defaults to
+		 * unlimited if this method not called.
+		 * 
+		 * @param cacheSizeBytes
+		 *            maximum serialized size of cached items in bytes
+		 * @return the current builder
+		 */
+		public Builder cacheSizeBytes(long cacheSizeBytes) {
+			this.cacheSizeBytes = cacheSizeBytes;
+			return this;
+		}
+
+		/**
+		 * Sets the metrics the operator reports queue depth, bytes on disk,
+		 * segments, rollovers, rates and the age of the oldest queued item
+		 * to. Counting adds an atomic increment per item written and read.
+		 * Defaults to no metrics if this method not called.
+		 * 
+		 * @param metrics
+		 *            the metrics or null
+		 * @return the current builder
+		 */
+		public Builder metrics(BufferToFileMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Sets a pool of segments shared with other operators to spill into
+		 * instead of creating files with the {@code fileFactory}. Items are
+		 * serialized into blocks of up to one segment in memory and a block is
+		 * written to the pool when the next item does not fit. While the
+		 * consumer keeps up nothing is written. Order is preserved per
+		 * operator.
+		 * 
+		 * <p>
+		 * When the pool has no free segments for a block the
+		 * {@code overflowStrategy} applies to the whole block:
+		 * {@code DROP_NEWEST} discards the block, {@code DROP_OLDEST_SEGMENT}
+		 * releases the oldest spilled blocks of this operator (or discards the
+		 * block if there are none), {@code ERROR} emits a
+		 * {@code BufferOverflowException} and {@code BLOCK} waits for segments
+		 * to be released by any operator. Cannot be combined with
+		 * {@code durable}, {@code compression} or the total limits. Defaults
+		 * to no pool if this method not called.
+		 * 
+		 * @param spillPool
+		 *            the shared pool or null
+		 * @return the current builder
+		 */
+		public Builder spillPool(SpillPool spillPool) {
+			this.spillPool = spillPool;
+			return this;
+		}
+
+		/**
+		 * Sets what happens when {@code maxTotalBytes} or
+		 * {@code maxTotalItems} is reached (or a {@code spillPool} is
+		 * exhausted). Defaults to
+		 * {@link OverflowStrategy#ERROR} if this method not called.
+		 * 
+		 * @param overflowStrategy
+		 *            the overflow strategy
+		 * @return the current builder
+		 */
+		public Builder overflowStrategy(OverflowStrategy overflowStrategy) {
+			this.overflowStrategy = overflowStrategy;
+			return this;
+		}
+
 		/**
 		 * Sets the file factory to be used by the queue storage mechanism.
 		 * Defaults to using {@code File.createTempFile("bufferToFileDb","")} if
@@ -161,7 +750,11 @@ public final class Options {
 		}
 
 		public Options build() {
-			return new Options(fileFactory, delayError, rolloverEvery, bufferSizeBytes, rolloverSizeBytes);
+			return new Options(fileFactory, delayError, rolloverEvery, bufferSizeBytes, rolloverSizeBytes,
+					durable, checkpointEvery, syncPolicy, queueEngine, mappedSegmentSizeBytes,
+					mappedBytesLimit, compression, compressionBlockSizeBytes, maxTotalBytes, maxTotalItems,
+					overflowStrategy, spillPool, segmentPoolSize, memoryBufferSize, cacheType,
+					cacheSizeItems, cacheSizeBytes, metrics);
 		}
 	}
 
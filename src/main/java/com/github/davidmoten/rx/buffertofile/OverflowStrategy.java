@@ -0,0 +1,34 @@
+package com.github.davidmoten.rx.buffertofile;
+
+/**
+ * What happens when an item arrives and the file based queue already holds
+ * {@code maxTotalItems} unread items or its segment files take
+ * {@code maxTotalBytes}.
+ */
+public enum OverflowStrategy {
+
+    /**
+     * Deletes the oldest segment file (and the unread items in it) until the
+     * queue is under its limits. If the only segment is the one being written
+     * to then all buffered items are dropped.
+     */
+    DROP_OLDEST_SEGMENT,
+
+    /**
+     * Drops the arriving item.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Emits a
+     * {@link com.github.davidmoten.rx.exceptions.BufferOverflowException}
+     * downstream.
+     */
+    ERROR,
+
+    /**
+     * Blocks the producing thread until the consumer has read enough items
+     * (or unsubscribed).
+     */
+    BLOCK;
+}
@@ -0,0 +1,46 @@
+package com.github.davidmoten.rx.buffertofile;
+
+/**
+ * The storage mechanism used by the file based queue behind
+ * {@code onBackpressureBufferToFile}.
+ */
+public enum QueueEngine {
+
+    /**
+     * Reads and writes files through {@code RandomAccessFile} with in-memory
+     * read and write buffers. Rollover is controlled by
+     * {@code rolloverEvery} and {@code rolloverSizeBytes}.
+     */
+    STREAM,
+
+    /**
+     * Reads and writes fixed size memory-mapped segment files of
+     * {@code mappedSegmentSizeBytes}.
+     */
+    MEMORY_MAPPED,
+
+    /**
+     * Starts as {@link #MEMORY_MAPPED} and switches new writes to
+     * {@link #STREAM} if mapping another segment fails or would take the total
+     * bytes mapped by file based queues in the JVM over
+     * {@code mappedBytesLimit}. Items already written to mapped segments are
+     * emitted first so order is preserved.
+     */
+    ADAPTIVE,
+
+    /**
+     * As {@link #MEMORY_MAPPED} but the writer claims space in the segment
+     * with an atomic fetch-and-add and does not share a lock with the reader.
+     * Segments are of {@code mappedSegmentSizeBytes} and are zeroed and
+     * reused once read instead of creating new files.
+     *
+     * <p>
+     * The underlying queue accepts concurrent offers but
+     * {@code onBackpressureBufferToFile} receives items serially (as the
+     * {@code Observable} contract requires, also after {@code merge}) so
+     * through the operator there is always a single producer and no speedup
+     * from concurrent {@code onNext} calls should be expected. For the same
+     * reason {@code onCompleted} cannot overlap an offer.
+     */
+    MEMORY_MAPPED_MULTI_PRODUCER;
+}
@@ -0,0 +1,36 @@
+package com.github.davidmoten.rx.buffertofile;
+
+/**
+ * Current storage figures of the file based queue behind an
+ * {@code onBackpressureBufferToFile} operator. Implemented by the queues and
+ * read by {@link BufferToFileMetrics}. Methods may be called from any thread.
+ */
+public interface QueueGauges {
+
+    /**
+     * Returns the bytes of the files (or spill pool segments) currently held
+     * by the queue. Bytes written to the queue but still in a write buffer
+     * count as on disk and pre-sized (memory-mapped) files count at their full
+     * size.
+     * 
+     * @return bytes on disk
+     */
+    long bytesOnDisk();
+
+    /**
+     * Returns the number of segment files (or spill pool blocks) currently
+     * held by the queue.
+     * 
+     * @return live segment count
+     */
+    long segments();
+
+    /**
+     * Returns the number of times the queue has started writing to a new
+     * segment since it was created.
+     * 
+     * @return rollover count
+     */
+    long rollovers();
+
+}
@@ -0,0 +1,52 @@
+package com.github.davidmoten.rx.buffertofile;
+
+import com.github.davidmoten.rx.internal.operators.SegmentPoolCounters;
+
+/**
+ * Counts of segments created, reused and currently waiting in the recycling
+ * pools of the queues created with an {@link Options} instance (see
+ * {@link Options.Builder#segmentPoolSize(int)}). Updated by the queues and
+ * may be read from any thread.
+ */
+public final class SegmentPoolStats {
+
+    // updated by the queues
+    final SegmentPoolCounters counters = new SegmentPoolCounters();
+
+    SegmentPoolStats() {
+    }
+
+    /**
+     * Returns the number of new segments (with new files) created.
+     *
+     * @return created segment count
+     */
+    public long created() {
+        return counters.created();
+    }
+
+    /**
+     * Returns the number of rollovers that took a segment from the pool.
+     *
+     * @return reused segment count
+     */
+    public long reused() {
+        return counters.reused();
+    }
+
+    /**
+     * Returns the number of reset segments currently waiting to be reused.
+     *
+     * @return pooled segment count
+     */
+    public long pooled() {
+        return counters.pooled();
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentPoolStats [created=" + created() + ", reused=" + reused() + ", pooled="
+                + pooled() + "]";
+    }
+
+}
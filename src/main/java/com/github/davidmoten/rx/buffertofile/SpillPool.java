@@ -0,0 +1,77 @@
+package com.github.davidmoten.rx.buffertofile;
+
+import java.io.File;
+
+import com.github.davidmoten.rx.internal.operators.SpillPoolFile;
+
+/**
+ * <p>
+ * A fixed set of equal size segments in one preallocated file that many
+ * {@code onBackpressureBufferToFile} operators can spill into (see
+ * {@link Options.Builder#spillPool(SpillPool)}). Each operator keeps its own
+ * ordered list of segments so ordering per stream holds, while the total disk
+ * used by all of them is bounded by {@code segments * segmentSizeBytes} and
+ * only one file handle is open.
+ *
+ * <p>
+ * The pool is not closed when operators using it complete. Call
+ * {@link #close()} when it is no longer needed.
+ */
+public final class SpillPool {
+
+    private final File file;
+
+    // allocation and I/O, used by the queues
+    final SpillPoolFile pool;
+
+    private SpillPool(File file, int segmentSizeBytes, int segments) {
+        this.file = file;
+        this.pool = new SpillPoolFile(file, segmentSizeBytes, segments);
+    }
+
+    /**
+     * Creates (or truncates) {@code file} with room for {@code segments}
+     * segments of {@code segmentSizeBytes} each.
+     *
+     * @param file
+     *            the pool file
+     * @param segmentSizeBytes
+     *            size of each segment, the unit of allocation
+     * @param segments
+     *            number of segments
+     * @return a new pool
+     */
+    public static SpillPool create(File file, int segmentSizeBytes, int segments) {
+        return new SpillPool(file, segmentSizeBytes, segments);
+    }
+
+    public int segmentSizeBytes() {
+        return pool.segmentSizeBytes();
+    }
+
+    public int segments() {
+        return pool.segments();
+    }
+
+    public int freeSegments() {
+        return pool.freeSegments();
+    }
+
+    public long usedBytes() {
+        return (long) (segments() - freeSegments()) * segmentSizeBytes();
+    }
+
+    /**
+     * Closes and deletes the pool file. Queues still using the pool will fail.
+     */
+    public void close() {
+        pool.close();
+    }
+
+    @Override
+    public String toString() {
+        return "SpillPool [file=" + file + ", segmentSizeBytes=" + segmentSizeBytes()
+                + ", segments=" + segments() + ", freeSegments=" + freeSegments() + "]";
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.github.davidmoten.rx.buffertofile;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.davidmoten.util.Preconditions;
+
+/**
+ * Determines when bytes written to a durable file based queue are forced to
+ * the storage device (fsync). Syncs are performed as a group commit on a
+ * background thread so one sync covers all the records written since the last
+ * one and the producer is not blocked.
+ */
+public final class SyncPolicy {
+
+    private static final SyncPolicy NEVER = new SyncPolicy(0, 0, 0);
+
+    private final long everyRecords;
+    private final long everyBytes;
+    private final long everyMs;
+
+    private SyncPolicy(long everyRecords, long everyBytes, long everyMs) {
+        this.everyRecords = everyRecords;
+        this.everyBytes = everyBytes;
+        this.everyMs = everyMs;
+    }
+
+    /**
+     * Never explicitly syncs, leaving it to the operating system to flush
+     * written bytes to disk.
+     * 
+     * @return policy that never syncs
+     */
+    public static SyncPolicy never() {
+        return NEVER;
+    }
+
+    /**
+     * Requests a sync once {@code records} records have been written since the
+     * last sync.
+     * 
+     * @param records
+     *            number of records between syncs
+     * @return policy
+     */
+    public static SyncPolicy everyRecords(long records) {
+        Preconditions.checkArgument(records > 0, "records must be greater than zero");
+        return new SyncPolicy(records, 0, 0);
+    }
+
+    /**
+     * Requests a sync once {@code bytes} bytes have been written since the last
+     * sync.
+     * 
+     * @param bytes
+     *            number of bytes between syncs
+     * @return policy
+     */
+    public static SyncPolicy everyBytes(long bytes) {
+        Preconditions.checkArgument(bytes > 0, "bytes must be greater than zero");
+        return new SyncPolicy(0, bytes, 0);
+    }
+
+    /**
+     * Syncs periodically if anything has been written since the last sync.
+     * 
+     * @param duration
+     *            period between syncs
+     * @param unit
+     *            unit of duration
+     * @return policy
+     */
+    public static SyncPolicy every(long duration, TimeUnit unit) {
+        long ms = unit.toMillis(duration);
+        Preconditions.checkArgument(ms > 0, "duration must be at least one millisecond");
+        return new SyncPolicy(0, 0, ms);
+    }
+
+    public boolean isNever() {
+        return this == NEVER;
+    }
+
+    /**
+     * Returns the number of records between syncs or 0 if not applicable.
+     * 
+     * @return number of records between syncs
+     */
+    public long everyRecords() {
+        return everyRecords;
+    }
+
+    /**
+     * Returns the number of bytes between syncs or 0 if not applicable.
+     * 
+     * @return number of bytes between syncs
+     */
+    public long everyBytes() {
+        return everyBytes;
+    }
+
+    /**
+     * Returns the period between syncs in milliseconds or 0 if not applicable.
+     * 
+     * @return period between syncs in ms
+     */
+    public long everyMs() {
+        return everyMs;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncPolicy [everyRecords=" + everyRecords + ", everyBytes=" + everyBytes
+                + ", everyMs=" + everyMs + "]";
+    }
+
+}
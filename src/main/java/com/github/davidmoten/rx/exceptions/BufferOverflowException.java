@@ -0,0 +1,16 @@
+package com.github.davidmoten.rx.exceptions;
+
+/**
+ * Signalled by {@code onBackpressureBufferToFile} when the queue reaches its
+ * {@code maxTotalItems} or {@code maxTotalBytes} limit and the overflow
+ * strategy is {@code ERROR}.
+ */
+public final class BufferOverflowException extends RuntimeException {
+
+    private static final long serialVersionUID = -1658465402564314532L;
+
+    public BufferOverflowException(String message) {
+        super(message);
+    }
+
+}
@@ -3,7 +3,9 @@ package com.github.davidmoten.rx.internal.operators;
 import java.util.Collection;
 import java.util.Iterator;
 
-abstract class AbstractQueueWithResources<T> implements QueueWithResources<T> {
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
+
+abstract class AbstractQueueWithResources<T> implements QueueWithResources<T>, QueueGauges {
 
     private final QueueWithResources<T> q;
 
@@ -126,4 +128,24 @@ abstract class AbstractQueueWithResources<T> implements QueueWithResources<T> {
     public long resourcesSize() {
         return q.resourcesSize();
     }
+
+    @Override
+    public boolean reset() {
+        return q.reset();
+    }
+
+    @Override
+    public long bytesOnDisk() {
+        return Gauges.bytesOnDisk(q);
+    }
+
+    @Override
+    public long segments() {
+        return Gauges.segments(q);
+    }
+
+    @Override
+    public long rollovers() {
+        return Gauges.rollovers(q);
+    }
 }
@@ -0,0 +1,62 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import com.github.davidmoten.rx.buffertofile.BufferToFileMetrics;
+import com.github.davidmoten.rx.buffertofile.CacheStats;
+import com.github.davidmoten.rx.buffertofile.CompressionStats;
+import com.github.davidmoten.rx.buffertofile.Options;
+import com.github.davidmoten.rx.buffertofile.SegmentPoolStats;
+import com.github.davidmoten.rx.buffertofile.SpillPool;
+
+/**
+ * Gives the operator and queues in this package the counters and spill pool
+ * file held in package-private fields of the public {@code buffertofile}
+ * classes so that those classes only expose read methods. The single implementation lives in
+ * the {@code buffertofile} package and is registered when {@link Options} is
+ * loaded. Not part of the public API.
+ */
+public abstract class BufferToFileAccess {
+
+    private static volatile BufferToFileAccess instance;
+
+    protected BufferToFileAccess() {
+    }
+
+    /**
+     * Registers the implementation. Called once by the {@code buffertofile}
+     * package.
+     *
+     * @param access
+     *            the implementation
+     */
+    public static synchronized void set(BufferToFileAccess access) {
+        if (instance != null) {
+            throw new IllegalStateException("already set");
+        }
+        instance = access;
+    }
+
+    static BufferToFileAccess get() {
+        BufferToFileAccess a = instance;
+        if (a == null) {
+            // initializing Options registers the implementation
+            try {
+                Class.forName(Options.class.getName(), true, Options.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+            a = instance;
+        }
+        return a;
+    }
+
+    protected abstract SegmentPoolCounters counters(SegmentPoolStats stats);
+
+    protected abstract CompressionCounters counters(CompressionStats stats);
+
+    protected abstract CacheCounters counters(CacheStats stats);
+
+    protected abstract BufferToFileCounters counters(BufferToFileMetrics metrics);
+
+    protected abstract SpillPoolFile file(SpillPool pool);
+
+}
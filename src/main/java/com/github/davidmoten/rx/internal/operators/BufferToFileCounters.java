@@ -0,0 +1,198 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
+
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * The counts behind a
+ * {@link com.github.davidmoten.rx.buffertofile.BufferToFileMetrics}. Only the
+ * operator in this package updates them. Reading never changes any state so
+ * any number of readers (snapshots, JMX) see the same figures.
+ */
+public final class BufferToFileCounters {
+
+    // write times and rate checkpoints are sampled at most this often to
+    // bound the memory used
+    private static final long SAMPLE_INTERVAL_MS = 100;
+
+    // rates are averaged over at least this period
+    private static final long RATE_INTERVAL_MS = 1000;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong read = new AtomicLong();
+    private final List<QueueGauges> queues = new CopyOnWriteArrayList<QueueGauges>();
+
+    // (index of first item written in the interval, time) pairs
+    private final Queue<long[]> samples = new ConcurrentLinkedQueue<long[]>();
+    private volatile long lastSampleTime;
+    // write time of the sample at or before the oldest unread item
+    private volatile long oldestSampleTime;
+
+    // (time, written, read) triples, oldest first. Holds the newest
+    // checkpoint at least RATE_INTERVAL_MS old and those after it. Guarded
+    // by itself.
+    private final ArrayDeque<long[]> checkpoints = new ArrayDeque<long[]>();
+    private volatile long lastCheckpointTime;
+
+    public BufferToFileCounters() {
+        long now = System.currentTimeMillis();
+        lastCheckpointTime = now;
+        checkpoints.offer(new long[] { now, 0, 0 });
+    }
+
+    void itemWritten() {
+        long index = written.getAndIncrement();
+        long now = System.currentTimeMillis();
+        if (now - lastSampleTime >= SAMPLE_INTERVAL_MS) {
+            lastSampleTime = now;
+            samples.offer(new long[] { index, now });
+        }
+        checkpoint(now);
+    }
+
+    void itemRead() {
+        // index of the oldest unread item
+        long r = read.incrementAndGet();
+        long[] sample;
+        while ((sample = samples.peek()) != null && sample[0] <= r) {
+            oldestSampleTime = sample[1];
+            samples.poll();
+        }
+        checkpoint(System.currentTimeMillis());
+    }
+
+    private void checkpoint(long now) {
+        if (now - lastCheckpointTime >= SAMPLE_INTERVAL_MS) {
+            synchronized (checkpoints) {
+                if (now - lastCheckpointTime >= SAMPLE_INTERVAL_MS) {
+                    lastCheckpointTime = now;
+                    checkpoints.offer(new long[] { now, written.get(), read.get() });
+                    // drop the oldest while the next one is old enough to
+                    // be the rate base
+                    while (checkpoints.size() > 1) {
+                        Iterator<long[]> it = checkpoints.iterator();
+                        it.next();
+                        if (it.next()[0] <= now - RATE_INTERVAL_MS) {
+                            checkpoints.poll();
+                        } else {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    Subscription add(final QueueGauges queue) {
+        queues.add(queue);
+        return Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                queues.remove(queue);
+            }
+        });
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long read() {
+        return read.get();
+    }
+
+    public long bytesOnDisk() {
+        long bytes = 0;
+        for (QueueGauges q : queues) {
+            bytes += q.bytesOnDisk();
+        }
+        return bytes;
+    }
+
+    public long segments() {
+        long segments = 0;
+        for (QueueGauges q : queues) {
+            segments += q.segments();
+        }
+        return segments;
+    }
+
+    public long rollovers() {
+        long rollovers = 0;
+        for (QueueGauges q : queues) {
+            rollovers += q.rollovers();
+        }
+        return rollovers;
+    }
+
+    /**
+     * Returns the write and read rates per second at time {@code now} given
+     * the current counts, averaged since the newest checkpoint at least one
+     * second old. Both are 0 during the first second.
+     *
+     * @param now
+     *            current time in epoch milliseconds
+     * @param w
+     *            items written
+     * @param r
+     *            items read
+     * @return write rate and read rate
+     */
+    public double[] rates(long now, long w, long r) {
+        long[] base = null;
+        synchronized (checkpoints) {
+            for (long[] c : checkpoints) {
+                if (base == null || c[0] <= now - RATE_INTERVAL_MS) {
+                    base = c;
+                } else {
+                    break;
+                }
+            }
+        }
+        long elapsed = now - base[0];
+        if (elapsed < RATE_INTERVAL_MS) {
+            return new double[] { 0, 0 };
+        } else {
+            return new double[] { (w - base[1]) * 1000.0 / elapsed,
+                    (r - base[2]) * 1000.0 / elapsed };
+        }
+    }
+
+    /**
+     * Returns the age of the oldest unread item at time {@code now}, accurate
+     * to the sample interval.
+     *
+     * @param now
+     *            current time in epoch milliseconds
+     * @param w
+     *            items written
+     * @param r
+     *            items read
+     * @return age in milliseconds
+     */
+    public long oldestItemAgeMs(long now, long w, long r) {
+        if (w > r) {
+            long t = oldestSampleTime;
+            long[] sample = samples.peek();
+            if (sample != null && sample[0] <= r) {
+                // the reader has not moved past this sample yet
+                t = sample[1];
+            }
+            return Math.max(0, now - t);
+        } else {
+            return 0;
+        }
+    }
+
+}
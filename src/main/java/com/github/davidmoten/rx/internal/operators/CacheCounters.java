@@ -0,0 +1,34 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The read counts behind a
+ * {@link com.github.davidmoten.rx.buffertofile.CacheStats}, shared by the
+ * queues created with one {@code Options} instance. Only the object caches in
+ * this package update the counts.
+ */
+public final class CacheCounters {
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // a read that did not need to deserialize
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    // a read that deserialized the item from file
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+}
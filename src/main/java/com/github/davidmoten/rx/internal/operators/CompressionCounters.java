@@ -0,0 +1,35 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The byte counts behind a
+ * {@link com.github.davidmoten.rx.buffertofile.CompressionStats}, shared by
+ * the queues created with one {@code Options} instance. Only the queues in
+ * this package update the counts.
+ */
+public final class CompressionCounters {
+
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong blocks = new AtomicLong();
+
+    void blockCompressed(long uncompressed, long compressed) {
+        uncompressedBytes.addAndGet(uncompressed);
+        compressedBytes.addAndGet(compressed);
+        blocks.incrementAndGet();
+    }
+
+    public long uncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    public long compressedBytes() {
+        return compressedBytes.get();
+    }
+
+    public long blocks() {
+        return blocks.get();
+    }
+
+}
@@ -0,0 +1,646 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.github.davidmoten.rx.buffertofile.ByteBufferSerializer;
+import com.github.davidmoten.rx.buffertofile.DataSerializer;
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
+import com.github.davidmoten.util.ByteArrayOutputStreamNoCopyUnsynchronized;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.functions.Func0;
+import rx.internal.util.unsafe.UnsafeAccess;
+
+/**
+ * <p>
+ * Memory-mapped file queue that supports concurrent calls to {@code offer()}
+ * from many threads (calls to {@code poll()} must be sequential). A producer
+ * claims a region of the current segment with an atomic fetch-and-add on the
+ * segment's tail, serializes into it without holding a lock and then publishes
+ * the record by writing its header. The reader consumes records in claim
+ * order, waiting at a record whose header has not been written yet.
+ *
+ * <p>
+ * Each record is a 4 byte header followed by the serialized item, padded to a
+ * multiple of 4 bytes. A header of 0 means not yet written, a positive header
+ * is the length of the record, a negative header is the length of a record to
+ * skip (serialization failed) and {@link #END_OF_SEGMENT} marks the end of the
+ * segment. The producer whose claim crosses the end of a segment installs the
+ * next segment while producers that claimed past the end wait for it.
+ * Segments that have been read are zeroed and reused once no producer holds
+ * them (a producer may have read the tail just before it moved on).
+ *
+ * <p>
+ * Headers are written with ordered stores and read with volatile loads when
+ * {@code sun.misc.Unsafe} is available, otherwise under the segment's monitor.
+ *
+ * @param <T>
+ *            type of item on queue
+ */
+final class FileBasedMPSCQueueMemoryMapped<T> implements QueueWithSubscription<T>, QueueGauges {
+
+    private static final int HEADER_SIZE = 4;
+    static final int END_OF_SEGMENT = Integer.MIN_VALUE;
+    // times a producer waiting for the next segment yields before parking
+    private static final int MAX_YIELDS = 100;
+    private static final long MAX_PARK_NANOS = 1000000;
+
+    // offset of the native address field of direct buffers or -1 if the
+    // headers are accessed under the segment monitor
+    private static final long ADDRESS_OFFSET = addressOffset();
+
+    private final Func0<File> factory;
+    private final int size;
+    private final DataSerializer<T> serializer;
+    // non-null if serializer writes and reads the mapped buffers directly
+    private final ByteBufferSerializer<T> byteBufferSerializer;
+    private final ThreadLocal<Writer> writers = new ThreadLocal<Writer>() {
+        @Override
+        protected Writer initialValue() {
+            return new Writer();
+        }
+    };
+
+    // all segments created, guarded by itself
+    private final List<Segment> segments = new ArrayList<Segment>();
+    // read and zeroed segments ready for reuse
+    private final Queue<Segment> inactive = new ConcurrentLinkedQueue<Segment>();
+
+    // the segment producers are claiming regions of
+    private volatile Segment tail;
+    // set if the next segment could not be created
+    private volatile RuntimeException error;
+
+    // reader thread only
+    private Segment head;
+    private int readPosition;
+    // read segments still held by a producer
+    private final Deque<Segment> retired = new ArrayDeque<Segment>();
+    private final ReaderInput readerInput = new ReaderInput();
+    private final DataInputStream input = new DataInputStream(readerInput);
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong rollovers = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean unsubscribed;
+
+    FileBasedMPSCQueueMemoryMapped(Func0<File> factory, int size, DataSerializer<T> serializer) {
+        Preconditions.checkNotNull(factory);
+        Preconditions.checkNotNull(serializer);
+        // keep headers aligned
+        size = size & ~(HEADER_SIZE - 1);
+        Preconditions.checkArgument(size >= 2 * HEADER_SIZE, "size is too small");
+        Preconditions.checkArgument(
+                serializer.size() == 0 || serializer.size() <= size - 2 * HEADER_SIZE,
+                "serializer.size() must be less than or equal to segment size - 8");
+        this.factory = factory;
+        this.size = size;
+        this.serializer = serializer;
+        this.byteBufferSerializer = byteBufferSerializer(serializer);
+        this.tail = createSegment();
+        this.head = tail;
+        readerInput.buffer = head.buffer.duplicate();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ByteBufferSerializer<T> byteBufferSerializer(DataSerializer<T> serializer) {
+        if (serializer instanceof ByteBufferSerializer) {
+            return (ByteBufferSerializer<T>) serializer;
+        } else {
+            return null;
+        }
+    }
+
+    private static long addressOffset() {
+        if (!UnsafeAccess.isUnsafeAvailable()) {
+            return -1;
+        }
+        try {
+            Field field = Buffer.class.getDeclaredField("address");
+            return UnsafeAccess.UNSAFE.objectFieldOffset(field);
+        } catch (Throwable e) {
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+        final File file;
+        final RandomAccessFile f;
+        final MappedByteBuffer buffer;
+        final long address;
+        // bytes claimed by producers (can exceed the segment size)
+        final AtomicInteger claimed = new AtomicInteger();
+        // producers holding this segment
+        final AtomicInteger users = new AtomicInteger();
+        volatile Segment next;
+
+        Segment(File file, int size) {
+            this.file = file;
+            try {
+                this.f = new RandomAccessFile(file, "rw");
+                this.buffer = f.getChannel().map(MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (ADDRESS_OFFSET == -1) {
+                this.address = 0;
+            } else {
+                this.address = UnsafeAccess.UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+            }
+        }
+
+        void writeHeader(int position, int value) {
+            if (ADDRESS_OFFSET == -1) {
+                synchronized (this) {
+                    buffer.putInt(position, value);
+                }
+            } else {
+                UnsafeAccess.UNSAFE.putOrderedInt(null, address + position, value);
+            }
+        }
+
+        int readHeader(int position) {
+            if (ADDRESS_OFFSET == -1) {
+                synchronized (this) {
+                    return buffer.getInt(position);
+                }
+            } else {
+                return UnsafeAccess.UNSAFE.getIntVolatile(null, address + position);
+            }
+        }
+
+        void close() {
+            try {
+                f.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            file.delete();
+        }
+    }
+
+    private Segment createSegment() {
+        Segment segment = inactive.poll();
+        if (segment != null) {
+            return segment;
+        }
+        segment = new Segment(factory.call(), size);
+        synchronized (segments) {
+            segments.add(segment);
+        }
+        return segment;
+    }
+
+    // per producer thread state
+    private static final class Writer {
+        final ByteArrayOutputStreamNoCopyUnsynchronized bytes = new ByteArrayOutputStreamNoCopyUnsynchronized();
+        final DataOutputStream buffer = new DataOutputStream(bytes);
+        final WriterOutput mappedOutput = new WriterOutput();
+        final DataOutputStream mapped = new DataOutputStream(mappedOutput);
+        // used instead of bytes when there is a ByteBufferSerializer
+        ByteBuffer heap;
+        // view of the mapped buffer of segment
+        Segment segment;
+        ByteBuffer view;
+
+        ByteBuffer view(Segment s) {
+            if (segment != s) {
+                segment = s;
+                view = s.buffer.duplicate();
+            }
+            return view;
+        }
+    }
+
+    private static final class WriterOutput extends OutputStream {
+
+        ByteBuffer buffer;
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            buffer.put(b, off, len);
+        }
+    }
+
+    private static final class ReaderInput extends InputStream {
+
+        ByteBuffer buffer;
+
+        @Override
+        public int read() throws IOException {
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // the serializer only reads bytes that were written for the item
+            buffer.get(b, off, len);
+            return len;
+        }
+    }
+
+    @Override
+    public boolean offer(T t) {
+        // thread safe with other calls to offer(), poll() and unsubscribe()
+        try {
+            wip.incrementAndGet();
+            if (unsubscribed) {
+                return true;
+            }
+            Writer w = writers.get();
+            int length = serializer.size();
+            if (length == 0) {
+                // serialize to memory first to find the length
+                length = serializeToMemory(w, t);
+                if (length > size - 2 * HEADER_SIZE) {
+                    throw new RuntimeException("serialized length is larger than can fit in one segment");
+                }
+            }
+            int recordLength = (HEADER_SIZE + length + HEADER_SIZE - 1) & ~(HEADER_SIZE - 1);
+            while (true) {
+                Segment s = acquireTail();
+                try {
+                    int position = s.claimed.getAndAdd(recordLength);
+                    if (position + recordLength <= size) {
+                        write(w, s, position, recordLength, t);
+                        count.incrementAndGet();
+                        return true;
+                    } else if (position <= size) {
+                        // this claim crosses the end of the segment
+                        if (position + HEADER_SIZE <= size) {
+                            s.writeHeader(position, END_OF_SEGMENT);
+                        }
+                        Segment next;
+                        try {
+                            next = createSegment();
+                        } catch (RuntimeException e) {
+                            error = e;
+                            throw e;
+                        }
+                        // move the tail before the reader can reach next so
+                        // that no producer acquires s once the reader has
+                        // checked that nobody holds it
+                        tail = next;
+                        rollovers.incrementAndGet();
+                        s.next = next;
+                    } else if (!awaitNextSegment(s)) {
+                        return true;
+                    }
+                } finally {
+                    s.users.decrementAndGet();
+                }
+            }
+        } finally {
+            checkUnsubscribe();
+        }
+    }
+
+    // returns the serialized length, in the same format that poll() reads
+    private int serializeToMemory(Writer w, T t) {
+        if (byteBufferSerializer != null) {
+            if (w.heap == null) {
+                w.heap = ByteBuffer.allocate(Math.min(256, size));
+            }
+            while (true) {
+                w.heap.clear();
+                try {
+                    byteBufferSerializer.serialize(w.heap, t);
+                    return w.heap.position();
+                } catch (BufferOverflowException e) {
+                    if (w.heap.capacity() >= size) {
+                        throw new RuntimeException(
+                                "serialized length is larger than can fit in one segment");
+                    }
+                    w.heap = ByteBuffer.allocate(Math.min(w.heap.capacity() * 2, size));
+                }
+            }
+        } else {
+            w.bytes.reset();
+            try {
+                serializer.serialize(w.buffer, t);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return w.bytes.size();
+        }
+    }
+
+    // returns the tail with its user count incremented
+    private Segment acquireTail() {
+        while (true) {
+            Segment s = tail;
+            s.users.incrementAndGet();
+            if (tail == s) {
+                return s;
+            }
+            // s may have been read and recycled since it was the tail
+            s.users.decrementAndGet();
+        }
+    }
+
+    // waits for the producer that crossed the end of s to install the next
+    // segment, returns false if unsubscribed
+    private boolean awaitNextSegment(Segment s) {
+        int yields = 0;
+        long parkNanos = 1000;
+        while (tail == s) {
+            if (unsubscribed) {
+                return false;
+            }
+            RuntimeException e = error;
+            if (e != null) {
+                throw e;
+            }
+            if (yields < MAX_YIELDS) {
+                yields++;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+            }
+        }
+        return true;
+    }
+
+    private void write(Writer w, Segment s, int position, int recordLength, T t) {
+        ByteBuffer view = w.view(s);
+        view.limit(position + recordLength);
+        view.position(position + HEADER_SIZE);
+        if (serializer.size() == 0) {
+            if (byteBufferSerializer != null) {
+                view.put(w.heap.array(), 0, w.heap.position());
+            } else {
+                view.put(w.bytes.toByteArrayNoCopy(), 0, w.bytes.size());
+            }
+        } else {
+            // serialize straight into the claimed region
+            try {
+                if (byteBufferSerializer != null) {
+                    byteBufferSerializer.serialize(view, t);
+                } else {
+                    w.mappedOutput.buffer = view;
+                    serializer.serialize(w.mapped, t);
+                }
+            } catch (BufferOverflowException e) {
+                // the reader must be able to move past the claimed region
+                s.writeHeader(position, -recordLength);
+                throw new IllegalArgumentException(
+                        "serialized length of value being offered to file queue was greater than serializer.size() value (which was non-zero)");
+            } catch (IOException e) {
+                s.writeHeader(position, -recordLength);
+                throw new RuntimeException(e);
+            } catch (RuntimeException e) {
+                s.writeHeader(position, -recordLength);
+                throw e;
+            }
+        }
+        // publish the record to the reader
+        s.writeHeader(position, recordLength);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        // calls to poll() must be sequential
+        try {
+            wip.incrementAndGet();
+            if (unsubscribed) {
+                return null;
+            }
+            while (true) {
+                int header;
+                if (readPosition + HEADER_SIZE > size) {
+                    header = END_OF_SEGMENT;
+                } else {
+                    header = head.readHeader(readPosition);
+                }
+                if (header == 0) {
+                    return null;
+                } else if (header == END_OF_SEGMENT) {
+                    Segment next = head.next;
+                    if (next == null) {
+                        // the next segment is being installed
+                        return null;
+                    }
+                    retire(head);
+                    head = next;
+                    readPosition = 0;
+                    readerInput.buffer = head.buffer.duplicate();
+                } else if (header < 0) {
+                    readPosition -= header;
+                } else {
+                    ByteBuffer b = readerInput.buffer;
+                    b.limit(readPosition + header);
+                    b.position(readPosition + HEADER_SIZE);
+                    readPosition += header;
+                    T t;
+                    if (byteBufferSerializer != null) {
+                        t = byteBufferSerializer.deserialize(b);
+                    } else {
+                        try {
+                            t = serializer.deserialize(input);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    count.decrementAndGet();
+                    if (t == null) {
+                        return (T) NullSentinel.instance();
+                    } else {
+                        return t;
+                    }
+                }
+            }
+        } finally {
+            checkUnsubscribe();
+        }
+    }
+
+    // reader thread only
+    private void retire(Segment s) {
+        retired.offer(s);
+        Iterator<Segment> it = retired.iterator();
+        while (it.hasNext()) {
+            Segment r = it.next();
+            // the tail has moved past r so no producer can acquire it again
+            if (r.users.get() == 0) {
+                it.remove();
+                recycle(r);
+            }
+        }
+    }
+
+    private void recycle(Segment s) {
+        // zero the headers so they read as not yet written
+        ByteBuffer b = s.buffer.duplicate();
+        b.clear();
+        byte[] zeros = new byte[Math.min(size, 64 * 1024)];
+        while (b.hasRemaining()) {
+            b.put(zeros, 0, Math.min(zeros.length, b.remaining()));
+        }
+        s.claimed.set(0);
+        s.next = null;
+        inactive.offer(s);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count.get() == 0;
+    }
+
+    @Override
+    public void unsubscribe() {
+        wip.incrementAndGet();
+        unsubscribed = true;
+        checkUnsubscribe();
+    }
+
+    private void checkUnsubscribe() {
+        // single ampersand because we must call wip.decrementAndGet
+        if (unsubscribed & wip.decrementAndGet() == 0) {
+            close();
+        }
+    }
+
+    private void close() {
+        if (closed.compareAndSet(false, true)) {
+            synchronized (segments) {
+                for (Segment segment : segments) {
+                    segment.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isUnsubscribed() {
+        return unsubscribed;
+    }
+
+    @Override
+    public long bytesOnDisk() {
+        return segments() * size;
+    }
+
+    @Override
+    public long segments() {
+        if (closed.get()) {
+            return 0;
+        }
+        synchronized (segments) {
+            return segments.size();
+        }
+    }
+
+    @Override
+    public long rollovers() {
+        return rollovers.get();
+    }
+
+    @Override
+    public int size() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object[] toArray() {
+        throw new UnsupportedOperationException();
+    }
+
+    @SuppressWarnings("hiding")
+    @Override
+    public <T> T[] toArray(T[] a) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean add(T e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T element() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T peek() {
+        throw new UnsupportedOperationException();
+    }
+
+}
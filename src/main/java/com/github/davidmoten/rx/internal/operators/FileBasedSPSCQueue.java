@@ -14,9 +14,10 @@ import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.github.davidmoten.rx.buffertofile.DataSerializer;
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
 import com.github.davidmoten.util.Preconditions;
 
-class FileBasedSPSCQueue<T> implements QueueWithResources<T> {
+class FileBasedSPSCQueue<T> implements QueueWithResources<T>, QueueGauges {
 
 	final File file;
 	final DataSerializer<T> serializer;
@@ -26,7 +27,10 @@ class FileBasedSPSCQueue<T> implements QueueWithResources<T> {
 	final Object writeLock = new Object();
 	private final Object accessLock = new Object();
 	private final DataOutputStream output;
+	private final QueueReader reader;
 	private final DataInputStream input;
+	// null if items are always deserialized
+	private final ObjectCache<T> cache;
 
 	// mutable state
 
@@ -38,8 +42,15 @@ class FileBasedSPSCQueue<T> implements QueueWithResources<T> {
 	// guarded by accessLock
 	private FileAccessor accessor;
 	private volatile boolean unsubscribed = false;
+	// positions of the next items to write and read, used as cache keys
+	private long writeIndex;
+	private long readIndex;
 
 	FileBasedSPSCQueue(int bufferSizeBytes, File file, DataSerializer<T> serializer) {
+		this(bufferSizeBytes, file, serializer, null);
+	}
+
+	FileBasedSPSCQueue(int bufferSizeBytes, File file, DataSerializer<T> serializer, ObjectCache<T> cache) {
 		Preconditions.checkArgument(bufferSizeBytes > 0, "bufferSizeBytes must be greater than zero");
 		Preconditions.checkNotNull(file);
 		Preconditions.checkNotNull(serializer);
@@ -56,7 +67,9 @@ class FileBasedSPSCQueue<T> implements QueueWithResources<T> {
 		this.serializer = serializer;
 		this.size = new AtomicLong(0);
 		this.output = new DataOutputStream(new QueueWriter());
-		this.input = new DataInputStream(new QueueReader());
+		this.reader = new QueueReader();
+		this.input = new DataInputStream(reader);
+		this.cache = cache;
 	}
 
 	private final static class FileAccessor {
@@ -109,6 +122,16 @@ class FileBasedSPSCQueue<T> implements QueueWithResources<T> {
 
 	private final class QueueReader extends InputStream {
 
+		// moves past n bytes that are known to have been written
+		@Override
+		public long skip(long n) {
+			int k = (int) Math.min(n, readBufferLength - readBufferPosition);
+			readBufferPosition += k;
+			// the rest is read from file or the write buffer at readPosition
+			readPosition += n - k;
+			return n;
+		}
+
 		@Override
 		public int read() throws IOException {
 			if (size.get() == 0) {
@@ -215,7 +238,15 @@ class FileBasedSPSCQueue<T> implements QueueWithResources<T> {
 		// offer calls must be sequential but can happen concurrently with other
 		// methods except unsubscribe
 		try {
-			serializer.serialize(output, t);
+			if (cache == null) {
+				serializer.serialize(output, t);
+			} else {
+				long start = writePosition + writeBufferPosition;
+				serializer.serialize(output, t);
+				// cache before incrementing size so the reader can find it
+				cache.put(writeIndex, t, (int) (writePosition + writeBufferPosition - start));
+				writeIndex++;
+			}
 			size.incrementAndGet();
 			return true;
 		} catch (IOException e) {
@@ -229,16 +260,7 @@ class FileBasedSPSCQueue<T> implements QueueWithResources<T> {
 		// poll calls must be sequential but can happen concurrently with other
 		// methods except unsubscribe
 		try {
-			T t = serializer.deserialize(input);
-			size.decrementAndGet();
-			if (t == null) {
-				// this is a trick that we can get away with due to type erasure
-				// in java as long as the return value of poll() is checked
-				// using NullSentinel.isNullSentinel(t) (?)
-				return NullSentinel.instance();
-			} else {
-				return t;
-			}
+			return pollNext();
 		} catch (EOFException e) {
 			return null;
 		} catch (IOException e) {
@@ -246,6 +268,32 @@ class FileBasedSPSCQueue<T> implements QueueWithResources<T> {
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	private T pollNext() throws IOException {
+		if (cache != null) {
+			if (size.get() == 0) {
+				throw EOF;
+			}
+			Object cached = cache.take(readIndex);
+			readIndex++;
+			if (cached != null) {
+				reader.skip(cache.takenLength());
+				size.decrementAndGet();
+				return (T) cached;
+			}
+		}
+		T t = serializer.deserialize(input);
+		size.decrementAndGet();
+		if (t == null) {
+			// this is a trick that we can get away with due to type erasure
+			// in java as long as the return value of poll() is checked
+			// using NullSentinel.isNullSentinel(t) (?)
+			return NullSentinel.instance();
+		} else {
+			return t;
+		}
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return size.get() == 0;
@@ -266,6 +314,49 @@ class FileBasedSPSCQueue<T> implements QueueWithResources<T> {
 		return writePosition;
 	}
 
+	@Override
+	public long bytesOnDisk() {
+		// include the bytes in the write buffer not yet flushed to the file
+		return unsubscribed ? 0 : writePosition + writeBufferPosition;
+	}
+
+	@Override
+	public long segments() {
+		return unsubscribed ? 0 : 1;
+	}
+
+	@Override
+	public long rollovers() {
+		return 0;
+	}
+
+	@Override
+	public boolean reset() {
+		if (unsubscribed) {
+			return false;
+		}
+		synchronized (writeLock) {
+			writePosition = 0;
+			writeBufferPosition = 0;
+		}
+		readPosition = 0;
+		readBufferPosition = 0;
+		readBufferLength = 0;
+		size.set(0);
+		writeIndex = 0;
+		readIndex = 0;
+		if (cache != null) {
+			cache.clear();
+		}
+		synchronized (accessLock) {
+			// reopen now so the next writer doesn't have to
+			if (accessor == null) {
+				accessor = new FileAccessor(file);
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public T element() {
 		throw new UnsupportedOperationException();
@@ -0,0 +1,212 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
+import com.github.davidmoten.rx.internal.operators.FileBasedSPSCQueueMemoryMapped.SegmentUnavailableException;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.functions.Func0;
+
+/**
+ * <p>
+ * Writes to a memory-mapped queue until a new segment cannot be mapped (see
+ * {@link SegmentUnavailableException}) and from then on writes to a fallback
+ * (stream based) queue. Reads drain the memory-mapped queue before moving to
+ * the fallback queue so FIFO order is preserved.
+ *
+ * <p>
+ * Has the same thread-safety as the queues it wraps: calls to {@code offer()}
+ * must be sequential and calls to {@code poll()} must be sequential but the two
+ * may happen concurrently.
+ *
+ * @param <T>
+ *            type of item on queue
+ */
+final class FileBasedSPSCQueueAdaptive<T> implements QueueWithSubscription<T>, QueueGauges {
+
+    private final Func0<QueueWithSubscription<T>> mappedFactory;
+    private final Func0<QueueWithSubscription<T>> fallbackFactory;
+
+    // null if the first segment could not be mapped
+    private final QueueWithSubscription<T> mapped;
+
+    // set once by the writer, all writes to mapped happen before
+    private volatile QueueWithSubscription<T> fallback;
+    private volatile boolean unsubscribed;
+
+    FileBasedSPSCQueueAdaptive(Func0<QueueWithSubscription<T>> mappedFactory,
+            Func0<QueueWithSubscription<T>> fallbackFactory) {
+        Preconditions.checkNotNull(mappedFactory);
+        Preconditions.checkNotNull(fallbackFactory);
+        this.mappedFactory = mappedFactory;
+        this.fallbackFactory = fallbackFactory;
+        this.mapped = createMapped();
+        if (mapped == null) {
+            fallback = fallbackFactory.call();
+        }
+    }
+
+    private QueueWithSubscription<T> createMapped() {
+        try {
+            return mappedFactory.call();
+        } catch (SegmentUnavailableException e) {
+            return null;
+        }
+    }
+
+    boolean isFallenBack() {
+        return fallback != null;
+    }
+
+    @Override
+    public long bytesOnDisk() {
+        return Gauges.bytesOnDisk(mapped) + Gauges.bytesOnDisk(fallback);
+    }
+
+    @Override
+    public long segments() {
+        return Gauges.segments(mapped) + Gauges.segments(fallback);
+    }
+
+    @Override
+    public long rollovers() {
+        return Gauges.rollovers(mapped) + Gauges.rollovers(fallback);
+    }
+
+    @Override
+    public boolean offer(T t) {
+        QueueWithSubscription<T> f = fallback;
+        if (f == null) {
+            try {
+                return mapped.offer(t);
+            } catch (SegmentUnavailableException e) {
+                f = fallbackFactory.call();
+                fallback = f;
+                if (unsubscribed) {
+                    f.unsubscribe();
+                }
+            }
+        }
+        return f.offer(t);
+    }
+
+    @Override
+    public T poll() {
+        // read fallback before polling mapped so that if mapped is empty and
+        // fallback is non-null we know mapped will not receive more items
+        QueueWithSubscription<T> f = fallback;
+        if (mapped != null) {
+            T t = mapped.poll();
+            if (t != null) {
+                return t;
+            }
+        }
+        if (f == null) {
+            return null;
+        } else {
+            return f.poll();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        QueueWithSubscription<T> f = fallback;
+        return (mapped == null || mapped.isEmpty()) && (f == null || f.isEmpty());
+    }
+
+    @Override
+    public void unsubscribe() {
+        unsubscribed = true;
+        if (mapped != null) {
+            mapped.unsubscribe();
+        }
+        QueueWithSubscription<T> f = fallback;
+        if (f != null) {
+            f.unsubscribe();
+        }
+    }
+
+    @Override
+    public boolean isUnsubscribed() {
+        return unsubscribed;
+    }
+
+    @Override
+    public int size() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object[] toArray() {
+        throw new UnsupportedOperationException();
+    }
+
+    @SuppressWarnings("hiding")
+    @Override
+    public <T> T[] toArray(T[] a) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean add(T e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T element() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T peek() {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,431 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.buffertofile.BlockCodec;
+import com.github.davidmoten.rx.buffertofile.DataSerializer;
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
+import com.github.davidmoten.util.ByteArrayOutputStreamNoCopyUnsynchronized;
+import com.github.davidmoten.util.Preconditions;
+
+/**
+ * <p>
+ * File based queue that serializes items into an in-memory block and when the
+ * block reaches {@code blockSizeBytes} compresses it with a {@link BlockCodec}
+ * and appends it to the file. Each block on disk is written as
+ * {@code [int compressedLength][int uncompressedLength][compressed bytes]}.
+ * Items never span blocks.
+ *
+ * <p>
+ * The reader reads blocks from the file and once it has caught up with the
+ * writer takes the current (not yet full) block directly from memory so items
+ * are only compressed and written to disk when the reader falls behind.
+ *
+ * <p>
+ * Has the same thread-safety as {@link FileBasedSPSCQueue}: calls to
+ * {@code offer()} must be sequential and calls to {@code poll()} must be
+ * sequential but the two may happen concurrently.
+ *
+ * @param <T>
+ *            type of item on queue
+ */
+final class FileBasedSPSCQueueCompressed<T> implements QueueWithResources<T>, QueueGauges {
+
+	private static final int BLOCK_HEADER_BYTES = 8;
+
+	// create the exception once to avoid building many Exception objects
+	private static final EOFException EOF = new EOFException();
+
+	private final File file;
+	private final DataSerializer<T> serializer;
+	private final int blockSizeBytes;
+	private final CompressionCounters stats;
+	private final AtomicLong size = new AtomicLong();
+
+	// guards the current block and the writing of blocks to the file
+	private final Object writeLock = new Object();
+	private final BlockCodec writeCodec;
+	private final ByteArrayOutputStreamNoCopyUnsynchronized block;
+	private final DataOutputStream blockOutput;
+	private final byte[] blockHeader = new byte[BLOCK_HEADER_BYTES];
+	private byte[] compressed;
+	private RandomAccessFile fWrite;
+	// only changed under writeLock
+	private volatile long writePosition;
+
+	// reader thread only (except for the accessor which is guarded by readLock)
+	private final Object readLock = new Object();
+	private final BlockCodec readCodec;
+	private final DataInputStream input;
+	private byte[] readBlock;
+	private int readBlockLength;
+	private int readBlockPosition;
+	private byte[] readCompressed = new byte[0];
+	private long readPosition;
+	private RandomAccessFile fRead;
+
+	private volatile boolean unsubscribed;
+
+	FileBasedSPSCQueueCompressed(File file, DataSerializer<T> serializer, BlockCodec writeCodec,
+			BlockCodec readCodec, int blockSizeBytes, CompressionCounters stats) {
+		Preconditions.checkNotNull(file);
+		Preconditions.checkNotNull(serializer);
+		Preconditions.checkNotNull(writeCodec);
+		Preconditions.checkNotNull(readCodec);
+		Preconditions.checkArgument(blockSizeBytes > 0, "blockSizeBytes must be greater than zero");
+		Preconditions.checkNotNull(stats);
+		try {
+			file.getParentFile().mkdirs();
+			file.createNewFile();
+			this.fWrite = new RandomAccessFile(file, "rw");
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		this.file = file;
+		this.serializer = serializer;
+		this.writeCodec = writeCodec;
+		this.readCodec = readCodec;
+		this.blockSizeBytes = blockSizeBytes;
+		this.stats = stats;
+		this.block = new ByteArrayOutputStreamNoCopyUnsynchronized(blockSizeBytes);
+		this.blockOutput = new DataOutputStream(block);
+		this.compressed = new byte[writeCodec.maxCompressedLength(blockSizeBytes)];
+		this.readBlock = new byte[blockSizeBytes];
+		this.input = new DataInputStream(new BlockReader());
+	}
+
+	@Override
+	public boolean offer(T t) {
+		try {
+			synchronized (writeLock) {
+				serializer.serialize(blockOutput, t);
+				size.incrementAndGet();
+				if (block.size() >= blockSizeBytes) {
+					writeBlock();
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// must hold writeLock
+	private void writeBlock() throws IOException {
+		int length = block.size();
+		int max = writeCodec.maxCompressedLength(length);
+		if (compressed.length < max) {
+			compressed = new byte[max];
+		}
+		int n = writeCodec.compress(block.toByteArrayNoCopy(), length, compressed);
+		if (fWrite == null) {
+			// freeResources has been called and then an item offered
+			fWrite = new RandomAccessFile(file, "rw");
+		}
+		long wp = writePosition;
+		writeInt(blockHeader, 0, n);
+		writeInt(blockHeader, 4, length);
+		fWrite.seek(wp);
+		fWrite.write(blockHeader);
+		fWrite.write(compressed, 0, n);
+		block.reset();
+		writePosition = wp + BLOCK_HEADER_BYTES + n;
+		stats.blockCompressed(length, n);
+	}
+
+	@Override
+	public T poll() {
+		// limited thread-safety
+		// poll calls must be sequential but can happen concurrently with other
+		// methods except unsubscribe
+		try {
+			return pollNext();
+		} catch (EOFException e) {
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private T pollNext() throws IOException {
+		if (readBlockPosition == readBlockLength && !nextBlock()) {
+			throw EOF;
+		}
+		T t = serializer.deserialize(input);
+		size.decrementAndGet();
+		if (t == null) {
+			// same trick as FileBasedSPSCQueue, relies on type erasure
+			return NullSentinel.instance();
+		} else {
+			return t;
+		}
+	}
+
+	/**
+	 * Loads the next block into {@code readBlock} from the file or if all
+	 * blocks in the file have been read then from the current block of the
+	 * writer.
+	 *
+	 * @return false if there are no items to read
+	 * @throws IOException
+	 *             on read or decompression failure
+	 */
+	private boolean nextBlock() throws IOException {
+		if (readPosition < writePosition) {
+			readBlockFromFile();
+			return true;
+		}
+		synchronized (writeLock) {
+			if (readPosition < writePosition) {
+				// the writer wrote the block between our checks, it has to be
+				// read first to preserve order
+			} else if (block.size() == 0) {
+				return false;
+			} else {
+				int length = block.size();
+				ensureReadBlockCapacity(length);
+				System.arraycopy(block.toByteArrayNoCopy(), 0, readBlock, 0, length);
+				block.reset();
+				readBlockLength = length;
+				readBlockPosition = 0;
+				return true;
+			}
+		}
+		readBlockFromFile();
+		return true;
+	}
+
+	private void readBlockFromFile() throws IOException {
+		synchronized (readLock) {
+			if (fRead == null) {
+				try {
+					fRead = new RandomAccessFile(file, "r");
+				} catch (FileNotFoundException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			fRead.seek(readPosition);
+			int n = fRead.readInt();
+			int length = fRead.readInt();
+			if (readCompressed.length < n) {
+				readCompressed = new byte[n];
+			}
+			fRead.readFully(readCompressed, 0, n);
+			ensureReadBlockCapacity(length);
+			readCodec.decompress(readCompressed, n, readBlock, length);
+			readPosition += BLOCK_HEADER_BYTES + n;
+			readBlockLength = length;
+			readBlockPosition = 0;
+		}
+	}
+
+	private void ensureReadBlockCapacity(int length) {
+		if (readBlock.length < length) {
+			readBlock = new byte[length];
+		}
+	}
+
+	private final class BlockReader extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			if (readBlockPosition < readBlockLength) {
+				return readBlock[readBlockPosition++] & 0xFF;
+			} else {
+				throw EOF;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int n = Math.min(len, readBlockLength - readBlockPosition);
+			if (n <= 0) {
+				throw EOF;
+			}
+			System.arraycopy(readBlock, readBlockPosition, b, off, n);
+			readBlockPosition += n;
+			return n;
+		}
+	}
+
+	private static void writeInt(byte[] b, int offset, int v) {
+		b[offset] = (byte) (v >>> 24);
+		b[offset + 1] = (byte) (v >>> 16);
+		b[offset + 2] = (byte) (v >>> 8);
+		b[offset + 3] = (byte) v;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size.get() == 0;
+	}
+
+	@Override
+	public void freeResources() {
+		// called when the writer has finished with this queue, the reader will
+		// reopen the file if it still has blocks to read
+		synchronized (writeLock) {
+			close(fWrite);
+			fWrite = null;
+		}
+		synchronized (readLock) {
+			close(fRead);
+			fRead = null;
+		}
+	}
+
+	@Override
+	public long resourcesSize() {
+		return writePosition;
+	}
+
+	@Override
+	public long bytesOnDisk() {
+		return unsubscribed ? 0 : writePosition;
+	}
+
+	@Override
+	public long segments() {
+		return unsubscribed ? 0 : 1;
+	}
+
+	@Override
+	public long rollovers() {
+		return 0;
+	}
+
+	@Override
+	public boolean reset() {
+		if (unsubscribed) {
+			return false;
+		}
+		synchronized (writeLock) {
+			block.reset();
+			writePosition = 0;
+		}
+		readPosition = 0;
+		readBlockLength = 0;
+		readBlockPosition = 0;
+		size.set(0);
+		return true;
+	}
+
+	@Override
+	public void unsubscribe() {
+		// must not run concurrently with offer/poll
+		if (unsubscribed) {
+			return;
+		}
+		unsubscribed = true;
+		freeResources();
+		size.set(0);
+		if (!file.delete()) {
+			throw new RuntimeException("could not delete file " + file);
+		}
+	}
+
+	private static void close(RandomAccessFile f) {
+		if (f != null) {
+			try {
+				f.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	@Override
+	public boolean isUnsubscribed() {
+		return unsubscribed;
+	}
+
+	@Override
+	public T element() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public T peek() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int size() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean add(T e) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public T remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object[] toArray() {
+		throw new UnsupportedOperationException();
+	}
+
+	@SuppressWarnings("hiding")
+	@Override
+	public <T> T[] toArray(T[] a) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException();
+	}
+
+}
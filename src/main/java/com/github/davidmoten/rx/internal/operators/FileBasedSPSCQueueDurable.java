@@ -0,0 +1,699 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializer;
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
+import com.github.davidmoten.rx.buffertofile.SyncPolicy;
+import com.github.davidmoten.util.ByteArrayOutputStreamNoCopyUnsynchronized;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.schedulers.Schedulers;
+
+/**
+ * <p>
+ * A file based queue that survives a restart of the JVM. Items are written as
+ * records of {@code [length][crc32][serialized bytes]} to a sequence of
+ * segment files named {@code <file>.<segmentNumber>} and the read position is
+ * checkpointed to {@code <file>} itself every {@code checkpointEvery} polls,
+ * on moving to a new segment and on unsubscribe. The checkpointed position
+ * only covers items returned by earlier calls to {@code poll()} than the
+ * latest one because those are known to have been emitted by the time the
+ * next call is made.
+ *
+ * <p>
+ * When constructed with a {@code file} that has segments left over from a
+ * previous instance the queue reattaches to them, reading from the last
+ * checkpoint. The last segment is scanned and truncated at the first
+ * incomplete or corrupt record (a torn write). Because the read position is
+ * only checkpointed periodically, items polled since the last checkpoint are
+ * delivered again after a crash (at-least-once).
+ *
+ * <p>
+ * On unsubscribe the files are deleted if all items have been read, otherwise
+ * they are kept so that a later instance can resume.
+ *
+ * <p>
+ * Written records are forced to disk according to the {@link SyncPolicy}
+ * using a {@link GroupCommitSyncer} and always before a segment is closed.
+ * The checkpoint file is not synced because a stale checkpoint only causes
+ * items to be delivered again.
+ *
+ * <p>
+ * Thread-safety is as for {@link FileBasedSPSCQueue}: calls to
+ * {@code offer()} must be sequential and calls to {@code poll()} must be
+ * sequential but the two may happen concurrently. {@code unsubscribe()} must
+ * not run concurrently with {@code offer()} or {@code poll()}.
+ *
+ * @param <T>
+ *            type of item on queue
+ */
+class FileBasedSPSCQueueDurable<T> implements QueueWithResources<T>, QueueGauges {
+
+	static final int HEADER_SIZE = 8;
+	private static final int CHECKPOINT_SIZE = 24;
+
+	private final File file;
+	private final DataSerializer<T> serializer;
+	private final long rolloverSizeBytes;
+	private final long rolloverEvery;
+	private final int checkpointEvery;
+	// null if SyncPolicy.never()
+	private final GroupCommitSyncer syncer;
+	private final Object writeLock = new Object();
+
+	// writer state, only accessed by offer()
+	private final ByteArrayOutputStreamNoCopyUnsynchronized record;
+	private final DataOutputStream recordOutput;
+	private final CRC32 writeCrc = new CRC32();
+	private RandomAccessFile writer;
+	private long itemsInSegment;
+
+	// guarded by writeLock
+	private long writeSegment;
+	private long writePosition;
+	private long rollovers;
+
+	// reader state, only accessed by poll() (except for volatile reads in
+	// isEmpty())
+	private final byte[] readBuffer;
+	private final RecordInputStream recordInputStream;
+	private final DataInputStream recordInput;
+	private final CRC32 readCrc = new CRC32();
+	private final byte[] header = new byte[HEADER_SIZE];
+	private byte[] body = new byte[32];
+	private RandomAccessFile reader;
+	private long readerLimit;
+	private int readBufferPosition;
+	private int readBufferLength;
+	private long readerFilePosition;
+	private volatile long readSegment;
+	private volatile long readPosition;
+	// position after the items returned by all but the latest call to poll
+	// (those items are known to have been emitted)
+	private long committedSegment;
+	private long committedPosition;
+	private int pollsSinceCheckpoint;
+
+	private RandomAccessFile checkpoint;
+	private volatile boolean unsubscribed;
+
+	FileBasedSPSCQueueDurable(File file, DataSerializer<T> serializer, int bufferSizeBytes,
+			long rolloverSizeBytes, long rolloverEvery, int checkpointEvery, SyncPolicy syncPolicy) {
+		Preconditions.checkNotNull(file);
+		Preconditions.checkNotNull(serializer);
+		Preconditions.checkArgument(bufferSizeBytes > 0, "bufferSizeBytes must be greater than zero");
+		Preconditions.checkArgument(checkpointEvery > 0, "checkpointEvery must be greater than zero");
+		Preconditions.checkNotNull(syncPolicy);
+		this.file = file;
+		this.serializer = serializer;
+		this.rolloverSizeBytes = rolloverSizeBytes;
+		this.rolloverEvery = rolloverEvery;
+		this.checkpointEvery = checkpointEvery;
+		this.readBuffer = new byte[bufferSizeBytes];
+		this.record = new ByteArrayOutputStreamNoCopyUnsynchronized(bufferSizeBytes);
+		this.recordOutput = new DataOutputStream(record);
+		this.recordInputStream = new RecordInputStream();
+		this.recordInput = new DataInputStream(recordInputStream);
+		this.syncer = syncPolicy.isNever() ? null : new GroupCommitSyncer(syncPolicy, Schedulers.io());
+		try {
+			recover();
+			if (syncer != null) {
+				syncer.switchTo(writer.getChannel());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void recover() throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		parent.mkdirs();
+		file.createNewFile();
+		checkpoint = new RandomAccessFile(file, "rw");
+		List<Long> segments = segmentNumbers(parent, file.getName());
+		long[] cp = readCheckpoint();
+		long rs;
+		long rp;
+		if (cp == null) {
+			rs = segments.isEmpty() ? 0 : segments.get(0);
+			rp = 0;
+		} else {
+			rs = cp[0];
+			rp = cp[1];
+		}
+		// remove segments already fully read
+		Iterator<Long> it = segments.iterator();
+		while (it.hasNext()) {
+			long n = it.next();
+			if (n < rs) {
+				segmentFile(n).delete();
+				it.remove();
+			}
+		}
+		if (segments.isEmpty()) {
+			rs = cp == null ? 0 : cp[0];
+			rp = 0;
+			segmentFile(rs).createNewFile();
+			segments.add(rs);
+		} else if (segments.get(0) != rs) {
+			// segment deleted but checkpoint not written before crash
+			rs = segments.get(0);
+			rp = 0;
+		}
+		long ws = segments.get(segments.size() - 1);
+		RandomAccessFile w = new RandomAccessFile(segmentFile(ws), "rw");
+		if (ws == rs && rp > w.length()) {
+			// checkpoint beyond the content of the file (should not happen)
+			rp = 0;
+		}
+		long[] scan = scanValidRecords(w, ws == rs ? rp : 0);
+		long validEnd = scan[0];
+		// truncate torn write
+		w.setLength(validEnd);
+		w.seek(validEnd);
+		writer = w;
+		itemsInSegment = scan[1];
+		synchronized (writeLock) {
+			writeSegment = ws;
+			writePosition = validEnd;
+		}
+		readSegment = rs;
+		readPosition = rp;
+		committedSegment = rs;
+		committedPosition = rp;
+	}
+
+	private long[] scanValidRecords(RandomAccessFile f, long from) throws IOException {
+		long length = f.length();
+		long position = from;
+		long count = 0;
+		byte[] bytes = new byte[32];
+		CRC32 crc = new CRC32();
+		while (position + HEADER_SIZE <= length) {
+			f.seek(position);
+			int len = f.readInt();
+			int expectedCrc = f.readInt();
+			if (len < 0 || position + HEADER_SIZE + len > length) {
+				break;
+			}
+			if (bytes.length < len) {
+				bytes = new byte[len];
+			}
+			f.readFully(bytes, 0, len);
+			crc.reset();
+			crc.update(bytes, 0, len);
+			if ((int) crc.getValue() != expectedCrc) {
+				break;
+			}
+			position += HEADER_SIZE + len;
+			count++;
+		}
+		return new long[] { position, count };
+	}
+
+	private long[] readCheckpoint() throws IOException {
+		if (checkpoint.length() < CHECKPOINT_SIZE) {
+			return null;
+		}
+		checkpoint.seek(0);
+		long segment = checkpoint.readLong();
+		long position = checkpoint.readLong();
+		long crc = checkpoint.readLong();
+		if (crc != checkpointCrc(segment, position)) {
+			return null;
+		} else {
+			return new long[] { segment, position };
+		}
+	}
+
+	private void writeCheckpoint() throws IOException {
+		long segment = committedSegment;
+		long position = committedPosition;
+		byte[] bytes = new byte[CHECKPOINT_SIZE];
+		putLong(bytes, 0, segment);
+		putLong(bytes, 8, position);
+		putLong(bytes, 16, checkpointCrc(segment, position));
+		checkpoint.seek(0);
+		// single write so that a torn checkpoint is detected by the crc
+		checkpoint.write(bytes);
+		pollsSinceCheckpoint = 0;
+	}
+
+	private static long checkpointCrc(long segment, long position) {
+		byte[] bytes = new byte[16];
+		putLong(bytes, 0, segment);
+		putLong(bytes, 8, position);
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return crc.getValue();
+	}
+
+	private static List<Long> segmentNumbers(File directory, String prefix) {
+		List<Long> list = new ArrayList<Long>();
+		String[] names = directory.list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.startsWith(prefix + ".")) {
+					String suffix = name.substring(prefix.length() + 1);
+					try {
+						list.add(Long.parseLong(suffix));
+					} catch (NumberFormatException e) {
+						// not a segment
+					}
+				}
+			}
+		}
+		Collections.sort(list);
+		return list;
+	}
+
+	private File segmentFile(long segment) {
+		return new File(file.getPath() + "." + segment);
+	}
+
+	@Override
+	public boolean offer(T t) {
+		// limited thread-safety
+		// offer calls must be sequential but can happen concurrently with other
+		// methods except unsubscribe
+		try {
+			record.reset();
+			// reserve space for the header
+			recordOutput.writeLong(0);
+			serializer.serialize(recordOutput, t);
+			byte[] bytes = record.toByteArrayNoCopy();
+			int size = record.size();
+			int length = size - HEADER_SIZE;
+			writeCrc.reset();
+			writeCrc.update(bytes, HEADER_SIZE, length);
+			putInt(bytes, 0, length);
+			putInt(bytes, 4, (int) writeCrc.getValue());
+			long wp;
+			synchronized (writeLock) {
+				wp = writePosition;
+			}
+			if (wp > 0 && (wp >= rolloverSizeBytes || itemsInSegment >= rolloverEvery)) {
+				rollover();
+			}
+			writer.write(bytes, 0, size);
+			itemsInSegment++;
+			if (syncer != null) {
+				syncer.written(size);
+			}
+			synchronized (writeLock) {
+				writePosition += size;
+			}
+			return true;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void rollover() throws IOException {
+		long next;
+		synchronized (writeLock) {
+			next = writeSegment + 1;
+		}
+		RandomAccessFile w = new RandomAccessFile(segmentFile(next), "rw");
+		if (syncer != null) {
+			// the previous segment is synced before it is closed
+			syncer.switchTo(w.getChannel());
+		}
+		writer.close();
+		writer = w;
+		itemsInSegment = 0;
+		// once published the previous segment is complete and the reader
+		// uses its file length as the read limit
+		synchronized (writeLock) {
+			writeSegment = next;
+			writePosition = 0;
+			rollovers++;
+		}
+	}
+
+	@Override
+	public T poll() {
+		// limited thread-safety
+		// poll calls must be sequential but can happen concurrently with other
+		// methods except unsubscribe
+		try {
+			commit();
+			if (!next()) {
+				return null;
+			}
+			return readRecord();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void commit() throws IOException {
+		// all items returned by previous calls to poll have been emitted so
+		// their position can be checkpointed
+		long rs = readSegment;
+		if (committedSegment != rs) {
+			for (long n = committedSegment; n < rs; n++) {
+				segmentFile(n).delete();
+			}
+			committedSegment = rs;
+			committedPosition = readPosition;
+			writeCheckpoint();
+		} else {
+			committedPosition = readPosition;
+			if (pollsSinceCheckpoint >= checkpointEvery) {
+				writeCheckpoint();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if a complete record is available at the current read
+	 * position, moving to the next segment if the current one has been read
+	 * fully. Segments read fully are deleted by {@code commit()}.
+	 */
+	private boolean next() throws IOException {
+		while (true) {
+			long ws;
+			long wp;
+			synchronized (writeLock) {
+				ws = writeSegment;
+				wp = writePosition;
+			}
+			long rs = readSegment;
+			if (reader == null) {
+				reader = new RandomAccessFile(segmentFile(rs), "r");
+				readerFilePosition = readPosition;
+				readBufferPosition = 0;
+				readBufferLength = 0;
+			}
+			if (rs == ws) {
+				readerLimit = wp;
+			} else {
+				readerLimit = reader.length();
+			}
+			if (readPosition + HEADER_SIZE <= readerLimit) {
+				return true;
+			} else if (rs == ws) {
+				return false;
+			} else {
+				// segment read fully, move to the next one
+				reader.close();
+				reader = null;
+				readPosition = 0;
+				readSegment = rs + 1;
+			}
+		}
+	}
+
+	private T readRecord() throws IOException {
+		readFully(header, HEADER_SIZE);
+		int length = getInt(header, 0);
+		int expectedCrc = getInt(header, 4);
+		if (body.length < length) {
+			body = new byte[Math.max(length, body.length * 2)];
+		}
+		readFully(body, length);
+		readCrc.reset();
+		readCrc.update(body, 0, length);
+		if ((int) readCrc.getValue() != expectedCrc) {
+			throw new IOException("crc check failed for record at position " + readPosition
+					+ " in " + segmentFile(readSegment));
+		}
+		readPosition += HEADER_SIZE + length;
+		pollsSinceCheckpoint++;
+		recordInputStream.reset(body, length);
+		T t = serializer.deserialize(recordInput);
+		if (t == null) {
+			// this is a trick that we can get away with due to type erasure
+			// in java as long as the return value of poll() is checked
+			// using NullSentinel.isNullSentinel(t) (?)
+			return NullSentinel.instance();
+		} else {
+			return t;
+		}
+	}
+
+	// reads length bytes into dst using the read buffer, the caller ensures
+	// that the bytes are within readerLimit
+	private void readFully(byte[] dst, int length) throws IOException {
+		int copied = 0;
+		while (copied < length) {
+			if (readBufferPosition == readBufferLength) {
+				int n = (int) Math.min(readBuffer.length, readerLimit - readerFilePosition);
+				reader.seek(readerFilePosition);
+				reader.readFully(readBuffer, 0, n);
+				readerFilePosition += n;
+				readBufferPosition = 0;
+				readBufferLength = n;
+			}
+			int n = Math.min(length - copied, readBufferLength - readBufferPosition);
+			System.arraycopy(readBuffer, readBufferPosition, dst, copied, n);
+			readBufferPosition += n;
+			copied += n;
+		}
+	}
+
+	private static final class RecordInputStream extends InputStream {
+
+		private byte[] bytes;
+		private int position;
+		private int length;
+
+		void reset(byte[] bytes, int length) {
+			this.bytes = bytes;
+			this.length = length;
+			this.position = 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (position == length) {
+				return -1;
+			} else {
+				return bytes[position++] & 0xFF;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position == length) {
+				return -1;
+			}
+			int n = Math.min(len, length - position);
+			System.arraycopy(bytes, position, b, off, n);
+			position += n;
+			return n;
+		}
+	}
+
+	private static void putInt(byte[] b, int offset, int v) {
+		b[offset] = (byte) (v >>> 24);
+		b[offset + 1] = (byte) (v >>> 16);
+		b[offset + 2] = (byte) (v >>> 8);
+		b[offset + 3] = (byte) v;
+	}
+
+	private static int getInt(byte[] b, int offset) {
+		return ((b[offset] & 0xFF) << 24) | ((b[offset + 1] & 0xFF) << 16)
+				| ((b[offset + 2] & 0xFF) << 8) | (b[offset + 3] & 0xFF);
+	}
+
+	private static void putLong(byte[] b, int offset, long v) {
+		putInt(b, offset, (int) (v >>> 32));
+		putInt(b, offset + 4, (int) v);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		synchronized (writeLock) {
+			return readSegment == writeSegment && readPosition >= writePosition;
+		}
+	}
+
+	@Override
+	public void unsubscribe() {
+		// must not run concurrently with offer/poll
+		if (unsubscribed) {
+			return;
+		}
+		unsubscribed = true;
+		try {
+			boolean empty = isEmpty();
+			if (reader != null) {
+				reader.close();
+				reader = null;
+			}
+			if (syncer != null) {
+				syncer.unsubscribe();
+				if (!empty) {
+					syncer.switchTo(null);
+				}
+			}
+			writer.close();
+			if (empty) {
+				checkpoint.close();
+				long ws;
+				synchronized (writeLock) {
+					ws = writeSegment;
+				}
+				for (long n = committedSegment; n <= ws; n++) {
+					segmentFile(n).delete();
+				}
+				if (!file.delete()) {
+					throw new RuntimeException("could not delete file " + file);
+				}
+			} else {
+				// keep the files so that another instance can resume
+				writeCheckpoint();
+				checkpoint.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public boolean isUnsubscribed() {
+		return unsubscribed;
+	}
+
+	@Override
+	public void freeResources() {
+		// do nothing
+	}
+
+	@Override
+	public long resourcesSize() {
+		synchronized (writeLock) {
+			return writePosition;
+		}
+	}
+
+	@Override
+	public long bytesOnDisk() {
+		if (unsubscribed) {
+			return 0;
+		}
+		long ws;
+		long bytes;
+		synchronized (writeLock) {
+			ws = writeSegment;
+			bytes = writePosition;
+		}
+		for (long n = readSegment; n < ws; n++) {
+			bytes += segmentFile(n).length();
+		}
+		return bytes;
+	}
+
+	@Override
+	public long segments() {
+		if (unsubscribed) {
+			return 0;
+		}
+		synchronized (writeLock) {
+			return writeSegment - readSegment + 1;
+		}
+	}
+
+	@Override
+	public long rollovers() {
+		synchronized (writeLock) {
+			return rollovers;
+		}
+	}
+
+	@Override
+	public boolean reset() {
+		return false;
+	}
+
+	@Override
+	public T element() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public T peek() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int size() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean add(T e) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public T remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object[] toArray() {
+		throw new UnsupportedOperationException();
+	}
+
+	@SuppressWarnings("hiding")
+	@Override
+	public <T> T[] toArray(T[] a) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException();
+	}
+
+}
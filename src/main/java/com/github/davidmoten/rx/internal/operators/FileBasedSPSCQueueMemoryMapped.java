@@ -2,21 +2,31 @@ package com.github.davidmoten.rx.internal.operators;
 
 import java.io.File;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.github.davidmoten.rx.buffertofile.DataSerializer;
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
 import com.github.davidmoten.rx.internal.operators.FileBasedSPSCQueueMemoryMappedReaderWriter.EOFRuntimeException;
 import com.github.davidmoten.util.Preconditions;
 
 import rx.functions.Func0;
 
-public final class FileBasedSPSCQueueMemoryMapped<T> implements QueueWithSubscription<T> {
+public final class FileBasedSPSCQueueMemoryMapped<T> implements QueueWithSubscription<T>, QueueGauges {
+
+    // total bytes of segments created by all instances in this JVM and not
+    // yet closed
+    private static final AtomicLong MAPPED_BYTES = new AtomicLong();
+
+    private final List<FileBasedSPSCQueueMemoryMappedReaderWriter<T>> segments = new ArrayList<FileBasedSPSCQueueMemoryMappedReaderWriter<T>>();
 
     private final Queue<FileBasedSPSCQueueMemoryMappedReaderWriter<T>> inactive = new LinkedList<FileBasedSPSCQueueMemoryMappedReaderWriter<T>>();
     private final Deque<FileBasedSPSCQueueMemoryMappedReaderWriter<T>> toRead = new ArrayDeque<FileBasedSPSCQueueMemoryMappedReaderWriter<T>>();
@@ -30,23 +40,94 @@ public final class FileBasedSPSCQueueMemoryMapped<T> implements QueueWithSubscri
     private final AtomicInteger wip = new AtomicInteger();
     private volatile boolean unsubscribed = false;
     private final AtomicLong count = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // written only by offer(), read by the gauges
+    private volatile long segmentsCreated;
+    private volatile long rollovers;
 
     private final DataSerializer<T> serializer;
+    private final long mappedBytesLimit;
 
     public FileBasedSPSCQueueMemoryMapped(Func0<File> factory, int size,
             DataSerializer<T> serializer) {
+        this(factory, size, serializer, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param factory
+     *            creates the files for segments
+     * @param size
+     *            size in bytes of each segment
+     * @param serializer
+     *            serializer for items
+     * @param mappedBytesLimit
+     *            a {@link SegmentUnavailableException} is thrown if creating a
+     *            segment would take the bytes of open segments of all
+     *            instances in the JVM over this limit
+     */
+    public FileBasedSPSCQueueMemoryMapped(Func0<File> factory, int size,
+            DataSerializer<T> serializer, long mappedBytesLimit) {
         Preconditions.checkNotNull(factory);
         Preconditions.checkNotNull(serializer);
         this.factory = factory;
         this.size = size;
         this.serializer = serializer;
-        File file = factory.call();
-        this.writer = new FileBasedSPSCQueueMemoryMappedReaderWriter<T>(file, size, serializer);
-        this.reader = writer.openForWrite().openForRead();
+        this.mappedBytesLimit = mappedBytesLimit;
+        this.writer = createSegment();
+        this.reader = writer.openForRead();
         // store store barrier
         wip.lazySet(0);
     }
 
+    /**
+     * Thrown when a new segment could not be created because of the mapped
+     * bytes limit or because mapping the file failed (for example when the
+     * address space is exhausted). The queue cannot accept more items after
+     * this is thrown but items already offered can still be polled.
+     */
+    static final class SegmentUnavailableException extends RuntimeException {
+
+        private static final long serialVersionUID = 2904795462364436532L;
+
+        SegmentUnavailableException(String message) {
+            super(message);
+        }
+
+        SegmentUnavailableException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private FileBasedSPSCQueueMemoryMappedReaderWriter<T> createSegment() {
+        if (MAPPED_BYTES.addAndGet(size) > mappedBytesLimit) {
+            MAPPED_BYTES.addAndGet(-size);
+            throw new SegmentUnavailableException(
+                    "mapped bytes limit of " + mappedBytesLimit + " reached");
+        }
+        FileBasedSPSCQueueMemoryMappedReaderWriter<T> segment = null;
+        try {
+            segment = new FileBasedSPSCQueueMemoryMappedReaderWriter<T>(factory.call(), size,
+                    serializer);
+            segment.openForWrite();
+        } catch (RuntimeException e) {
+            MAPPED_BYTES.addAndGet(-size);
+            if (segment != null) {
+                segment.close();
+                segment.delete();
+            }
+            throw new SegmentUnavailableException(e);
+        }
+        segments.add(segment);
+        segmentsCreated = segments.size();
+        return segment;
+    }
+
+    static long mappedBytes() {
+        return MAPPED_BYTES.get();
+    }
+
     @Override
     public void unsubscribe() {
         wip.incrementAndGet();
@@ -66,27 +147,36 @@ public final class FileBasedSPSCQueueMemoryMapped<T> implements QueueWithSubscri
             wip.incrementAndGet();
             if (unsubscribed)
                 return true;
+            final boolean result;
             if (!writer.offer(t)) {
                 // note that writer will be in a closed state if we follow this
                 // path
                 FileBasedSPSCQueueMemoryMappedReaderWriter<T> nextWriter;
                 synchronized (lock) {
                     nextWriter = inactive.poll();
-                    if (nextWriter == null) {
-                        nextWriter = new FileBasedSPSCQueueMemoryMappedReaderWriter<T>(
-                                factory.call(), size, serializer);
-                    }
-                    toRead.offerLast(nextWriter);
+                }
+                if (nextWriter == null) {
+                    // opened for write before being made visible to the
+                    // reader
+                    nextWriter = createSegment();
+                } else {
                     nextWriter.openForWrite();
                 }
+                synchronized (lock) {
+                    toRead.offerLast(nextWriter);
+                }
                 writer = nextWriter;
-                return writer.offer(t);
+                rollovers++;
+                result = writer.offer(t);
             } else {
-                return true;
+                result = true;
+            }
+            if (result) {
+                count.incrementAndGet();
             }
+            return result;
         } finally {
             checkUnsubscribe();
-            count.incrementAndGet();
         }
     }
 
@@ -98,8 +188,13 @@ public final class FileBasedSPSCQueueMemoryMapped<T> implements QueueWithSubscri
     }
 
     private void close() {
-        writer.close();
-        reader.close();
+        if (closed.compareAndSet(false, true)) {
+            for (FileBasedSPSCQueueMemoryMappedReaderWriter<T> segment : segments) {
+                segment.close();
+                segment.delete();
+            }
+            MAPPED_BYTES.addAndGet(-(long) size * segments.size());
+        }
     }
 
     @Override
@@ -135,6 +230,21 @@ public final class FileBasedSPSCQueueMemoryMapped<T> implements QueueWithSubscri
         }
     }
 
+    @Override
+    public long bytesOnDisk() {
+        return closed.get() ? 0 : segmentsCreated * size;
+    }
+
+    @Override
+    public long segments() {
+        return closed.get() ? 0 : segmentsCreated;
+    }
+
+    @Override
+    public long rollovers() {
+        return rollovers;
+    }
+
     @Override
     public int size() {
         throw new UnsupportedOperationException();
@@ -8,11 +8,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.github.davidmoten.rx.buffertofile.ByteBufferSerializer;
 import com.github.davidmoten.rx.buffertofile.DataSerializer;
 import com.github.davidmoten.util.ByteArrayOutputStreamNoCopyUnsynchronized;
 import com.github.davidmoten.util.Preconditions;
@@ -26,6 +28,8 @@ public class FileBasedSPSCQueueMemoryMappedReaderWriter<T> {
 	private MappedByteBuffer read;
 	private MappedByteBuffer write;
 	private final DataSerializer<T> serializer;
+	// non-null if serializer reads and writes the mapped buffers directly
+	private final ByteBufferSerializer<T> byteBufferSerializer;
 	private final File file;
 	private final int fileSize;
 	private final DataOutput buffer;
@@ -45,11 +49,21 @@ public class FileBasedSPSCQueueMemoryMappedReaderWriter<T> {
 				"serializer.size() must be less than or equal to file based queue size - 2");
 		this.file = file;
 		this.serializer = serializer;
+		this.byteBufferSerializer = byteBufferSerializer(serializer);
 		this.fileSize = fileSize;
 		this.bytes = new ByteArrayOutputStreamNoCopyUnsynchronized();
 		this.buffer = new DataOutputStream(bytes);
 	}
 
+	@SuppressWarnings("unchecked")
+	private static <T> ByteBufferSerializer<T> byteBufferSerializer(DataSerializer<T> serializer) {
+		if (serializer instanceof ByteBufferSerializer) {
+			return (ByteBufferSerializer<T>) serializer;
+		} else {
+			return null;
+		}
+	}
+
 	public FileBasedSPSCQueueMemoryMappedReaderWriter<T> openForRead() {
 		// System.out.println("openForRead " + file);
 
@@ -181,6 +195,11 @@ public class FileBasedSPSCQueueMemoryMappedReaderWriter<T> {
 		public void write(int b) throws IOException {
 			write.put((byte) b);
 		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			write.put(b, off, len);
+		}
 	}
 
 	private static class MappedByteBufferInputStream extends InputStream {
@@ -196,6 +215,14 @@ public class FileBasedSPSCQueueMemoryMappedReaderWriter<T> {
 			return toUnsignedInteger(read.get());
 		}
 
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			// the serializer only reads bytes that were written for the item
+			// so a bulk get is safe
+			read.get(b, off, len);
+			return len;
+		}
+
 	}
 
 	private static int toUnsignedInteger(byte b) {
@@ -231,7 +258,13 @@ public class FileBasedSPSCQueueMemoryMappedReaderWriter<T> {
 			throw EOF;
 		} else if (marker == MARKER_ITEM_PRESENT) {
 			try {
-				T t = serializer.deserialize(input);
+				final T t;
+				if (byteBufferSerializer != null) {
+					// read straight from the mapped buffer
+					t = byteBufferSerializer.deserialize(read);
+				} else {
+					t = serializer.deserialize(input);
+				}
 				if (t == null) {
 					// this is a trick that we can get away with due to type
 					// erasure in java as long as the return value of poll() is
@@ -260,7 +293,9 @@ public class FileBasedSPSCQueueMemoryMappedReaderWriter<T> {
 		// the current position will be just past the length bytes for this
 		// item (length bytes will be 0 at the moment)
 		int serializedLength = serializer.size();
-		if (serializedLength == UNKNOWN_LENGTH) {
+		if (byteBufferSerializer != null) {
+			return offerDirect(t);
+		} else if (serializedLength == UNKNOWN_LENGTH) {
 			return offerUnknownLength(t);
 		} else {
 			return offerKnownLength(t, serializedLength);
@@ -304,6 +339,31 @@ public class FileBasedSPSCQueueMemoryMappedReaderWriter<T> {
 		}
 	}
 
+	private boolean offerDirect(T t) {
+		int position = write.position();
+		try {
+			// keep space for the end of queue marker
+			write.limit(write.capacity() - MARKER_HEADER_SIZE);
+			// serialize straight into the mapped buffer
+			byteBufferSerializer.serialize(write, t);
+		} catch (BufferOverflowException e) {
+			write.limit(write.capacity());
+			write.position(position);
+			if (position == MARKER_HEADER_SIZE) {
+				throw new RuntimeException("serialized length is larger than can fit in one file");
+			}
+			markFileAsCompletedAndClose();
+			return false;
+		}
+		write.limit(write.capacity());
+		try {
+			updateMarkers(write.position() - position);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return true;
+	}
+
 	private void checkLength(int serializedLength, int length) {
 		if (length > serializedLength) {
 			throw new IllegalArgumentException(
@@ -343,10 +403,17 @@ public class FileBasedSPSCQueueMemoryMappedReaderWriter<T> {
 
 	public void close() {
 		try {
-			f.close();
+			RandomAccessFile file = f;
+			if (file != null) {
+				file.close();
+			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	public void delete() {
+		file.delete();
+	}
+
 }
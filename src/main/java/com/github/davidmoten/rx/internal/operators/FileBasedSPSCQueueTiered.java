@@ -0,0 +1,224 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Queue;
+
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.functions.Func0;
+import rx.internal.util.atomic.SpscAtomicArrayQueue;
+import rx.internal.util.unsafe.SpscArrayQueue;
+import rx.internal.util.unsafe.UnsafeAccess;
+
+/**
+ * <p>
+ * Holds items as objects in a bounded in-memory ring and only writes to a file
+ * based queue (created on first use) once the ring is full. From then on items
+ * are written to the file queue until the reader has emptied it, so items in
+ * the ring are always older than items in the file queue and FIFO order is
+ * preserved.
+ *
+ * <p>
+ * Has the same thread-safety as the file queue it wraps: calls to
+ * {@code offer()} must be sequential and calls to {@code poll()} must be
+ * sequential but the two may happen concurrently.
+ *
+ * @param <T>
+ *            type of item on queue
+ */
+final class FileBasedSPSCQueueTiered<T> implements QueueWithSubscription<T>, QueueGauges {
+
+    private final Queue<Object> memory;
+    private final Func0<QueueWithSubscription<T>> overflowFactory;
+
+    // set once by the writer
+    private volatile QueueWithSubscription<T> overflow;
+
+    // writer thread only, true while items are being written to overflow
+    private boolean spilling;
+
+    private volatile boolean unsubscribed;
+
+    FileBasedSPSCQueueTiered(int capacity, Func0<QueueWithSubscription<T>> overflowFactory) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be greater than zero");
+        Preconditions.checkNotNull(overflowFactory);
+        if (UnsafeAccess.isUnsafeAvailable()) {
+            this.memory = new SpscArrayQueue<Object>(capacity);
+        } else {
+            this.memory = new SpscAtomicArrayQueue<Object>(capacity);
+        }
+        this.overflowFactory = overflowFactory;
+    }
+
+    boolean isSpilling() {
+        return spilling;
+    }
+
+    @Override
+    public long bytesOnDisk() {
+        return Gauges.bytesOnDisk(overflow);
+    }
+
+    @Override
+    public long segments() {
+        return Gauges.segments(overflow);
+    }
+
+    @Override
+    public long rollovers() {
+        return Gauges.rollovers(overflow);
+    }
+
+    @Override
+    public boolean offer(T t) {
+        if (unsubscribed) {
+            return true;
+        }
+        if (spilling && overflow.isEmpty()) {
+            // everything written to overflow has been read so items in memory
+            // are the oldest again
+            spilling = false;
+        }
+        if (!spilling) {
+            // the ring cannot hold null
+            if (memory.offer(t == null ? NullSentinel.instance() : t)) {
+                return true;
+            }
+            spilling = true;
+        }
+        QueueWithSubscription<T> f = overflow;
+        if (f == null) {
+            f = overflowFactory.call();
+            overflow = f;
+            if (unsubscribed) {
+                f.unsubscribe();
+            }
+        }
+        return f.offer(t);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        if (unsubscribed) {
+            return null;
+        }
+        // check overflow before polling memory. If overflow has items the
+        // writer will not add to memory until they are read so an empty
+        // memory means the overflow items are next. If overflow is empty it
+        // may be written to after the poll of memory (when memory fills) and
+        // then memory must be read first.
+        QueueWithSubscription<T> f = overflow;
+        boolean overflowHasItems = f != null && !f.isEmpty();
+        T t = (T) memory.poll();
+        if (t != null) {
+            return t;
+        } else if (overflowHasItems) {
+            return f.poll();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (unsubscribed) {
+            return true;
+        }
+        QueueWithSubscription<T> f = overflow;
+        return memory.isEmpty() && (f == null || f.isEmpty());
+    }
+
+    @Override
+    public void unsubscribe() {
+        unsubscribed = true;
+        QueueWithSubscription<T> f = overflow;
+        if (f != null) {
+            f.unsubscribe();
+        }
+    }
+
+    @Override
+    public boolean isUnsubscribed() {
+        return unsubscribed;
+    }
+
+    @Override
+    public int size() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object[] toArray() {
+        throw new UnsupportedOperationException();
+    }
+
+    @SuppressWarnings("hiding")
+    @Override
+    public <T> T[] toArray(T[] a) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean add(T e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T element() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T peek() {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
+
+/**
+ * Reads the {@link QueueGauges} of a wrapped queue, treating a null queue or
+ * one without gauges as empty.
+ */
+final class Gauges {
+
+    private Gauges() {
+        // prevent instantiation
+    }
+
+    static long bytesOnDisk(Object queue) {
+        if (queue instanceof QueueGauges) {
+            return ((QueueGauges) queue).bytesOnDisk();
+        } else {
+            return 0;
+        }
+    }
+
+    static long segments(Object queue) {
+        if (queue instanceof QueueGauges) {
+            return ((QueueGauges) queue).segments();
+        } else {
+            return 0;
+        }
+    }
+
+    static long rollovers(Object queue) {
+        if (queue instanceof QueueGauges) {
+            return ((QueueGauges) queue).rollovers();
+        } else {
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.github.davidmoten.rx.buffertofile.SyncPolicy;
+
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.plugins.RxJavaHooks;
+
+/**
+ * Forces written bytes of a file to disk according to a {@link SyncPolicy}.
+ * The writer reports each write with {@link #written(int)} and when a
+ * threshold is reached a sync is scheduled on a background worker. Writes that
+ * happen while a sync is pending or in progress are covered by the next sync
+ * (group commit) so at most one sync is outstanding at a time.
+ */
+final class GroupCommitSyncer implements Subscription {
+
+    private final SyncPolicy policy;
+    private final Worker worker;
+    private final AtomicBoolean syncRequested = new AtomicBoolean();
+    private final Action0 syncAction = new Action0() {
+        @Override
+        public void call() {
+            syncNow();
+        }
+    };
+
+    // set by the writer thread, read by the sync thread
+    private volatile FileChannel channel;
+
+    // set by the writer thread when bytes written, cleared by the sync thread
+    // before the sync
+    private volatile boolean dirty;
+
+    // writer thread only
+    private long recordsSinceSync;
+    private long bytesSinceSync;
+
+    GroupCommitSyncer(SyncPolicy policy, Scheduler scheduler) {
+        this.policy = policy;
+        this.worker = scheduler.createWorker();
+        if (policy.everyMs() > 0) {
+            worker.schedulePeriodically(syncAction, policy.everyMs(), policy.everyMs(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Forces the current channel to disk (so that it can be closed by the
+     * caller) and sets the channel that subsequent syncs apply to. Called from
+     * the writer thread.
+     *
+     * @param next
+     *            the channel about to be written to, may be null
+     * @throws IOException
+     *             if the sync fails
+     */
+    void switchTo(FileChannel next) throws IOException {
+        FileChannel c = channel;
+        if (c != null) {
+            c.force(false);
+        }
+        channel = next;
+    }
+
+    /**
+     * Records that a record of {@code bytes} bytes has been written and
+     * requests a sync if the policy threshold has been reached. Called from
+     * the writer thread.
+     *
+     * @param bytes
+     *            number of bytes written
+     */
+    void written(int bytes) {
+        dirty = true;
+        recordsSinceSync++;
+        bytesSinceSync += bytes;
+        if (policy.everyRecords() > 0 && recordsSinceSync >= policy.everyRecords()
+                || policy.everyBytes() > 0 && bytesSinceSync >= policy.everyBytes()) {
+            recordsSinceSync = 0;
+            bytesSinceSync = 0;
+            if (syncRequested.compareAndSet(false, true)) {
+                worker.schedule(syncAction);
+            }
+        }
+    }
+
+    private void syncNow() {
+        syncRequested.set(false);
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        FileChannel c = channel;
+        if (c != null) {
+            try {
+                c.force(false);
+            } catch (ClosedChannelException e) {
+                // the writer closed the channel after its own sync in
+                // switchTo
+            } catch (IOException e) {
+                RxJavaHooks.onError(e);
+            }
+        }
+    }
+
+    @Override
+    public void unsubscribe() {
+        worker.unsubscribe();
+    }
+
+    @Override
+    public boolean isUnsubscribed() {
+        return worker.isUnsubscribed();
+    }
+
+}
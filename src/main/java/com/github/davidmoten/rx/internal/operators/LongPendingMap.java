@@ -0,0 +1,213 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Map from primitive {@code long} keys to the non-null values waiting for a
+ * match under that key, polled in arrival order. Uses open addressing with
+ * linear probing so no entry objects are allocated. A key with one waiting
+ * value holds it inline and only gets a queue once a second value arrives.
+ *
+ * <p>
+ * The table is split into shards by the high bits of the hash. Each shard
+ * resizes on its own so that a resize rehashes only a fraction of the entries
+ * rather than stalling the stream on one very large table.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+final class LongPendingMap {
+
+    private static final int SHARD_BITS = 4;
+    private static final int INITIAL_SHARD_CAPACITY = 16;
+
+    private final Shard[] shards;
+
+    LongPendingMap() {
+        shards = new Shard[1 << SHARD_BITS];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Adds a value after any values already waiting under the key.
+     *
+     * @param key
+     *            key
+     * @param value
+     *            non-null value
+     */
+    void add(long key, Object value) {
+        long h = hash(key);
+        shards[(int) (h >>> (64 - SHARD_BITS))].add(key, (int) h, value);
+    }
+
+    /**
+     * Removes and returns the earliest value waiting under the key or returns
+     * null if there is none.
+     *
+     * @param key
+     *            key
+     * @return earliest value or null
+     */
+    Object poll(long key) {
+        long h = hash(key);
+        return shards[(int) (h >>> (64 - SHARD_BITS))].poll(key, (int) h);
+    }
+
+    boolean isEmpty() {
+        for (Shard shard : shards) {
+            if (shard.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of keys with waiting values.
+     *
+     * @return number of keys
+     */
+    int keyCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.size;
+        }
+        return count;
+    }
+
+    void clear() {
+        for (Shard shard : shards) {
+            shard.clear();
+        }
+    }
+
+    // murmur3 finalizer, spreads sequential ids over shards and slots
+    private static long hash(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // marks a slot holding more than one value
+    @SuppressWarnings("serial")
+    private static final class Values extends ArrayDeque<Object> {
+        Values() {
+            super(4);
+        }
+    }
+
+    private static final class Shard {
+
+        private long[] keys = new long[INITIAL_SHARD_CAPACITY];
+        // null marks an empty slot
+        private Object[] values = new Object[INITIAL_SHARD_CAPACITY];
+        private int mask = INITIAL_SHARD_CAPACITY - 1;
+        int size;
+
+        void add(long key, int hash, Object value) {
+            int i = hash & mask;
+            Object v;
+            while ((v = values[i]) != null) {
+                if (keys[i] == key) {
+                    Values q;
+                    if (v instanceof Values) {
+                        q = (Values) v;
+                    } else {
+                        q = new Values();
+                        q.offer(v);
+                        values[i] = q;
+                    }
+                    q.offer(value);
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+            // keep at most half full so that probes stay short
+            if (2 * size > values.length) {
+                resize();
+            }
+        }
+
+        Object poll(long key, int hash) {
+            int i = hash & mask;
+            Object v;
+            while ((v = values[i]) != null) {
+                if (keys[i] == key) {
+                    if (v instanceof Values) {
+                        Values q = (Values) v;
+                        Object value = q.poll();
+                        if (q.size() == 1) {
+                            // back to inline
+                            values[i] = q.poll();
+                        }
+                        return value;
+                    } else {
+                        removeAt(i);
+                        return v;
+                    }
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        void clear() {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+
+        // backward shift deletion so that no tombstones are needed
+        private void removeAt(int i) {
+            int j = i;
+            for (;;) {
+                j = (j + 1) & mask;
+                if (values[j] == null) {
+                    break;
+                }
+                int home = (int) hash(keys[j]) & mask;
+                // move the entry at j into the gap at i unless its home slot
+                // lies cyclically in (i, j]
+                boolean stays = i <= j ? i < home && home <= j : i < home || home <= j;
+                if (!stays) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            values[i] = null;
+            size--;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            int capacity = oldValues.length * 2;
+            keys = new long[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            for (int k = 0; k < oldValues.length; k++) {
+                if (oldValues[k] != null) {
+                    int i = (int) hash(oldKeys[k]) & mask;
+                    while (values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[k];
+                    values[i] = oldValues[k];
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializer;
+
+import rx.functions.Func0;
+
+/**
+ * <p>
+ * On-disk hash index of the waiting items of one source of a match. Items are
+ * appended to a single file and each record points at the previous record of
+ * the same bucket, so only the head offset and the record count of each bucket
+ * are held in memory. Each record also holds the hash of its key so that
+ * taking the items of one key reads only their payloads and unlinks them from
+ * the chain, leaving the other keys of the bucket on disk.
+ *
+ * <p>
+ * The file is truncated once no records are live and is rewritten with only
+ * the live records once it is more than twice their size.
+ *
+ * <p>
+ * Used by the drain loop of a match only, except that {@link #close()} may be
+ * called on unsubscription from another thread.
+ *
+ * @param <T>
+ *            item type
+ */
+final class MatchSpillStore<T> {
+
+    // rewrite the file only once at least this many bytes are dead
+    private static final long COMPACT_MIN_DEAD_BYTES = 1024 * 1024;
+    // record header: offset of the previous record, payload length and key
+    // hash
+    private static final int HEADER_BYTES = 16;
+
+    private final DataSerializer<T> serializer;
+    private final Object nullSentinel;
+    private final Func0<File> fileFactory;
+    private final long[] heads;
+    private final int[] counts;
+
+    private final Buffer buffer = new Buffer();
+    private final DataOutputStream output = new DataOutputStream(buffer);
+    private final byte[] header = new byte[HEADER_BYTES];
+
+    private File file;
+    private RandomAccessFile raf;
+    // end of the file
+    private long end;
+    // bytes of live records
+    private long liveBytes;
+    // number of live records
+    private int size;
+    private boolean closed;
+
+    MatchSpillStore(DataSerializer<T> serializer, Object nullSentinel, Func0<File> fileFactory,
+            int buckets) {
+        this.serializer = serializer;
+        this.nullSentinel = nullSentinel;
+        this.fileFactory = fileFactory;
+        this.heads = new long[buckets];
+        Arrays.fill(heads, -1);
+        this.counts = new int[buckets];
+    }
+
+    /**
+     * Returns the number of records in the bucket.
+     *
+     * @param bucket
+     *            bucket
+     * @return record count
+     */
+    int count(int bucket) {
+        return counts[bucket];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Appends an item (or the null sentinel) to the bucket.
+     *
+     * @param bucket
+     *            bucket
+     * @param hash
+     *            hash of the key of the item
+     * @param value
+     *            item or null sentinel
+     * @throws IOException
+     *             on write failure
+     */
+    @SuppressWarnings("unchecked")
+    synchronized void add(int bucket, int hash, Object value) throws IOException {
+        checkOpen();
+        if (raf == null) {
+            file = fileFactory.call();
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+        }
+        buffer.reset();
+        if (value == nullSentinel) {
+            output.writeBoolean(false);
+        } else {
+            output.writeBoolean(true);
+            serializer.serialize(output, (T) value);
+        }
+        output.flush();
+        write(raf, end, heads[bucket], hash, buffer.array(), buffer.size());
+        heads[bucket] = end;
+        counts[bucket]++;
+        size++;
+        long length = HEADER_BYTES + buffer.size();
+        end += length;
+        liveBytes += length;
+    }
+
+    /**
+     * Removes and returns the items of the bucket whose key has the given
+     * hash, oldest first. Only the record headers of the other items are read.
+     *
+     * @param bucket
+     *            bucket
+     * @param hash
+     *            hash of the key
+     * @return items (with the null sentinel for null)
+     * @throws IOException
+     *             on read failure
+     */
+    synchronized List<Object> take(int bucket, int hash) throws IOException {
+        checkOpen();
+        if (counts[bucket] == 0) {
+            return Collections.emptyList();
+        }
+        List<Object> list = new ArrayList<Object>();
+        // walk from the newest record, unlinking those with the hash
+        long newer = -1;
+        long position = heads[bucket];
+        while (position >= 0) {
+            raf.seek(position);
+            long previous = raf.readLong();
+            int length = raf.readInt();
+            if (raf.readInt() == hash) {
+                byte[] record = new byte[length];
+                raf.readFully(record);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+                if (in.readBoolean()) {
+                    list.add(serializer.deserialize(in));
+                } else {
+                    list.add(nullSentinel);
+                }
+                if (newer < 0) {
+                    heads[bucket] = previous;
+                } else {
+                    raf.seek(newer);
+                    raf.writeLong(previous);
+                }
+                counts[bucket]--;
+                size--;
+                liveBytes -= HEADER_BYTES + length;
+            } else {
+                newer = position;
+            }
+            position = previous;
+        }
+        if (list.isEmpty()) {
+            return list;
+        }
+        Collections.reverse(list);
+        if (size == 0) {
+            raf.setLength(0);
+            end = 0;
+            liveBytes = 0;
+        } else if (end - liveBytes > Math.max(COMPACT_MIN_DEAD_BYTES, liveBytes)) {
+            compact();
+        }
+        return list;
+    }
+
+    /**
+     * Closes and deletes the file. Further reads and writes fail.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            file.delete();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+    }
+
+    private void compact() throws IOException {
+        File newFile = fileFactory.call();
+        RandomAccessFile newRaf = new RandomAccessFile(newFile, "rw");
+        try {
+            newRaf.setLength(0);
+            long position = 0;
+            for (int bucket = 0; bucket < heads.length; bucket++) {
+                if (counts[bucket] == 0) {
+                    continue;
+                }
+                long previous = -1;
+                for (Record record : readChain(raf, heads[bucket], counts[bucket])) {
+                    write(newRaf, position, previous, record.hash, record.payload,
+                            record.payload.length);
+                    previous = position;
+                    position += HEADER_BYTES + record.payload.length;
+                }
+                heads[bucket] = previous;
+            }
+            end = position;
+        } catch (IOException e) {
+            newRaf.close();
+            newFile.delete();
+            throw e;
+        }
+        raf.close();
+        file.delete();
+        raf = newRaf;
+        file = newFile;
+    }
+
+    // returns the records of the chain ending at head, oldest first
+    private static List<Record> readChain(RandomAccessFile raf, long head, int count)
+            throws IOException {
+        List<Record> records = new ArrayList<Record>(count);
+        long position = head;
+        while (position >= 0) {
+            raf.seek(position);
+            long previous = raf.readLong();
+            byte[] payload = new byte[raf.readInt()];
+            int hash = raf.readInt();
+            raf.readFully(payload);
+            records.add(new Record(hash, payload));
+            position = previous;
+        }
+        Collections.reverse(records);
+        return records;
+    }
+
+    private void write(RandomAccessFile raf, long position, long previous, int hash,
+            byte[] bytes, int length) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            header[i] = (byte) (previous >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < 4; i++) {
+            header[8 + i] = (byte) (length >>> (24 - 8 * i));
+        }
+        for (int i = 0; i < 4; i++) {
+            header[12 + i] = (byte) (hash >>> (24 - 8 * i));
+        }
+        raf.seek(position);
+        raf.write(header);
+        raf.write(bytes, 0, length);
+    }
+
+    private static final class Record {
+        final int hash;
+        final byte[] payload;
+
+        Record(int hash, byte[] payload) {
+            this.hash = hash;
+            this.payload = payload;
+        }
+    }
+
+    // exposes the backing array to avoid a copy per record
+    private static final class Buffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.github.davidmoten.rx.buffertofile.CacheType;
+import com.github.davidmoten.util.Preconditions;
+
+/**
+ * <p>
+ * Holds recently written items of a file based queue as objects keyed by their
+ * position in the queue together with their serialized length, so that the
+ * reader can skip over the bytes instead of deserializing them.
+ *
+ * <p>
+ * {@code put} is called by the writer thread and {@code take} by the reader
+ * thread, possibly concurrently.
+ *
+ * @param <T>
+ *            type of item cached
+ */
+final class ObjectCache<T> {
+
+    private final CacheType cacheType;
+    private final long maxBytes;
+    private final CacheCounters stats;
+    private final AtomicReferenceArray<Entry> slots;
+
+    // serialized length of the cached items
+    private final AtomicLong bytes = new AtomicLong();
+
+    // reader thread only
+    private int takenLength;
+
+    ObjectCache(CacheType cacheType, int maxItems, long maxBytes, CacheCounters stats) {
+        Preconditions.checkNotNull(cacheType);
+        Preconditions.checkArgument(cacheType != CacheType.NO_CACHE, "cacheType cannot be NO_CACHE");
+        Preconditions.checkArgument(maxItems > 0, "maxItems must be greater than zero");
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes must be greater than zero");
+        Preconditions.checkNotNull(stats);
+        this.cacheType = cacheType;
+        this.maxBytes = maxBytes;
+        this.stats = stats;
+        this.slots = new AtomicReferenceArray<Entry>(maxItems);
+    }
+
+    private static final class Entry {
+        final long index;
+        final int length;
+        // the item (or NullSentinel) or a Reference to it
+        private final Object value;
+
+        Entry(long index, int length, Object value) {
+            this.index = index;
+            this.length = length;
+            this.value = value;
+        }
+
+        // null if the item has been garbage collected
+        Object value() {
+            if (value instanceof Reference) {
+                return ((Reference<?>) value).get();
+            } else {
+                return value;
+            }
+        }
+    }
+
+    void put(long index, T t, int length) {
+        if (bytes.get() + length > maxBytes) {
+            return;
+        }
+        Object v = t == null ? NullSentinel.instance() : t;
+        if (cacheType == CacheType.SOFT_REF) {
+            v = new SoftReference<Object>(v);
+        } else if (cacheType == CacheType.WEAK_REF) {
+            v = new WeakReference<Object>(v);
+        }
+        Entry entry = new Entry(index, length, v);
+        int i = slot(index);
+        if (cacheType == CacheType.LEAST_RECENTLY_USED) {
+            bytes.addAndGet(length);
+            Entry evicted = slots.getAndSet(i, entry);
+            if (evicted != null) {
+                bytes.addAndGet(-evicted.length);
+            }
+        } else if (slots.compareAndSet(i, null, entry)) {
+            bytes.addAndGet(length);
+        }
+    }
+
+    /**
+     * Removes and returns the item at the given position in the queue
+     * (NullSentinel if the item was null), or returns null if it is not in the
+     * cache. Records a hit or a miss.
+     *
+     * @param index
+     *            position of the item in the queue
+     * @return the cached item or null
+     */
+    Object take(long index) {
+        int i = slot(index);
+        Entry entry = slots.get(i);
+        if (entry != null && entry.index == index && slots.compareAndSet(i, entry, null)) {
+            bytes.addAndGet(-entry.length);
+            Object v = entry.value();
+            if (v != null) {
+                takenLength = entry.length;
+                stats.hit();
+                return v;
+            }
+        }
+        stats.miss();
+        return null;
+    }
+
+    /**
+     * Returns the serialized length of the item last returned by
+     * {@code take}. Reader thread only.
+     *
+     * @return length in bytes
+     */
+    int takenLength() {
+        return takenLength;
+    }
+
+    /**
+     * Removes all entries. Must not run concurrently with put or take.
+     */
+    void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+        bytes.set(0);
+    }
+
+    private int slot(long index) {
+        return (int) (index % slots.length());
+    }
+
+}
@@ -1,52 +1,112 @@
 package com.github.davidmoten.rx.internal.operators;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.github.davidmoten.rx.MatchOptions;
+import com.github.davidmoten.rx.ToLongFunc1;
 import com.github.davidmoten.util.Preconditions;
 
 import rx.Observable;
 import rx.Observable.OnSubscribe;
 import rx.Producer;
+import rx.Scheduler.Worker;
 import rx.Subscriber;
+import rx.functions.Action0;
 import rx.functions.Func1;
 import rx.functions.Func2;
 import rx.internal.operators.BackpressureUtils;
 import rx.internal.util.unsafe.MpscLinkedQueue;
 import rx.internal.util.unsafe.UnsafeAccess;
+import rx.subscriptions.Subscriptions;
 
 public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
 
     private final Observable<A> a;
     private final Observable<B> b;
-    private final Func1<? super A, ? extends K> aKey;
-    private final Func1<? super B, ? extends K> bKey;
+    private final IndexFactory<A, B> indexFactory;
     private final Func2<? super A, ? super B, C> combiner;
     private final long requestSize;
+    private final MatchOptions<A, B> options;
 
     private static final Object NULL_SENTINEL = new Object();
 
     public OnSubscribeMatch(Observable<A> a, Observable<B> b, Func1<? super A, ? extends K> aKey,
             Func1<? super B, ? extends K> bKey, Func2<? super A, ? super B, C> combiner,
             long requestSize) {
+        this(a, b, aKey, bKey, combiner, requestSize, MatchOptions.<A, B> defaultInstance());
+    }
+
+    public OnSubscribeMatch(Observable<A> a, Observable<B> b, Func1<? super A, ? extends K> aKey,
+            Func1<? super B, ? extends K> bKey, Func2<? super A, ? super B, C> combiner,
+            long requestSize, MatchOptions<A, B> options) {
+        this(a, b, new HashIndexFactory<A, B, K>(aKey, bKey, options), combiner, requestSize,
+                options);
+    }
+
+    private OnSubscribeMatch(Observable<A> a, Observable<B> b, IndexFactory<A, B> indexFactory,
+            Func2<? super A, ? super B, C> combiner, long requestSize,
+            MatchOptions<A, B> options) {
         Preconditions.checkNotNull(a, "a should not be null");
         Preconditions.checkNotNull(b, "b should not be null");
-        Preconditions.checkNotNull(aKey, "aKey cannot be null");
-        Preconditions.checkNotNull(bKey, "bKey cannot be null");
         Preconditions.checkNotNull(combiner, "combiner cannot be null");
         Preconditions.checkArgument(requestSize >= 1, "requestSize must be >=1");
+        Preconditions.checkNotNull(options, "options cannot be null");
         this.a = a;
         this.b = b;
-        this.aKey = aKey;
-        this.bKey = bKey;
+        this.indexFactory = indexFactory;
         this.combiner = combiner;
         this.requestSize = requestSize;
+        this.options = options;
+    }
+
+    /**
+     * Returns a match on primitive {@code long} keys. Waiting items are held
+     * in open-addressing maps without boxing the keys or allocating a queue
+     * for keys with a single waiting item.
+     * 
+     * @param a
+     *            source a
+     * @param b
+     *            source b
+     * @param aKey
+     *            key of an item of a
+     * @param bKey
+     *            key of an item of b
+     * @param combiner
+     *            combines matching items
+     * @param requestSize
+     *            number of items requested from each source at a time
+     * @param options
+     *            bounds on the waiting items, spilling is not supported
+     * @param <A>
+     *            type of a
+     * @param <B>
+     *            type of b
+     * @param <C>
+     *            result type
+     * @return match
+     */
+    public static <A, B, C> OnSubscribeMatch<A, B, Long, C> longKeyed(Observable<A> a,
+            Observable<B> b, ToLongFunc1<? super A> aKey, ToLongFunc1<? super B> bKey,
+            Func2<? super A, ? super B, C> combiner, long requestSize,
+            MatchOptions<A, B> options) {
+        Preconditions.checkArgument(!options.spills(), "spilling is not supported for long keys");
+        return new OnSubscribeMatch<A, B, Long, C>(a, b, new LongIndexFactory<A, B>(aKey, bKey),
+                combiner, requestSize, options);
     }
 
     @Override
@@ -56,10 +116,33 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
         MySubscriber<B, K> bSub = new MySubscriber<B, K>(Source.B, receiverHolder, requestSize);
         child.add(aSub);
         child.add(bSub);
-        MyProducer<A, B, K, C> producer = new MyProducer<A, B, K, C>(a, b, aKey, bKey, combiner,
-                aSub, bSub, child, requestSize);
+        // bounded matches evict waiting items so need an index that can
+        // remove them
+        final EvictableIndex<A, B> evictable = options.isBounded()
+                ? indexFactory.createEvictable() : null;
+        final Index<A, B> index = evictable != null ? evictable : indexFactory.create();
+        final MyProducer<A, B, K, C> producer = new MyProducer<A, B, K, C>(index, evictable,
+                combiner, aSub, bSub, child, requestSize, options);
         receiverHolder.set(producer);
+        // delete any spill files on unsubscription
+        child.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                index.close();
+            }
+        }));
         child.setProducer(producer);
+        if (options.expires()) {
+            Worker worker = options.scheduler().createWorker();
+            child.add(worker);
+            long period = Math.max(1, options.timeToLiveMs() / 2);
+            worker.schedulePeriodically(new Action0() {
+                @Override
+                public void call() {
+                    producer.tick();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
         a.unsafeSubscribe(aSub);
         b.unsafeSubscribe(bSub);
     }
@@ -70,18 +153,32 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
         // extends AtomicInteger as a work-in-progress atomic (wip)
 
         private final Queue<Object> queue;
-        private final Map<K, Queue<A>> as = new HashMap<K, Queue<A>>();
-        private final Map<K, Queue<B>> bs = new HashMap<K, Queue<B>>();
-        private final Func1<? super A, ? extends K> aKey;
-        private final Func1<? super B, ? extends K> bKey;
+        private final Index<A, B> index;
+        // the index when bounded, otherwise null
+        private final EvictableIndex<A, B> evictable;
         private final Func2<? super A, ? super B, C> combiner;
         private final Subscriber<? super C> child;
         private final MySubscriber<A, K> aSub;
         private final MySubscriber<B, K> bSub;
         private final long requestSize;
 
+        // bounded state, see MatchOptions
+        private final MatchOptions<A, B> options;
+        private final boolean bounded;
+        // waiting items of each source in arrival (and so expiry) order,
+        // entries that have since been matched are skipped lazily
+        private final ArrayDeque<Pending> pendingA;
+        private final ArrayDeque<Pending> pendingB;
+        // number of waiting items of each source
+        private int countA;
+        private int countB;
+
         private final AtomicLong requested = new AtomicLong(0);
 
+        // set by the periodic expiry check, cleared by the drain pass that
+        // runs it so that at most one check is outstanding
+        private final AtomicBoolean tickPending = new AtomicBoolean();
+
         // mutable fields, guarded by `this` atomics
         private int requestFromA = 0;
         private int requestFromB = 0;
@@ -94,12 +191,16 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
         private static final int COMPLETED_B = 2;
         private static final int COMPLETED_BOTH = 3;
 
-        MyProducer(Observable<A> a, Observable<B> b, Func1<? super A, ? extends K> aKey,
-                Func1<? super B, ? extends K> bKey, Func2<? super A, ? super B, C> combiner,
-                MySubscriber<A, K> aSub, MySubscriber<B, K> bSub, Subscriber<? super C> child,
-                long requestSize) {
-            this.aKey = aKey;
-            this.bKey = bKey;
+        MyProducer(Index<A, B> index, EvictableIndex<A, B> evictable,
+                Func2<? super A, ? super B, C> combiner, MySubscriber<A, K> aSub,
+                MySubscriber<B, K> bSub, Subscriber<? super C> child, long requestSize,
+                MatchOptions<A, B> options) {
+            this.index = index;
+            this.evictable = evictable;
+            this.options = options;
+            this.bounded = options.isBounded();
+            this.pendingA = bounded ? new ArrayDeque<Pending>() : null;
+            this.pendingB = bounded ? new ArrayDeque<Pending>() : null;
             this.combiner = combiner;
             this.child = child;
             this.aSub = aSub;
@@ -128,6 +229,15 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
             }
             int missed = 1;
             while (true) {
+                // expiry does not wait for downstream demand
+                if (tickPending.compareAndSet(true, false)) {
+                    if (child.isUnsubscribed()) {
+                        return;
+                    }
+                    if (evictExpired()) {
+                        return;
+                    }
+                }
                 long r = requested.get();
                 int emitted = 0;
                 while (r > emitted) {
@@ -181,98 +291,177 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
             } 
         }
 
+        @SuppressWarnings("unchecked")
         private Emitted handleItem(Object value, Source source) {
             final Emitted result;
-
-            // logic duplication occurs below
-            // would be nice to simplify without making code
-            // unreadable. A bit of a toss-up.
-            if (source == Source.A) {
-                // look for match
-                @SuppressWarnings("unchecked")
-                A a = (A) value;
-                K key;
-                try {
-                    key = aKey.call(a);
-                } catch (Throwable e) {
-                    clear();
-                    child.onError(e);
-                    return Emitted.FINISHED;
-                }
-                Queue<B> q = bs.get(key);
-                if (q == null) {
-                    // cache value
-                    add(as, key, a);
-                    result = Emitted.NONE;
+            if (bounded && evictExpired()) {
+                return Emitted.FINISHED;
+            }
+            // waiting items are wrapped with their arrival time when bounded
+            Object item = bounded ? new Pending(value, now()) : value;
+            // the earliest waiting item of the other source with the same
+            // key, or null if value is now waiting
+            Object other;
+            try {
+                if (source == Source.A) {
+                    other = index.matchA(item);
                 } else {
-                    // emit match
-                    B b = poll(bs, q, key);
-                    C c;
-                    try {
-                        c = combiner.call(replaceSentinel(a), replaceSentinel(b));
-                    } catch (Throwable e) {
-                        clear();
-                        child.onError(e);
-                        return Emitted.FINISHED;
-                    }
-                    child.onNext(c);
-                    result = Emitted.ONE;
+                    other = index.matchB(item);
                 }
-                // if the other source has completed and there
-                // is nothing to match with then we should stop
-                if (completed == COMPLETED_B && bs.isEmpty()) {
-                    // can finish
-                    clear();
-                    child.onCompleted();
+            } catch (Throwable e) {
+                // key function or spill file failed
+                clear();
+                child.onError(e);
+                return Emitted.FINISHED;
+            }
+            if (other == null) {
+                result = Emitted.NONE;
+                if (bounded && waiting(source, (Pending) item)) {
                     return Emitted.FINISHED;
-                } else {
-                    requestFromA += 1;
                 }
             } else {
-                // look for match
-                @SuppressWarnings("unchecked")
-                B b = (B) value;
-                K key;
+                if (bounded) {
+                    Pending p = (Pending) other;
+                    p.matched = true;
+                    other = p.value;
+                    if (source == Source.A) {
+                        countB--;
+                    } else {
+                        countA--;
+                    }
+                }
+                // emit match
+                C c;
                 try {
-                    key = bKey.call(b);
+                    if (source == Source.A) {
+                        c = combiner.call((A) replaceSentinel(value), (B) replaceSentinel(other));
+                    } else {
+                        c = combiner.call((A) replaceSentinel(other), (B) replaceSentinel(value));
+                    }
                 } catch (Throwable e) {
                     clear();
                     child.onError(e);
                     return Emitted.FINISHED;
                 }
-                Queue<A> q = as.get(key);
-                if (q == null) {
-                    // cache value
-                    add(bs, key, b);
-                    result = Emitted.NONE;
-                } else {
-                    // emit match
-                    A a = poll(as, q, key);
-                    C c;
-                    try {
-                        c = combiner.call(replaceSentinel(a), replaceSentinel(b));
-                    } catch (Throwable e) {
-                        clear();
-                        child.onError(e);
-                        return Emitted.FINISHED;
+                child.onNext(c);
+                result = Emitted.ONE;
+            }
+            // if the other source has completed and there
+            // is nothing to match with then we should stop
+            if (nothingToMatch()) {
+                // can finish
+                clear();
+                child.onCompleted();
+                return Emitted.FINISHED;
+            } else if (source == Source.A) {
+                requestFromA += 1;
+            } else {
+                requestFromB += 1;
+            }
+            // requests are batched so that each source gets a turn
+            checkToRequestMore();
+            return result;
+        }
+
+        // whether a source has completed and none of its items are waiting
+        // (the sources can have completed only one at a time)
+        private boolean nothingToMatch() {
+            return completed == COMPLETED_B && index.isEmptyB()
+                    || completed == COMPLETED_A && index.isEmptyA();
+        }
+
+        private long now() {
+            return options.expires() ? options.scheduler().now() : 0;
+        }
+
+        /**
+         * Records a newly waiting item and evicts the oldest waiting item of
+         * its source if there are now too many. Returns true if terminated.
+         */
+        private boolean waiting(Source source, Pending p) {
+            ArrayDeque<Pending> pending = source == Source.A ? pendingA : pendingB;
+            pending.offer(p);
+            int count = source == Source.A ? ++countA : ++countB;
+            // drop matched entries stuck behind an old waiting item
+            if (pending.size() > 2 * count + 16) {
+                Iterator<Pending> it = pending.iterator();
+                while (it.hasNext()) {
+                    if (it.next().matched) {
+                        it.remove();
                     }
-                    child.onNext(c);
-                    result = Emitted.ONE;
                 }
-                // if the other source has completed and there
-                // is nothing to match with then we should stop
-                if (completed == COMPLETED_A && as.isEmpty()) {
-                    // can finish
-                    clear();
-                    child.onCompleted();
-                    return Emitted.FINISHED;
+            }
+            if (count > options.maxPending()) {
+                return evictOldest(source);
+            } else {
+                return false;
+            }
+        }
+
+        /**
+         * Evicts the waiting items that have outlived the time to live.
+         * Returns true if terminated.
+         */
+        private boolean evictExpired() {
+            if (!options.expires()) {
+                return false;
+            }
+            long expired = now() - options.timeToLiveMs();
+            while (isExpired(pendingA, expired)) {
+                if (evictOldest(Source.A)) {
+                    return true;
+                }
+            }
+            while (isExpired(pendingB, expired)) {
+                if (evictOldest(Source.B)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isExpired(ArrayDeque<Pending> pending, long expired) {
+            Pending p;
+            while ((p = pending.peek()) != null && p.matched) {
+                pending.poll();
+            }
+            return p != null && p.time <= expired;
+        }
+
+        /**
+         * Evicts the oldest waiting item of the source, which is also the
+         * earliest waiting item under its key so is the one the index
+         * removes. Returns true if terminated.
+         */
+        @SuppressWarnings("unchecked")
+        private boolean evictOldest(Source source) {
+            ArrayDeque<Pending> pending = source == Source.A ? pendingA : pendingB;
+            Pending p;
+            while ((p = pending.poll()).matched) {
+                // skip
+            }
+            try {
+                if (source == Source.A) {
+                    countA--;
+                    evictable.removeA(p);
+                    options.onEvictA().call((A) replaceSentinel(p.value));
                 } else {
-                    requestFromB += 1;
+                    countB--;
+                    evictable.removeB(p);
+                    options.onEvictB().call((B) replaceSentinel(p.value));
                 }
+            } catch (Throwable e) {
+                clear();
+                child.onError(e);
+                return true;
+            }
+            if (nothingToMatch()) {
+                clear();
+                child.onCompleted();
+                return true;
+            } else {
+                return false;
             }
-            // requests are batched so that each source gets a turn
-            checkToRequestMore();
-            return result;
         }
 
         private enum Emitted {
@@ -284,10 +473,10 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
             final boolean done;
             if (source == Source.A) {
                 aSub.unsubscribe();
-                done = (completed == COMPLETED_BOTH) || (completed == COMPLETED_A && as.isEmpty());
+                done = (completed == COMPLETED_BOTH) || (completed == COMPLETED_A && index.isEmptyA());
             } else {
                 bSub.unsubscribe();
-                done = (completed == COMPLETED_BOTH) || (completed == COMPLETED_B && bs.isEmpty());
+                done = (completed == COMPLETED_BOTH) || (completed == COMPLETED_B && index.isEmptyB());
             }
             if (done) {
                 clear();
@@ -335,44 +524,499 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
         }
 
         private void clear() {
-            as.clear();
-            bs.clear();
+            index.clear();
             queue.clear();
+            if (bounded) {
+                pendingA.clear();
+                pendingB.clear();
+            }
             aSub.unsubscribe();
             bSub.unsubscribe();
         }
 
-        private static <K, T> void add(Map<K, Queue<T>> map, K key, T value) {
-            Queue<T> q = map.get(key);
-            if (q == null) {
-                q = new LinkedList<T>();
-                map.put(key, q);
+        @Override
+        public void offer(Object item) {
+            queue.offer(item);
+            drain();
+        }
+
+        /**
+         * Runs the expiry check on the next drain pass unless one is already
+         * outstanding.
+         */
+        void tick() {
+            if (tickPending.compareAndSet(false, true)) {
+                drain();
             }
-            q.offer(value);
         }
 
-        private static <K, T> T poll(Map<K, Queue<T>> map, Queue<T> q, K key) {
-            T t = q.poll();
+        private static <T> T replaceSentinel(T t) {
+            if (t == NULL_SENTINEL) {
+                return null;
+            } else {
+                return t;
+            }
+        }
+
+    }
+
+    /**
+     * The items of both sources waiting for a match. Items are non-null
+     * (null is replaced by a sentinel). Used only by the drain loop.
+     */
+    abstract static class Index<A, B> {
+
+        /**
+         * Returns and removes the earliest waiting item of b with the key of
+         * {@code a}, or returns null and keeps {@code a} waiting if there is
+         * none.
+         */
+        abstract Object matchA(Object a);
+
+        /**
+         * Returns and removes the earliest waiting item of a with the key of
+         * {@code b}, or returns null and keeps {@code b} waiting if there is
+         * none.
+         */
+        abstract Object matchB(Object b);
+
+        abstract boolean isEmptyA();
+
+        abstract boolean isEmptyB();
+
+        abstract void clear();
+
+        /**
+         * Releases resources held outside the heap. May be called from any
+         * thread.
+         */
+        void close() {
+            // nothing to release by default
+        }
+    }
+
+    /**
+     * Index of a bounded match, which evicts waiting items in arrival order.
+     */
+    abstract static class EvictableIndex<A, B> extends Index<A, B> {
+
+        /**
+         * Removes the earliest waiting item of a with the key of {@code a}.
+         */
+        abstract void removeA(Object a);
+
+        /**
+         * Removes the earliest waiting item of b with the key of {@code b}.
+         */
+        abstract void removeB(Object b);
+    }
+
+    abstract static class IndexFactory<A, B> {
+
+        abstract Index<A, B> create();
+
+        abstract EvictableIndex<A, B> createEvictable();
+    }
+
+    private static final class HashIndexFactory<A, B, K> extends IndexFactory<A, B> {
+
+        private final Func1<? super A, ? extends K> aKey;
+        private final Func1<? super B, ? extends K> bKey;
+        private final MatchOptions<A, B> options;
+
+        HashIndexFactory(Func1<? super A, ? extends K> aKey, Func1<? super B, ? extends K> bKey,
+                MatchOptions<A, B> options) {
+            Preconditions.checkNotNull(aKey, "aKey cannot be null");
+            Preconditions.checkNotNull(bKey, "bKey cannot be null");
+            this.aKey = aKey;
+            this.bKey = bKey;
+            this.options = options;
+        }
+
+        @Override
+        Index<A, B> create() {
+            if (options.spills()) {
+                return new SpillingIndex<A, B, K>(aKey, bKey, options);
+            } else {
+                return new HashIndex<A, B, K>(aKey, bKey);
+            }
+        }
+
+        @Override
+        EvictableIndex<A, B> createEvictable() {
+            // bounded matches do not spill
+            return new HashIndex<A, B, K>(aKey, bKey);
+        }
+    }
+
+    private static final class HashIndex<A, B, K> extends EvictableIndex<A, B> {
+
+        private final Map<K, Queue<Object>> as = new HashMap<K, Queue<Object>>();
+        private final Map<K, Queue<Object>> bs = new HashMap<K, Queue<Object>>();
+        private final Func1<? super A, ? extends K> aKey;
+        private final Func1<? super B, ? extends K> bKey;
+
+        HashIndex(Func1<? super A, ? extends K> aKey, Func1<? super B, ? extends K> bKey) {
+            this.aKey = aKey;
+            this.bKey = bKey;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Object matchA(Object a) {
+            return match(aKey.call((A) unwrap(a)), a, as, bs);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Object matchB(Object b) {
+            return match(bKey.call((B) unwrap(b)), b, bs, as);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void removeA(Object a) {
+            remove(aKey.call((A) unwrap(a)), as);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void removeB(Object b) {
+            remove(bKey.call((B) unwrap(b)), bs);
+        }
+
+        private static <K> void remove(K key, Map<K, Queue<Object>> map) {
+            Queue<Object> q = map.get(key);
+            q.poll();
             if (q.isEmpty()) {
                 map.remove(key);
             }
-            return t;
+        }
+
+        private static <K> Object match(K key, Object value, Map<K, Queue<Object>> mine,
+                Map<K, Queue<Object>> others) {
+            Queue<Object> q = others.get(key);
+            if (q == null) {
+                // cache value
+                q = mine.get(key);
+                if (q == null) {
+                    q = new LinkedList<Object>();
+                    mine.put(key, q);
+                }
+                q.offer(value);
+                return null;
+            } else {
+                Object other = q.poll();
+                if (q.isEmpty()) {
+                    others.remove(key);
+                }
+                return other;
+            }
         }
 
         @Override
-        public void offer(Object item) {
-            queue.offer(item);
-            drain();
+        boolean isEmptyA() {
+            return as.isEmpty();
         }
 
-        private static <T> T replaceSentinel(T t) {
-            if (t == NULL_SENTINEL) {
-                return null;
+        @Override
+        boolean isEmptyB() {
+            return bs.isEmpty();
+        }
+
+        @Override
+        void clear() {
+            as.clear();
+            bs.clear();
+        }
+    }
+
+    /**
+     * Hash index that keeps at most {@link MatchOptions#maxInMemory()} waiting
+     * items of each source in memory. Beyond that the least recently used keys
+     * are moved to a {@link MatchSpillStore} per source. An arriving item
+     * first reads back the items with the hash of its key from both stores so
+     * a key is always wholly in memory or wholly on disk, and the limit is
+     * enforced again once it is matched.
+     */
+    private static final class SpillingIndex<A, B, K> extends Index<A, B> {
+
+        // in access order so that the eldest entry is the coldest key
+        private final LinkedHashMap<K, Queue<Object>> as = new LinkedHashMap<K, Queue<Object>>(16,
+                0.75f, true);
+        private final LinkedHashMap<K, Queue<Object>> bs = new LinkedHashMap<K, Queue<Object>>(16,
+                0.75f, true);
+        private final MatchSpillStore<A> diskA;
+        private final MatchSpillStore<B> diskB;
+        private final Func1<? super A, ? extends K> aKey;
+        private final Func1<? super B, ? extends K> bKey;
+        private final int maxInMemory;
+        private final int mask;
+        // number of waiting items in memory
+        private int memA;
+        private int memB;
+
+        SpillingIndex(Func1<? super A, ? extends K> aKey, Func1<? super B, ? extends K> bKey,
+                MatchOptions<A, B> options) {
+            this.aKey = aKey;
+            this.bKey = bKey;
+            this.maxInMemory = options.maxInMemory();
+            this.mask = options.spillBuckets() - 1;
+            this.diskA = new MatchSpillStore<A>(options.serializerA(), NULL_SENTINEL,
+                    options.spillFileFactory(), options.spillBuckets());
+            this.diskB = new MatchSpillStore<B>(options.serializerB(), NULL_SENTINEL,
+                    options.spillFileFactory(), options.spillBuckets());
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Object matchA(Object a) {
+            K key = aKey.call((A) unwrap(a));
+            pageIn(key);
+            Object b = HashIndex.match(key, a, as, bs);
+            if (b == null) {
+                memA++;
             } else {
-                return t;
+                memB--;
+            }
+            checkInMemory();
+            return b;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Object matchB(Object b) {
+            K key = bKey.call((B) unwrap(b));
+            pageIn(key);
+            Object a = HashIndex.match(key, b, bs, as);
+            if (a == null) {
+                memB++;
+            } else {
+                memA--;
+            }
+            checkInMemory();
+            return a;
+        }
+
+        /**
+         * Reads back the waiting items of both sources with the hash of the
+         * key, which includes all of those with the key.
+         */
+        @SuppressWarnings("unchecked")
+        private void pageIn(K key) {
+            int hash = hashOf(key);
+            int bucket = bucketOf(hash);
+            try {
+                if (diskA.count(bucket) > 0) {
+                    for (Object a : diskA.take(bucket, hash)) {
+                        add(as, aKey.call((A) unwrap(a)), a);
+                        memA++;
+                    }
+                }
+                if (diskB.count(bucket) > 0) {
+                    for (Object b : diskB.take(bucket, hash)) {
+                        add(bs, bKey.call((B) unwrap(b)), b);
+                        memB++;
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // paging in can exceed the limit on either source
+        private void checkInMemory() {
+            if (memA > maxInMemory) {
+                memA = spill(as, memA, diskA);
+            }
+            if (memB > maxInMemory) {
+                memB = spill(bs, memB, diskB);
+            }
+        }
+
+        private static <K> void add(Map<K, Queue<Object>> map, K key, Object value) {
+            Queue<Object> q = map.get(key);
+            if (q == null) {
+                q = new LinkedList<Object>();
+                map.put(key, q);
+            }
+            q.offer(value);
+        }
+
+        /**
+         * Writes the least recently used keys to disk until a quarter of the
+         * allowed items are free so that spilling is not repeated on every
+         * item. Returns the number of items left in memory.
+         */
+        private int spill(LinkedHashMap<K, Queue<Object>> map, int count,
+                MatchSpillStore<?> disk) {
+            int target = maxInMemory - maxInMemory / 4;
+            Iterator<Entry<K, Queue<Object>>> it = map.entrySet().iterator();
+            try {
+                while (count > target && it.hasNext()) {
+                    Entry<K, Queue<Object>> entry = it.next();
+                    int hash = hashOf(entry.getKey());
+                    int bucket = bucketOf(hash);
+                    for (Object value : entry.getValue()) {
+                        disk.add(bucket, hash, value);
+                    }
+                    count -= entry.getValue().size();
+                    it.remove();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return count;
+        }
+
+        private static int hashOf(Object key) {
+            return key == null ? 0 : key.hashCode();
+        }
+
+        private int bucketOf(int hash) {
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        @Override
+        boolean isEmptyA() {
+            return as.isEmpty() && diskA.isEmpty();
+        }
+
+        @Override
+        boolean isEmptyB() {
+            return bs.isEmpty() && diskB.isEmpty();
+        }
+
+        @Override
+        void clear() {
+            as.clear();
+            bs.clear();
+            memA = 0;
+            memB = 0;
+            close();
+        }
+
+        @Override
+        void close() {
+            diskA.close();
+            diskB.close();
+        }
+    }
+
+    private static final class LongIndexFactory<A, B> extends IndexFactory<A, B> {
+
+        private final ToLongFunc1<? super A> aKey;
+        private final ToLongFunc1<? super B> bKey;
+
+        LongIndexFactory(ToLongFunc1<? super A> aKey, ToLongFunc1<? super B> bKey) {
+            Preconditions.checkNotNull(aKey, "aKey cannot be null");
+            Preconditions.checkNotNull(bKey, "bKey cannot be null");
+            this.aKey = aKey;
+            this.bKey = bKey;
+        }
+
+        @Override
+        Index<A, B> create() {
+            return new LongIndex<A, B>(aKey, bKey);
+        }
+
+        @Override
+        EvictableIndex<A, B> createEvictable() {
+            return new LongIndex<A, B>(aKey, bKey);
+        }
+    }
+
+    private static final class LongIndex<A, B> extends EvictableIndex<A, B> {
+
+        private final LongPendingMap as = new LongPendingMap();
+        private final LongPendingMap bs = new LongPendingMap();
+        private final ToLongFunc1<? super A> aKey;
+        private final ToLongFunc1<? super B> bKey;
+
+        LongIndex(ToLongFunc1<? super A> aKey, ToLongFunc1<? super B> bKey) {
+            this.aKey = aKey;
+            this.bKey = bKey;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Object matchA(Object a) {
+            long key = aKey.call((A) unwrap(a));
+            Object b = bs.poll(key);
+            if (b == null) {
+                as.add(key, a);
             }
+            return b;
         }
 
+        @SuppressWarnings("unchecked")
+        @Override
+        Object matchB(Object b) {
+            long key = bKey.call((B) unwrap(b));
+            Object a = as.poll(key);
+            if (a == null) {
+                bs.add(key, b);
+            }
+            return a;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void removeA(Object a) {
+            as.poll(aKey.call((A) unwrap(a)));
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void removeB(Object b) {
+            bs.poll(bKey.call((B) unwrap(b)));
+        }
+
+        @Override
+        boolean isEmptyA() {
+            return as.isEmpty();
+        }
+
+        @Override
+        boolean isEmptyB() {
+            return bs.isEmpty();
+        }
+
+        @Override
+        void clear() {
+            as.clear();
+            bs.clear();
+        }
+    }
+
+    /**
+     * A waiting item of a bounded match.
+     */
+    static final class Pending {
+        final Object value;
+        // arrival time
+        final long time;
+        boolean matched;
+
+        Pending(Object value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    // returns the value to pass to a key function
+    private static Object unwrap(Object item) {
+        Object value;
+        if (item instanceof Pending) {
+            value = ((Pending) item).value;
+        } else {
+            value = item;
+        }
+        if (value == NULL_SENTINEL) {
+            return null;
+        } else {
+            return value;
+        }
     }
 
     interface Receiver {
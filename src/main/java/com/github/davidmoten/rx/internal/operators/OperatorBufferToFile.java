@@ -5,8 +5,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.github.davidmoten.rx.buffertofile.CacheType;
 import com.github.davidmoten.rx.buffertofile.DataSerializer;
 import com.github.davidmoten.rx.buffertofile.Options;
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
 import com.github.davidmoten.util.Preconditions;
 
 import rx.Observable;
@@ -64,6 +66,12 @@ public final class OperatorBufferToFile<T> implements Operator<T, T> {
         // close and delete file based queues in RollingQueue on unsubscription
         child.add(queue);
 
+        // report the storage used by the queue until unsubscription
+        if (options.metrics() != null && queue instanceof QueueGauges) {
+            child.add(BufferToFileAccess.get().counters(options.metrics())
+                    .add((QueueGauges) queue));
+        }
+
         // ensure onStart not called twice
         Subscriber<T> wrappedChild = Subscribers.wrap(child);
 
@@ -76,27 +84,77 @@ public final class OperatorBufferToFile<T> implements Operator<T, T> {
         return parentSubscriber;
     }
 
-    private static final boolean MEMORY_MAPPED = "true"
-            .equals(System.getProperty("memory.mappped"));
-
     private static <T> QueueWithSubscription<T> createFileBasedQueue(
             final DataSerializer<T> dataSerializer, final Options options) {
-        if (MEMORY_MAPPED) {
-            // warning: still in development!
-            final int size;
-            if (options.rolloverSizeBytes() > Integer.MAX_VALUE) {
-                size = 20 * 1024 * 1024;// 20MB
-            } else {
-                size = (int) options.rolloverSizeBytes();
-            }
-            return new FileBasedSPSCQueueMemoryMapped<T>(options.fileFactory(), size,
-                    dataSerializer);
+        if (options.memoryBufferSize() > 0) {
+            // files are only created once the in-memory ring is full
+            return new FileBasedSPSCQueueTiered<T>(options.memoryBufferSize(),
+                    new Func0<QueueWithSubscription<T>>() {
+                        @Override
+                        public QueueWithSubscription<T> call() {
+                            return createFileQueue(dataSerializer, options);
+                        }
+                    });
+        } else {
+            return createFileQueue(dataSerializer, options);
+        }
+    }
+
+    private static <T> QueueWithSubscription<T> createFileQueue(
+            final DataSerializer<T> dataSerializer, final Options options) {
+        if (options.durable()) {
+            // the durable queue handles its own rollover so that segments
+            // can be found again after a restart
+            return new QueueWithResourcesNonBlockingUnsubscribe<T>(
+                    new FileBasedSPSCQueueDurable<T>(options.fileFactory().call(), dataSerializer,
+                            options.bufferSizeBytes(), options.rolloverSizeBytes(),
+                            options.rolloverEvery(), options.checkpointEvery(),
+                            options.syncPolicy()));
+        }
+        switch (options.queueEngine()) {
+        case MEMORY_MAPPED:
+            return new FileBasedSPSCQueueMemoryMapped<T>(options.fileFactory(),
+                    options.mappedSegmentSizeBytes(), dataSerializer);
+        case MEMORY_MAPPED_MULTI_PRODUCER:
+            return new FileBasedMPSCQueueMemoryMapped<T>(options.fileFactory(),
+                    options.mappedSegmentSizeBytes(), dataSerializer);
+        case ADAPTIVE:
+            return new FileBasedSPSCQueueAdaptive<T>(new Func0<QueueWithSubscription<T>>() {
+                @Override
+                public QueueWithSubscription<T> call() {
+                    return new FileBasedSPSCQueueMemoryMapped<T>(options.fileFactory(),
+                            options.mappedSegmentSizeBytes(), dataSerializer,
+                            options.mappedBytesLimit());
+                }
+            }, new Func0<QueueWithSubscription<T>>() {
+                @Override
+                public QueueWithSubscription<T> call() {
+                    return createStreamQueue(dataSerializer, options);
+                }
+            });
+        default:
+            return createStreamQueue(dataSerializer, options);
+        }
+    }
+
+    private static <T> QueueWithSubscription<T> createStreamQueue(
+            final DataSerializer<T> dataSerializer, final Options options) {
+        if (options.spillPool() != null) {
+            final SpillPoolQueue<T> q = new SpillPoolQueue<T>(
+                    BufferToFileAccess.get().file(options.spillPool()), dataSerializer,
+                    options.overflowStrategy());
+            return new QueueWithResourcesNonBlockingUnsubscribe<T>(q, new Action0() {
+                @Override
+                public void call() {
+                    q.cancel();
+                }
+            });
         }
         if (options.rolloverEvery() == Long.MAX_VALUE
-                && options.rolloverSizeBytes() == Long.MAX_VALUE) {
+                && options.rolloverSizeBytes() == Long.MAX_VALUE && !options.hasTotalLimit()) {
             // skip the Rollover version
-            return new QueueWithResourcesNonBlockingUnsubscribe<T>(new FileBasedSPSCQueue<T>(
-                    options.bufferSizeBytes(), options.fileFactory().call(), dataSerializer));
+            return new QueueWithResourcesNonBlockingUnsubscribe<T>(
+                    createStreamFileQueue(options.fileFactory().call(), dataSerializer, options));
         } else {
             final Func0<QueueWithResources<T>> queueFactory = new Func0<QueueWithResources<T>>() {
                 @Override
@@ -106,16 +164,45 @@ public final class OperatorBufferToFile<T> implements Operator<T, T> {
                     // for storage if multiple are required per queue)
                     File file = options.fileFactory().call();
 
-                    return new FileBasedSPSCQueue<T>(options.bufferSizeBytes(), file,
-                            dataSerializer);
+                    return createStreamFileQueue(file, dataSerializer, options);
                 }
             };
             // the wrapping class ensures that unsubscribe happens in the same
             // thread as the offer or poll which avoids the unsubscribe action
             // not getting a time-slice so that the open file limit is not
             // exceeded (new files are opened in the offer() call).
-            return new QueueWithResourcesNonBlockingUnsubscribe<T>(new RollingSPSCQueue<T>(
-                    queueFactory, options.rolloverSizeBytes(), options.rolloverEvery()));
+            final RollingSPSCQueue<T> rolling = new RollingSPSCQueue<T>(queueFactory,
+                    options.rolloverSizeBytes(), options.rolloverEvery(),
+                    options.maxTotalBytes(), options.maxTotalItems(),
+                    options.overflowStrategy(), options.segmentPoolSize(),
+                    BufferToFileAccess.get().counters(options.segmentPoolStats()));
+            // a blocked offer must return for the deferred unsubscribe to run
+            return new QueueWithResourcesNonBlockingUnsubscribe<T>(rolling, new Action0() {
+                @Override
+                public void call() {
+                    rolling.cancel();
+                }
+            });
+        }
+    }
+
+    private static <T> QueueWithResources<T> createStreamFileQueue(File file,
+            DataSerializer<T> dataSerializer, Options options) {
+        if (options.compression() == null) {
+            final ObjectCache<T> cache;
+            if (options.cacheType() == CacheType.NO_CACHE) {
+                cache = null;
+            } else {
+                cache = new ObjectCache<T>(options.cacheType(), options.cacheSizeItems(),
+                        options.cacheSizeBytes(),
+                        BufferToFileAccess.get().counters(options.cacheStats()));
+            }
+            return new FileBasedSPSCQueue<T>(options.bufferSizeBytes(), file, dataSerializer, cache);
+        } else {
+            return new FileBasedSPSCQueueCompressed<T>(file, dataSerializer,
+                    options.compression().call(), options.compression().call(),
+                    options.compressionBlockSizeBytes(),
+                    BufferToFileAccess.get().counters(options.compressionStats()));
         }
     }
 
@@ -136,7 +223,10 @@ public final class OperatorBufferToFile<T> implements Operator<T, T> {
 
         @Override
         public void call(Subscriber<? super T> child) {
-            QueueProducer<T> qp = new QueueProducer<T>(queue, child, worker, options.delayError());
+            BufferToFileCounters metrics = options.metrics() == null ? null
+                    : BufferToFileAccess.get().counters(options.metrics());
+            QueueProducer<T> qp = new QueueProducer<T>(queue, child, worker, options.delayError(),
+                    metrics);
             queueProducer.set(qp);
             child.setProducer(qp);
         }
@@ -183,6 +273,8 @@ public final class OperatorBufferToFile<T> implements Operator<T, T> {
         private final Subscriber<? super T> child;
         private final Worker worker;
         private final boolean delayError;
+        // null if metrics not requested
+        private final BufferToFileCounters metrics;
         private volatile boolean done;
 
         // Is set just before the volatile `done` is set and read just after
@@ -190,12 +282,13 @@ public final class OperatorBufferToFile<T> implements Operator<T, T> {
         private Throwable error = null;
 
         QueueProducer(QueueWithSubscription<T> queue, Subscriber<? super T> child, Worker worker,
-                boolean delayError) {
+                boolean delayError, BufferToFileCounters metrics) {
             super();
             this.queue = queue;
             this.child = child;
             this.worker = worker;
             this.delayError = delayError;
+            this.metrics = metrics;
             this.done = false;
         }
 
@@ -207,6 +300,11 @@ public final class OperatorBufferToFile<T> implements Operator<T, T> {
                                     + t));
                     return;
                 } else {
+                    // counted only once on the queue so a failed offer is
+                    // not reported as written
+                    if (metrics != null) {
+                        metrics.itemWritten();
+                    }
                     drain();
                 }
             } catch (Throwable e) {
@@ -291,6 +389,9 @@ public final class OperatorBufferToFile<T> implements Operator<T, T> {
                         }
                     } else {
                         // there was an item on the queue
+                        if (metrics != null) {
+                            metrics.itemRead();
+                        }
                         if (NullSentinel.isNullSentinel(item)) {
                             child.onNext(null);
                         } else {
@@ -0,0 +1,206 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.davidmoten.rx.ToLongFunc1;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable.Operator;
+import rx.Producer;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+import rx.functions.Func1;
+import rx.functions.Func2;
+
+/**
+ * <p>
+ * Emits the aggregate of a sliding window of items, either the last
+ * {@code windowSize} items (once there are that many) or, on every item, the
+ * items whose time is within {@code duration} of it. Each item is mapped to
+ * an aggregate and aggregates are combined with an associative function (in
+ * arrival order, so the function need not be commutative).
+ *
+ * <p>
+ * Uses the two-stacks algorithm: the older part of the window (the front)
+ * holds for each item the aggregate of it and every later item of the front,
+ * and the newer part (the back) holds one running aggregate. An item is
+ * removed from the front and, when the front is empty, the back becomes the
+ * front by computing its aggregates from the newest item down. Each item is
+ * combined a constant number of times so an update is amortised
+ * {@code O(1)}. Both parts live in one circular array that grows as needed
+ * and is reused.
+ *
+ * @param <T>
+ *            generic type of stream emissions
+ * @param <R>
+ *            aggregate type
+ */
+public final class OperatorWindowAggregate<T, R> implements Operator<R, T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int windowSize;
+    private final long durationMs;
+    private final ToLongFunc1<? super T> time;
+    private final Func1<? super T, ? extends R> mapper;
+    private final Func2<R, R, R> combiner;
+
+    private OperatorWindowAggregate(int windowSize, long durationMs, ToLongFunc1<? super T> time,
+            Func1<? super T, ? extends R> mapper, Func2<R, R, R> combiner) {
+        Preconditions.checkNotNull(mapper, "mapper cannot be null");
+        Preconditions.checkNotNull(combiner, "combiner cannot be null");
+        this.windowSize = windowSize;
+        this.durationMs = durationMs;
+        this.time = time;
+        this.mapper = mapper;
+        this.combiner = combiner;
+    }
+
+    public static <T, R> OperatorWindowAggregate<T, R> count(int windowSize,
+            Func1<? super T, ? extends R> mapper, Func2<R, R, R> combiner) {
+        Preconditions.checkArgument(windowSize > 0, "windowSize must be greater than zero");
+        return new OperatorWindowAggregate<T, R>(windowSize, 0, null, mapper, combiner);
+    }
+
+    public static <T, R> OperatorWindowAggregate<T, R> time(long duration, TimeUnit unit,
+            ToLongFunc1<? super T> time, Func1<? super T, ? extends R> mapper,
+            Func2<R, R, R> combiner) {
+        Preconditions.checkArgument(duration > 0, "duration must be greater than zero");
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        Preconditions.checkNotNull(time, "time cannot be null");
+        return new OperatorWindowAggregate<T, R>(0, unit.toMillis(duration), time, mapper,
+                combiner);
+    }
+
+    @Override
+    public Subscriber<? super T> call(final Subscriber<? super R> child) {
+        return new Subscriber<T>(child) {
+
+            long count = 0;
+            long latest = Long.MIN_VALUE;
+
+            // positions in the window, index is position & mask; the front is
+            // [head, split) and the back is [split, tail)
+            int mask = INITIAL_CAPACITY - 1;
+            long[] times = durationMs > 0 ? new long[INITIAL_CAPACITY] : null;
+            Object[] values = new Object[INITIAL_CAPACITY];
+            // aggs[i] is the aggregate of the front from position i on
+            Object[] aggs = new Object[INITIAL_CAPACITY];
+            long head = 0;
+            long split = 0;
+            long tail = 0;
+            // aggregate of the back, valid when split < tail
+            R back;
+
+            @Override
+            public void onCompleted() {
+                child.onCompleted();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                child.onError(e);
+            }
+
+            @Override
+            public void onNext(T t) {
+                R result;
+                try {
+                    result = add(t);
+                } catch (Throwable e) {
+                    unsubscribe();
+                    Exceptions.throwOrReport(e, this, t);
+                    return;
+                }
+                if (durationMs > 0 || count >= windowSize) {
+                    child.onNext(result);
+                }
+            }
+
+            private R add(T t) {
+                count++;
+                long now = 0;
+                if (durationMs > 0) {
+                    now = Math.max(latest, time.call(t));
+                    latest = now;
+                    while (head < tail && times[(int) head & mask] <= now - durationMs) {
+                        evict();
+                    }
+                } else if (count > windowSize) {
+                    evict();
+                }
+                R value = mapper.call(t);
+                if (tail - head == values.length) {
+                    grow();
+                }
+                int i = (int) tail & mask;
+                values[i] = value;
+                if (times != null) {
+                    times[i] = now;
+                }
+                back = split == tail ? value : combiner.call(back, value);
+                tail++;
+                if (head == split) {
+                    return back;
+                } else {
+                    return combiner.call(front(), back);
+                }
+            }
+
+            @SuppressWarnings("unchecked")
+            private R front() {
+                return (R) aggs[(int) head & mask];
+            }
+
+            @SuppressWarnings("unchecked")
+            private void evict() {
+                if (head == split) {
+                    // flip: the back becomes the front
+                    R agg = null;
+                    for (long p = tail - 1; p >= head; p--) {
+                        int i = (int) p & mask;
+                        agg = p == tail - 1 ? (R) values[i] : combiner.call((R) values[i], agg);
+                        aggs[i] = agg;
+                    }
+                    split = tail;
+                    back = null;
+                }
+                int i = (int) head & mask;
+                values[i] = null;
+                aggs[i] = null;
+                head++;
+            }
+
+            private void grow() {
+                int capacity = values.length * 2;
+                int newMask = capacity - 1;
+                Object[] newValues = new Object[capacity];
+                Object[] newAggs = new Object[capacity];
+                long[] newTimes = times == null ? null : new long[capacity];
+                for (long p = head; p < tail; p++) {
+                    int i = (int) p & mask;
+                    int j = (int) p & newMask;
+                    newValues[j] = values[i];
+                    newAggs[j] = aggs[i];
+                    if (times != null) {
+                        newTimes[j] = times[i];
+                    }
+                }
+                values = newValues;
+                aggs = newAggs;
+                times = newTimes;
+                mask = newMask;
+            }
+
+            @Override
+            public void setProducer(final Producer producer) {
+                child.setProducer(producer);
+                if (windowSize > 1) {
+                    producer.request(windowSize - 1);
+                }
+            }
+
+        };
+    }
+
+}
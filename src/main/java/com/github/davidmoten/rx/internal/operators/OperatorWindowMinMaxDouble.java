@@ -0,0 +1,130 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMax.Metric;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable.Operator;
+import rx.Producer;
+import rx.Subscriber;
+
+/**
+ * <p>
+ * {@link OperatorWindowMinMax} for {@code Double} values ordered as by
+ * {@link Double#compare}. The double-ended queue is a circular array of
+ * primitive values and indices rather than boxed indices and a map, so once
+ * the array has grown to the number of entries the window needs nothing is
+ * allocated per item.
+ *
+ * <p>
+ * The emitted value is the instance that arrived rather than a new box.
+ */
+public final class OperatorWindowMinMaxDouble implements Operator<Double, Double> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int windowSize;
+    private final Metric metric;
+
+    public OperatorWindowMinMaxDouble(int windowSize, Metric metric) {
+        Preconditions.checkArgument(windowSize > 0, "windowSize must be greater than zero");
+        Preconditions.checkNotNull(metric, "metric cannot be null");
+        this.windowSize = windowSize;
+        this.metric = metric;
+    }
+
+    @Override
+    public Subscriber<? super Double> call(final Subscriber<? super Double> child) {
+        final boolean min = metric == Metric.MIN;
+        return new Subscriber<Double>(child) {
+
+            long count = 0;
+
+            // circular queue of (index, value) with values monotonic from the
+            // head, never more than windowSize entries
+            int capacity = Math.min(windowSize, INITIAL_CAPACITY);
+            long[] indices = new long[capacity];
+            double[] values = new double[capacity];
+            Double[] items = new Double[capacity];
+            int head = 0;
+            int size = 0;
+
+            @Override
+            public void onCompleted() {
+                child.onCompleted();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                child.onError(e);
+            }
+
+            @Override
+            public void onNext(Double t) {
+                count++;
+                // remove the head if it has left the window (before adding so
+                // that the queue never holds more than windowSize entries)
+                if (size > 0 && indices[head] == count - windowSize) {
+                    items[head] = null;
+                    head = index(1);
+                    size--;
+                }
+                double v = t;
+                // remove the values at the end of the queue that can no longer
+                // be the min (max)
+                while (size > 0) {
+                    int last = index(size - 1);
+                    int c = Double.compare(v, values[last]);
+                    if (min ? c <= 0 : c >= 0) {
+                        items[last] = null;
+                        size--;
+                    } else {
+                        break;
+                    }
+                }
+                if (size == capacity) {
+                    grow();
+                }
+                int tail = index(size);
+                indices[tail] = count;
+                values[tail] = v;
+                items[tail] = t;
+                size++;
+                if (count >= windowSize) {
+                    // head of queue is min (max)
+                    child.onNext(items[head]);
+                }
+            }
+
+            private int index(int offset) {
+                int i = head + offset;
+                return i >= capacity ? i - capacity : i;
+            }
+
+            private void grow() {
+                int c = (int) Math.min((long) capacity * 2, windowSize);
+                long[] newIndices = new long[c];
+                double[] newValues = new double[c];
+                Double[] newItems = new Double[c];
+                for (int k = 0; k < size; k++) {
+                    int i = index(k);
+                    newIndices[k] = indices[i];
+                    newValues[k] = values[i];
+                    newItems[k] = items[i];
+                }
+                indices = newIndices;
+                values = newValues;
+                items = newItems;
+                capacity = c;
+                head = 0;
+            }
+
+            @Override
+            public void setProducer(final Producer producer) {
+                child.setProducer(producer);
+                producer.request(windowSize - 1);
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import com.github.davidmoten.rx.ToLongFunc1;
+import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMax.Metric;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable.Operator;
+import rx.Producer;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+
+/**
+ * <p>
+ * Emits on every item the minimum (maximum) of the items whose time is within
+ * {@code duration} of the time of that item. Uses the same collapsing
+ * double-ended queue as {@link OperatorWindowMinMax} with entries removed
+ * from the head once they are too old, so each item is added and removed at
+ * most once. The queue is a circular array that grows as needed and is
+ * reused.
+ *
+ * <p>
+ * Times are in milliseconds and should not decrease. An item with an earlier
+ * time than the one before is treated as having the same time.
+ *
+ * <p>
+ * If {@code throttle} is positive then an item is emitted only if at least
+ * {@code throttle} has passed since the last emission.
+ *
+ * @param <T>
+ *            generic type of stream emissions
+ */
+public final class OperatorWindowMinMaxTime<T> implements Operator<T, T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long durationMs;
+    private final long throttleMs;
+    private final ToLongFunc1<? super T> time;
+    private final Comparator<? super T> comparator;
+    private final Metric metric;
+
+    public OperatorWindowMinMaxTime(long duration, long throttle, TimeUnit unit,
+            ToLongFunc1<? super T> time, Comparator<? super T> comparator, Metric metric) {
+        Preconditions.checkArgument(duration > 0, "duration must be greater than zero");
+        Preconditions.checkArgument(throttle >= 0, "throttle cannot be negative");
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        Preconditions.checkNotNull(time, "time cannot be null");
+        Preconditions.checkNotNull(comparator, "comparator cannot be null");
+        Preconditions.checkNotNull(metric, "metric cannot be null");
+        this.durationMs = unit.toMillis(duration);
+        this.throttleMs = unit.toMillis(throttle);
+        this.time = time;
+        this.comparator = comparator;
+        this.metric = metric;
+    }
+
+    @Override
+    public Subscriber<? super T> call(final Subscriber<? super T> child) {
+        return new Subscriber<T>(child) {
+
+            Producer producer;
+            long latest = Long.MIN_VALUE;
+            long lastEmitted = Long.MIN_VALUE;
+            boolean emitted;
+
+            // circular queue of (time, value)
+            long[] times = new long[INITIAL_CAPACITY];
+            Object[] values = new Object[INITIAL_CAPACITY];
+            int head = 0;
+            int size = 0;
+
+            @Override
+            public void onCompleted() {
+                child.onCompleted();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                child.onError(e);
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public void onNext(T t) {
+                long now;
+                try {
+                    now = Math.max(latest, time.call(t));
+                } catch (Throwable e) {
+                    unsubscribe();
+                    Exceptions.throwOrReport(e, this, t);
+                    return;
+                }
+                latest = now;
+                // remove entries that have left the window
+                while (size > 0 && times[head] <= now - durationMs) {
+                    values[head] = null;
+                    head = index(1);
+                    size--;
+                }
+                // remove the values at the end of the queue that can no longer
+                // be the min (max)
+                while (size > 0) {
+                    int last = index(size - 1);
+                    if (compare(t, (T) values[last]) <= 0) {
+                        values[last] = null;
+                        size--;
+                    } else {
+                        break;
+                    }
+                }
+                if (size == times.length) {
+                    grow();
+                }
+                int tail = index(size);
+                times[tail] = now;
+                values[tail] = t;
+                size++;
+                if (throttleMs == 0 || !emitted || now - lastEmitted >= throttleMs) {
+                    emitted = true;
+                    lastEmitted = now;
+                    // head of queue is min (max)
+                    child.onNext((T) values[head]);
+                } else if (producer != null) {
+                    // replace the request used by the throttled item
+                    producer.request(1);
+                }
+            }
+
+            private int index(int offset) {
+                int i = head + offset;
+                return i >= times.length ? i - times.length : i;
+            }
+
+            private void grow() {
+                int capacity = times.length * 2;
+                long[] newTimes = new long[capacity];
+                Object[] newValues = new Object[capacity];
+                for (int k = 0; k < size; k++) {
+                    int i = index(k);
+                    newTimes[k] = times[i];
+                    newValues[k] = values[i];
+                }
+                times = newTimes;
+                values = newValues;
+                head = 0;
+            }
+
+            @Override
+            public void setProducer(final Producer producer) {
+                this.producer = producer;
+                child.setProducer(producer);
+            }
+
+        };
+    }
+
+    private int compare(T a, T b) {
+        if (metric == Metric.MIN) {
+            return comparator.compare(a, b);
+        } else {
+            return comparator.compare(b, a);
+        }
+    }
+
+}
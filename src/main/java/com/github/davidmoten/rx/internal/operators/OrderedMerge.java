@@ -1,6 +1,7 @@
 package com.github.davidmoten.rx.internal.operators;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
@@ -8,6 +9,7 @@ import java.util.Queue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.github.davidmoten.rx.util.RxRingBuffer;
+import com.github.davidmoten.util.Preconditions;
 
 import rx.Observable;
 import rx.Observable.OnSubscribe;
@@ -19,6 +21,7 @@ import rx.internal.operators.BackpressureUtils;
 import rx.internal.operators.NotificationLite;
 import rx.internal.util.unsafe.MpscLinkedQueue;
 import rx.plugins.RxJavaHooks;
+import rx.subscriptions.CompositeSubscription;
 
 /**
  * @author David Karnokd
@@ -31,6 +34,9 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
     final Comparator<? super T> comparator;
     final boolean delayErrors;
     final int bufferSize;
+    // total items buffered across all sources in a shared arena, 0 if each
+    // source has its own ring buffer
+    final int sharedCapacity;
 
     public static <U extends Comparable<? super U>> Observable<U> create(
             Collection<Observable<U>> sources) {
@@ -44,33 +50,83 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
 
     public static <U extends Comparable<? super U>> Observable<U> create(
             Collection<Observable<U>> sources, boolean delayErrors, int bufferSize) {
-        return Observable.unsafeCreate(new OrderedMerge<U>(sources, new Comparator<U>() {
+        return create(sources, new Comparator<U>() {
             @Override
             public int compare(U o1, U o2) {
                 return o1.compareTo(o2);
             }
-        }, delayErrors, bufferSize));
+        }, delayErrors, bufferSize, 0);
     }
 
     public static <U> Observable<U> create(Collection<Observable<U>> sources,
             Comparator<? super U> comparator, boolean delayErrors, int bufferSize) {
-        return Observable.unsafeCreate(new OrderedMerge<U>(sources, comparator, delayErrors, bufferSize));
+        return create(sources, comparator, delayErrors, bufferSize, 0);
+    }
+
+    /**
+     * Returns the ordered merge of the sources where the items buffered for
+     * all sources share one arena of {@code sharedCapacity} slots instead of
+     * each source having a ring buffer of {@code bufferSize}. Every source is
+     * guaranteed a share of the capacity and sources that win more often than
+     * average borrow more of it, up to {@code bufferSize}.
+     * 
+     * @param sources
+     *            ordered sources
+     * @param comparator
+     *            the ordering
+     * @param delayErrors
+     *            whether errors are reported after buffered items are emitted
+     * @param bufferSize
+     *            maximum number of items buffered for one source
+     * @param sharedCapacity
+     *            total number of items buffered for all sources, at least the
+     *            number of sources, or 0 for a ring buffer per source
+     * @param <U>
+     *            item type
+     * @return merged observable
+     */
+    public static <U> Observable<U> create(Collection<Observable<U>> sources,
+            Comparator<? super U> comparator, boolean delayErrors, int bufferSize,
+            int sharedCapacity) {
+        return Observable.unsafeCreate(
+                new OrderedMerge<U>(sources, comparator, delayErrors, bufferSize, sharedCapacity));
     }
 
     private OrderedMerge(Collection<Observable<T>> sources,
-            Comparator<? super T> comparator, boolean delayErrors, int bufferSize) {
+            Comparator<? super T> comparator, boolean delayErrors, int bufferSize,
+            int sharedCapacity) {
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than zero");
+        Preconditions.checkArgument(sharedCapacity == 0 || sharedCapacity >= sources.size(),
+                "sharedCapacity must be 0 or at least the number of sources");
         this.sources = sources instanceof List ? (List<Observable<T>>) sources
                 : new ArrayList<Observable<T>>(sources);
         this.comparator = comparator;
         this.delayErrors = delayErrors;
         this.bufferSize = bufferSize;
+        this.sharedCapacity = sharedCapacity;
     }
 
     @Override
     public void call(Subscriber<? super T> child) {
         @SuppressWarnings("unchecked")
         SourceSubscriber<T>[] sources = new SourceSubscriber[this.sources.size()];
-        MergeProducer<T> mp = new MergeProducer<T>(sources, child, comparator, delayErrors, bufferSize);
+        final OrderedMergeArena arena;
+        final int initialRequest;
+        if (sharedCapacity > 0 && sources.length > 0) {
+            // half the capacity is reserved evenly so no source starves, the
+            // rest is lent to sources that are winning
+            initialRequest = Math.max(1,
+                    Math.min(bufferSize, sharedCapacity / (2 * sources.length)));
+            arena = new OrderedMergeArena(sharedCapacity, sources.length,
+                    OrderedMergeArena.chunkSizeFor(initialRequest));
+        } else {
+            initialRequest = bufferSize;
+            arena = null;
+        }
+        MergeProducer<T> mp = new MergeProducer<T>(sources, child, comparator, delayErrors,
+                initialRequest, bufferSize, arena,
+                arena == null ? 0 : sharedCapacity - (long) initialRequest * sources.length,
+                false);
         for (int i = 0; i < sources.length; i++) {
             if (child.isUnsubscribed()) {
                 return;
@@ -79,6 +135,9 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
             sources[i] = s;
             child.add(s);
         }
+        if (sources.length > MergeProducer.LINEAR_SCAN_MAX_SOURCES) {
+            mp.tree = new OrderedMergeTree<T>(sources, comparator);
+        }
         mp.set(0); // release contents of the array
         child.setProducer(mp);
         int i = 0;
@@ -95,28 +154,81 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
         /** */
         private static final long serialVersionUID = -812969080497027108L;
 
+        // above this many sources the minimum is selected with a tournament
+        // tree rather than by comparing every head
+        static final int LINEAR_SCAN_MAX_SOURCES = 8;
+
+        // after a source wins this many times in a row its following items
+        // are compared only with the runner-up head
+        static final int MIN_GALLOP = 7;
+
         final boolean delayErrors;
         final Comparator<? super T> comparator;
+        // grows as sources are added, only accessed by the emit loop once
+        // published
         @SuppressWarnings("rawtypes")
-        final SourceSubscriber[] sources;
+        SourceSubscriber[] sources;
         final Subscriber<? super T> child;
+        // items requested from each source at the start
+        final int initialRequest;
+        // most items requested from one source at a time
         final int bufferSize;
+        // null if each source has its own ring buffer
+        final OrderedMergeArena arena;
+        // null if the minimum is found by a linear scan
+        OrderedMergeTree<T> tree;
 
         final Queue<Throwable> errors;
 
+        // sources announced but not yet seen by the emit loop, null if the
+        // sources are fixed
+        final Queue<SourceSubscriber<T>> added;
+        // subscriptions to the sources still in use, null if the sources are
+        // fixed
+        final CompositeSubscription subscriptions;
+        // number of null slots in sources, only accessed by the emit loop
+        int emptied;
+        // true once no more sources will be added
+        volatile boolean sourcesDone;
+        // lowest item any source not yet started may emit, as a
+        // NotificationLite or null if none
+        volatile Object watermark;
+
         boolean emitting;
         boolean missed;
 
+        // arena capacity not lent to any source, only accessed by the emit
+        // loop
+        long spare;
+        // number of items taken by the emit loop
+        long taken;
+
+        // galloping state, only accessed by the emit loop
+        int lastWinner = -1;
+        int wins;
+        // source emitted without selection while its head is below the bound,
+        // -1 if not galloping
+        int gallopSource = -1;
+        // source holding the runner-up head, -1 if no other source has a head
+        int boundSource;
+        T bound;
 
         @SuppressWarnings("rawtypes")
         public MergeProducer(SourceSubscriber[] sources, Subscriber<? super T> child,
-                Comparator<? super T> comparator, boolean delayErrors, int bufferSize) {
+                Comparator<? super T> comparator, boolean delayErrors, int initialRequest,
+                int bufferSize, OrderedMergeArena arena, long spare, boolean dynamic) {
             this.sources = sources;
             this.delayErrors = delayErrors;
             this.errors = new MpscLinkedQueue<Throwable>();
             this.child = child;
             this.comparator = comparator;
+            this.initialRequest = initialRequest;
             this.bufferSize = bufferSize;
+            this.arena = arena;
+            this.spare = spare;
+            this.added = dynamic ? new MpscLinkedQueue<SourceSubscriber<T>>() : null;
+            this.subscriptions = dynamic ? new CompositeSubscription() : null;
+            this.sourcesDone = !dynamic;
         }
 
         @Override
@@ -130,6 +242,43 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
             emit();
         }
 
+        /**
+         * Adds a source to a dynamic merge. The source should be subscribed
+         * to after this call.
+         */
+        void addSource(SourceSubscriber<T> s) {
+            subscriptions.add(s);
+            added.offer(s);
+        }
+
+        /**
+         * Called by the emit loop when a completed and emptied source has
+         * been set to null in the sources array. A dynamic merge drops its
+         * subscription so that finished sources are not retained.
+         */
+        void emptied(SourceSubscriber<T> s) {
+            emptied++;
+            if (subscriptions != null) {
+                subscriptions.remove(s);
+            }
+        }
+
+        void sourcesCompleted() {
+            sourcesDone = true;
+            emit();
+        }
+
+        void sourcesError(Throwable ex) {
+            errors.offer(ex);
+            sourcesDone = true;
+            emit();
+        }
+
+        void watermark(T t) {
+            watermark = NotificationLite.next(t);
+            emit();
+        }
+
         public void emit() {
             synchronized (this) {
                 if (emitting) {
@@ -138,10 +287,6 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
                 }
                 emitting = true;
             }
-            // lift into local variables, just in case
-            @SuppressWarnings("unchecked")
-            final SourceSubscriber<T>[] sources = this.sources;
-            final int n = sources.length;
             final Subscriber<? super T> child = this.child;
 
             for (;;) {
@@ -157,6 +302,20 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
                 long r = get();
                 // aggregate total emissions
                 long e = 0;
+                // read before the added sources are taken so that no source
+                // is missed when deciding completion
+                boolean sourcesDone = this.sourcesDone;
+                try {
+                    compact();
+                    addSources();
+                } catch (Throwable ex) {
+                    child.onError(ex);
+                    return;
+                }
+                // lift into local variables, just in case
+                @SuppressWarnings("unchecked")
+                SourceSubscriber<T>[] sources = this.sources;
+                int n = sources.length;
                 // even without request, terminal events can be fired if the
                 // state is right
                 if (r == 0) {
@@ -168,13 +327,13 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
                             doneCount++;
                         } else {
                             // or just completed
-                            if (s.done && s.queue.isEmpty()) {
+                            if (s.done && s.isEmpty()) {
                                 doneCount++;
                             }
                         }
                     }
                     // if all of them are completed
-                    if (doneCount == n) {
+                    if (doneCount == n && sourcesDone) {
                         reportErrorOrComplete(child);
                         return;
                     }
@@ -189,6 +348,51 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
                         child.onError(errors.poll());
                         return;
                     }
+                    if (added != null) {
+                        sourcesDone = this.sourcesDone;
+                        boolean changed;
+                        try {
+                            changed = compact();
+                            changed |= addSources();
+                        } catch (Throwable ex) {
+                            child.onError(ex);
+                            return;
+                        }
+                        if (changed) {
+                            @SuppressWarnings("unchecked")
+                            SourceSubscriber<T>[] a = this.sources;
+                            sources = a;
+                            n = sources.length;
+                        }
+                    }
+                    if (gallopSource >= 0) {
+                        SourceSubscriber<T> s = sources[gallopSource];
+                        Object o = s.peek();
+                        if (o != null) {
+                            T v = NotificationLite.getValue(o);
+                            boolean below;
+                            try {
+                                below = isBelowBound(v);
+                            } catch (Throwable ex) {
+                                child.onError(ex);
+                                return;
+                            }
+                            if (below) {
+                                s.poll();
+                                replenish(s, n);
+                                child.onNext(v);
+                                if (r != Long.MAX_VALUE) {
+                                    r--;
+                                    e++;
+                                }
+                                continue;
+                            }
+                        }
+                        // run ended or the source is empty so select again
+                        // (a tree still has gallopSource pending)
+                        gallopSource = -1;
+                        bound = null;
+                    }
                     // indicates that every active source has at least one value
                     boolean fullRow = true;
                     // indicates that at least one value is available
@@ -200,55 +404,110 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
                     int toPoll = -1;
                     // number of completed sources
                     int doneCount = 0;
-                    // for each source
-                    for (int i = 0; i < n; i++) {
-                        SourceSubscriber<T> s = sources[i];
-                        // terminated and emptied sources are ignored
-                        if (s == null) {
-                            doneCount++;
-                            continue;
+                    // lowest item a source without a first item may emit
+                    Object wm = watermark;
+                    // indicates that a source without a first item was passed
+                    // over because of the watermark
+                    boolean partial = false;
+                    if (tree != null) {
+                        int w;
+                        try {
+                            w = tree.select();
+                            if (w == OrderedMergeTree.NOT_READY && wm != null) {
+                                w = tree.selectStarted();
+                                if (w >= 0 && comparator.compare(tree.head(w),
+                                        NotificationLite.<T> getValue(wm)) > 0) {
+                                    w = OrderedMergeTree.NOT_READY;
+                                }
+                                partial = w >= 0;
+                            }
+                        } catch (Throwable ex) {
+                            child.onError(ex);
+                            return;
+                        }
+                        if (w == OrderedMergeTree.ALL_DONE) {
+                            doneCount = n;
+                        } else if (w == OrderedMergeTree.NOT_READY) {
+                            fullRow = false;
+                        } else {
+                            minimum = tree.head(w);
+                            toPoll = w;
+                            // pending until its source has a new head
+                            tree.taken(w);
                         }
-                        // read the terminal indicator first
-                        boolean d = s.done;
-                        // peek into the queue
-                        Object o = s.queue.peek();
-                        // no value available
-                        if (o == null) {
-                            // because it terminated?
-                            if (d) {
-                                sources[i] = null;
+                    } else {
+                        // for each source
+                        for (int i = 0; i < n; i++) {
+                            SourceSubscriber<T> s = sources[i];
+                            // terminated and emptied sources are ignored
+                            if (s == null) {
                                 doneCount++;
                                 continue;
                             }
-                            // otherwise, indicate not all queues are ready
-                            fullRow = false;
-                            break;
-                        }
-                        // if we already found a value, compare it against the
-                        // current
-                        if (hasAtLeastOne) {
-                            T v = NotificationLite.getValue(o);
-                            try {
-                                int c = comparator.compare(minimum, v);
-                                if (c > 0) {
-                                    minimum = v;
-                                    toPoll = i;
-                                } 
-                            } catch (Throwable ex) {
-                                child.onError(ex);
-                                return;
+                            // read the terminal indicator first
+                            boolean d = s.done;
+                            // peek into the queue
+                            Object o = s.peek();
+                            // no value available
+                            if (o == null) {
+                                // because it terminated?
+                                if (d) {
+                                    sources[i] = null;
+                                    emptied(s);
+                                    doneCount++;
+                                    continue;
+                                }
+                                // a source without a first item cannot emit
+                                // below the watermark
+                                if (!s.started && wm != null) {
+                                    partial = true;
+                                    continue;
+                                }
+                                // otherwise, indicate not all queues are ready
+                                fullRow = false;
+                                break;
+                            }
+                            s.started = true;
+                            // if we already found a value, compare it against the
+                            // current
+                            if (hasAtLeastOne) {
+                                T v = NotificationLite.getValue(o);
+                                try {
+                                    int c = comparator.compare(minimum, v);
+                                    if (c > 0) {
+                                        minimum = v;
+                                        toPoll = i;
+                                    } 
+                                } catch (Throwable ex) {
+                                    child.onError(ex);
+                                    return;
+                                }
+                            } else {
+                                // this is the first value found
+                                minimum = NotificationLite.getValue(o);
+                                hasAtLeastOne = true;
+                                toPoll = i;
                             }
-                        } else {
-                            // this is the first value found
-                            minimum = NotificationLite.getValue(o);
-                            hasAtLeastOne = true;
-                            toPoll = i;
                         }
                     }
                     // in case all of the sources completed
                     if (doneCount == n) {
-                        reportErrorOrComplete(child);
-                        return;
+                        if (sourcesDone) {
+                            reportErrorOrComplete(child);
+                            return;
+                        } else {
+                            // wait for more sources
+                            break;
+                        }
+                    }
+                    if (partial && tree == null && fullRow) {
+                        try {
+                            fullRow = hasAtLeastOne && comparator.compare(minimum,
+                                    NotificationLite.<T> getValue(wm)) <= 0;
+                        } catch (Throwable ex) {
+                            child.onError(ex);
+                            return;
+                        }
                     }
                     // if there was a full row of available values
                     if (fullRow) {
@@ -256,9 +515,20 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
                         if (toPoll >= 0) {
                             SourceSubscriber<T> s = sources[toPoll];
                             // remove the winning value from its queue
-                            s.queue.poll();
+                            s.poll();
                             // request replenishment
-                            s.requestMore(1);
+                            replenish(s, n);
+                            try {
+                                if (partial) {
+                                    // the other heads are not all known
+                                    lastWinner = -1;
+                                } else {
+                                    checkGallop(toPoll);
+                                }
+                            } catch (Throwable ex) {
+                                child.onError(ex);
+                                return;
+                            }
                         }
                         // emit the smallest
                         child.onNext(minimum);
@@ -289,6 +559,160 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
             }
         }
 
+        /**
+         * Moves the sources announced since the last call into the sources
+         * array (and the tree) and returns true if there were any. Galloping
+         * stops as a new source may have a smaller head than the bound.
+         */
+        @SuppressWarnings("unchecked")
+        private boolean addSources() {
+            if (added == null || added.isEmpty()) {
+                return false;
+            }
+            List<SourceSubscriber<T>> list = new ArrayList<SourceSubscriber<T>>();
+            SourceSubscriber<T> s;
+            while ((s = added.poll()) != null) {
+                list.add(s);
+            }
+            int n = sources.length;
+            SourceSubscriber<T>[] a = Arrays.copyOf(sources, n + list.size());
+            for (int i = 0; i < list.size(); i++) {
+                a[n + i] = list.get(i);
+            }
+            sources = a;
+            if (tree != null) {
+                tree.add(a);
+            } else if (a.length > LINEAR_SCAN_MAX_SOURCES) {
+                tree = new OrderedMergeTree<T>(a, comparator);
+            }
+            gallopSource = -1;
+            bound = null;
+            lastWinner = -1;
+            return true;
+        }
+
+        /**
+         * Removes the null slots of a dynamic merge from the sources array
+         * (rebuilding the tree) once they are at least half of it, so that a
+         * long running merge does not keep scanning finished sources. Returns
+         * true if the array changed. Galloping stops as source indexes
+         * change.
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private boolean compact() {
+            if (added == null || emptied == 0 || emptied * 2 < sources.length) {
+                return false;
+            }
+            SourceSubscriber<T>[] a = new SourceSubscriber[sources.length - emptied];
+            int j = 0;
+            for (SourceSubscriber<T> s : (SourceSubscriber<T>[]) sources) {
+                if (s != null) {
+                    a[j++] = s;
+                }
+            }
+            sources = a;
+            emptied = 0;
+            // heads are only peeked so a new tree reads them again
+            if (a.length > LINEAR_SCAN_MAX_SOURCES) {
+                tree = new OrderedMergeTree<T>(a, comparator);
+            } else {
+                tree = null;
+            }
+            gallopSource = -1;
+            bound = null;
+            lastWinner = -1;
+            return true;
+        }
+
+        /**
+         * Counts consecutive wins of a source and once it reaches
+         * {@link #MIN_GALLOP} starts galloping on that source: its following
+         * items are emitted while they are below the smallest head of the
+         * other sources, which cannot change until the gallop ends because
+         * only the emit loop takes items.
+         */
+        private void checkGallop(int winner) {
+            if (winner != lastWinner) {
+                lastWinner = winner;
+                wins = 1;
+                return;
+            }
+            if (++wins < MIN_GALLOP) {
+                return;
+            }
+            wins = 0;
+            int runnerUp = tree != null ? tree.runnerUp(winner) : runnerUp(winner);
+            gallopSource = winner;
+            boundSource = runnerUp;
+            bound = runnerUp >= 0 ? headOf(runnerUp) : null;
+        }
+
+        private T headOf(int i) {
+            if (tree != null) {
+                return tree.head(i);
+            } else {
+                return NotificationLite.<T> getValue(sources[i].peek());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private int runnerUp(int winner) {
+            int best = -1;
+            T min = null;
+            for (int i = 0; i < sources.length; i++) {
+                SourceSubscriber<T> s = sources[i];
+                if (i == winner || s == null) {
+                    continue;
+                }
+                Object o = s.peek();
+                if (o == null) {
+                    // completed but not yet noticed by the scan
+                    continue;
+                }
+                T v = NotificationLite.getValue(o);
+                if (best < 0 || comparator.compare(min, v) > 0) {
+                    best = i;
+                    min = v;
+                }
+            }
+            return best;
+        }
+
+        private boolean isBelowBound(T v) {
+            if (boundSource < 0) {
+                return true;
+            }
+            int c = comparator.compare(v, bound);
+            // ties go to the lower source index as when selecting
+            return c < 0 || c == 0 && gallopSource < boundSource;
+        }
+
+        /**
+         * Requests more from a source whose item was just taken. With a shared
+         * arena a source that wins more often than average is lent one more
+         * slot from the spare capacity and a source that wins less often than
+         * average returns a borrowed slot, but never below its initial share.
+         */
+        private void replenish(SourceSubscriber<T> s, int n) {
+            if (arena == null) {
+                s.requestMore(1);
+                return;
+            }
+            long gap = taken - s.lastTaken;
+            s.lastTaken = taken;
+            taken++;
+            if (gap < n && spare > 0 && s.capacity < bufferSize) {
+                spare--;
+                s.capacity++;
+                s.requestMore(2);
+            } else if (gap > 2L * n && s.capacity > initialRequest) {
+                spare++;
+                s.capacity--;
+            } else {
+                s.requestMore(1);
+            }
+        }
+
         void reportErrorOrComplete(Subscriber<? super T> child) {
             if (delayErrors && !errors.isEmpty()) {
                 if (errors.size() == 1) {
@@ -307,19 +731,50 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
     }
     
     static final class SourceSubscriber<T> extends Subscriber<T> {
+        // exactly one of queue and buffer is non-null
         final RxRingBuffer queue;
+        final OrderedMergeArena.Buffer buffer;
         final MergeProducer<T> parent;
         volatile boolean done;
+        // whether the emit loop has seen an item from this source
+        boolean started;
+
+        // items requested and not yet taken, and value of parent.taken when
+        // an item of this source was last taken. Only used with an arena by
+        // the emit loop.
+        int capacity;
+        long lastTaken;
 
         SourceSubscriber(MergeProducer<T> parent) {
-            queue = getRingBufferSpscInstance(parent.bufferSize);
+            if (parent.arena == null) {
+                queue = getRingBufferSpscInstance(parent.bufferSize);
+                buffer = null;
+            } else {
+                queue = null;
+                buffer = parent.arena.createBuffer();
+            }
             this.parent = parent;
+            this.capacity = parent.initialRequest;
         }
 
         @Override
         public void onStart() {
-            add(queue);
-            request(parent.bufferSize);
+            if (queue != null) {
+                add(queue);
+            }
+            request(parent.initialRequest);
+        }
+
+        Object peek() {
+            return queue != null ? queue.peek() : buffer.peek();
+        }
+
+        Object poll() {
+            return queue != null ? queue.poll() : buffer.poll();
+        }
+
+        boolean isEmpty() {
+            return queue != null ? queue.isEmpty() : buffer.isEmpty();
         }
 
         public void requestMore(long n) {
@@ -332,7 +787,11 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
                 return;
             }
             try {
-                queue.onNext(NotificationLite.next(t));
+                if (queue != null) {
+                    queue.onNext(NotificationLite.next(t));
+                } else if (!buffer.offer(NotificationLite.next(t))) {
+                    throw new MissingBackpressureException();
+                }
             } catch (MissingBackpressureException mbe) {
                 try {
                     onError(mbe);
@@ -0,0 +1,164 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.github.davidmoten.util.Preconditions;
+
+/**
+ * <p>
+ * One slab of slots shared by the buffers of all sources of an
+ * {@link OrderedMerge}. The slab is split into fixed size chunks and each
+ * source buffer is a chain of chunks taken from a common free list, so memory
+ * is proportional to the number of items actually buffered rather than to the
+ * number of sources times the buffer size.
+ *
+ * <p>
+ * The merge keeps the total number of items requested from all sources within
+ * {@code capacity}. A buffer holding {@code k} items spans at most
+ * {@code k / chunkSize + 2} chunks so the slab is sized to never run out while
+ * sources honour backpressure.
+ */
+final class OrderedMergeArena {
+
+    private static final int MIN_CHUNK_SIZE = 4;
+    private static final int MAX_CHUNK_SIZE = 64;
+
+    final int chunkSize;
+    private final AtomicReferenceArray<Object> slots;
+    // the chunk following each chunk in its buffer or -1
+    private final AtomicIntegerArray next;
+
+    // guarded by this
+    private final int[] free;
+    private int freeCount;
+
+    OrderedMergeArena(int capacity, int sources, int chunkSize) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be greater than zero");
+        Preconditions.checkArgument(chunkSize > 0, "chunkSize must be greater than zero");
+        long chunks = (capacity + chunkSize - 1) / chunkSize + 2L * sources;
+        Preconditions.checkArgument(chunks * chunkSize <= Integer.MAX_VALUE,
+                "capacity too large for the number of sources");
+        this.chunkSize = chunkSize;
+        this.slots = new AtomicReferenceArray<Object>((int) chunks * chunkSize);
+        this.next = new AtomicIntegerArray((int) chunks);
+        this.free = new int[(int) chunks];
+        // hand out low chunks first
+        for (int i = 0; i < chunks; i++) {
+            free[i] = (int) chunks - 1 - i;
+        }
+        this.freeCount = (int) chunks;
+    }
+
+    /**
+     * Returns the chunk size used for buffers that are each guaranteed
+     * {@code itemsPerSource} items: small enough that the two partly used
+     * chunks per source do not dominate, large enough that allocation is
+     * infrequent.
+     *
+     * @param itemsPerSource
+     *            items guaranteed to every source
+     * @return chunk size
+     */
+    static int chunkSizeFor(int itemsPerSource) {
+        return Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, itemsPerSource));
+    }
+
+    synchronized int allocate() {
+        if (freeCount == 0) {
+            return -1;
+        }
+        int chunk = free[--freeCount];
+        next.set(chunk, -1);
+        return chunk;
+    }
+
+    synchronized void release(int chunk) {
+        free[freeCount++] = chunk;
+    }
+
+    synchronized int freeChunks() {
+        return freeCount;
+    }
+
+    Buffer createBuffer() {
+        return new Buffer();
+    }
+
+    /**
+     * Single producer single consumer queue of the items of one source. The
+     * consumer clears each slot as it polls so released chunks are empty.
+     */
+    final class Buffer {
+
+        // producer only
+        private int tailChunk;
+        private int tailIndex;
+
+        // consumer only
+        private int headChunk;
+        private int headIndex;
+
+        Buffer() {
+            int chunk = allocate();
+            if (chunk < 0) {
+                throw new IllegalStateException("arena exhausted");
+            }
+            this.tailChunk = chunk;
+            this.headChunk = chunk;
+        }
+
+        /**
+         * Adds a non-null value. Returns false if the arena has no free chunk
+         * which only happens if the source has ignored backpressure.
+         *
+         * @param o
+         *            value
+         * @return true if added
+         */
+        boolean offer(Object o) {
+            if (tailIndex == chunkSize) {
+                int chunk = allocate();
+                if (chunk < 0) {
+                    return false;
+                }
+                // linked before any item is written to it so the consumer
+                // treats an empty new chunk as an empty buffer
+                next.set(tailChunk, chunk);
+                tailChunk = chunk;
+                tailIndex = 0;
+            }
+            slots.lazySet(tailChunk * chunkSize + tailIndex, o);
+            tailIndex++;
+            return true;
+        }
+
+        Object peek() {
+            if (headIndex == chunkSize) {
+                int chunk = next.get(headChunk);
+                if (chunk < 0) {
+                    return null;
+                }
+                // the producer has moved on so the exhausted chunk is free
+                release(headChunk);
+                headChunk = chunk;
+                headIndex = 0;
+            }
+            return slots.get(headChunk * chunkSize + headIndex);
+        }
+
+        Object poll() {
+            Object o = peek();
+            if (o != null) {
+                slots.lazySet(headChunk * chunkSize + headIndex, null);
+                headIndex++;
+            }
+            return o;
+        }
+
+        boolean isEmpty() {
+            return peek() == null;
+        }
+    }
+
+}
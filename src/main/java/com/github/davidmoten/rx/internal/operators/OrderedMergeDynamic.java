@@ -0,0 +1,110 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.Comparator;
+
+import com.github.davidmoten.rx.internal.operators.OrderedMerge.MergeProducer;
+import com.github.davidmoten.rx.internal.operators.OrderedMerge.SourceSubscriber;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+
+/**
+ * <p>
+ * Ordered merge of sources that are announced while merging. A new source is
+ * added to the selection of the running merge and emission is held only until
+ * it has produced its first item (or completed). The merge completes when the
+ * stream of sources has completed and every source has completed.
+ *
+ * <p>
+ * Each item of {@code watermarks} promises that no source that has not yet
+ * produced an item, including those announced later, will emit an item below
+ * it. Items up to the latest watermark are emitted without waiting for the
+ * first item of new sources.
+ *
+ * @param <T>
+ *            item type
+ */
+public final class OrderedMergeDynamic<T> implements OnSubscribe<T> {
+
+    private final Observable<? extends Observable<? extends T>> sources;
+    private final Comparator<? super T> comparator;
+    private final Observable<? extends T> watermarks;
+    private final boolean delayErrors;
+    private final int bufferSize;
+
+    public static <U> Observable<U> create(Observable<? extends Observable<? extends U>> sources,
+            Comparator<? super U> comparator, Observable<? extends U> watermarks,
+            boolean delayErrors, int bufferSize) {
+        return Observable.unsafeCreate(new OrderedMergeDynamic<U>(sources, comparator, watermarks,
+                delayErrors, bufferSize));
+    }
+
+    private OrderedMergeDynamic(Observable<? extends Observable<? extends T>> sources,
+            Comparator<? super T> comparator, Observable<? extends T> watermarks,
+            boolean delayErrors, int bufferSize) {
+        Preconditions.checkNotNull(sources);
+        Preconditions.checkNotNull(comparator);
+        Preconditions.checkNotNull(watermarks);
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than zero");
+        this.sources = sources;
+        this.comparator = comparator;
+        this.watermarks = watermarks;
+        this.delayErrors = delayErrors;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void call(final Subscriber<? super T> child) {
+        @SuppressWarnings("rawtypes")
+        SourceSubscriber[] initial = new SourceSubscriber[0];
+        final MergeProducer<T> mp = new MergeProducer<T>(initial, child, comparator, delayErrors,
+                bufferSize, bufferSize, null, 0, true);
+        Subscriber<T> watermarkSubscriber = new Subscriber<T>() {
+
+            @Override
+            public void onNext(T t) {
+                mp.watermark(t);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                mp.error(e);
+            }
+
+            @Override
+            public void onCompleted() {
+                // keep the latest watermark
+            }
+        };
+        Subscriber<Observable<? extends T>> sourcesSubscriber = new Subscriber<Observable<? extends T>>() {
+
+            @Override
+            public void onNext(Observable<? extends T> source) {
+                SourceSubscriber<T> s = new SourceSubscriber<T>(mp);
+                // removed from mp.subscriptions once completed and emptied
+                mp.addSource(s);
+                source.unsafeSubscribe(s);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                mp.sourcesError(e);
+            }
+
+            @Override
+            public void onCompleted() {
+                mp.sourcesCompleted();
+            }
+        };
+        child.add(mp.subscriptions);
+        child.add(watermarkSubscriber);
+        child.add(sourcesSubscriber);
+        mp.set(0); // release the sources array
+        child.setProducer(mp);
+        watermarks.unsafeSubscribe(watermarkSubscriber);
+        sources.unsafeSubscribe(sourcesSubscriber);
+    }
+
+}
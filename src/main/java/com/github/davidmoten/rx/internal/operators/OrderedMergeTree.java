@@ -0,0 +1,282 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.github.davidmoten.rx.internal.operators.OrderedMerge.SourceSubscriber;
+
+import rx.internal.operators.NotificationLite;
+
+/**
+ * <p>
+ * Tournament tree over the heads of the sources of an {@link OrderedMerge} so
+ * that selecting the next item costs {@code O(log k)} comparisons instead of
+ * the {@code O(k)} of a linear scan.
+ *
+ * <p>
+ * Leaves are the sources (padded to a power of two with exhausted leaves) and
+ * each internal node holds the index of the winning leaf of its subtree. Only
+ * the leaf whose head was taken changes between selections so only its path
+ * to the root is replayed. A taken leaf is pending until its source has a new
+ * head or has completed, and no item is selected while any leaf is pending.
+ * Ties go to the lower source index, as with the linear scan.
+ *
+ * <p>
+ * Sources can be added while merging. A new leaf is pending until its source
+ * has a first head and the tree doubles in size when it runs out of leaves.
+ *
+ * <p>
+ * Not thread-safe, used only by the emit loop.
+ *
+ * @param <T>
+ *            item type
+ */
+final class OrderedMergeTree<T> {
+
+    static final int NOT_READY = -1;
+    static final int ALL_DONE = -2;
+
+    @SuppressWarnings("rawtypes")
+    private SourceSubscriber[] sources;
+    private final Comparator<? super T> comparator;
+    private int n;
+    // number of leaves, a power of two
+    private int size;
+    // winners[node] is the winning leaf of the subtree at node (1 is the root)
+    private int[] winners;
+    private Object[] heads;
+    private boolean[] ready;
+    private boolean[] exhausted;
+    // leaves waiting for a head, only the last taken after the first fill
+    // unless sources were added
+    private int[] pending;
+    private int pendingCount;
+    private int exhaustedCount;
+
+    /**
+     * Creates a tree over the sources, where a null source has completed and
+     * been emptied.
+     * 
+     * @param sources
+     *            the sources
+     * @param comparator
+     *            the ordering
+     */
+    @SuppressWarnings("rawtypes")
+    OrderedMergeTree(SourceSubscriber[] sources, Comparator<? super T> comparator) {
+        this.sources = sources;
+        this.comparator = comparator;
+        this.n = sources.length;
+        int s = 1;
+        while (s < n) {
+            s <<= 1;
+        }
+        this.size = s;
+        this.winners = new int[size];
+        // nodes whose leaves are all padding are never replayed so point them
+        // at a padding leaf (if n == size every node is replayed on first fill)
+        Arrays.fill(winners, size - 1);
+        this.heads = new Object[size];
+        this.ready = new boolean[size];
+        this.exhausted = new boolean[size];
+        for (int i = n; i < size; i++) {
+            exhausted[i] = true;
+        }
+        this.pending = new int[size];
+        for (int i = 0; i < n; i++) {
+            if (sources[i] == null) {
+                exhausted[i] = true;
+                exhaustedCount++;
+                // so that no node points at a leaf outside its subtree
+                replay(i);
+            } else {
+                pending[pendingCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * Adds the leaves for the sources beyond those already in the tree. The
+     * given array is a copy of the previous one with the new sources
+     * appended.
+     * 
+     * @param sources
+     *            all sources
+     */
+    @SuppressWarnings("rawtypes")
+    void add(SourceSubscriber[] sources) {
+        this.sources = sources;
+        int m = sources.length;
+        if (m > size) {
+            grow(m);
+        }
+        for (int i = n; i < m; i++) {
+            exhausted[i] = false;
+            pending[pendingCount++] = i;
+        }
+        n = m;
+    }
+
+    private void grow(int m) {
+        int s = size;
+        while (s < m) {
+            s <<= 1;
+        }
+        heads = Arrays.copyOf(heads, s);
+        ready = Arrays.copyOf(ready, s);
+        exhausted = Arrays.copyOf(exhausted, s);
+        for (int i = size; i < s; i++) {
+            exhausted[i] = true;
+        }
+        pending = Arrays.copyOf(pending, s);
+        size = s;
+        winners = new int[s];
+        for (int node = s - 1; node >= 1; node--) {
+            winners[node] = better(winnerOf(2 * node), winnerOf(2 * node + 1));
+        }
+    }
+
+    /**
+     * Returns the index of the source with the smallest head,
+     * {@link #NOT_READY} if a source without a head has not completed or
+     * {@link #ALL_DONE} if all sources have completed and been emptied. Sources
+     * found completed and empty are set to null in the sources array.
+     *
+     * @return source index, NOT_READY or ALL_DONE
+     */
+    @SuppressWarnings("unchecked")
+    int select() {
+        int k = 0;
+        while (k < pendingCount) {
+            int i = pending[k];
+            SourceSubscriber<T> s = sources[i];
+            // read the terminal indicator first
+            boolean d = s.done;
+            Object o = s.peek();
+            if (o == null) {
+                if (d) {
+                    sources[i] = null;
+                    s.parent.emptied(s);
+                    exhausted[i] = true;
+                    exhaustedCount++;
+                } else {
+                    k++;
+                    continue;
+                }
+            } else {
+                heads[i] = NotificationLite.getValue(o);
+                ready[i] = true;
+                s.started = true;
+            }
+            pending[k] = pending[--pendingCount];
+            replay(i);
+        }
+        if (pendingCount > 0) {
+            return NOT_READY;
+        } else if (exhaustedCount == n) {
+            return ALL_DONE;
+        } else {
+            return winners[1];
+        }
+    }
+
+    /**
+     * Returns the index of the source with the smallest head among the
+     * sources that have a head, provided every pending source has never had a
+     * head, otherwise {@link #NOT_READY}. Only meaningful after
+     * {@link #select()} returned NOT_READY.
+     * 
+     * @return source index or NOT_READY
+     */
+    int selectStarted() {
+        for (int k = 0; k < pendingCount; k++) {
+            if (sources[pending[k]].started) {
+                return NOT_READY;
+            }
+        }
+        // a new leaf may be the padding leaf that nodes point at
+        for (int k = 0; k < pendingCount; k++) {
+            replay(pending[k]);
+        }
+        int w = winners[1];
+        if (exhausted[w] || !ready[w]) {
+            return NOT_READY;
+        } else {
+            return w;
+        }
+    }
+
+    int pendingCount() {
+        return pendingCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    T head(int i) {
+        return (T) heads[i];
+    }
+
+    /**
+     * Marks the head of source {@code i} as taken so that it is pending.
+     *
+     * @param i
+     *            source index
+     */
+    void taken(int i) {
+        heads[i] = null;
+        ready[i] = false;
+        pending[pendingCount++] = i;
+    }
+
+    /**
+     * Returns the source with the smallest head other than {@code winner},
+     * which must be the only pending source, or -1 if there is none. These
+     * are the winners of the siblings on the path from winner to the root.
+     *
+     * @param winner
+     *            the pending source
+     * @return runner-up source index or -1
+     */
+    int runnerUp(int winner) {
+        int best = -1;
+        int node = winner + size;
+        while (node > 1) {
+            int other = winnerOf(node ^ 1);
+            if (!exhausted[other] && ready[other]) {
+                best = best < 0 ? other : better(best, other);
+            }
+            node >>= 1;
+        }
+        return best;
+    }
+
+    private void replay(int leaf) {
+        int node = leaf + size;
+        int winner = leaf;
+        while (node > 1) {
+            int other = winnerOf(node ^ 1);
+            node >>= 1;
+            winner = better(winner, other);
+            winners[node] = winner;
+        }
+    }
+
+    private int winnerOf(int node) {
+        return node >= size ? node - size : winners[node];
+    }
+
+    @SuppressWarnings("unchecked")
+    private int better(int a, int b) {
+        if (exhausted[a] || !ready[a]) {
+            return b;
+        } else if (exhausted[b] || !ready[b]) {
+            return a;
+        }
+        int c = comparator.compare((T) heads[a], (T) heads[b]);
+        if (c < 0 || c == 0 && a < b) {
+            return a;
+        } else {
+            return b;
+        }
+    }
+
+}
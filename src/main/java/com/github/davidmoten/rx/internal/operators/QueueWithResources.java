@@ -32,4 +32,14 @@ interface QueueWithResources<T> extends QueueWithSubscription<T> {
 	void freeResources();
 
 	long resourcesSize();
+
+	/**
+	 * Discards the content of this queue (if any) so that it can be written
+	 * from the start again, keeping its files. Must not run concurrently with
+	 * offer or poll.
+	 * 
+	 * @return false if the queue does not support being reset (in which case
+	 *         nothing happened)
+	 */
+	boolean reset();
 }
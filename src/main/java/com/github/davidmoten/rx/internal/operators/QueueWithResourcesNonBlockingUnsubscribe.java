@@ -3,6 +3,10 @@ package com.github.davidmoten.rx.internal.operators;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.github.davidmoten.rx.Actions;
+
+import rx.functions.Action0;
+
 /**
  * Wraps a Queue (like a file based queue) to provide concurrency guarantees
  * around calls to the close() method. Extends AtomicBoolean to save allocation.
@@ -22,10 +26,19 @@ final class QueueWithResourcesNonBlockingUnsubscribe<T> extends AbstractQueueWit
 
     private final AtomicBoolean unsubscribed;
 
+    // called when unsubscribe is requested so that a blocked call can return
+    private final Action0 onUnsubscribing;
+
     QueueWithResourcesNonBlockingUnsubscribe(QueueWithResources<T> queue) {
+        this(queue, Actions.doNothing0());
+    }
+
+    QueueWithResourcesNonBlockingUnsubscribe(QueueWithResources<T> queue,
+            Action0 onUnsubscribing) {
         super(queue);
         this.unsubscribing = false;
         this.unsubscribed = new AtomicBoolean(false);
+        this.onUnsubscribing = onUnsubscribing;
     }
 
     @Override
@@ -85,6 +98,7 @@ final class QueueWithResourcesNonBlockingUnsubscribe<T> extends AbstractQueueWit
     @Override
     public void unsubscribe() {
         unsubscribing = true;
+        onUnsubscribing.call();
         checkUnsubscribe();
     }
 
@@ -1,10 +1,14 @@
 package com.github.davidmoten.rx.internal.operators;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
 
+import com.github.davidmoten.rx.buffertofile.OverflowStrategy;
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
+import com.github.davidmoten.rx.exceptions.BufferOverflowException;
 import com.github.davidmoten.util.Preconditions;
 
 import rx.functions.Func0;
@@ -21,6 +25,19 @@ import rx.plugins.RxJavaHooks;
  * it is deleted when empty and its file resources recovered (deleted).
  * 
  * <p>
+ * Optionally the total number of unread items and the total size of the files
+ * of all queues are limited. The size of each queue is recorded when it is
+ * rolled over so checking the limits is O(1) per offer. When a limit is
+ * reached the {@link OverflowStrategy} is applied. Files are only deleted
+ * once all of their items have been read so with a byte limit queues roll
+ * over at a quarter of the limit at most.
+ * 
+ * <p>
+ * Optionally up to {@code segmentPoolSize} queues that have been read are
+ * reset (keeping their files) and reused on rollover instead of creating and
+ * deleting files.
+ * 
+ * <p>
  * {@code RollingSPSCQueue} is partially thread-safe. It is designed to support
  * {@code OperatorBufferToFile} and expects calls to {@code offer()} to be
  * sequential (a happens-before relationship), and calls to {@code poll()} to be
@@ -30,12 +47,24 @@ import rx.plugins.RxJavaHooks;
  * @param <T>
  *            type of item being queued
  */
-class RollingSPSCQueue<T> implements QueueWithResources<T> {
+class RollingSPSCQueue<T> implements QueueWithResources<T>, QueueGauges {
+
+	// space is reclaimed a segment at a time so with a byte limit segments
+	// roll over at this fraction of the limit at most
+	private static final int MIN_SEGMENTS_PER_BYTE_LIMIT = 4;
 
 	private final Func0<QueueWithResources<T>> queueFactory;
 	private final long maxSizeBytesPerQueue;
 	private final long maxItemsPerQueue;
-	private final Deque<QueueWithResources<T>> queues = new LinkedList<QueueWithResources<T>>();
+	private final long maxTotalBytes;
+	private final long maxTotalItems;
+	private final OverflowStrategy overflowStrategy;
+	private final int segmentPoolSize;
+	private final SegmentPoolCounters segmentPoolStats;
+	private final Deque<Segment<T>> queues = new LinkedList<Segment<T>>();
+
+	// reset queues ready for reuse, guarded by queues
+	private final Deque<QueueWithResources<T>> pool = new ArrayDeque<QueueWithResources<T>>();
 
 	// counter used to determine when to rollover to another queue
 	// visibility managed by the fact that calls to offer are happens-before
@@ -45,15 +74,81 @@ class RollingSPSCQueue<T> implements QueueWithResources<T> {
 	// guarded by queues
 	private boolean unsubscribed;
 
+	// sum of the sizes of all queues except the last (recorded when each was
+	// rolled over), guarded by queues
+	private long closedBytes;
+
+	// number of unread items across all queues, guarded by queues
+	private long items;
+
+	// number of times the last queue was closed for writing, guarded by queues
+	private long rollovers;
+
+	// true while offer is waiting for the reader (OverflowStrategy.BLOCK),
+	// guarded by queues
+	private boolean writerWaiting;
+
+	// set when unsubscribe is requested so that a blocked offer returns
+	private volatile boolean cancelled;
+
 	RollingSPSCQueue(Func0<QueueWithResources<T>> queueFactory, long maxSizeBytesPerQueue, long maxItemsPerQueue) {
+		this(queueFactory, maxSizeBytesPerQueue, maxItemsPerQueue, Long.MAX_VALUE, Long.MAX_VALUE,
+				OverflowStrategy.ERROR, 0, null);
+	}
+
+	RollingSPSCQueue(Func0<QueueWithResources<T>> queueFactory, long maxSizeBytesPerQueue, long maxItemsPerQueue,
+			long maxTotalBytes, long maxTotalItems, OverflowStrategy overflowStrategy, int segmentPoolSize,
+			SegmentPoolCounters segmentPoolStats) {
 		Preconditions.checkNotNull(queueFactory);
 		Preconditions.checkArgument(maxSizeBytesPerQueue > 0, "maxSizeBytesPerQueue must be greater than zero");
 		Preconditions.checkArgument(maxItemsPerQueue > 1, "maxSizeBytesPerQueue must be greater than one");
+		Preconditions.checkArgument(maxTotalBytes > 0, "maxTotalBytes must be greater than zero");
+		Preconditions.checkArgument(maxTotalItems > 0, "maxTotalItems must be greater than zero");
+		Preconditions.checkNotNull(overflowStrategy);
+		Preconditions.checkArgument(segmentPoolSize >= 0, "segmentPoolSize cannot be negative");
 		this.count = 0;
-		this.maxSizeBytesPerQueue = maxSizeBytesPerQueue;
+		if (maxTotalBytes == Long.MAX_VALUE) {
+			this.maxSizeBytesPerQueue = maxSizeBytesPerQueue;
+		} else {
+			// otherwise a single segment could hold the whole limit and a
+			// BLOCKed writer would wait until everything had been read
+			this.maxSizeBytesPerQueue = Math.min(maxSizeBytesPerQueue,
+					Math.max(1, maxTotalBytes / MIN_SEGMENTS_PER_BYTE_LIMIT));
+		}
 		this.unsubscribed = false;
 		this.queueFactory = queueFactory;
 		this.maxItemsPerQueue = maxItemsPerQueue;
+		this.maxTotalBytes = maxTotalBytes;
+		this.maxTotalItems = maxTotalItems;
+		this.overflowStrategy = overflowStrategy;
+		this.segmentPoolSize = segmentPoolSize;
+		this.segmentPoolStats = segmentPoolStats;
+	}
+
+	private static final class Segment<T> {
+		final QueueWithResources<T> queue;
+
+		// unread items in this queue, guarded by queues
+		long items;
+
+		// resourcesSize() of the queue when rolled over, guarded by queues
+		long bytes;
+
+		Segment(QueueWithResources<T> queue) {
+			this.queue = queue;
+		}
+	}
+
+	/**
+	 * Releases an {@code offer()} blocked by {@link OverflowStrategy#BLOCK}
+	 * so that a deferred unsubscribe can proceed. May be called from any
+	 * thread.
+	 */
+	void cancel() {
+		cancelled = true;
+		synchronized (queues) {
+			queues.notifyAll();
+		}
 	}
 
 	@Override
@@ -64,11 +159,19 @@ class RollingSPSCQueue<T> implements QueueWithResources<T> {
 		synchronized (queues) {
 			if (!unsubscribed) {
 				unsubscribed = true;
+				queues.notifyAll();
 				try {
-					for (QueueWithResources<T> q : queues) {
-						q.unsubscribe();
+					for (Segment<T> segment : queues) {
+						segment.queue.unsubscribe();
 					}
 					queues.clear();
+					for (QueueWithResources<T> q : pool) {
+						q.unsubscribe();
+					}
+					if (segmentPoolStats != null) {
+						segmentPoolStats.segmentsPooled(-pool.size());
+					}
+					pool.clear();
 				} catch (RuntimeException e) {
 					RxJavaHooks.onError(e);
 					throw e;
@@ -96,18 +199,26 @@ class RollingSPSCQueue<T> implements QueueWithResources<T> {
 		if (unsubscribed) {
 			return true;
 		}
+		if ((maxTotalItems != Long.MAX_VALUE || maxTotalBytes != Long.MAX_VALUE) && !reserve()) {
+			// item dropped
+			return true;
+		}
 		count++;
 		if (createAnotherQueue()) {
 			count = 1;
-			QueueWithResources<T> q = queueFactory.call();
+			QueueWithResources<T> q = nextQueue();
 			synchronized (queues) {
 				if (!unsubscribed) {
-					QueueWithResources<T> last = queues.peekLast();
+					Segment<T> last = queues.peekLast();
 					if (last != null) {
-						last.freeResources();
+						last.queue.freeResources();
+						last.bytes = last.queue.resourcesSize();
+						closedBytes += last.bytes;
+						rollovers++;
 					}
-					queues.offerLast(q);
-					return q.offer(t);
+					Segment<T> segment = new Segment<T>(q);
+					queues.offerLast(segment);
+					return offer(segment, t);
 				} else {
 					return true;
 				}
@@ -117,11 +228,118 @@ class RollingSPSCQueue<T> implements QueueWithResources<T> {
 				if (unsubscribed) {
 					return true;
 				}
-				return queues.peekLast().offer(t);
+				return offer(queues.peekLast(), t);
+			}
+		}
+	}
+
+	private QueueWithResources<T> nextQueue() {
+		synchronized (queues) {
+			QueueWithResources<T> q = pool.pollFirst();
+			if (q != null) {
+				if (segmentPoolStats != null) {
+					segmentPoolStats.segmentReused();
+				}
+				return q;
+			}
+		}
+		if (segmentPoolStats != null) {
+			segmentPoolStats.segmentCreated();
+		}
+		return queueFactory.call();
+	}
+
+	// must hold the lock on queues
+	private boolean offer(Segment<T> segment, T t) {
+		boolean accepted = segment.queue.offer(t);
+		if (accepted) {
+			segment.items++;
+			items++;
+		}
+		return accepted;
+	}
+
+	/**
+	 * Applies the overflow strategy until there is room for another item.
+	 * Called from the writer thread only.
+	 * 
+	 * @return false if the item should be dropped
+	 */
+	private boolean reserve() {
+		synchronized (queues) {
+			while (true) {
+				if (unsubscribed || cancelled) {
+					return false;
+				}
+				Segment<T> last = queues.peekLast();
+				long bytes = last == null ? 0 : closedBytes + last.queue.resourcesSize();
+				if (items < maxTotalItems && bytes < maxTotalBytes) {
+					return true;
+				} else if (items == 0) {
+					// everything has been read but the files still take space
+					// so start again with a new queue
+					while (!queues.isEmpty()) {
+						removeFirst();
+					}
+					count = 0;
+				} else {
+					switch (overflowStrategy) {
+					case DROP_NEWEST:
+						return false;
+					case ERROR:
+						throw new BufferOverflowException("buffer to file overflowed limit of "
+								+ maxTotalItems + " items or " + maxTotalBytes + " bytes");
+					case DROP_OLDEST_SEGMENT:
+						if (queues.peekFirst() == last) {
+							count = 0;
+						}
+						removeFirst();
+						break;
+					default:
+						// BLOCK
+						writerWaiting = true;
+						try {
+							queues.wait();
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						} finally {
+							writerWaiting = false;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	// must hold the lock on queues
+	private void removeFirst() {
+		Segment<T> removed = queues.pollFirst();
+		if (removed != null) {
+			closedBytes -= removed.bytes;
+			items -= removed.items;
+			if (pool.size() < segmentPoolSize && removed.queue.reset()) {
+				pool.offerLast(removed.queue);
+				if (segmentPoolStats != null) {
+					segmentPoolStats.segmentsPooled(1);
+				}
+			} else {
+				removed.queue.unsubscribe();
+			}
+			if (writerWaiting) {
+				queues.notifyAll();
 			}
 		}
 	}
 
+	// must hold the lock on queues
+	private void itemsRead(Segment<T> segment, int n) {
+		segment.items -= n;
+		items -= n;
+		if (writerWaiting) {
+			queues.notifyAll();
+		}
+	}
+
 	private boolean createAnotherQueue() {
 		if (count == 1) {
 			// first call to offer
@@ -133,7 +351,7 @@ class RollingSPSCQueue<T> implements QueueWithResources<T> {
 				if (unsubscribed) {
 					return true;
 				}
-				return queues.peekLast().resourcesSize() >= maxSizeBytesPerQueue;
+				return queues.peekLast().queue.resourcesSize() >= maxSizeBytesPerQueue;
 			}
 		} else {
 			return false;
@@ -152,20 +370,19 @@ class RollingSPSCQueue<T> implements QueueWithResources<T> {
 				if (unsubscribed) {
 					return null;
 				}
-				QueueWithResources<T> first = queues.peekFirst();
+				Segment<T> first = queues.peekFirst();
 				if (first == null) {
 					return null;
 				}
-				T value = first.poll();
+				T value = first.queue.poll();
 				if (value == null) {
 					if (first == queues.peekLast()) {
 						return null;
 					} else {
-						QueueWithResources<T> removed = queues.pollFirst();
-						if (removed != null)
-							removed.unsubscribe();
+						removeFirst();
 					}
 				} else {
+					itemsRead(first, 1);
 					return value;
 				}
 			}
@@ -182,11 +399,11 @@ class RollingSPSCQueue<T> implements QueueWithResources<T> {
 			if (unsubscribed) {
 				return true;
 			}
-			QueueWithResources<T> first = queues.peekFirst();
+			Segment<T> first = queues.peekFirst();
 			if (first == null) {
 				return true;
 			} else {
-				return queues.peekLast() == first && first.isEmpty();
+				return queues.peekLast() == first && first.queue.isEmpty();
 			}
 		}
 	}
@@ -277,4 +494,34 @@ class RollingSPSCQueue<T> implements QueueWithResources<T> {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public boolean reset() {
+		return false;
+	}
+
+	@Override
+	public long bytesOnDisk() {
+		synchronized (queues) {
+			long bytes = 0;
+			for (Segment<T> segment : queues) {
+				bytes += Gauges.bytesOnDisk(segment.queue);
+			}
+			return bytes;
+		}
+	}
+
+	@Override
+	public long segments() {
+		synchronized (queues) {
+			return queues.size();
+		}
+	}
+
+	@Override
+	public long rollovers() {
+		synchronized (queues) {
+			return rollovers;
+		}
+	}
+
 }
\ No newline at end of file
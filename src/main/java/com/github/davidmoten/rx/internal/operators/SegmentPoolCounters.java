@@ -0,0 +1,43 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The segment counts behind a
+ * {@link com.github.davidmoten.rx.buffertofile.SegmentPoolStats}, shared by
+ * the queues created with one {@code Options} instance. Only the queues in
+ * this package update the counts.
+ */
+public final class SegmentPoolCounters {
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong pooled = new AtomicLong();
+
+    void segmentCreated() {
+        created.incrementAndGet();
+    }
+
+    void segmentReused() {
+        reused.incrementAndGet();
+        pooled.decrementAndGet();
+    }
+
+    // change in the number of pooled segments other than by reuse
+    void segmentsPooled(int delta) {
+        pooled.addAndGet(delta);
+    }
+
+    public long created() {
+        return created.get();
+    }
+
+    public long reused() {
+        return reused.get();
+    }
+
+    public long pooled() {
+        return pooled.get();
+    }
+
+}
@@ -0,0 +1,226 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.github.davidmoten.util.Preconditions;
+
+/**
+ * The file, free list and I/O behind a
+ * {@link com.github.davidmoten.rx.buffertofile.SpillPool}. Only the queues in
+ * this package acquire, release, write and read segments.
+ */
+public final class SpillPoolFile {
+
+    private final File file;
+    private final int segmentSizeBytes;
+    private final int segments;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    // stack of free segment indexes, guarded by this
+    private final int[] free;
+    private int freeCount;
+    private boolean closed;
+
+    /**
+     * Creates (or truncates) {@code file} with room for {@code segments}
+     * segments of {@code segmentSizeBytes} each.
+     *
+     * @param file
+     *            the pool file
+     * @param segmentSizeBytes
+     *            size of each segment, the unit of allocation
+     * @param segments
+     *            number of segments
+     */
+    public SpillPoolFile(File file, int segmentSizeBytes, int segments) {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkArgument(segmentSizeBytes > 0, "segmentSizeBytes must be greater than 0");
+        Preconditions.checkArgument(segments > 0, "segments must be greater than 0");
+        this.file = file;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.segments = segments;
+        try {
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            this.raf = new RandomAccessFile(file, "rw");
+            raf.setLength((long) segmentSizeBytes * segments);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.channel = raf.getChannel();
+        this.free = new int[segments];
+        // hand out low indexes first
+        for (int i = 0; i < segments; i++) {
+            free[i] = segments - 1 - i;
+        }
+        this.freeCount = segments;
+    }
+
+    public int segmentSizeBytes() {
+        return segmentSizeBytes;
+    }
+
+    public int segments() {
+        return segments;
+    }
+
+    public synchronized int freeSegments() {
+        return freeCount;
+    }
+
+    /**
+     * Returns {@code n} free segments or null if fewer than {@code n} are
+     * free.
+     *
+     * @param n
+     *            number of segments
+     * @return segment indexes or null
+     */
+    synchronized int[] tryAcquire(int n) {
+        checkSegmentsRequested(n);
+        if (closed || freeCount < n) {
+            return null;
+        } else {
+            int[] result = new int[n];
+            for (int i = 0; i < n; i++) {
+                result[i] = free[--freeCount];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Waits until {@code n} segments are free and returns them.
+     *
+     * @param n
+     *            number of segments
+     * @param cancelled
+     *            returns null when this is set and {@link #wakeWaiters()} is
+     *            called
+     * @return segment indexes or null if cancelled or the pool is closed
+     */
+    synchronized int[] acquire(int n, AtomicBoolean cancelled) {
+        while (true) {
+            if (cancelled.get()) {
+                return null;
+            }
+            int[] result = tryAcquire(n);
+            if (result != null || closed) {
+                return result;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void checkSegmentsRequested(int n) {
+        if (n > segments) {
+            throw new IllegalArgumentException(
+                    "block of " + n + " segments cannot fit in spill pool of " + segments + " segments");
+        }
+    }
+
+    /**
+     * Wakes threads blocked in {@link #acquire(int, AtomicBoolean)} so they
+     * can check their cancelled flag.
+     */
+    synchronized void wakeWaiters() {
+        notifyAll();
+    }
+
+    /**
+     * Returns segments to the pool.
+     *
+     * @param indexes
+     *            segments previously acquired
+     */
+    synchronized void release(int[] indexes) {
+        for (int index : indexes) {
+            free[freeCount++] = index;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Writes {@code bytes[0..length)} across the given segments in order.
+     * Positional writes are used so concurrent calls for different segments
+     * are safe.
+     *
+     * @param indexes
+     *            segments to write to
+     * @param bytes
+     *            source
+     * @param length
+     *            number of bytes to write
+     * @throws IOException
+     *             on write failure
+     */
+    void write(int[] indexes, byte[] bytes, int length) throws IOException {
+        for (int i = 0; i < indexes.length; i++) {
+            int offset = i * segmentSizeBytes;
+            ByteBuffer bb = ByteBuffer.wrap(bytes, offset, Math.min(segmentSizeBytes, length - offset));
+            long position = (long) indexes[i] * segmentSizeBytes;
+            while (bb.hasRemaining()) {
+                position += channel.write(bb, position);
+            }
+        }
+    }
+
+    /**
+     * Reads {@code length} bytes from the given segments in order into
+     * {@code bytes}.
+     *
+     * @param indexes
+     *            segments to read from
+     * @param bytes
+     *            destination
+     * @param length
+     *            number of bytes to read
+     * @throws IOException
+     *             on read failure
+     */
+    void read(int[] indexes, byte[] bytes, int length) throws IOException {
+        for (int i = 0; i < indexes.length; i++) {
+            int offset = i * segmentSizeBytes;
+            ByteBuffer bb = ByteBuffer.wrap(bytes, offset, Math.min(segmentSizeBytes, length - offset));
+            long position = (long) indexes[i] * segmentSizeBytes;
+            while (bb.hasRemaining()) {
+                int n = channel.read(bb, position);
+                if (n < 0) {
+                    throw new IOException("unexpected end of spill pool file " + file);
+                }
+                position += n;
+            }
+        }
+    }
+
+    /**
+     * Closes and deletes the pool file. Queues still using the pool will fail.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            raf.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        file.delete();
+    }
+
+}
@@ -0,0 +1,466 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializer;
+import com.github.davidmoten.rx.buffertofile.OverflowStrategy;
+import com.github.davidmoten.rx.buffertofile.QueueGauges;
+import com.github.davidmoten.rx.buffertofile.SpillPool;
+import com.github.davidmoten.rx.exceptions.BufferOverflowException;
+import com.github.davidmoten.util.ByteArrayOutputStreamNoCopyUnsynchronized;
+import com.github.davidmoten.util.Preconditions;
+
+/**
+ * <p>
+ * A logical queue for one stream that spills into segments of a shared
+ * {@link SpillPool}. Items are serialized into an in-memory block of at most
+ * one segment (unless a single item is bigger). When the next item does not
+ * fit the block is closed and written to newly acquired segments of the pool.
+ * The reader reads closed blocks in order (from memory if not yet written,
+ * otherwise from the pool after which the segments are released) and once it
+ * has caught up takes the open block directly from memory.
+ *
+ * <p>
+ * When the pool has no free segments for a closed block the
+ * {@link OverflowStrategy} applies at block granularity.
+ *
+ * <p>
+ * Has the same thread-safety as {@link FileBasedSPSCQueue}: calls to
+ * {@code offer()} must be sequential and calls to {@code poll()} must be
+ * sequential but the two may happen concurrently.
+ *
+ * @param <T>
+ *            type of item on queue
+ */
+final class SpillPoolQueue<T> implements QueueWithResources<T>, QueueGauges {
+
+	// create the exception once to avoid building many Exception objects
+	private static final EOFException EOF = new EOFException();
+
+	private final SpillPoolFile pool;
+	private final DataSerializer<T> serializer;
+	private final OverflowStrategy overflowStrategy;
+	private final int segmentSizeBytes;
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicBoolean cancelled = new AtomicBoolean();
+
+	// writer thread only
+	private final ByteArrayOutputStreamNoCopyUnsynchronized item;
+	private final DataOutputStream itemOutput;
+
+	// guards the fields below
+	private final Object lock = new Object();
+	// closed blocks oldest first
+	private final Deque<Block> blocks = new ArrayDeque<Block>();
+	private final ByteArrayOutputStreamNoCopyUnsynchronized block;
+	private int blockItems;
+	private long spilledBytes;
+	// pool segments held and blocks ever spilled, for QueueGauges
+	private long spilledSegments;
+	private long spilledBlocks;
+	private boolean unsubscribed;
+
+	// reader thread only
+	private final DataInputStream input;
+	private byte[] readBlock = new byte[0];
+	private int readBlockLength;
+	private int readBlockPosition;
+
+	private static final class Block {
+		final int length;
+		final int items;
+		// null once written to the pool
+		byte[] bytes;
+		// null until written to the pool
+		int[] segments;
+		// set when the reader has taken the block
+		boolean taken;
+
+		Block(byte[] bytes, int length, int items) {
+			this.bytes = bytes;
+			this.length = length;
+			this.items = items;
+		}
+	}
+
+	SpillPoolQueue(SpillPoolFile pool, DataSerializer<T> serializer, OverflowStrategy overflowStrategy) {
+		Preconditions.checkNotNull(pool);
+		Preconditions.checkNotNull(serializer);
+		Preconditions.checkNotNull(overflowStrategy);
+		this.pool = pool;
+		this.serializer = serializer;
+		this.overflowStrategy = overflowStrategy;
+		this.segmentSizeBytes = pool.segmentSizeBytes();
+		this.item = new ByteArrayOutputStreamNoCopyUnsynchronized();
+		this.itemOutput = new DataOutputStream(item);
+		this.block = new ByteArrayOutputStreamNoCopyUnsynchronized(segmentSizeBytes);
+		this.input = new DataInputStream(new BlockReader());
+	}
+
+	/**
+	 * Releases an {@code offer()} waiting for free segments (see
+	 * {@link OverflowStrategy#BLOCK}). May be called from any thread.
+	 */
+	void cancel() {
+		cancelled.set(true);
+		pool.wakeWaiters();
+	}
+
+	@Override
+	public boolean offer(T t) {
+		if (unsubscribed) {
+			return true;
+		}
+		item.reset();
+		try {
+			serializer.serialize(itemOutput, t);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		Block closed = null;
+		synchronized (lock) {
+			if (unsubscribed) {
+				return true;
+			}
+			if (block.size() > 0 && block.size() + item.size() > segmentSizeBytes) {
+				closed = new Block(block.toByteArray(), block.size(), blockItems);
+				blocks.offerLast(closed);
+				block.reset();
+				blockItems = 0;
+			}
+			block.write(item.toByteArrayNoCopy(), 0, item.size());
+			blockItems++;
+			size.incrementAndGet();
+		}
+		if (closed != null) {
+			spill(closed);
+		}
+		return true;
+	}
+
+	private void spill(Block b) {
+		int n = (b.length + segmentSizeBytes - 1) / segmentSizeBytes;
+		int[] segments;
+		while (true) {
+			if (overflowStrategy == OverflowStrategy.BLOCK) {
+				segments = pool.acquire(n, cancelled);
+			} else {
+				segments = pool.tryAcquire(n);
+			}
+			if (segments != null) {
+				break;
+			} else if (overflowStrategy == OverflowStrategy.ERROR) {
+				throw new BufferOverflowException("spill pool has fewer than " + n + " free segments");
+			} else if (overflowStrategy != OverflowStrategy.DROP_OLDEST_SEGMENT || !dropOldestSpilled()) {
+				// cancelled, pool closed or nothing of ours to drop so keep
+				// the newest data in memory only if DROP_OLDEST could not
+				// make room
+				discard(b);
+				return;
+			}
+		}
+		try {
+			pool.write(segments, b.bytes, b.length);
+		} catch (IOException e) {
+			pool.release(segments);
+			throw new RuntimeException(e);
+		}
+		synchronized (lock) {
+			if (b.taken || unsubscribed) {
+				// the reader used the in-memory copy already
+				pool.release(segments);
+			} else {
+				b.segments = segments;
+				b.bytes = null;
+				spilledBytes += b.length;
+				spilledSegments += segments.length;
+				spilledBlocks++;
+			}
+		}
+	}
+
+	private boolean dropOldestSpilled() {
+		synchronized (lock) {
+			Block first = blocks.peekFirst();
+			if (first == null || first.segments == null) {
+				return false;
+			}
+			blocks.pollFirst();
+			size.addAndGet(-first.items);
+			spilledBytes -= first.length;
+			spilledSegments -= first.segments.length;
+			pool.release(first.segments);
+			return true;
+		}
+	}
+
+	private void discard(Block b) {
+		synchronized (lock) {
+			if (!b.taken && blocks.remove(b)) {
+				size.addAndGet(-b.items);
+			}
+		}
+	}
+
+	@Override
+	public T poll() {
+		// limited thread-safety
+		// poll calls must be sequential but can happen concurrently with other
+		// methods except unsubscribe
+		try {
+			return pollNext();
+		} catch (EOFException e) {
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private T pollNext() throws IOException {
+		if (readBlockPosition == readBlockLength && !nextBlock()) {
+			throw EOF;
+		}
+		T t = serializer.deserialize(input);
+		size.decrementAndGet();
+		if (t == null) {
+			// same trick as FileBasedSPSCQueue, relies on type erasure
+			return NullSentinel.instance();
+		} else {
+			return t;
+		}
+	}
+
+	private boolean nextBlock() throws IOException {
+		Block b;
+		synchronized (lock) {
+			b = blocks.pollFirst();
+			if (b == null) {
+				if (block.size() == 0) {
+					return false;
+				}
+				int length = block.size();
+				if (readBlock.length < length) {
+					readBlock = new byte[Math.max(length, segmentSizeBytes)];
+				}
+				System.arraycopy(block.toByteArrayNoCopy(), 0, readBlock, 0, length);
+				block.reset();
+				blockItems = 0;
+				readBlockLength = length;
+				readBlockPosition = 0;
+				return true;
+			}
+			b.taken = true;
+			if (b.segments == null) {
+				// not written to the pool (yet)
+				readBlock = b.bytes;
+				readBlockLength = b.length;
+				readBlockPosition = 0;
+				return true;
+			}
+			spilledBytes -= b.length;
+			spilledSegments -= b.segments.length;
+		}
+		if (readBlock.length < b.length) {
+			readBlock = new byte[Math.max(b.length, segmentSizeBytes)];
+		}
+		try {
+			pool.read(b.segments, readBlock, b.length);
+		} finally {
+			pool.release(b.segments);
+		}
+		readBlockLength = b.length;
+		readBlockPosition = 0;
+		return true;
+	}
+
+	private final class BlockReader extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			if (readBlockPosition < readBlockLength) {
+				return readBlock[readBlockPosition++] & 0xFF;
+			} else {
+				throw EOF;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int n = Math.min(len, readBlockLength - readBlockPosition);
+			if (n <= 0) {
+				throw EOF;
+			}
+			System.arraycopy(readBlock, readBlockPosition, b, off, n);
+			readBlockPosition += n;
+			return n;
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size.get() == 0;
+	}
+
+	@Override
+	public void freeResources() {
+		// no files of our own
+	}
+
+	@Override
+	public long resourcesSize() {
+		synchronized (lock) {
+			return spilledBytes;
+		}
+	}
+
+	@Override
+	public long bytesOnDisk() {
+		synchronized (lock) {
+			// blocks not yet written to the pool are its write buffer
+			long bytes = spilledBytes + block.size();
+			for (Block b : blocks) {
+				if (b.segments == null && !b.taken) {
+					bytes += b.length;
+				}
+			}
+			return bytes;
+		}
+	}
+
+	@Override
+	public long segments() {
+		synchronized (lock) {
+			return spilledSegments;
+		}
+	}
+
+	@Override
+	public long rollovers() {
+		synchronized (lock) {
+			return spilledBlocks;
+		}
+	}
+
+	@Override
+	public boolean reset() {
+		return false;
+	}
+
+	@Override
+	public void unsubscribe() {
+		// must not run concurrently with offer/poll
+		synchronized (lock) {
+			if (unsubscribed) {
+				return;
+			}
+			unsubscribed = true;
+			for (Block b : blocks) {
+				if (b.segments != null) {
+					pool.release(b.segments);
+				}
+			}
+			blocks.clear();
+			block.reset();
+			spilledBytes = 0;
+			spilledSegments = 0;
+			size.set(0);
+		}
+	}
+
+	@Override
+	public boolean isUnsubscribed() {
+		synchronized (lock) {
+			return unsubscribed;
+		}
+	}
+
+	@Override
+	public T element() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public T peek() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int size() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean add(T e) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public T remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object[] toArray() {
+		throw new UnsupportedOperationException();
+	}
+
+	@SuppressWarnings("hiding")
+	@Override
+	public <T> T[] toArray(T[] a) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException();
+	}
+
+}
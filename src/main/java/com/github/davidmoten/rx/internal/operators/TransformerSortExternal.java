@@ -0,0 +1,233 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializer;
+import com.github.davidmoten.rx.util.RxRingBuffer;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable;
+import rx.Observable.Transformer;
+import rx.Scheduler;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * <p>
+ * Sorts a stream that may not fit in memory. The stream is cut into runs of up
+ * to {@code runSize} items, up to {@code parallelism} runs are sorted at a time
+ * on the scheduler and every run except the last is written to a file with the
+ * serializer. The sorted runs are then merged with {@link OrderedMerge}, which
+ * reads each file sequentially and deletes it once read.
+ *
+ * <p>
+ * At most about {@code parallelism + 2} runs are held in memory. A stream of
+ * at most {@code runSize} items is sorted without touching disk. Files left
+ * behind by an error or early unsubscription are deleted on termination or
+ * unsubscription.
+ *
+ * @param <T>
+ *            item type
+ */
+public final class TransformerSortExternal<T> implements Transformer<T, T> {
+
+    private final DataSerializer<T> serializer;
+    private final Comparator<? super T> comparator;
+    private final int runSize;
+    private final int parallelism;
+    private final Func0<File> fileFactory;
+    private final Scheduler scheduler;
+
+    public TransformerSortExternal(DataSerializer<T> serializer, Comparator<? super T> comparator,
+            int runSize, int parallelism, Func0<File> fileFactory, Scheduler scheduler) {
+        Preconditions.checkNotNull(serializer);
+        Preconditions.checkNotNull(comparator);
+        Preconditions.checkArgument(runSize > 0, "runSize must be greater than zero");
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be greater than zero");
+        Preconditions.checkNotNull(fileFactory);
+        Preconditions.checkNotNull(scheduler);
+        this.serializer = serializer;
+        this.comparator = comparator;
+        this.runSize = runSize;
+        this.parallelism = parallelism;
+        this.fileFactory = fileFactory;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Observable<T> call(final Observable<T> source) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                final Files files = new Files();
+                Action0 deleteFiles = new Action0() {
+                    @Override
+                    public void call() {
+                        files.close();
+                    }
+                };
+                return source //
+                        .buffer(runSize) //
+                        // look ahead one run so the last run can stay in
+                        // memory
+                        .buffer(2, 1) //
+                        .flatMap(new Func1<List<List<T>>, Observable<Observable<T>>>() {
+                            @Override
+                            public Observable<Observable<T>> call(final List<List<T>> runs) {
+                                return Observable.fromCallable(new Callable<Observable<T>>() {
+                                    @Override
+                                    public Observable<T> call() throws IOException {
+                                        List<T> run = runs.get(0);
+                                        Collections.sort(run, comparator);
+                                        if (runs.size() == 1) {
+                                            return Observable.from(run);
+                                        } else {
+                                            return spill(run, files);
+                                        }
+                                    }
+                                }).subscribeOn(scheduler);
+                            }
+                        }, parallelism) //
+                        .toList() //
+                        .flatMap(new Func1<List<Observable<T>>, Observable<T>>() {
+                            @Override
+                            public Observable<T> call(List<Observable<T>> sortedRuns) {
+                                // keep the items buffered by the merge to about
+                                // one run
+                                int bufferSize = Math.max(1, Math.min(RxRingBuffer.SIZE,
+                                        runSize / Math.max(1, sortedRuns.size())));
+                                return OrderedMerge.create(sortedRuns, comparator, false,
+                                        bufferSize);
+                            }
+                        }) //
+                        .doOnTerminate(deleteFiles) //
+                        .doOnUnsubscribe(deleteFiles);
+            }
+        });
+    }
+
+    /**
+     * Files of one subscription not yet deleted. A file added after
+     * {@code close()} (by a run still being written when the sort was
+     * cancelled) is deleted straight away.
+     */
+    private static final class Files {
+
+        private final Queue<File> queue = new ConcurrentLinkedQueue<File>();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        boolean isClosed() {
+            return closed.get();
+        }
+
+        /**
+         * Adds an open file. Returns false (and deletes the file) if already
+         * closed.
+         */
+        boolean add(File file) {
+            queue.offer(file);
+            if (closed.get()) {
+                deleteAll();
+                return false;
+            } else {
+                return true;
+            }
+        }
+
+        void remove(File file) {
+            queue.remove(file);
+            file.delete();
+        }
+
+        void close() {
+            closed.set(true);
+            deleteAll();
+        }
+
+        private void deleteAll() {
+            File file;
+            while ((file = queue.poll()) != null) {
+                file.delete();
+            }
+        }
+    }
+
+    private Observable<T> spill(List<T> run, Files files) throws IOException {
+        if (files.isClosed()) {
+            return Observable.empty();
+        }
+        final File file = fileFactory.call();
+        // opened before it is tracked so that a concurrent close cannot
+        // delete it before it is opened and have the open recreate it
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        if (!files.add(file)) {
+            out.close();
+            return Observable.empty();
+        }
+        try {
+            for (T t : run) {
+                serializer.serialize(out, t);
+            }
+        } finally {
+            out.close();
+        }
+        return read(file, run.size(), files);
+    }
+
+    private Observable<T> read(final File file, final int count, final Files files) {
+        return Observable.using(new Func0<DataInputStream>() {
+            @Override
+            public DataInputStream call() {
+                try {
+                    return new DataInputStream(
+                            new BufferedInputStream(new FileInputStream(file)));
+                } catch (IOException e) {
+                    throw Exceptions.propagate(e);
+                }
+            }
+        }, new Func1<DataInputStream, Observable<T>>() {
+            @Override
+            public Observable<T> call(final DataInputStream input) {
+                return Observable.range(1, count).map(new Func1<Integer, T>() {
+                    @Override
+                    public T call(Integer n) {
+                        try {
+                            return serializer.deserialize(input);
+                        } catch (IOException e) {
+                            throw Exceptions.propagate(e);
+                        }
+                    }
+                });
+            }
+        }, new Action1<DataInputStream>() {
+            @Override
+            public void call(DataInputStream input) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                files.remove(file);
+            }
+        }, true);
+    }
+
+}
@@ -13,6 +13,8 @@ import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.infra.Blackhole;
 
 import com.github.davidmoten.rx.buffertofile.DataSerializers;
+import com.github.davidmoten.rx.buffertofile.Options;
+import com.github.davidmoten.rx.buffertofile.SyncPolicy;
 import com.github.davidmoten.rx.perf.LatchedObserver;
 
 import rx.Observable;
@@ -70,6 +72,41 @@ public class Benchmarks {
         observer.latch.await(100, TimeUnit.SECONDS);
     }
 
+    // @Benchmark
+    public void perfOnBackpressureBufferToFileFor100_000IntegersDurableSyncNever(Blackhole bh)
+            throws InterruptedException {
+        perfOnBackpressureBufferToFileDurable(bh, SyncPolicy.never());
+    }
+
+    // @Benchmark
+    public void perfOnBackpressureBufferToFileFor100_000IntegersDurableSyncEvery1000Records(
+            Blackhole bh) throws InterruptedException {
+        perfOnBackpressureBufferToFileDurable(bh, SyncPolicy.everyRecords(1000));
+    }
+
+    // @Benchmark
+    public void perfOnBackpressureBufferToFileFor100_000IntegersDurableSyncEvery64KB(
+            Blackhole bh) throws InterruptedException {
+        perfOnBackpressureBufferToFileDurable(bh, SyncPolicy.everyBytes(64 * 1024));
+    }
+
+    // @Benchmark
+    public void perfOnBackpressureBufferToFileFor100_000IntegersDurableSyncEvery10ms(
+            Blackhole bh) throws InterruptedException {
+        perfOnBackpressureBufferToFileDurable(bh, SyncPolicy.every(10, TimeUnit.MILLISECONDS));
+    }
+
+    private static void perfOnBackpressureBufferToFileDurable(Blackhole bh, SyncPolicy policy)
+            throws InterruptedException {
+        LatchedObserver<Integer> observer = new LatchedObserver<Integer>(bh);
+        Observable.range(1, 100000)
+                .compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+                        Schedulers.computation(),
+                        Options.durable(true).syncPolicy(policy).build()))
+                .subscribe(observer);
+        observer.latch.await(100, TimeUnit.SECONDS);
+    }
+
     private static List<String> lines = readLines();
 
     private static List<String> readLines() {
@@ -0,0 +1,50 @@
+package com.github.davidmoten.rx;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializers;
+import com.github.davidmoten.rx.buffertofile.Options;
+import com.github.davidmoten.rx.buffertofile.QueueEngine;
+import com.github.davidmoten.rx.perf.LatchedObserver;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+/**
+ * Compares the {@link QueueEngine} implementations of
+ * {@code onBackpressureBufferToFile} across item sizes.
+ */
+@State(Scope.Benchmark)
+public class BufferToFileBenchmarks {
+
+    @Param({ "STREAM", "MEMORY_MAPPED", "ADAPTIVE" })
+    public QueueEngine engine;
+
+    @Param({ "4", "100", "1000", "10000" })
+    public int itemSize;
+
+    @Benchmark
+    public void perfOnBackpressureBufferToFileFor10_000ItemsOnComputation(Blackhole bh)
+            throws InterruptedException {
+        final byte[] item = new byte[itemSize];
+        LatchedObserver<byte[]> observer = new LatchedObserver<byte[]>(bh);
+        Observable.range(1, 10000).map(new Func1<Integer, byte[]>() {
+            @Override
+            public byte[] call(Integer n) {
+                return item;
+            }
+        }).compose(Transformers.onBackpressureBufferToFile(DataSerializers.byteArray(),
+                Schedulers.computation(),
+                Options.queueEngine(engine).rolloverSizeMB(20).build()))
+                .subscribe(observer);
+        observer.latch.await(100, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.github.davidmoten.rx;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.davidmoten.rx.perf.LatchedObserver;
+import com.github.davidmoten.rx.util.RxRingBuffer;
+
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ * Compares a ring buffer per source with a shared arena for
+ * {@code orderedMerge} of 100,000 interleaved integers. Run with
+ * {@code -prof gc} to compare allocation.
+ */
+@State(Scope.Benchmark)
+public class OrderedMergeBenchmarks {
+
+    private static final int TOTAL = 100000;
+
+    private static final Comparator<Integer> COMPARATOR = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+            return a.compareTo(b);
+        }
+    };
+
+    @Param({ "10", "1000", "10000" })
+    public int sources;
+
+    // 0 for a ring buffer per source
+    @Param({ "0", "16" })
+    public int sharedCapacityPerSource;
+
+    private List<Observable<Integer>> list;
+
+    @Setup
+    public void setup() {
+        list = new ArrayList<Observable<Integer>>(sources);
+        final int perSource = TOTAL / sources;
+        for (int i = 0; i < sources; i++) {
+            // source i emits i, i + sources, i + 2 * sources, ...
+            final int start = i;
+            list.add(Observable.range(0, perSource)
+                    .map(new Func1<Integer, Integer>() {
+                        @Override
+                        public Integer call(Integer n) {
+                            return start + n * sources;
+                        }
+                    }));
+        }
+    }
+
+    @Benchmark
+    public void orderedMerge(Blackhole bh) throws InterruptedException {
+        LatchedObserver<Integer> observer = new LatchedObserver<Integer>(bh);
+        Observable<Integer> merged;
+        if (sharedCapacityPerSource == 0) {
+            merged = Obs.orderedMerge(list, COMPARATOR);
+        } else {
+            merged = Obs.orderedMerge(list, COMPARATOR, false, RxRingBuffer.SIZE,
+                    sharedCapacityPerSource * sources);
+        }
+        merged.subscribe(observer);
+        observer.latch.await(100, TimeUnit.SECONDS);
+    }
+
+}
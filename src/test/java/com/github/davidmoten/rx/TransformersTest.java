@@ -59,6 +59,65 @@ public class TransformersTest {
         assertEquals(7.258615570478987, s.sd(), 0.00001);
     }
 
+    @Test
+    public void testStatisticsHigherMoments() {
+        Observable<Integer> nums = Observable.just(1, 4, 10, 20);
+        Statistics s = nums.compose(Transformers.collectStats()).last().toBlocking().single();
+        assertEquals(1.0, s.min(), 0.0);
+        assertEquals(20.0, s.max(), 0.0);
+        assertEquals(52.6875, s.variance(), 0.00001);
+        assertEquals(0.5576879868235272, s.skewness(), 0.00001);
+        assertEquals(-1.186484467015362, s.kurtosis(), 0.00001);
+    }
+
+    @Test
+    public void testStatisticsStableForLargeMean() {
+        // epoch millis with a spread of 1
+        long base = 1500000000000L;
+        Statistics s = Observable.just(base, base + 1, base + 2)
+                .compose(Transformers.<Long> collectStats()).last().toBlocking().single();
+        assertEquals(base + 1, s.mean(), 0.0);
+        assertEquals(Math.sqrt(2.0 / 3), s.sd(), 0.0000001);
+    }
+
+    @Test
+    public void testStatisticsCombineSameAsAllTogether() {
+        double[] values = { 3, 1, 4, 1, 5, 9, 2, 6, 5, 3, 5 };
+        Statistics.Accumulator all = Statistics.accumulator();
+        for (double x : values) {
+            all.add(x);
+        }
+        Statistics a = Statistics.create();
+        Statistics b = Statistics.create();
+        for (int i = 0; i < values.length; i++) {
+            if (i < 4) {
+                a = a.add(values[i]);
+            } else {
+                b = b.add(values[i]);
+            }
+        }
+        Statistics expected = all.toStatistics();
+        Statistics combined = a.combine(b);
+        assertEquals(expected.count(), combined.count());
+        assertEquals(expected.sum(), combined.sum(), 0.0000001);
+        assertEquals(expected.mean(), combined.mean(), 0.0000001);
+        assertEquals(expected.sd(), combined.sd(), 0.0000001);
+        assertEquals(expected.skewness(), combined.skewness(), 0.0000001);
+        assertEquals(expected.kurtosis(), combined.kurtosis(), 0.0000001);
+        assertEquals(1.0, combined.min(), 0.0);
+        assertEquals(9.0, combined.max(), 0.0);
+        // combining with empty statistics changes nothing
+        assertEquals(expected.sd(), Statistics.create().combine(expected).sd(), 0.0);
+        assertEquals(expected.sd(), expected.combine(Statistics.create()).sd(), 0.0);
+    }
+
+    @Test
+    public void testStatisticsResubscribeStartsAgain() {
+        Observable<Statistics> o = Observable.just(1, 2, 3).compose(Transformers.collectStats());
+        assertEquals(3, o.last().toBlocking().single().count());
+        assertEquals(3, o.last().toBlocking().single().count());
+    }
+
     @Test
     public void testStatisticsPairOnEmptyStream() {
         Observable<Integer> nums = Observable.empty();
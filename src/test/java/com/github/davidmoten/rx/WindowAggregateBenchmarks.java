@@ -0,0 +1,77 @@
+package com.github.davidmoten.rx;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.davidmoten.rx.perf.LatchedObserver;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.functions.Func2;
+
+/**
+ * Compares the sliding sum of 100,000 integers by {@code windowAggregate}
+ * with {@code buffer(windowSize, 1)} followed by summing each list.
+ */
+@State(Scope.Benchmark)
+public class WindowAggregateBenchmarks {
+
+    private static final int TOTAL = 100000;
+
+    private static final Func2<Long, Long, Long> SUM = new Func2<Long, Long, Long>() {
+        @Override
+        public Long call(Long a, Long b) {
+            return a + b;
+        }
+    };
+
+    private static final Func1<Integer, Long> TO_LONG = new Func1<Integer, Long>() {
+        @Override
+        public Long call(Integer x) {
+            return (long) x;
+        }
+    };
+
+    @Param({ "10", "100", "1000" })
+    public int windowSize;
+
+    @Benchmark
+    public void windowAggregate(Blackhole bh) throws InterruptedException {
+        run(Observable.range(1, TOTAL)
+                .compose(Transformers.windowAggregate(windowSize, TO_LONG, SUM)), bh);
+    }
+
+    @Benchmark
+    public void buffer(Blackhole bh) throws InterruptedException {
+        run(Observable.range(1, TOTAL).buffer(windowSize, 1)
+                .map(new Func1<List<Integer>, Long>() {
+                    @Override
+                    public Long call(List<Integer> list) {
+                        long sum = 0;
+                        for (Integer x : list) {
+                            sum += x;
+                        }
+                        return sum;
+                    }
+                }), bh);
+    }
+
+    @Benchmark
+    public void windowStatistics(Blackhole bh) throws InterruptedException {
+        run(Observable.range(1, TOTAL).compose(Transformers.<Integer> windowStatistics(windowSize)),
+                bh);
+    }
+
+    private static <T> void run(Observable<T> o, Blackhole bh) throws InterruptedException {
+        LatchedObserver<T> observer = new LatchedObserver<T>(bh);
+        o.subscribe(observer);
+        observer.latch.await(100, TimeUnit.SECONDS);
+    }
+
+}
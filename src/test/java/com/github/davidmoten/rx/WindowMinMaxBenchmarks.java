@@ -0,0 +1,73 @@
+package com.github.davidmoten.rx;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.davidmoten.rx.perf.LatchedObserver;
+
+import rx.Observable;
+
+/**
+ * Compares the generic {@code windowMax} with the primitive
+ * {@code windowMaxDouble} and {@code windowMaxLong} over 1,000,000 random
+ * values. Run with {@code -prof gc} to compare allocation.
+ */
+@State(Scope.Benchmark)
+public class WindowMinMaxBenchmarks {
+
+    private static final int TOTAL = 1000000;
+
+    @Param({ "10", "1000", "100000" })
+    public int windowSize;
+
+    private Observable<Double> doubles;
+    private Observable<Long> longs;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        Double[] d = new Double[TOTAL];
+        Long[] l = new Long[TOTAL];
+        for (int i = 0; i < TOTAL; i++) {
+            d[i] = random.nextDouble();
+            l[i] = random.nextLong();
+        }
+        // boxed up front so that only the operators allocate
+        doubles = Observable.from(d);
+        longs = Observable.from(l);
+    }
+
+    @Benchmark
+    public void windowMaxGenericDouble(Blackhole bh) throws InterruptedException {
+        run(doubles.compose(Transformers.<Double> windowMax(windowSize)), bh);
+    }
+
+    @Benchmark
+    public void windowMaxDouble(Blackhole bh) throws InterruptedException {
+        run(doubles.compose(Transformers.windowMaxDouble(windowSize)), bh);
+    }
+
+    @Benchmark
+    public void windowMaxGenericLong(Blackhole bh) throws InterruptedException {
+        run(longs.compose(Transformers.<Long> windowMax(windowSize)), bh);
+    }
+
+    @Benchmark
+    public void windowMaxLong(Blackhole bh) throws InterruptedException {
+        run(longs.compose(Transformers.windowMaxLong(windowSize)), bh);
+    }
+
+    private static <T> void run(Observable<T> o, Blackhole bh) throws InterruptedException {
+        LatchedObserver<T> observer = new LatchedObserver<T>(bh);
+        o.subscribe(observer);
+        observer.latch.await(100, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializer;
+import com.github.davidmoten.rx.buffertofile.DataSerializers;
+import com.github.davidmoten.rx.buffertofile.Options;
+
+import rx.functions.Func0;
+
+public class FileBasedMPSCQueueMemoryMappedTest {
+
+    @Test
+    public void testOfferAndPollAcrossSegments() {
+        // 16 byte segments hold two integer records
+        FileBasedMPSCQueueMemoryMapped<Integer> q = createQueue(16, DataSerializers.integer());
+        assertNull(q.poll());
+        for (int i = 1; i <= 5; i++) {
+            q.offer(i);
+        }
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, (int) q.poll());
+        }
+        assertTrue(q.isEmpty());
+        // reuses the segments that have been read
+        for (int i = 6; i <= 10; i++) {
+            q.offer(i);
+            assertEquals(i, (int) q.poll());
+        }
+        assertNull(q.poll());
+        q.unsubscribe();
+    }
+
+    @Test
+    public void testUnknownLengthSerializer() {
+        FileBasedMPSCQueueMemoryMapped<String> q = createQueue(64, DataSerializers.string());
+        q.offer("a");
+        q.offer("");
+        q.offer("hello there");
+        assertEquals("a", q.poll());
+        assertEquals("", q.poll());
+        assertEquals("hello there", q.poll());
+        assertNull(q.poll());
+        q.unsubscribe();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testItemLargerThanSegmentThrows() {
+        FileBasedMPSCQueueMemoryMapped<String> q = createQueue(16, DataSerializers.string());
+        try {
+            q.offer("this string is too long");
+        } finally {
+            q.unsubscribe();
+        }
+    }
+
+    @Test
+    public void testConcurrentProducersPreserveOrderPerProducer() throws InterruptedException {
+        checkConcurrentProducers(1024, 4, 100000);
+    }
+
+    @Test
+    public void testConcurrentProducersWithSegmentRecycledOnEveryFewItems()
+            throws InterruptedException {
+        // segments hold two records so producers that read the tail just
+        // before it moved on often race with the reader recycling it
+        checkConcurrentProducers(16, 8, 20000);
+    }
+
+    private static void checkConcurrentProducers(int size, final int producers, final int max)
+            throws InterruptedException {
+        final FileBasedMPSCQueueMemoryMapped<Integer> q = createQueue(size, DataSerializers.integer());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < max; i++) {
+                        q.offer(i * producers + producer);
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        int n = 0;
+        while (n < producers * max) {
+            Integer t = q.poll();
+            if (t != null) {
+                int producer = t % producers;
+                if (t / producers != last[producer] + 1) {
+                    failed.set(true);
+                }
+                last[producer] = t / producers;
+                n++;
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertFalse(failed.get());
+        assertNull(q.poll());
+        assertTrue(q.isEmpty());
+        q.unsubscribe();
+    }
+
+    private static <T> FileBasedMPSCQueueMemoryMapped<T> createQueue(int size, DataSerializer<T> serializer) {
+        final Func0<File> factory = Options.defaultInstance().fileFactory();
+        return new FileBasedMPSCQueueMemoryMapped<T>(factory, size, serializer);
+    }
+
+}
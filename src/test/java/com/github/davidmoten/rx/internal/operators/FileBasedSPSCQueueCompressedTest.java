@@ -0,0 +1,132 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.buffertofile.BlockCodecs;
+import com.github.davidmoten.rx.buffertofile.CompressionStats;
+import com.github.davidmoten.rx.buffertofile.DataSerializers;
+import com.github.davidmoten.rx.buffertofile.Options;
+
+public class FileBasedSPSCQueueCompressedTest {
+
+	@Test
+	public void testReadsFromMemoryWhenReaderKeepsUp() {
+		CompressionStats stats = Options.defaultInstance().compressionStats();
+		FileBasedSPSCQueueCompressed<Integer> q = createQueue(1024, stats);
+		q.offer(1);
+		q.offer(2);
+		assertEquals(1, (int) q.poll());
+		q.offer(3);
+		assertEquals(2, (int) q.poll());
+		assertEquals(3, (int) q.poll());
+		assertNull(q.poll());
+		assertTrue(q.isEmpty());
+		assertEquals(0, stats.blocks());
+		assertEquals(0, q.resourcesSize());
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testReadsBlocksFromFileThenFromMemory() {
+		CompressionStats stats = Options.defaultInstance().compressionStats();
+		// two integers per block
+		FileBasedSPSCQueueCompressed<Integer> q = createQueue(8, stats);
+		for (int i = 1; i <= 101; i++) {
+			q.offer(i);
+		}
+		assertEquals(50, stats.blocks());
+		assertEquals(400, stats.uncompressedBytes());
+		assertTrue(q.resourcesSize() > 0);
+		List<Integer> list = new ArrayList<Integer>();
+		for (int i = 1; i <= 60; i++) {
+			list.add(q.poll());
+		}
+		q.offer(102);
+		q.freeResources();
+		Integer t;
+		while ((t = q.poll()) != null) {
+			list.add(t);
+		}
+		assertEquals(102, list.size());
+		for (int i = 1; i <= 102; i++) {
+			assertEquals(i, (int) list.get(i - 1));
+		}
+		assertNull(q.poll());
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testCompressesRepetitiveItems() {
+		CompressionStats stats = Options.defaultInstance().compressionStats();
+		FileBasedSPSCQueueCompressed<Integer> q = createQueue(4096, stats);
+		for (int i = 0; i < 100000; i++) {
+			q.offer(i % 10);
+		}
+		assertTrue(stats.ratio() < 0.1);
+		for (int i = 0; i < 100000; i++) {
+			assertEquals(i % 10, (int) q.poll());
+		}
+		assertNull(q.poll());
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final FileBasedSPSCQueueCompressed<Integer> queue = createQueue(1024,
+				Options.defaultInstance().compressionStats());
+		final int max = 1000000;
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread t1 = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				for (int i = 1; i <= max; i++) {
+					queue.offer(i);
+				}
+			}
+		});
+		Thread t2 = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				int i = 1;
+				while (i <= max) {
+					Integer t = queue.poll();
+					if (t != null) {
+						if (i != t) {
+							failed.set(true);
+							System.out.println("failed for i = " + i);
+						}
+						i++;
+					}
+				}
+			}
+		});
+		t1.start();
+		t2.start();
+		t1.join();
+		t2.join();
+		assertFalse(failed.get());
+		queue.unsubscribe();
+	}
+
+	private static FileBasedSPSCQueueCompressed<Integer> createQueue(int blockSizeBytes,
+			CompressionStats stats) {
+		File file = new File("target/pqc");
+		file.delete();
+		return new FileBasedSPSCQueueCompressed<Integer>(file, DataSerializers.integer(),
+				BlockCodecs.deflate().call(), BlockCodecs.deflate().call(), blockSizeBytes,
+				BufferToFileAccess.get().counters(stats));
+	}
+
+}
@@ -0,0 +1,172 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.Transformers;
+import com.github.davidmoten.rx.buffertofile.DataSerializers;
+import com.github.davidmoten.rx.buffertofile.Options;
+import com.github.davidmoten.rx.buffertofile.SyncPolicy;
+
+import rx.Observable;
+import rx.functions.Func0;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+public class FileBasedSPSCQueueDurableTest {
+
+	@Test
+	public void testOfferAndPollWithRollover() {
+		File file = createFile("offerPoll");
+		FileBasedSPSCQueueDurable<Integer> q = createQueue(file);
+		assertTrue(q.isEmpty());
+		assertNull(q.poll());
+		for (int i = 1; i <= 10; i++) {
+			q.offer(i);
+		}
+		assertFalse(q.isEmpty());
+		for (int i = 1; i <= 10; i++) {
+			assertEquals(i, (int) q.poll());
+		}
+		assertNull(q.poll());
+		assertTrue(q.isEmpty());
+		q.unsubscribe();
+		assertFalse(file.exists());
+		assertFalse(new File(file.getPath() + ".0").exists());
+	}
+
+	@Test
+	public void testResumeAfterUnsubscribeBeforeAllRead() {
+		File file = createFile("resume");
+		FileBasedSPSCQueueDurable<Integer> q = createQueue(file);
+		for (int i = 1; i <= 10; i++) {
+			q.offer(i);
+		}
+		assertEquals(1, (int) q.poll());
+		assertEquals(2, (int) q.poll());
+		assertEquals(3, (int) q.poll());
+		assertEquals(4, (int) q.poll());
+		q.unsubscribe();
+		assertTrue(file.exists());
+		// the item returned by the last poll may not have been emitted so is
+		// read again
+		q = createQueue(file);
+		List<Integer> list = new ArrayList<Integer>();
+		Integer t;
+		while ((t = q.poll()) != null) {
+			list.add(t);
+		}
+		assertEquals(Arrays.asList(4, 5, 6, 7, 8, 9, 10), list);
+		q.offer(11);
+		assertEquals(11, (int) q.poll());
+		q.unsubscribe();
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testResumeTruncatesTornWrite() throws IOException {
+		File file = createFile("torn");
+		FileBasedSPSCQueueDurable<Integer> q = createQueue(file);
+		q.offer(1);
+		q.offer(2);
+		// simulate a crash part way through writing a record
+		RandomAccessFile f = new RandomAccessFile(new File(file.getPath() + ".0"), "rw");
+		f.seek(f.length());
+		f.writeInt(4);
+		f.writeInt(12345);
+		f.write(1);
+		f.close();
+		q = createQueue(file);
+		assertEquals(1, (int) q.poll());
+		assertEquals(2, (int) q.poll());
+		assertNull(q.poll());
+		q.offer(3);
+		assertEquals(3, (int) q.poll());
+		assertNull(q.poll());
+		q.unsubscribe();
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testOperatorResumesFromFilesOfEarlierSubscription() {
+		final File file = createFile("operator");
+		Options options = Options.fileFactory(new Func0<File>() {
+			@Override
+			public File call() {
+				return file;
+			}
+		}).durable(true).rolloverEvery(10).build();
+		TestSubscriber<Integer> ts = TestSubscriber.create(0);
+		Observable.range(1, 100)
+				.compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+						Schedulers.immediate(), options))
+				.subscribe(ts);
+		ts.requestMore(20);
+		ts.assertValueCount(20);
+		ts.unsubscribe();
+		assertTrue(file.exists());
+		List<Integer> second = Observable.range(101, 10)
+				.compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+						Schedulers.immediate(), options))
+				.toList().toBlocking().single();
+		assertEquals(20, (int) second.get(0));
+		assertEquals(110, (int) second.get(second.size() - 1));
+		assertEquals(91, second.size());
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testSyncPolicies() {
+		for (SyncPolicy policy : Arrays.asList(SyncPolicy.everyRecords(2), SyncPolicy.everyBytes(20),
+				SyncPolicy.every(1, TimeUnit.MILLISECONDS))) {
+			File file = createFile("sync");
+			FileBasedSPSCQueueDurable<Integer> q = createQueue(file, policy);
+			for (int i = 1; i <= 10; i++) {
+				q.offer(i);
+			}
+			for (int i = 1; i <= 10; i++) {
+				assertEquals(i, (int) q.poll());
+			}
+			q.unsubscribe();
+			assertFalse(file.exists());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSyncPolicyRequiresDurable() {
+		Options.syncPolicy(SyncPolicy.everyRecords(1)).build();
+	}
+
+	private static FileBasedSPSCQueueDurable<Integer> createQueue(File file) {
+		return createQueue(file, SyncPolicy.never());
+	}
+
+	private static FileBasedSPSCQueueDurable<Integer> createQueue(File file, SyncPolicy policy) {
+		return new FileBasedSPSCQueueDurable<Integer>(file, DataSerializers.integer(), 16,
+				Long.MAX_VALUE, 3, 2, policy);
+	}
+
+	private static File createFile(String name) {
+		File directory = new File("target/durable");
+		directory.mkdirs();
+		File file = new File(directory, name);
+		for (File f : directory.listFiles()) {
+			if (f.getName().startsWith(name)) {
+				f.delete();
+			}
+		}
+		return file;
+	}
+}
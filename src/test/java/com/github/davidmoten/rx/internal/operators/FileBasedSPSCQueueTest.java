@@ -3,6 +3,7 @@ package com.github.davidmoten.rx.internal.operators;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.util.concurrent.ExecutionException;
@@ -10,7 +11,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 
+import com.github.davidmoten.rx.buffertofile.CacheStats;
+import com.github.davidmoten.rx.buffertofile.CacheType;
 import com.github.davidmoten.rx.buffertofile.DataSerializers;
+import com.github.davidmoten.rx.buffertofile.Options;
 
 public class FileBasedSPSCQueueTest {
 
@@ -32,6 +36,19 @@ public class FileBasedSPSCQueueTest {
 		assertNull(q.poll());
 	}
 
+	@Test
+	public void testBytesOnDiskIncludesWriteBuffer() {
+		// 5 byte write buffer
+		FileBasedSPSCQueue<Integer> q = createQueue();
+		assertEquals(0, q.bytesOnDisk());
+		q.offer(1);
+		assertEquals(4, q.bytesOnDisk());
+		q.offer(2);
+		assertEquals(8, q.bytesOnDisk());
+		q.unsubscribe();
+		assertEquals(0, q.bytesOnDisk());
+	}
+
 	@Test
 	public void test3() {
 		FileBasedSPSCQueue<Integer> q = createQueue();
@@ -87,10 +104,114 @@ public class FileBasedSPSCQueueTest {
 		assertFalse(failed.get());
 	}
 
+	@Test
+	public void testHardRefCacheSkipsCachedItemsAndKeepsOldest() {
+		CacheStats stats = Options.cacheType(CacheType.HARD_REF).build().cacheStats();
+		FileBasedSPSCQueue<Integer> q = createQueue(
+				new ObjectCache<Integer>(CacheType.HARD_REF, 2, Long.MAX_VALUE,
+						BufferToFileAccess.get().counters(stats)));
+		for (int i = 1; i <= 5; i++) {
+			q.offer(i);
+		}
+		for (int i = 1; i <= 5; i++) {
+			assertEquals(i, (int) q.poll());
+		}
+		assertNull(q.poll());
+		// 3 and 5 were not cached because the cache was full
+		assertEquals(2, stats.hits());
+		assertEquals(3, stats.misses());
+		q.offer(6);
+		assertEquals(6, (int) q.poll());
+		assertEquals(3, stats.hits());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedCacheKeepsNewest() {
+		CacheStats stats = Options.cacheType(CacheType.LEAST_RECENTLY_USED).build().cacheStats();
+		FileBasedSPSCQueue<Integer> q = createQueue(
+				new ObjectCache<Integer>(CacheType.LEAST_RECENTLY_USED, 2, Long.MAX_VALUE,
+						BufferToFileAccess.get().counters(stats)));
+		for (int i = 1; i <= 5; i++) {
+			q.offer(i);
+		}
+		for (int i = 1; i <= 5; i++) {
+			assertEquals(i, (int) q.poll());
+		}
+		assertNull(q.poll());
+		assertEquals(2, stats.hits());
+		assertEquals(3, stats.misses());
+		assertEquals(0.4, stats.hitRate(), 0.00001);
+	}
+
+	@Test
+	public void testCacheSizeBytesLimitsCachedItems() {
+		CacheStats stats = Options.cacheType(CacheType.HARD_REF).build().cacheStats();
+		// room for one serialized integer
+		FileBasedSPSCQueue<Integer> q = createQueue(new ObjectCache<Integer>(CacheType.HARD_REF, 10, 4,
+				BufferToFileAccess.get().counters(stats)));
+		q.offer(1);
+		q.offer(2);
+		assertEquals(1, (int) q.poll());
+		assertEquals(2, (int) q.poll());
+		assertEquals(1, stats.hits());
+		assertEquals(1, stats.misses());
+	}
+
+	@Test
+	public void testConcurrentWithCache() throws InterruptedException {
+		File file = new File("target/pq3");
+		file.delete();
+		CacheStats stats = Options.cacheType(CacheType.LEAST_RECENTLY_USED).build().cacheStats();
+		final FileBasedSPSCQueue<Integer> queue = new FileBasedSPSCQueue<Integer>(1024, file,
+				DataSerializers.integer(),
+				new ObjectCache<Integer>(CacheType.LEAST_RECENTLY_USED, 100, Long.MAX_VALUE,
+						BufferToFileAccess.get().counters(stats)));
+		final int max = 1000000;
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread t1 = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				for (int i = 1; i <= max; i++) {
+					queue.offer(i);
+				}
+			}
+		});
+		Thread t2 = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				int i = 1;
+				while (i <= max) {
+					Integer t = queue.poll();
+					if (t != null) {
+						if (i != t) {
+							failed.set(true);
+						}
+						i++;
+					}
+				}
+			}
+		});
+		t1.start();
+		t2.start();
+		t1.join();
+		t2.join();
+		assertFalse(failed.get());
+		assertEquals(max, stats.hits() + stats.misses());
+		// nothing is written after the last 100 items so they are still
+		// cached when read whatever the interleaving
+		assertTrue(stats.hits() >= 100);
+	}
+
 	private static FileBasedSPSCQueue<Integer> createQueue() {
+		return createQueue(null);
+	}
+
+	private static FileBasedSPSCQueue<Integer> createQueue(ObjectCache<Integer> cache) {
 		File file = new File("target/pq");
 		file.delete();
-		FileBasedSPSCQueue<Integer> q = new FileBasedSPSCQueue<Integer>(5, file, DataSerializers.integer());
+		FileBasedSPSCQueue<Integer> q = new FileBasedSPSCQueue<Integer>(5, file, DataSerializers.integer(), cache);
 		return q;
 	}
 
@@ -0,0 +1,71 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializers;
+
+import rx.functions.Func0;
+
+public class MatchSpillStoreTest {
+
+    private static final Object NULL_SENTINEL = new Object();
+
+    private static final Func0<File> FILE_FACTORY = new Func0<File>() {
+        @Override
+        public File call() {
+            try {
+                return File.createTempFile("matchSpillStoreTest", "");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    @Test
+    public void testTakeLeavesOtherHashesOfBucketOnDisk() throws IOException {
+        MatchSpillStore<Integer> store = new MatchSpillStore<Integer>(DataSerializers.integer(),
+                NULL_SENTINEL, FILE_FACTORY, 4);
+        try {
+            // hashes 1 and 2 share bucket 0
+            store.add(0, 1, 10);
+            store.add(0, 2, 20);
+            store.add(0, 1, 11);
+            store.add(0, 2, NULL_SENTINEL);
+            store.add(0, 1, 12);
+            assertEquals(Arrays.<Object> asList(10, 11, 12), store.take(0, 1));
+            assertEquals(2, store.count(0));
+            assertEquals(Collections.emptyList(), store.take(0, 1));
+            store.add(0, 1, 13);
+            assertEquals(Arrays.<Object> asList(20, NULL_SENTINEL), store.take(0, 2));
+            assertEquals(Arrays.<Object> asList(13), store.take(0, 1));
+            assertTrue(store.isEmpty());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testTakeUnknownHashReadsNothing() throws IOException {
+        MatchSpillStore<Integer> store = new MatchSpillStore<Integer>(DataSerializers.integer(),
+                NULL_SENTINEL, FILE_FACTORY, 4);
+        try {
+            store.add(1, 5, 50);
+            assertEquals(Collections.emptyList(), store.take(1, 6));
+            assertEquals(Collections.emptyList(), store.take(2, 5));
+            assertFalse(store.isEmpty());
+            assertEquals(Arrays.<Object> asList(50), store.take(1, 5));
+        } finally {
+            store.close();
+        }
+    }
+
+}
@@ -4,9 +4,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -14,16 +18,23 @@ import org.junit.Test;
 
 import com.github.davidmoten.rx.Actions;
 import com.github.davidmoten.rx.Functions;
+import com.github.davidmoten.rx.MatchOptions;
 import com.github.davidmoten.rx.Obs;
+import com.github.davidmoten.rx.ToLongFunc1;
 import com.github.davidmoten.rx.Transformers;
+import com.github.davidmoten.rx.buffertofile.DataSerializers;
 import com.github.davidmoten.rx.testing.TestSubscriber2;
 import com.github.davidmoten.rx.testing.TestingHelper;
 
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
 import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
 
 public class OnSubscribeMatchTest {
 
@@ -236,6 +247,41 @@ public class OnSubscribeMatchTest {
                 .assertCompleted();
     }
 
+    @Test
+    public void testKeyFunctionsReceiveNullItems() {
+        Func1<Integer, Integer> key = new Func1<Integer, Integer>() {
+            @Override
+            public Integer call(Integer x) {
+                return x == null ? 0 : x;
+            }
+        };
+        ToLongFunc1<Integer> longKey = new ToLongFunc1<Integer>() {
+            @Override
+            public long call(Integer x) {
+                return x == null ? 0 : x;
+            }
+        };
+        // bounded matches wrap waiting items
+        List<MatchOptions<Integer, Integer>> optionsList = Arrays.asList(
+                MatchOptions.<Integer, Integer> defaultInstance(),
+                MatchOptions.<Integer, Integer> builder().maxPending(10).build());
+        for (MatchOptions<Integer, Integer> options : optionsList) {
+            for (boolean longKeys : new boolean[] { false, true }) {
+                Observable<Integer> a = Observable.just(null, 1);
+                Observable<Integer> b = Observable.just(1, null);
+                Observable<Integer> matches;
+                if (longKeys) {
+                    matches = Obs.matchLong(a, b, longKey, longKey, COMBINER, 128, options);
+                } else {
+                    matches = Obs.match(a, b, key, key, COMBINER, 128, options);
+                }
+                matches.to(TestingHelper.<Integer> test()) //
+                        .assertValues(1, null) //
+                        .assertCompleted();
+            }
+        }
+    }
+
     @Test
     public void testCombinerFunctionBThrowsResultsInErrorEmissionSwitched() {
         Observable<Integer> a = Observable.just(2, 1);
@@ -309,6 +355,240 @@ public class OnSubscribeMatchTest {
         Obs.match(a, b, Functions.identity(), Functions.identity(), COMBINER, -1);
     }
 
+    @Test
+    public void testLongKeys() {
+        Observable<Integer> a = Observable.just(1, 1, 2, 3, 1);
+        Observable<Integer> b = Observable.just(1, 2, 1, 3, 1);
+        a.compose(Transformers.matchWithLong(b, INT_TO_LONG, INT_TO_LONG, COMBINER)) //
+                .to(TestingHelper.<Integer> test()) //
+                .assertValues(1, 2, 1, 3, 1) //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testLongKeysMatchSameAsBoxedKeys() {
+        Random random = new Random(12345);
+        final long[] pool = new long[500];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = random.nextLong();
+        }
+        pool[0] = Long.MIN_VALUE;
+        pool[1] = 0;
+        // a and b are indexes into their key arrays, b has the keys of a
+        // shuffled
+        final int n = 5000;
+        List<Long> keys = new ArrayList<Long>(n);
+        for (int i = 0; i < n; i++) {
+            keys.add(pool[random.nextInt(pool.length)]);
+        }
+        final long[] aKeys = toArray(keys);
+        Collections.shuffle(keys, random);
+        final long[] bKeys = toArray(keys);
+        Observable<Integer> a = Observable.range(0, n);
+        Observable<Integer> b = Observable.range(0, n);
+        Func2<Integer, Integer, Integer> combiner = new Func2<Integer, Integer, Integer>() {
+            @Override
+            public Integer call(Integer x, Integer y) {
+                return x * n + y;
+            }
+        };
+        List<Integer> boxed = Obs.match(a, b, new Func1<Integer, Long>() {
+            @Override
+            public Long call(Integer i) {
+                return aKeys[i];
+            }
+        }, new Func1<Integer, Long>() {
+            @Override
+            public Long call(Integer i) {
+                return bKeys[i];
+            }
+        }, combiner, 16).toList().toBlocking().single();
+        List<Integer> primitive = Obs.matchLong(a, b, new ToLongFunc1<Integer>() {
+            @Override
+            public long call(Integer i) {
+                return aKeys[i];
+            }
+        }, new ToLongFunc1<Integer>() {
+            @Override
+            public long call(Integer i) {
+                return bKeys[i];
+            }
+        }, combiner, 16).toList().toBlocking().single();
+        assertEquals(n, boxed.size());
+        assertEquals(boxed, primitive);
+    }
+
+    @Test
+    public void testMaxPendingEvictsOldest() {
+        for (boolean longKeys : new boolean[] { false, true }) {
+            Observable<Integer> a = Observable.just(1, 2, 3, 4);
+            Observable<Integer> b = Observable.just(4, 3, 2, 1);
+            List<Integer> evicted = new ArrayList<Integer>();
+            MatchOptions<Integer, Integer> options = MatchOptions.<Integer, Integer> builder() //
+                    .maxPending(2) //
+                    .onEvictA(Actions.addTo(evicted)) //
+                    .build();
+            Observable<Integer> matches;
+            if (longKeys) {
+                matches = Obs.matchLong(a, b, INT_TO_LONG, INT_TO_LONG, COMBINER, 128, options);
+            } else {
+                matches = Obs.match(a, b, Functions.<Integer> identity(),
+                        Functions.<Integer> identity(), COMBINER, 128, options);
+            }
+            // a is drained first so 1 and 2 are evicted, then a has nothing
+            // waiting once 4 and 3 are matched
+            matches.to(TestingHelper.<Integer> test()) //
+                    .assertValues(4, 3) //
+                    .assertCompleted();
+            assertEquals(Arrays.asList(1, 2), evicted);
+        }
+    }
+
+    @Test
+    public void testTimeToLiveEvicts() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> a = PublishSubject.create();
+        PublishSubject<Integer> b = PublishSubject.create();
+        List<Integer> evictedA = new ArrayList<Integer>();
+        List<Integer> evictedB = new ArrayList<Integer>();
+        MatchOptions<Integer, Integer> options = MatchOptions.<Integer, Integer> builder() //
+                .timeToLive(10, TimeUnit.SECONDS) //
+                .scheduler(scheduler) //
+                .onEvictA(Actions.addTo(evictedA)) //
+                .onEvictB(Actions.addTo(evictedB)) //
+                .build();
+        TestSubscriber2<Integer> ts = Obs
+                .match(a, b, Functions.<Integer> identity(), Functions.<Integer> identity(),
+                        COMBINER, 128, options) //
+                .to(TestingHelper.<Integer> test());
+        a.onNext(1);
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+        a.onNext(2);
+        // 1 expires at 10s, found by the periodic check
+        scheduler.advanceTimeBy(6, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(1), evictedA);
+        b.onNext(2);
+        b.onNext(1);
+        ts.assertValues(2);
+        scheduler.advanceTimeBy(20, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(1), evictedB);
+        a.onCompleted();
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testTimeToLiveEvictsWithoutDownstreamRequest() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> a = PublishSubject.create();
+        PublishSubject<Integer> b = PublishSubject.create();
+        List<Integer> evictedA = new ArrayList<Integer>();
+        MatchOptions<Integer, Integer> options = MatchOptions.<Integer, Integer> builder() //
+                .timeToLive(10, TimeUnit.SECONDS) //
+                .scheduler(scheduler) //
+                .onEvictA(Actions.addTo(evictedA)) //
+                .build();
+        TestSubscriber2<Integer> ts = Obs
+                .match(a, b, Functions.<Integer> identity(), Functions.<Integer> identity(),
+                        COMBINER, 128, options) //
+                .to(TestingHelper.<Integer> testWithRequest(1));
+        a.onNext(2);
+        a.onNext(1);
+        b.onNext(1);
+        // the request is used up with 2 still waiting
+        ts.assertValues(1);
+        scheduler.advanceTimeBy(11, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(2), evictedA);
+        // later checks find nothing more to evict
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+        assertEquals(Arrays.asList(2), evictedA);
+        ts.assertValues(1);
+    }
+
+    @Test
+    public void testEvictActionThrowsResultsInErrorEmission() {
+        Observable<Integer> a = Observable.just(1, 2);
+        Observable<Integer> b = Observable.just(2);
+        MatchOptions<Integer, Integer> options = MatchOptions.<Integer, Integer> builder() //
+                .maxPending(1) //
+                .onEvictA(new Action1<Integer>() {
+                    @Override
+                    public void call(Integer t) {
+                        throw new Functions.ThrowingException();
+                    }
+                }) //
+                .build();
+        Obs.match(a, b, Functions.<Integer> identity(), Functions.<Integer> identity(), COMBINER,
+                128, options) //
+                .to(TestingHelper.<Integer> test()) //
+                .assertNoValues() //
+                .assertError(Functions.ThrowingException.class);
+    }
+
+    @Test
+    public void testSpillMatchesAllAndDeletesFiles() {
+        final List<File> files = new ArrayList<File>();
+        MatchOptions<Integer, Integer> options = MatchOptions.<Integer, Integer> builder() //
+                .spill(DataSerializers.integer(), DataSerializers.integer()) //
+                .maxInMemory(100) //
+                .spillBuckets(64) //
+                .spillFileFactory(new Func0<File>() {
+                    @Override
+                    public File call() {
+                        try {
+                            File file = File.createTempFile("matchSpillTest", "");
+                            files.add(file);
+                            return file;
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }) //
+                .build();
+        final int n = 10000;
+        // every key of a waits for b, with a null among them
+        Observable<Integer> a = Observable.range(1, n).concatWith(Observable.<Integer> just(null));
+        Observable<Integer> b = Observable.<Integer> just(null)
+                .concatWith(Observable.range(1, n).map(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer x) {
+                        return n + 1 - x;
+                    }
+                }));
+        Func1<Integer, Integer> key = new Func1<Integer, Integer>() {
+            @Override
+            public Integer call(Integer x) {
+                return x == null ? 0 : x;
+            }
+        };
+        List<Integer> list = Obs.match(a, b, key, key, COMBINER, 128, options) //
+                .toList().toBlocking().single();
+        assertEquals(n + 1, list.size());
+        assertTrue(list.contains(null));
+        list.remove(null);
+        Collections.sort(list);
+        assertEquals(Observable.range(1, n).toList().toBlocking().single(), list);
+        assertFalse(files.isEmpty());
+        for (File file : files) {
+            assertFalse(file.exists());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSpillWithMaxPendingThrowsIAE() {
+        MatchOptions.<Integer, Integer> builder() //
+                .spill(DataSerializers.integer(), DataSerializers.integer()) //
+                .maxPending(10) //
+                .build();
+    }
+
+    private static long[] toArray(List<Long> list) {
+        long[] a = new long[list.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = list.get(i);
+        }
+        return a;
+    }
+
     private void testShifted(int n, boolean async) {
         Observable<Integer> a = Observable.just(0).concatWith(Observable.range(1, n));
         if (async) {
@@ -334,6 +614,13 @@ public class OnSubscribeMatchTest {
         return matchThem(a, b).to(TestingHelper.<Integer> test());
     }
 
+    private static final ToLongFunc1<Integer> INT_TO_LONG = new ToLongFunc1<Integer>() {
+        @Override
+        public long call(Integer x) {
+            return x;
+        }
+    };
+
     private static final Func2<Integer, Integer, Integer> COMBINER = new Func2<Integer, Integer, Integer>() {
         @Override
         public Integer call(Integer x, Integer y) {
@@ -9,6 +9,8 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -24,6 +26,8 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.management.ObjectName;
+
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -34,18 +38,31 @@ import org.junit.runners.MethodSorters;
 
 import com.github.davidmoten.rx.Actions;
 import com.github.davidmoten.rx.Transformers;
+import com.github.davidmoten.rx.buffertofile.BlockCodecs;
+import com.github.davidmoten.rx.buffertofile.BufferToFileMetrics;
+import com.github.davidmoten.rx.buffertofile.BufferToFileStats;
+import com.github.davidmoten.rx.buffertofile.ByteBufferSerializer;
+import com.github.davidmoten.rx.buffertofile.CompressionStats;
 import com.github.davidmoten.rx.buffertofile.DataSerializer;
 import com.github.davidmoten.rx.buffertofile.DataSerializers;
 import com.github.davidmoten.rx.buffertofile.Options;
+import com.github.davidmoten.rx.buffertofile.OverflowStrategy;
+import com.github.davidmoten.rx.buffertofile.QueueEngine;
+import com.github.davidmoten.rx.buffertofile.SegmentPoolStats;
+import com.github.davidmoten.rx.buffertofile.SpillPool;
+import com.github.davidmoten.rx.exceptions.BufferOverflowException;
 import com.github.davidmoten.rx.testing.TestingHelper;
 
 import rx.Observable;
+import rx.Observable.OnSubscribe;
 import rx.Scheduler;
 import rx.Scheduler.Worker;
 import rx.Subscriber;
+import rx.Subscription;
 import rx.functions.Action0;
 import rx.functions.Action1;
 import rx.functions.Func0;
+import rx.functions.Func1;
 import rx.observers.TestSubscriber;
 import rx.plugins.RxJavaHooks;
 import rx.schedulers.Schedulers;
@@ -117,6 +134,214 @@ public final class OperatorBufferToFileTest {
         checkHandlesThreeElements(Options.defaultInstance());
     }
 
+    @Test
+    public void handlesThreeElementsImmediateSchedulerMemoryMapped() throws InterruptedException {
+        checkHandlesThreeElements(Options.queueEngine(QueueEngine.MEMORY_MAPPED).build());
+    }
+
+    @Test
+    public void handlesThreeElementsImmediateSchedulerAdaptive() throws InterruptedException {
+        checkHandlesThreeElements(Options.queueEngine(QueueEngine.ADAPTIVE).build());
+    }
+
+    @Test
+    public void handlesManySegmentsForEachEngine() throws InterruptedException {
+        for (QueueEngine engine : QueueEngine.values()) {
+            Scheduler scheduler = createSingleThreadScheduler();
+            int max = 10000;
+            List<Integer> list = Observable.range(1, max)
+                    //
+                    .compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+                            scheduler, Options.queueEngine(engine).mappedSegmentSizeBytes(1024)
+                                    .rolloverEvery(max / 10).build()))
+                    .toList().toBlocking().single();
+            assertEquals(Observable.range(1, max).toList().toBlocking().single(), list);
+            waitUntilWorkCompleted(scheduler);
+        }
+    }
+
+    @Test
+    public void adaptiveFallsBackToStreamWhenMappedBytesLimitReachedAndPreservesOrder() {
+        final int max = 10000;
+        FileBasedSPSCQueueAdaptive<Integer> q = new FileBasedSPSCQueueAdaptive<Integer>(
+                new Func0<QueueWithSubscription<Integer>>() {
+                    @Override
+                    public QueueWithSubscription<Integer> call() {
+                        // allow only two segments
+                        return new FileBasedSPSCQueueMemoryMapped<Integer>(
+                                Options.defaultInstance().fileFactory(), 1024,
+                                DataSerializers.integer(),
+                                FileBasedSPSCQueueMemoryMapped.mappedBytes() + 2048);
+                    }
+                }, new Func0<QueueWithSubscription<Integer>>() {
+                    @Override
+                    public QueueWithSubscription<Integer> call() {
+                        return new QueueWithResourcesNonBlockingUnsubscribe<Integer>(
+                                new FileBasedSPSCQueue<Integer>(1024,
+                                        Options.defaultInstance().fileFactory().call(),
+                                        DataSerializers.integer()));
+                    }
+                });
+        for (int i = 1; i <= max; i++) {
+            q.offer(i);
+        }
+        assertTrue(q.isFallenBack());
+        for (int i = 1; i <= max; i++) {
+            assertEquals(i, (int) q.poll());
+        }
+        assertTrue(q.isEmpty());
+        q.unsubscribe();
+    }
+
+    @Test
+    public void byteBufferSerializersRoundTripForEachEngine() {
+        final List<String> strings = Arrays.asList("", "abc", "\u00e9t\u00e9", "\u4e2d\u6587",
+                "\ud83d\ude00 smile", "unpaired \ud83d");
+        for (QueueEngine engine : QueueEngine.values()) {
+            Options options = Options.queueEngine(engine).mappedSegmentSizeBytes(64).build();
+            assertEquals(Arrays.asList("", "abc", "\u00e9t\u00e9", "\u4e2d\u6587",
+                    "\ud83d\ude00 smile", "unpaired ?"),
+                    Observable.from(strings)
+                            .compose(Transformers.onBackpressureBufferToFile(
+                                    DataSerializers.utf8(), Schedulers.immediate(), options))
+                            .toList().toBlocking().single());
+            assertEquals(Arrays.asList(1L, Long.MAX_VALUE, -5L),
+                    Observable.just(1L, Long.MAX_VALUE, -5L)
+                            .compose(Transformers.onBackpressureBufferToFile(
+                                    DataSerializers.longs(), Schedulers.immediate(), options))
+                            .toList().toBlocking().single());
+            DataSerializer<Integer> adapted = DataSerializers
+                    .from(new ByteBufferSerializer<Integer>() {
+
+                        @Override
+                        public void serialize(ByteBuffer buffer, Integer t) {
+                            buffer.putShort(t.shortValue());
+                        }
+
+                        @Override
+                        public Integer deserialize(ByteBuffer buffer) {
+                            return (int) buffer.getShort();
+                        }
+                    });
+            assertEquals(Observable.range(1, 1000).toList().toBlocking().single(),
+                    Observable.range(1, 1000)
+                            .compose(Transformers.onBackpressureBufferToFile(adapted,
+                                    Schedulers.immediate(), options))
+                            .toList().toBlocking().single());
+        }
+    }
+
+    @Test
+    public void compressionWithRolloverPreservesOrder() {
+        Options options = Options.compression(BlockCodecs.deflate()).compressionBlockSizeBytes(256)
+                .rolloverEvery(10000).build();
+        List<Integer> list = Observable.range(1, 100000)
+                .compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+                        Schedulers.computation(), options))
+                .rebatchRequests(1000).toList().toBlocking().single();
+        assertEquals(Observable.range(1, 100000).toList().toBlocking().single(), list);
+        CompressionStats stats = options.compressionStats();
+        assertTrue(stats.compressedBytes() <= stats.uncompressedBytes() + 20 * stats.blocks());
+    }
+
+    @Test
+    public void segmentPoolStatsAreUpdatedByOperator() {
+        Options options = Options.rolloverEvery(100).segmentPoolSize(2).build();
+        List<Integer> list = Observable.range(1, 10000)
+                .compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+                        Schedulers.computation(), options))
+                .toList().toBlocking().single();
+        assertEquals(Observable.range(1, 10000).toList().toBlocking().single(), list);
+        SegmentPoolStats stats = options.segmentPoolStats();
+        assertTrue(stats.created() > 0);
+        // every rollover either created or reused a segment
+        assertTrue(stats.created() + stats.reused() >= 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compressionNotSupportedWhenDurable() {
+        Options.compression(BlockCodecs.deflate()).durable(true).build();
+    }
+
+    @Test
+    public void totalItemsLimitWithErrorStrategyEmitsBufferOverflowException() {
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        Observable.range(1, 1000)
+                .compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+                        Schedulers.immediate(), Options.maxTotalItems(10).delayError(false).build()))
+                .subscribe(ts);
+        ts.assertError(BufferOverflowException.class);
+        ts.assertNoValues();
+    }
+
+    @Test
+    public void metricsDoNotCountItemRejectedByQueue() {
+        BufferToFileMetrics metrics = BufferToFileMetrics.create("rejectedTest");
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        Observable.range(1, 1000)
+                .compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+                        Schedulers.immediate(),
+                        Options.maxTotalItems(10).delayError(false).metrics(metrics).build()))
+                .subscribe(ts);
+        ts.assertError(BufferOverflowException.class);
+        assertEquals(10, metrics.stats().itemsWritten());
+    }
+
+    @Test(timeout = 10000)
+    public void unsubscribeReleasesProducerBlockedByTotalItemsLimit() throws InterruptedException {
+        final CountDownLatch released = new CountDownLatch(1);
+        Observable<Integer> source = Observable.unsafeCreate(new OnSubscribe<Integer>() {
+            @Override
+            public void call(Subscriber<? super Integer> subscriber) {
+                int i = 0;
+                while (!subscriber.isUnsubscribed()) {
+                    subscriber.onNext(i++);
+                }
+                released.countDown();
+            }
+        });
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        source.subscribeOn(Schedulers.newThread())
+                .compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+                        Schedulers.computation(),
+                        Options.maxTotalItems(10).overflowStrategy(OverflowStrategy.BLOCK).build()))
+                .subscribe(ts);
+        assertFalse(released.await(200, TimeUnit.MILLISECONDS));
+        ts.unsubscribe();
+        assertTrue(released.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void manyStreamsShareSpillPoolAndKeepOrder() {
+        SpillPool pool = SpillPool.create(new File("target/spillPoolOperator"), 1024, 64);
+        try {
+            final Options options = Options.spillPool(pool).overflowStrategy(OverflowStrategy.BLOCK)
+                    .build();
+            List<List<Integer>> lists = Observable.range(0, 50)
+                    .flatMap(new Func1<Integer, Observable<List<Integer>>>() {
+                        @Override
+                        public Observable<List<Integer>> call(Integer stream) {
+                            return Observable.range(stream * 100000, 5000)
+                                    .subscribeOn(Schedulers.io())
+                                    .compose(Transformers.onBackpressureBufferToFile(
+                                            DataSerializers.integer(), Schedulers.computation(),
+                                            options))
+                                    .rebatchRequests(100).toList();
+                        }
+                    }).toList().toBlocking().single();
+            assertEquals(50, lists.size());
+            for (List<Integer> list : lists) {
+                assertEquals(5000, list.size());
+                for (int i = 1; i < list.size(); i++) {
+                    assertEquals(list.get(i - 1) + 1, (int) list.get(i));
+                }
+            }
+            assertEquals(64, pool.freeSegments());
+        } finally {
+            pool.close();
+        }
+    }
+
     private void checkHandlesThreeElements(Options options) {
         List<String> b = Observable.just("abc", "def", "ghi")
                 //
@@ -306,6 +531,115 @@ public final class OperatorBufferToFileTest {
         }
     }
 
+    @Test
+    public void tieredQueueSpillsWhenMemoryFullAndPreservesOrder() {
+        FileBasedSPSCQueueTiered<Integer> q = new FileBasedSPSCQueueTiered<Integer>(4,
+                new Func0<QueueWithSubscription<Integer>>() {
+                    @Override
+                    public QueueWithSubscription<Integer> call() {
+                        return new QueueWithResourcesNonBlockingUnsubscribe<Integer>(
+                                new FileBasedSPSCQueue<Integer>(1024,
+                                        Options.defaultInstance().fileFactory().call(),
+                                        DataSerializers.integer()));
+                    }
+                });
+        q.offer(1);
+        q.offer(null);
+        q.offer(3);
+        q.offer(4);
+        assertFalse(q.isSpilling());
+        q.offer(5);
+        q.offer(6);
+        assertTrue(q.isSpilling());
+        assertEquals(1, (int) q.poll());
+        // still spilling because the file queue has items
+        q.offer(7);
+        List<Integer> list = new ArrayList<Integer>();
+        // a null is queued as the sentinel which is not an Integer
+        Object t;
+        while ((t = q.poll()) != null) {
+            list.add(NullSentinel.isNullSentinel(t) ? null : (Integer) t);
+        }
+        assertEquals(Arrays.asList(null, 3, 4, 5, 6, 7), list);
+        assertTrue(q.isEmpty());
+        // back to memory now that the file queue has been read
+        q.offer(8);
+        assertFalse(q.isSpilling());
+        assertEquals(8, (int) q.poll());
+        q.unsubscribe();
+    }
+
+    @Test
+    public void memoryBufferPreservesOrderWhenSpilling() throws InterruptedException {
+        for (int size : new int[] { 1, 16, 1024 }) {
+            int max = 10000;
+            Scheduler scheduler = createSingleThreadScheduler();
+            List<Integer> list = Observable.range(1, max)
+                    //
+                    .compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+                            scheduler, Options.memoryBufferSize(size).rolloverEvery(max / 10)
+                                    .build()))
+                    .toList().toBlocking().single();
+            assertEquals(Observable.range(1, max).toList().toBlocking().single(), list);
+            waitUntilWorkCompleted(scheduler, 10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void metricsRatesAreNotChangedByReading() throws InterruptedException {
+        BufferToFileMetrics metrics = BufferToFileMetrics.create("ratesTest");
+        BufferToFileCounters counters = BufferToFileAccess.get().counters(metrics);
+        for (int i = 0; i < 100; i++) {
+            counters.itemWritten();
+        }
+        assertEquals(0, metrics.stats().writeRatePerSecond(), 0);
+        TimeUnit.MILLISECONDS.sleep(1100);
+        double rate = metrics.stats().writeRatePerSecond();
+        assertTrue(rate > 0);
+        // a snapshot and the MXBean getters see the same window
+        assertEquals(rate, metrics.getWriteRatePerSecond(), rate / 10);
+        assertEquals(rate, metrics.stats().writeRatePerSecond(), rate / 10);
+        assertEquals(0, metrics.getReadRatePerSecond(), 0);
+    }
+
+    @Test
+    public void metricsReportDepthAndStorage() throws Exception {
+        Scheduler scheduler = createSingleThreadScheduler();
+        BufferToFileMetrics metrics = BufferToFileMetrics.create("metricsTest");
+        Subscription mbean = metrics.registerMBean();
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        Observable.range(1, 1000)
+                //
+                .compose(Transformers.onBackpressureBufferToFile(DataSerializers.integer(),
+                        scheduler, Options.rolloverEvery(100).metrics(metrics).build()))
+                .subscribe(ts);
+        BufferToFileStats stats = metrics.stats();
+        assertEquals(1000, stats.itemsWritten());
+        assertEquals(0, stats.itemsRead());
+        assertEquals(1000, stats.itemsQueued());
+        assertTrue(stats.bytesOnDisk() > 0);
+        assertTrue(stats.segments() > 1);
+        assertTrue(stats.rollovers() > 0);
+        ObjectName name = new ObjectName(
+                "com.github.davidmoten.rx.buffertofile:type=BufferToFile,name=\"metricsTest\"");
+        assertEquals(1000L, ManagementFactory.getPlatformMBeanServer().getAttribute(name,
+                "ItemsQueued"));
+        ts.requestMore(Long.MAX_VALUE);
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertValueCount(1000);
+        ts.assertCompleted();
+        waitUntilWorkCompleted(scheduler, 10, TimeUnit.SECONDS);
+        stats = metrics.stats();
+        assertEquals(1000, stats.itemsRead());
+        assertEquals(0, stats.itemsQueued());
+        assertEquals(0, stats.oldestItemAgeMs());
+        // queue no longer reported once unsubscribed
+        ts.unsubscribe();
+        assertEquals(0, metrics.stats().bytesOnDisk());
+        mbean.unsubscribe();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
     private static void waitUntilWorkCompleted(Scheduler scheduler) {
         waitUntilWorkCompleted(scheduler, 10, TimeUnit.SECONDS);
     }
@@ -0,0 +1,167 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.Functions;
+import com.github.davidmoten.rx.Statistics;
+import com.github.davidmoten.rx.Transformers;
+import com.github.davidmoten.rx.testing.TestingHelper;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+public class OperatorWindowAggregateTest {
+
+    @Test
+    public void testEmpty() {
+        Observable.<Integer> empty() //
+                .compose(Transformers.windowAggregate(3, SUM)) //
+                .to(TestingHelper.<Integer> test()) //
+                .assertNoValues() //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testSum() {
+        Observable.just(1, 2, 3, 4, 5) //
+                .compose(Transformers.windowAggregate(3, SUM)) //
+                .to(TestingHelper.<Integer> test()) //
+                .assertValues(6, 9, 12) //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testKeepsArrivalOrder() {
+        // concatenation is associative but not commutative
+        int n = 200;
+        for (int windowSize = 1; windowSize < 40; windowSize++) {
+            List<String> expected = new ArrayList<String>();
+            for (int i = windowSize - 1; i < n; i++) {
+                StringBuilder b = new StringBuilder();
+                for (int j = i - windowSize + 1; j <= i; j++) {
+                    b.append(j).append(",");
+                }
+                expected.add(b.toString());
+            }
+            List<String> actual = Observable.range(0, n)
+                    .compose(Transformers.windowAggregate(windowSize, TO_STRING, CONCAT)).toList()
+                    .toBlocking().single();
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testMinMax() {
+        Observable<Integer> o = Observable.just(4, 3, 5, 1, 2);
+        o.compose(Transformers.windowAggregate(2, Functions.min(NATURAL))) //
+                .to(TestingHelper.<Integer> test()) //
+                .assertValues(3, 3, 1, 1) //
+                .assertCompleted();
+        o.compose(Transformers.windowAggregate(3, Functions.max(NATURAL))) //
+                .to(TestingHelper.<Integer> test()) //
+                .assertValues(5, 5, 5) //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testStatistics() {
+        List<Statistics> list = Observable.just(1, 4, 10, 20, 5)
+                .compose(Transformers.<Integer> windowStatistics(4)).toList().toBlocking()
+                .single();
+        assertEquals(2, list.size());
+        assertEquals(4, list.get(0).count());
+        assertEquals(8.75, list.get(0).mean(), 0.00001);
+        assertEquals(7.258615570478987, list.get(0).sd(), 0.00001);
+        assertEquals(39.0, list.get(1).sum(), 0.00001);
+    }
+
+    @Test
+    public void testTimeWindow() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> subject = PublishSubject.create();
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        subject.compose(Transformers.windowAggregate(30, TimeUnit.SECONDS, scheduler,
+                Functions.<Integer> identity(), SUM)).subscribe(ts);
+        subject.onNext(1);
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        subject.onNext(2);
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        subject.onNext(3);
+        // 1 leaves the window at 30s
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        subject.onNext(4);
+        // 2 and 3 leave by 50s
+        scheduler.advanceTimeBy(20, TimeUnit.SECONDS);
+        subject.onNext(5);
+        subject.onCompleted();
+        ts.assertValues(1, 3, 6, 9, 9);
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testCombinerThrows() {
+        Observable.just(1, 2) //
+                .compose(Transformers.windowAggregate(2,
+                        Functions.<Integer, Integer, Integer> throwing2())) //
+                .to(TestingHelper.<Integer> test()) //
+                .assertNoValues() //
+                .assertError(Functions.ThrowingException.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowSizeZeroThrowsIAE() {
+        Observable.just(1).compose(Transformers.windowAggregate(0, SUM));
+    }
+
+    @Test
+    public void testBackpressure() {
+        Observable.range(1, 10) //
+                .compose(Transformers.windowAggregate(3, SUM)) //
+                .to(TestingHelper.<Integer> testWithRequest(2)) //
+                .assertValues(6, 9) //
+                .assertNotCompleted() //
+                .requestMore(10) //
+                .assertValues(6, 9, 12, 15, 18, 21, 24, 27) //
+                .assertCompleted();
+    }
+
+    private static final Func2<Integer, Integer, Integer> SUM = new Func2<Integer, Integer, Integer>() {
+        @Override
+        public Integer call(Integer a, Integer b) {
+            return a + b;
+        }
+    };
+
+    private static final Func1<Integer, String> TO_STRING = new Func1<Integer, String>() {
+        @Override
+        public String call(Integer x) {
+            return x + ",";
+        }
+    };
+
+    private static final Func2<String, String, String> CONCAT = new Func2<String, String, String>() {
+        @Override
+        public String call(String a, String b) {
+            return a + b;
+        }
+    };
+
+    private static final Comparator<Integer> NATURAL = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+            return a.compareTo(b);
+        }
+    };
+
+}
@@ -3,17 +3,24 @@ package com.github.davidmoten.rx.internal.operators;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import com.github.davidmoten.rx.ToLongFunc1;
 import com.github.davidmoten.rx.Transformers;
 
 import rx.Observable;
 import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class OperatorWindowMinMaxTest {
@@ -71,4 +78,174 @@ public class OperatorWindowMinMaxTest {
         ts.assertError(r);
     }
 
+    @Test
+    public void testWindowMinMaxDouble() {
+        Observable<Double> o = Observable.just(4.0, 3.0, Double.NaN, 1.0, 2.0);
+        assertEquals(Arrays.asList(3.0, 3.0, 1.0, 1.0),
+                o.compose(Transformers.windowMinDouble(2)).toList().toBlocking().single());
+        assertEquals(Arrays.asList(4.0, Double.NaN, Double.NaN, 2.0),
+                o.compose(Transformers.windowMaxDouble(2)).toList().toBlocking().single());
+    }
+
+    @Test
+    public void testWindowMinMaxLong() {
+        Observable<Long> o = Observable.just(4L, 3L, 5L, 1L, 2L);
+        assertEquals(Arrays.asList(3L, 3L, 1L, 1L),
+                o.compose(Transformers.windowMinLong(2)).toList().toBlocking().single());
+        assertEquals(Arrays.asList(5L, 5L, 5L),
+                o.compose(Transformers.windowMaxLong(3)).toList().toBlocking().single());
+    }
+
+    @Test
+    public void testPrimitiveSameAsGeneric() {
+        Random random = new Random(123);
+        for (int windowSize : new int[] { 1, 2, 3, 17, 100 }) {
+            List<Double> doubles = new ArrayList<Double>();
+            List<Long> longs = new ArrayList<Long>();
+            for (int i = 0; i < 1000; i++) {
+                // few distinct values so that there are ties
+                doubles.add((double) random.nextInt(20));
+                longs.add((long) random.nextInt(20));
+            }
+            Observable<Double> d = Observable.from(doubles);
+            Observable<Long> l = Observable.from(longs);
+            assertEquals(d.compose(Transformers.<Double> windowMin(windowSize)).toList()
+                    .toBlocking().single(),
+                    d.compose(Transformers.windowMinDouble(windowSize)).toList().toBlocking()
+                            .single());
+            assertEquals(d.compose(Transformers.<Double> windowMax(windowSize)).toList()
+                    .toBlocking().single(),
+                    d.compose(Transformers.windowMaxDouble(windowSize)).toList().toBlocking()
+                            .single());
+            assertEquals(l.compose(Transformers.<Long> windowMin(windowSize)).toList()
+                    .toBlocking().single(),
+                    l.compose(Transformers.windowMinLong(windowSize)).toList().toBlocking()
+                            .single());
+            assertEquals(l.compose(Transformers.<Long> windowMax(windowSize)).toList()
+                    .toBlocking().single(),
+                    l.compose(Transformers.windowMaxLong(windowSize)).toList().toBlocking()
+                            .single());
+        }
+    }
+
+    @Test
+    public void testTimeWindowMaxBySchedulerClock() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> subject = PublishSubject.create();
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        subject.compose(Transformers.<Integer> windowMax(30, TimeUnit.SECONDS, scheduler,
+                INTEGER)).subscribe(ts);
+        subject.onNext(5);
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        subject.onNext(3);
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        subject.onNext(4);
+        // 5 leaves the window at 30s
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        subject.onNext(1);
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        subject.onNext(2);
+        subject.onCompleted();
+        ts.assertValues(5, 5, 5, 4, 4);
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testTimeWindowMinByTimestamp() {
+        // value and timestamp in ms
+        List<long[]> list = Arrays.asList(new long[] { 4, 0 }, new long[] { 2, 5 },
+                new long[] { 3, 9 }, new long[] { 6, 15 }, new long[] { 5, 20 });
+        List<long[]> result = Observable.from(list)
+                .compose(Transformers.windowMin(10, TimeUnit.MILLISECONDS, TIMESTAMP, VALUE))
+                .toList().toBlocking().single();
+        assertEquals(Arrays.asList(4L, 2L, 2L, 3L, 5L), values(result));
+    }
+
+    @Test
+    public void testTimeWindowThrottle() {
+        List<long[]> list = Arrays.asList(new long[] { 4, 0 }, new long[] { 2, 5 },
+                new long[] { 3, 9 }, new long[] { 6, 15 }, new long[] { 5, 20 });
+        List<long[]> result = Observable.from(list)
+                .compose(Transformers.windowMax(10, 10, TimeUnit.MILLISECONDS, TIMESTAMP, VALUE))
+                .toList().toBlocking().single();
+        // emits at 0 and at 15 (the max of the items at 9 and 15) but not at 20
+        assertEquals(Arrays.asList(4L, 6L), values(result));
+    }
+
+    @Test
+    public void testTimeWindowThrottleReplacesRequest() {
+        TestSubscriber<Integer> ts = TestSubscriber.create(2);
+        Observable.range(1, 10)
+                .compose(Transformers.<Integer> windowMax(10, 3, TimeUnit.MILLISECONDS,
+                        new ToLongFunc1<Integer>() {
+                            @Override
+                            public long call(Integer t) {
+                                return t;
+                            }
+                        }, INTEGER))
+                .subscribe(ts);
+        // 2 and 3 are throttled
+        ts.assertValues(1, 4);
+        ts.assertNotCompleted();
+        ts.requestMore(10);
+        ts.assertValues(1, 4, 7, 10);
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testTimeWindowTimeFunctionThrows() {
+        final RuntimeException ex = new RuntimeException("boo");
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        Observable.just(1, 2)
+                .compose(Transformers.<Integer> windowMax(10, 0, TimeUnit.MILLISECONDS,
+                        new ToLongFunc1<Integer>() {
+                            @Override
+                            public long call(Integer t) {
+                                throw ex;
+                            }
+                        }, INTEGER))
+                .subscribe(ts);
+        ts.assertNoValues();
+        ts.assertError(ex);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTimeWindowDurationZeroThrowsIAE() {
+        Observable.just(1).compose(Transformers.<Integer> windowMax(0, TimeUnit.SECONDS));
+    }
+
+    private static List<Long> values(List<long[]> list) {
+        List<Long> values = new ArrayList<Long>();
+        for (long[] x : list) {
+            values.add(x[0]);
+        }
+        return values;
+    }
+
+    private static final ToLongFunc1<long[]> TIMESTAMP = new ToLongFunc1<long[]>() {
+        @Override
+        public long call(long[] x) {
+            return x[1];
+        }
+    };
+
+    private static final Comparator<Integer> INTEGER = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+            return a.compareTo(b);
+        }
+    };
+
+    private static final Comparator<long[]> VALUE = new Comparator<long[]>() {
+        @Override
+        public int compare(long[] a, long[] b) {
+            return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+        }
+    };
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrimitiveWindowSizeZeroThrowsIAE() {
+        Observable.just(1L).compose(Transformers.windowMaxLong(0));
+    }
+
 }
@@ -1,17 +1,23 @@
 package com.github.davidmoten.rx.internal.operators;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static rx.Observable.from;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import com.github.davidmoten.rx.Obs;
 import com.github.davidmoten.rx.Transformers;
 import com.github.davidmoten.rx.testing.TestingHelper;
 import com.github.davidmoten.rx.util.RxRingBuffer;
@@ -20,8 +26,12 @@ import com.google.common.collect.Sets;
 
 import rx.Observable;
 import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.observers.AssertableSubscriber;
 import rx.observers.TestSubscriber;
 import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
 
 public class OrderedMergeTest {
 
@@ -285,4 +295,339 @@ public class OrderedMergeTest {
           .test() //
           .assertError(ex);
 	}
+
+	@Test
+	public void testSharedArenaManySources() {
+		final int sources = 1000;
+		List<Observable<Integer>> list = Lists.newArrayList();
+		for (int i = 0; i < sources; i++) {
+			list.add(interleaved(i, sources, 20));
+		}
+		List<Integer> merged = Obs.orderedMerge(list, comparator, false, RxRingBuffer.SIZE, 2 * sources)
+				.toList().toBlocking().single();
+		assertEquals(Observable.range(0, 20 * sources).toList().toBlocking().single(), merged);
+	}
+
+	@Test
+	public void testSharedArenaSkewedSourcesAsync() {
+		// one source wins most of the time, the others rarely
+		List<Observable<Integer>> list = Lists.newArrayList();
+		list.add(Observable.range(0, 10000).filter(new Func1<Integer, Boolean>() {
+			@Override
+			public Boolean call(Integer n) {
+				return n % 100 != 0;
+			}
+		}).subscribeOn(Schedulers.computation()));
+		for (int i = 0; i < 100; i++) {
+			list.add(interleaved(i * 100, 10000, 1).subscribeOn(Schedulers.computation()));
+		}
+		OrderedMerge.create(list, comparator, false, 64, 400) //
+				.to(TestingHelper.<Integer> test()) //
+				.awaitTerminalEvent(10, TimeUnit.SECONDS) //
+				.assertNoErrors() //
+				.assertCompleted() //
+				.assertValues(Observable.range(0, 10000).toList().toBlocking().single()
+						.toArray(new Integer[0]));
+	}
+
+	@Test
+	public void testSharedArenaBackpressure() {
+		List<Observable<Integer>> list = Lists.newArrayList();
+		for (int i = 0; i < 10; i++) {
+			list.add(interleaved(i, 10, 100));
+		}
+		TestSubscriber<Integer> ts = TestSubscriber.create(0);
+		OrderedMerge.create(list, comparator, false, 16, 20).subscribe(ts);
+		ts.requestMore(3);
+		ts.assertValues(0, 1, 2);
+		ts.requestMore(Long.MAX_VALUE);
+		ts.assertValueCount(1000);
+		ts.assertCompleted();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test(expected = IllegalArgumentException.class)
+	public void testSharedArenaCapacityLessThanSourcesThrows() {
+		OrderedMerge.create(Arrays.asList(Observable.just(1), Observable.just(2)), comparator, false, 16, 1);
+	}
+
+	@Test
+	public void testArenaBufferReleasesChunks() {
+		OrderedMergeArena arena = new OrderedMergeArena(8, 2, 4);
+		int free = arena.freeChunks();
+		OrderedMergeArena.Buffer a = arena.createBuffer();
+		OrderedMergeArena.Buffer b = arena.createBuffer();
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 6; i++) {
+				assertTrue(a.offer(round * 10 + i));
+				assertTrue(b.offer(-i));
+			}
+			for (int i = 0; i < 6; i++) {
+				assertEquals(round * 10 + i, a.poll());
+				assertEquals(-i, b.poll());
+			}
+			assertNull(a.poll());
+			assertNull(b.peek());
+		}
+		// each buffer holds on to at most its current chunk and the next
+		assertTrue(arena.freeChunks() >= free - 4);
+	}
+
+	@Test
+	public void testTournamentTreeWithSourcesOfDifferentLengthsAsync() {
+		// more sources than the linear scan handles, some empty, some long
+		Random random = new Random(7);
+		for (int round = 0; round < 20; round++) {
+			int sources = OrderedMerge.MergeProducer.LINEAR_SCAN_MAX_SOURCES + 1 + random.nextInt(40);
+			List<Observable<Integer>> list = Lists.newArrayList();
+			List<Integer> expected = Lists.newArrayList();
+			for (int i = 0; i < sources; i++) {
+				List<Integer> values = Lists.newArrayList();
+				int v = random.nextInt(10);
+				int count = random.nextInt(4) == 0 ? 0 : random.nextInt(300);
+				for (int j = 0; j < count; j++) {
+					values.add(v);
+					v += random.nextInt(5);
+				}
+				expected.addAll(values);
+				list.add(Observable.from(values).subscribeOn(Schedulers.computation()));
+			}
+			Collections.sort(expected);
+			OrderedMerge.create(list, comparator, false, 16) //
+					.to(TestingHelper.<Integer> test()) //
+					.awaitTerminalEvent(10, TimeUnit.SECONDS) //
+					.assertNoErrors() //
+					.assertCompleted() //
+					.assertValues(expected.toArray(new Integer[0]));
+		}
+	}
+
+	@Test
+	public void testTournamentTreeTiesGoToLowerSourceIndex() {
+		final int sources = 20;
+		List<Observable<String>> list = Lists.newArrayList();
+		List<String> expected = Lists.newArrayList();
+		for (int i = 0; i < sources; i++) {
+			list.add(Observable.just("a" + i, "b" + i));
+			expected.add("a" + i);
+		}
+		for (int i = 0; i < sources; i++) {
+			expected.add("b" + i);
+		}
+		// compares only the first character so the rest shows the source
+		Comparator<String> byFirstChar = new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return Character.valueOf(a.charAt(0)).compareTo(b.charAt(0));
+			}
+		};
+		List<String> merged = OrderedMerge.create(list, byFirstChar, false, 16).toList().toBlocking().single();
+		assertEquals(expected, merged);
+	}
+
+	@Test
+	public void testTournamentTreeComparatorThrows() {
+		final RuntimeException ex = new RuntimeException("boo");
+		List<Observable<Integer>> list = Lists.newArrayList();
+		for (int i = 0; i < 20; i++) {
+			list.add(Observable.just(i));
+		}
+		OrderedMerge.create(list, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				throw ex;
+			}
+		}).test().assertError(ex);
+	}
+
+	@Test
+	public void testGallopStopsAtRunnerUpAndKeepsTieOrder() {
+		for (int empties : new int[] { 0, OrderedMerge.MergeProducer.LINEAR_SCAN_MAX_SOURCES }) {
+			List<Observable<String>> list = Lists.newArrayList();
+			list.add(Observable.just("k0"));
+			list.add(Observable.from(
+					Arrays.asList("a1", "b1", "c1", "d1", "e1", "f1", "g1", "h1", "i1", "j1", "k1", "l1")));
+			// with enough sources the tournament tree is used
+			for (int i = 0; i < empties; i++) {
+				list.add(Observable.<String> empty());
+			}
+			Comparator<String> byFirstChar = new Comparator<String>() {
+				@Override
+				public int compare(String a, String b) {
+					return Character.valueOf(a.charAt(0)).compareTo(b.charAt(0));
+				}
+			};
+			List<String> merged = OrderedMerge.create(list, byFirstChar, false, 4).toList().toBlocking()
+					.single();
+			assertEquals(Arrays.asList("a1", "b1", "c1", "d1", "e1", "f1", "g1", "h1", "i1", "j1", "k0", "k1",
+					"l1"), merged);
+		}
+	}
+
+	@Test
+	public void testGallopOnMostlyOrderedSourcesWithBackpressure() {
+		for (int sources : new int[] { 3, 20 }) {
+			List<Observable<Integer>> list = Lists.newArrayList();
+			for (int i = 0; i < sources; i++) {
+				// long runs per source with an occasional overlap
+				list.add(Observable.range(i * 1000 - (i % 2) * 10, 1000));
+			}
+			List<Integer> expected = Lists.newArrayList();
+			for (Observable<Integer> o : list) {
+				expected.addAll(o.toList().toBlocking().single());
+			}
+			Collections.sort(expected);
+			TestSubscriber<Integer> ts = TestSubscriber.create(0);
+			OrderedMerge.create(list, comparator, false, 16).subscribe(ts);
+			for (int i = 0; i < expected.size() / 7 + 1; i++) {
+				ts.requestMore(7);
+			}
+			ts.assertCompleted();
+			assertEquals(expected, ts.getOnNextEvents());
+		}
+	}
+
+	@Test
+	public void testDynamicSourcesHoldOnlyUntilFirstItem() {
+		PublishSubject<Observable<Integer>> sources = PublishSubject.create();
+		PublishSubject<Integer> a = PublishSubject.create();
+		PublishSubject<Integer> b = PublishSubject.create();
+		AssertableSubscriber<Integer> ts = Obs.orderedMerge(sources, comparator).test();
+		sources.onNext(a);
+		a.onNext(1);
+		a.onNext(3);
+		ts.assertValues(1, 3);
+		sources.onNext(b);
+		a.onNext(5);
+		// b has not started
+		ts.assertValues(1, 3);
+		b.onNext(4);
+		ts.assertValues(1, 3, 4);
+		b.onCompleted();
+		ts.assertValues(1, 3, 4, 5);
+		a.onCompleted();
+		ts.assertNotCompleted();
+		sources.onCompleted();
+		ts.assertCompleted();
+	}
+
+	@Test
+	public void testDynamicSourcesWatermarkEmitsAheadOfLateSource() {
+		for (int empties : new int[] { 0, OrderedMerge.MergeProducer.LINEAR_SCAN_MAX_SOURCES + 1 }) {
+			PublishSubject<Observable<Integer>> sources = PublishSubject.create();
+			PublishSubject<Integer> watermarks = PublishSubject.create();
+			PublishSubject<Integer> a = PublishSubject.create();
+			PublishSubject<Integer> b = PublishSubject.create();
+			AssertableSubscriber<Integer> ts = Obs.orderedMerge(sources, comparator, watermarks, false, 16).test();
+			// with enough sources the tournament tree is used
+			for (int i = 0; i < empties; i++) {
+				sources.onNext(Observable.<Integer> empty());
+			}
+			sources.onNext(a);
+			a.onNext(1);
+			a.onNext(2);
+			sources.onNext(b);
+			a.onNext(5);
+			a.onNext(6);
+			ts.assertValues(1, 2);
+			watermarks.onNext(5);
+			ts.assertValues(1, 2, 5);
+			b.onNext(6);
+			// tie goes to the earlier source which is then empty
+			ts.assertValues(1, 2, 5, 6);
+			a.onCompleted();
+			ts.assertValues(1, 2, 5, 6, 6);
+			b.onCompleted();
+			sources.onCompleted();
+			ts.assertCompleted();
+		}
+	}
+
+	@Test
+	public void testDynamicSourcesGrowFromLinearScanToTree() {
+		PublishSubject<Observable<Integer>> sources = PublishSubject.create();
+		AssertableSubscriber<Integer> ts = Obs.orderedMerge(sources, comparator).test();
+		List<Integer> expected = Lists.newArrayList();
+		int base = 0;
+		// 6 sources are scanned, 12 switch to a tree of 16 leaves which grows
+		// to 32 for 20
+		for (int count : new int[] { 6, 6, 8 }) {
+			List<PublishSubject<Integer>> subjects = Lists.newArrayList();
+			for (int i = 0; i < count; i++) {
+				PublishSubject<Integer> subject = PublishSubject.create();
+				subjects.add(subject);
+				sources.onNext(subject);
+			}
+			for (int k = 0; k < 10; k++) {
+				for (int i = 0; i < count; i++) {
+					int v = base + i + k * count;
+					subjects.get(i).onNext(v);
+					expected.add(v);
+				}
+			}
+			for (PublishSubject<Integer> subject : subjects) {
+				subject.onCompleted();
+			}
+			base += 10 * count;
+		}
+		ts.assertNotCompleted();
+		sources.onCompleted();
+		ts.assertCompleted();
+		assertEquals(expected, ts.getOnNextEvents());
+	}
+
+	@Test
+	public void testDynamicSourcesReleasedWhenCompletedAndEmptied() {
+		PublishSubject<Observable<Integer>> sources = PublishSubject.create();
+		PublishSubject<Integer> watermarks = PublishSubject.create();
+		AssertableSubscriber<Integer> ts = Obs.orderedMerge(sources, comparator, watermarks, false, 16).test();
+		// enough long lived sources for the tournament tree, held back only
+		// by the watermark
+		List<PublishSubject<Integer>> subjects = Lists.newArrayList();
+		for (int i = 0; i < OrderedMerge.MergeProducer.LINEAR_SCAN_MAX_SOURCES + 2; i++) {
+			PublishSubject<Integer> subject = PublishSubject.create();
+			subjects.add(subject);
+			sources.onNext(subject);
+		}
+		watermarks.onNext(100);
+		final AtomicInteger released = new AtomicInteger();
+		List<Integer> expected = Lists.newArrayList();
+		for (int i = 0; i < 30; i++) {
+			sources.onNext(Observable.just(i).doOnUnsubscribe(new Action0() {
+				@Override
+				public void call() {
+					released.incrementAndGet();
+				}
+			}));
+			expected.add(i);
+			assertEquals(i + 1, released.get());
+		}
+		assertEquals(expected, ts.getOnNextEvents());
+		for (int i = 0; i < subjects.size(); i++) {
+			expected.add(1000 + i);
+			subjects.get(i).onNext(1000 + i);
+			subjects.get(i).onCompleted();
+		}
+		sources.onCompleted();
+		ts.assertCompleted();
+		assertEquals(expected, ts.getOnNextEvents());
+	}
+
+	@Test
+	public void testDynamicSourcesError() {
+		RuntimeException ex = new RuntimeException("boo");
+		Obs.orderedMerge(Observable.just(Observable.just(1, 2)).concatWith(
+				Observable.<Observable<Integer>> error(ex)), comparator) //
+				.test() //
+				.assertError(ex);
+	}
+
+	private static Observable<Integer> interleaved(final int start, final int step, int count) {
+		return Observable.range(0, count).map(new Func1<Integer, Integer>() {
+			@Override
+			public Integer call(Integer n) {
+				return start + n * step;
+			}
+		});
+	}
 }
\ No newline at end of file
@@ -134,4 +134,9 @@ public class QueueWithResourcesForwarder<T> implements QueueWithResources<T> {
         return 0;
     }
 
+    @Override
+    public boolean reset() {
+        return false;
+    }
+
 }
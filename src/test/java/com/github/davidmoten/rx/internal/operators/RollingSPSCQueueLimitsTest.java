@@ -0,0 +1,256 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializers;
+import com.github.davidmoten.rx.buffertofile.OverflowStrategy;
+import com.github.davidmoten.rx.exceptions.BufferOverflowException;
+
+import rx.functions.Func0;
+
+public class RollingSPSCQueueLimitsTest {
+
+	@Test
+	public void testDropNewest() {
+		RollingSPSCQueue<Integer> q = createQueue(1000, Long.MAX_VALUE, 3, OverflowStrategy.DROP_NEWEST);
+		for (int i = 1; i <= 5; i++) {
+			q.offer(i);
+		}
+		assertEquals(1, (int) q.poll());
+		q.offer(6);
+		assertEquals(Arrays.asList(2, 3, 6), drain(q));
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testError() {
+		RollingSPSCQueue<Integer> q = createQueue(1000, Long.MAX_VALUE, 3, OverflowStrategy.ERROR);
+		q.offer(1);
+		q.offer(2);
+		q.offer(3);
+		try {
+			q.offer(4);
+			fail();
+		} catch (BufferOverflowException e) {
+			// expected
+		}
+		assertEquals(Arrays.asList(1, 2, 3), drain(q));
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testDropOldestSegment() {
+		// two items per segment
+		RollingSPSCQueue<Integer> q = createQueue(3, Long.MAX_VALUE, 4,
+				OverflowStrategy.DROP_OLDEST_SEGMENT);
+		for (int i = 1; i <= 7; i++) {
+			q.offer(i);
+		}
+		assertEquals(Arrays.asList(5, 6, 7), drain(q));
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testDropOldestSegmentWhenOnlyOneSegment() {
+		RollingSPSCQueue<Integer> q = createQueue(1000, Long.MAX_VALUE, 3,
+				OverflowStrategy.DROP_OLDEST_SEGMENT);
+		for (int i = 1; i <= 4; i++) {
+			q.offer(i);
+		}
+		assertEquals(Arrays.asList(4), drain(q));
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testTotalBytesLimitRecyclesSegmentsWhenAllRead() {
+		// each segment file holds 10 integers
+		RollingSPSCQueue<Integer> q = createQueue(11, 100, Long.MAX_VALUE, OverflowStrategy.ERROR);
+		for (int i = 0; i < 10000; i++) {
+			q.offer(i);
+			assertEquals(i, (int) q.poll());
+		}
+		assertNull(q.poll());
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testTotalBytesLimitDropsOldestSegments() {
+		// each segment file holds 10 integers
+		RollingSPSCQueue<Integer> q = createQueue(11, 100, Long.MAX_VALUE,
+				OverflowStrategy.DROP_OLDEST_SEGMENT);
+		for (int i = 0; i < 1000; i++) {
+			q.offer(i);
+		}
+		List<Integer> list = drain(q);
+		// only the latest segments are kept and they are contiguous
+		assertTrue(list.size() <= 30);
+		assertEquals(999, (int) list.get(list.size() - 1));
+		for (int i = 1; i < list.size(); i++) {
+			assertEquals(list.get(i - 1) + 1, (int) list.get(i));
+		}
+		q.unsubscribe();
+	}
+
+	@Test(timeout = 10000)
+	public void testBlock() throws InterruptedException {
+		final RollingSPSCQueue<Integer> q = createQueue(4, Long.MAX_VALUE, 5, OverflowStrategy.BLOCK);
+		final int max = 1000;
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 1; i <= max; i++) {
+					q.offer(i);
+				}
+			}
+		});
+		producer.start();
+		int i = 1;
+		while (i <= max) {
+			Integer t = q.poll();
+			if (t != null) {
+				assertEquals(i, (int) t);
+				i++;
+			}
+		}
+		producer.join();
+		assertNull(q.poll());
+		q.unsubscribe();
+	}
+
+	@Test(timeout = 10000)
+	public void testBlockOnTotalBytesResumesBeforeQueueIsDrained() throws InterruptedException {
+		// all items fit in one segment by count so only the byte limit makes
+		// the queue roll over
+		final RollingSPSCQueue<Integer> q = createQueue(1000, 100, Long.MAX_VALUE, OverflowStrategy.BLOCK);
+		final AtomicInteger offered = new AtomicInteger();
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 1; i <= 100; i++) {
+					q.offer(i);
+					offered.incrementAndGet();
+				}
+			}
+		});
+		producer.start();
+		TimeUnit.MILLISECONDS.sleep(200);
+		int blockedAt = offered.get();
+		assertTrue(blockedAt < 100);
+		List<Integer> list = new ArrayList<Integer>();
+		// the producer resumes once the first segment has been read
+		while (offered.get() == blockedAt) {
+			Integer value = q.poll();
+			assertTrue(value != null);
+			list.add(value);
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		assertTrue(list.size() < blockedAt);
+		while (list.size() < 100) {
+			Integer value = q.poll();
+			if (value != null) {
+				list.add(value);
+			}
+		}
+		producer.join();
+		for (int i = 1; i <= 100; i++) {
+			assertEquals(i, (int) list.get(i - 1));
+		}
+		q.unsubscribe();
+	}
+
+	@Test(timeout = 10000)
+	public void testCancelReleasesBlockedOffer() throws InterruptedException {
+		final RollingSPSCQueue<Integer> q = createQueue(1000, Long.MAX_VALUE, 1, OverflowStrategy.BLOCK);
+		q.offer(1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicInteger offered = new AtomicInteger();
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				q.offer(2);
+				offered.incrementAndGet();
+				latch.countDown();
+			}
+		});
+		producer.start();
+		assertFalse(latch.await(100, TimeUnit.MILLISECONDS));
+		q.cancel();
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(1), drain(q));
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testSegmentsAreRecycledOnRollover() {
+		SegmentPoolCounters stats = new SegmentPoolCounters();
+		AtomicInteger files = new AtomicInteger();
+		// three items per segment
+		RollingSPSCQueue<Integer> q = createQueue(4, Long.MAX_VALUE, Long.MAX_VALUE, OverflowStrategy.ERROR,
+				2, stats, files);
+		List<Integer> list = new ArrayList<Integer>();
+		for (int i = 1; i <= 30; i++) {
+			q.offer(i);
+			list.addAll(drain(q));
+		}
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 1; i <= 30; i++) {
+			expected.add(i);
+		}
+		assertEquals(expected, list);
+		// the reader keeps up so one segment is always waiting in the pool
+		assertEquals(2, files.get());
+		assertEquals(2, stats.created());
+		assertEquals(8, stats.reused());
+		assertEquals(1, stats.pooled());
+		q.unsubscribe();
+		assertEquals(0, stats.pooled());
+		assertFalse(new File("target/rollingLimits.1").exists());
+		assertFalse(new File("target/rollingLimits.2").exists());
+	}
+
+	private static List<Integer> drain(RollingSPSCQueue<Integer> q) {
+		List<Integer> list = new ArrayList<Integer>();
+		Integer t;
+		while ((t = q.poll()) != null) {
+			list.add(t);
+		}
+		return list;
+	}
+
+	private static RollingSPSCQueue<Integer> createQueue(long maxItemsPerQueue, long maxTotalBytes,
+			long maxTotalItems, OverflowStrategy strategy) {
+		return createQueue(maxItemsPerQueue, maxTotalBytes, maxTotalItems, strategy, 0, null,
+				new AtomicInteger());
+	}
+
+	private static RollingSPSCQueue<Integer> createQueue(long maxItemsPerQueue, long maxTotalBytes,
+			long maxTotalItems, OverflowStrategy strategy, int segmentPoolSize, SegmentPoolCounters stats,
+			final AtomicInteger n) {
+		Func0<QueueWithResources<Integer>> factory = new Func0<QueueWithResources<Integer>>() {
+			@Override
+			public QueueWithResources<Integer> call() {
+				File file = new File("target/rollingLimits." + n.incrementAndGet());
+				file.delete();
+				// small buffer so that resourcesSize() moves with each item
+				return new FileBasedSPSCQueue<Integer>(4, file, DataSerializers.integer());
+			}
+		};
+		return new RollingSPSCQueue<Integer>(factory, Long.MAX_VALUE, maxItemsPerQueue, maxTotalBytes,
+				maxTotalItems, strategy, segmentPoolSize, stats);
+	}
+
+}
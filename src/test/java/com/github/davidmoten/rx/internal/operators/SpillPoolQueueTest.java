@@ -0,0 +1,181 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializers;
+import com.github.davidmoten.rx.buffertofile.OverflowStrategy;
+import com.github.davidmoten.rx.buffertofile.SpillPool;
+import com.github.davidmoten.rx.exceptions.BufferOverflowException;
+
+public class SpillPoolQueueTest {
+
+	private SpillPool pool;
+
+	@Before
+	public void before() {
+		// two integers per segment
+		pool = SpillPool.create(new File("target/spillPool"), 8, 4);
+	}
+
+	@After
+	public void after() {
+		pool.close();
+	}
+
+	@Test
+	public void testSpillsAndReadsInOrder() {
+		SpillPoolQueue<Integer> q = createQueue(OverflowStrategy.ERROR);
+		for (int i = 1; i <= 7; i++) {
+			q.offer(i);
+		}
+		// three closed blocks, the last two items are in the open block
+		assertEquals(1, pool.freeSegments());
+		assertEquals(24, q.resourcesSize());
+		assertEquals(1, (int) q.poll());
+		assertEquals(2, (int) q.poll());
+		assertEquals(2, pool.freeSegments());
+		q.offer(8);
+		assertEquals(Arrays.asList(3, 4, 5, 6, 7, 8), drain(q));
+		assertNull(q.poll());
+		assertTrue(q.isEmpty());
+		assertEquals(4, pool.freeSegments());
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testItemLargerThanSegmentSpansSegments() {
+		SpillPoolQueue<byte[]> q = new SpillPoolQueue<byte[]>(BufferToFileAccess.get().file(pool),
+				DataSerializers.byteArray(), OverflowStrategy.ERROR);
+		q.offer(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20 });
+		q.offer(new byte[] { 21 });
+		assertEquals(1, pool.freeSegments());
+		assertEquals(20, q.poll().length);
+		assertEquals(21, q.poll()[0]);
+		assertNull(q.poll());
+		assertEquals(4, pool.freeSegments());
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testErrorWhenPoolExhausted() {
+		SpillPoolQueue<Integer> q = createQueue(OverflowStrategy.ERROR);
+		for (int i = 1; i <= 10; i++) {
+			q.offer(i);
+		}
+		try {
+			q.offer(11);
+			fail();
+		} catch (BufferOverflowException e) {
+			// expected
+		}
+		q.unsubscribe();
+		assertEquals(4, pool.freeSegments());
+	}
+
+	@Test
+	public void testDropNewestWhenPoolExhausted() {
+		SpillPoolQueue<Integer> q = createQueue(OverflowStrategy.DROP_NEWEST);
+		for (int i = 1; i <= 12; i++) {
+			q.offer(i);
+		}
+		// block {9, 10} could not be spilled
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 11, 12), drain(q));
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testDropOldestWhenPoolExhausted() {
+		SpillPoolQueue<Integer> q = createQueue(OverflowStrategy.DROP_OLDEST_SEGMENT);
+		for (int i = 1; i <= 12; i++) {
+			q.offer(i);
+		}
+		assertEquals(Arrays.asList(3, 4, 5, 6, 7, 8, 9, 10, 11, 12), drain(q));
+		q.unsubscribe();
+	}
+
+	@Test
+	public void testStreamsShareThePool() {
+		SpillPoolQueue<Integer> a = createQueue(OverflowStrategy.DROP_NEWEST);
+		SpillPoolQueue<Integer> b = createQueue(OverflowStrategy.DROP_NEWEST);
+		for (int i = 1; i <= 6; i++) {
+			a.offer(i);
+			b.offer(-i);
+		}
+		// a and b have two spilled blocks each
+		assertEquals(0, pool.freeSegments());
+		a.unsubscribe();
+		assertEquals(2, pool.freeSegments());
+		assertEquals(Arrays.asList(-1, -2, -3, -4, -5, -6), drain(b));
+		b.unsubscribe();
+		assertEquals(4, pool.freeSegments());
+	}
+
+	@Test
+	public void testConcurrentWithBlock() throws InterruptedException {
+		final SpillPoolQueue<Integer> queue = createQueue(OverflowStrategy.BLOCK);
+		final int max = 100000;
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread t1 = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				for (int i = 1; i <= max; i++) {
+					queue.offer(i);
+				}
+			}
+		});
+		Thread t2 = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				int i = 1;
+				while (i <= max) {
+					Integer t = queue.poll();
+					if (t != null) {
+						if (i != t) {
+							failed.set(true);
+							System.out.println("failed for i = " + i);
+						}
+						i++;
+					}
+				}
+			}
+		});
+		t1.start();
+		t2.start();
+		t1.join();
+		t2.join();
+		assertFalse(failed.get());
+		queue.unsubscribe();
+		assertEquals(4, pool.freeSegments());
+	}
+
+	private SpillPoolQueue<Integer> createQueue(OverflowStrategy strategy) {
+		return new SpillPoolQueue<Integer>(BufferToFileAccess.get().file(pool), DataSerializers.integer(),
+				strategy);
+	}
+
+	private static <T> List<T> drain(SpillPoolQueue<T> q) {
+		List<T> list = new ArrayList<T>();
+		T t;
+		while ((t = q.poll()) != null) {
+			list.add(t);
+		}
+		return list;
+	}
+
+}
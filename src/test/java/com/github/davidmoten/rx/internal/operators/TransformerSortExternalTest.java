@@ -0,0 +1,120 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.Transformers;
+import com.github.davidmoten.rx.buffertofile.DataSerializers;
+
+import rx.Observable;
+import rx.functions.Func0;
+import rx.observers.AssertableSubscriber;
+import rx.schedulers.Schedulers;
+
+public class TransformerSortExternalTest {
+
+    @Test
+    public void testSortsAcrossManyRunsAndDeletesFiles() throws IOException {
+        File dir = Files.createTempDirectory("sortExternal").toFile();
+        AtomicInteger created = new AtomicInteger();
+        List<Integer> values = randomValues(10000);
+        List<Integer> sorted = Observable.from(values) //
+                .compose(Transformers.sortExternal(DataSerializers.integer(),
+                        Collections.<Integer> reverseOrder(), 100, 4, fileFactory(dir, created),
+                        Schedulers.computation())) //
+                .toList() //
+                .toBlocking() //
+                .single();
+        List<Integer> expected = new ArrayList<Integer>(values);
+        Collections.sort(expected, Collections.<Integer> reverseOrder());
+        assertEquals(expected, sorted);
+        // all runs but the last were spilled
+        assertEquals(99, created.get());
+        assertEquals(0, dir.list().length);
+        dir.delete();
+    }
+
+    @Test
+    public void testSingleRunDoesNotUseFiles() throws IOException {
+        File dir = Files.createTempDirectory("sortExternal").toFile();
+        AtomicInteger created = new AtomicInteger();
+        List<Integer> sorted = Observable.just(3, 1, 2) //
+                .compose(Transformers.sortExternal(DataSerializers.integer(),
+                        Collections.<Integer> reverseOrder(), 3, 2, fileFactory(dir, created),
+                        Schedulers.computation())) //
+                .toList() //
+                .toBlocking() //
+                .single();
+        assertEquals(Arrays.asList(3, 2, 1), sorted);
+        assertEquals(0, created.get());
+        dir.delete();
+    }
+
+    @Test
+    public void testEmpty() {
+        Observable.<Integer> empty() //
+                .compose(Transformers.sortExternal(DataSerializers.integer(), 10)) //
+                .test() //
+                .awaitTerminalEvent(10, TimeUnit.SECONDS) //
+                .assertNoValues() //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testErrorDeletesFiles() throws IOException {
+        File dir = Files.createTempDirectory("sortExternal").toFile();
+        AtomicInteger created = new AtomicInteger();
+        RuntimeException ex = new RuntimeException("boo");
+        AssertableSubscriber<Integer> ts = Observable.range(1, 1000) //
+                .concatWith(Observable.<Integer> error(ex)) //
+                .compose(Transformers.sortExternal(DataSerializers.integer(),
+                        Collections.<Integer> reverseOrder(), 10, 2, fileFactory(dir, created),
+                        Schedulers.computation())) //
+                .test();
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertError(ex);
+        ts.assertNoValues();
+        // a run being written when the error arrived is deleted once written
+        long start = System.currentTimeMillis();
+        while (dir.list().length > 0 && System.currentTimeMillis() - start < 5000) {
+            Thread.yield();
+        }
+        assertEquals(0, dir.list().length);
+        dir.delete();
+    }
+
+    private static List<Integer> randomValues(int n) {
+        Random random = new Random(123);
+        List<Integer> list = new ArrayList<Integer>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(random.nextInt());
+        }
+        return list;
+    }
+
+    private static Func0<File> fileFactory(final File dir, final AtomicInteger created) {
+        return new Func0<File>() {
+            @Override
+            public File call() {
+                created.incrementAndGet();
+                try {
+                    return File.createTempFile("run", "", dir);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+}